@@ -0,0 +1,66 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.rating.RatingCounters;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 64 threads rating one show: striped RatingCounters against a lock around the aggregates, the way the show row
+ * lock serializes raters, and against a single atomic value per aggregate.
+ * Run with mvn -P benchmark test-compile exec:exec -Djmh.args=RatingCountersBenchmark
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(64)
+@Fork(1)
+public class RatingCountersBenchmark {
+
+    private static final long SHOW_ID = 1L;
+
+    private RatingCounters striped;
+
+    private Locked locked;
+
+    private AtomicLong atomicSum;
+    private AtomicLong atomicCount;
+
+    @Setup
+    public void setup() {
+        striped = new RatingCounters();
+        locked = new Locked();
+        atomicSum = new AtomicLong();
+        atomicCount = new AtomicLong();
+    }
+
+    @Benchmark
+    public void striped() {
+        striped.add(SHOW_ID, 7, 1);
+    }
+
+    @Benchmark
+    public void locked() {
+        locked.add(7, 1);
+    }
+
+    @Benchmark
+    public void atomic() {
+        atomicSum.addAndGet(7);
+        atomicCount.incrementAndGet();
+    }
+
+    private static class Locked {
+
+        private long sum;
+        private long count;
+
+        private synchronized void add(long sum, long count) {
+            this.sum += sum;
+            this.count += count;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.tomaszstankowski.movieservice;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.tomaszstankowski.movieservice.model.dto.MovieDTO;
+import com.tomaszstankowski.movieservice.model.dto.SerialDTO;
+import com.tomaszstankowski.movieservice.model.dto.ShowDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming ShowDTODeserializer against the former one reading a tree first, for a single show and an array of them.
+ * Run with mvn -P benchmark test-compile exec:exec -Djmh.args=ShowDTODeserializerBenchmark
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShowDTODeserializerBenchmark {
+
+    private static final String SHOW = "{\"id\":1,\"title\":\"Heat\",\"description\":\"Cops and robbers in Los Angeles.\"," +
+            "\"dateReleased\":\"1995-12-15\",\"location\":\"USA\",\"genres\":[\"crime\",\"drama\",\"thriller\"]," +
+            "\"rating\":8.2,\"rateCount\":1500,\"duration\":170,\"boxoffice\":187000000}";
+
+    private static final int ARRAY_SIZE = 100;
+
+    private byte[] show;
+    private byte[] shows;
+
+    private ObjectReader streaming;
+    private ObjectReader tree;
+    private ObjectReader streamingList;
+    private ObjectReader treeList;
+
+    @Setup
+    public void setup() {
+        show = SHOW.getBytes(StandardCharsets.UTF_8);
+        shows = ("[" + String.join(",", Collections.nCopies(ARRAY_SIZE, SHOW)) + "]").getBytes(StandardCharsets.UTF_8);
+
+        ObjectMapper streamingMapper = new ObjectMapper();
+        ObjectMapper treeMapper = new ObjectMapper().addMixIn(ShowDTO.class, TreeDeserialized.class);
+        streaming = streamingMapper.readerFor(ShowDTO.class);
+        tree = treeMapper.readerFor(ShowDTO.class);
+        streamingList = streamingMapper.readerFor(streamingMapper.getTypeFactory().constructCollectionType(List.class, ShowDTO.class));
+        treeList = treeMapper.readerFor(treeMapper.getTypeFactory().constructCollectionType(List.class, ShowDTO.class));
+    }
+
+    @Benchmark
+    public ShowDTO streaming() throws IOException {
+        return streaming.readValue(show);
+    }
+
+    @Benchmark
+    public ShowDTO tree() throws IOException {
+        return tree.readValue(show);
+    }
+
+    @Benchmark
+    public List<ShowDTO> streamingArray() throws IOException {
+        return streamingList.readValue(shows);
+    }
+
+    @Benchmark
+    public List<ShowDTO> treeArray() throws IOException {
+        return treeList.readValue(shows);
+    }
+
+    @JsonDeserialize(using = TreeShowDTODeserializer.class)
+    private static abstract class TreeDeserialized {
+    }
+
+    /*
+    Former ShowDTODeserializer. The date format is confined to the benchmark thread.
+     */
+    private static class TreeShowDTODeserializer extends StdDeserializer<ShowDTO> {
+
+        private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+
+        private TreeShowDTODeserializer() {
+            super(ShowDTO.class);
+        }
+
+        @Override
+        public ShowDTO deserialize(JsonParser jp, DeserializationContext context) throws IOException {
+            JsonNode root = jp.getCodec().readTree(jp);
+            String title = root.get("title").textValue();
+            String description = root.get("description").textValue();
+            Date releaseDate;
+            try {
+                releaseDate = format.parse(root.get("dateReleased").textValue());
+            } catch (ParseException e) {
+                throw new IOException(e);
+            }
+            String location = root.get("location").asText();
+            Set<String> genres = new HashSet<>();
+            Iterator<JsonNode> iterator = root.get("genres").elements();
+            while (iterator.hasNext())
+                genres.add(iterator.next().textValue());
+            if (root.has("duration") && root.has("boxoffice"))
+                return new MovieDTO(title, description, releaseDate, location, genres,
+                        root.get("duration").shortValue(), root.get("boxoffice").intValue());
+            return new SerialDTO(title, description, releaseDate, location, genres, root.get("seasons").shortValue());
+        }
+    }
+}
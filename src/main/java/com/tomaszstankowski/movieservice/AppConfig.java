@@ -1,17 +1,39 @@
 package com.tomaszstankowski.movieservice;
 
 import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.service.rating.RatingCounters;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
 
     @Bean
-    public ModelMapper modelMapper() {
-        return new ModelMapper();
+    public RatingCounters ratingCounters() {
+        return new RatingCounters();
+    }
+
+    @Bean
+    public ModelMapper modelMapper(RatingCounters ratingCounters) {
+        return new ModelMapper(ratingCounters);
+    }
+
+    /*
+    Runs the @Scheduled jobs of services. Each job runs with a fixed delay, so it never overlaps itself, and a pool
+    lets flushes run every few hundred milliseconds while a rebuild takes minutes.
+     */
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(@Value("${movieservice.scheduling.pool-size:8}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(poolSize);
+        scheduler.setThreadNamePrefix("scheduled-");
+        return scheduler;
     }
 
     @Bean
@@ -0,0 +1,47 @@
+package com.tomaszstankowski.movieservice.controller;
+
+import com.tomaszstankowski.movieservice.service.cache.CachedJson;
+import com.tomaszstankowski.movieservice.service.cache.JsonCache;
+import com.tomaszstankowski.movieservice.service.cache.JsonVersion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.function.Supplier;
+
+/*
+Conditional GET of cached representations. A request carrying validators is checked against the version only,
+so a 304 never loads the representation.
+ */
+final class CachedJsonResponses {
+
+    private CachedJsonResponses() {
+    }
+
+    /**
+     * @return null if the response was already completed as not modified
+     **/
+    static <K> ResponseEntity<byte[]> get(JsonCache<K> cache,
+                                          K key,
+                                          WebRequest request,
+                                          Supplier<? extends RuntimeException> notFound) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null) {
+            JsonVersion version = cache.version(key);
+            if (version == null)
+                throw notFound.get();
+            if (request.checkNotModified(version.getETag(), version.getLastModified()))
+                return null;
+        }
+        CachedJson cached = cache.get(key);
+        if (cached == null)
+            throw notFound.get();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .eTag(cached.getVersion().getETag())
+                .contentType(MediaType.APPLICATION_JSON_UTF8);
+        if (cached.getVersion().getLastModified() >= 0)
+            response.lastModified(cached.getVersion().getLastModified());
+        return response.body(cached.getJson());
+    }
+}
@@ -0,0 +1,71 @@
+package com.tomaszstankowski.movieservice.controller;
+
+import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.dto.ChangeDTO;
+import com.tomaszstankowski.movieservice.model.dto.PersonDTO;
+import com.tomaszstankowski.movieservice.model.dto.ShowDTO;
+import com.tomaszstankowski.movieservice.model.entity.Change;
+import com.tomaszstankowski.movieservice.model.enums.ChangeSubject;
+import com.tomaszstankowski.movieservice.service.ChangeService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.*;
+
+/*
+Incremental sync of the catalog. A client starts from a date and then follows the cursor, which is sent
+with every batch, also once it is caught up, to be stored for the next sync.
+ */
+@RestController
+public class ChangeController {
+
+    private final ChangeService service;
+    private final ModelMapper mapper;
+
+    public ChangeController(ChangeService service, ModelMapper mapper) {
+        this.service = service;
+        this.mapper = mapper;
+    }
+
+    @GetMapping("/shows/changes")
+    public ResponseEntity<List<ChangeDTO<ShowDTO>>> getShowChanges(
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "cursor", defaultValue = "0") long cursor) {
+
+        List<Change> changes = service.findChanges(ChangeSubject.SHOW, new Date(since), cursor);
+        Map<Long, ShowDTO> shows = new HashMap<>();
+        service.findChangedShows(changes).forEach((id, show) -> shows.put(id, mapper.fromEntity(show)));
+        return toResponse(changes, shows, cursor);
+    }
+
+    @GetMapping("/people/changes")
+    public ResponseEntity<List<ChangeDTO<PersonDTO>>> getPersonChanges(
+            @RequestParam(value = "since", defaultValue = "0") long since,
+            @RequestParam(value = "cursor", defaultValue = "0") long cursor) {
+
+        List<Change> changes = service.findChanges(ChangeSubject.PERSON, new Date(since), cursor);
+        Map<Long, PersonDTO> people = new HashMap<>();
+        service.findChangedPeople(changes).forEach((id, person) -> people.put(id, mapper.fromEntity(person)));
+        return toResponse(changes, people, cursor);
+    }
+
+    /*
+    A subject removed after its change was read comes as a tombstone too, its removal follows later in the feed.
+     */
+    private static <T> ResponseEntity<List<ChangeDTO<T>>> toResponse(List<Change> changes,
+                                                                     Map<Long, T> items,
+                                                                     long cursor) {
+        List<ChangeDTO<T>> body = new ArrayList<>(changes.size());
+        for (Change change : changes) {
+            T item = items.get(change.getSubjectId());
+            body.add(new ChangeDTO<>(change.getSequence(), change.getSubjectId(), item == null,
+                    change.getDate(), item));
+        }
+        long next = changes.isEmpty() ? cursor : changes.get(changes.size() - 1).getSequence();
+        return ResponseEntity.ok()
+                .header(ShowController.NEXT_CURSOR_HEADER, String.valueOf(next))
+                .body(body);
+    }
+}
@@ -0,0 +1,83 @@
+package com.tomaszstankowski.movieservice.controller;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+Reads comma separated records. Fields may be quoted, quotes inside are doubled,
+quoted fields may span lines.
+ */
+class CsvReader {
+
+    private final Reader reader;
+
+    private long line = 1;
+    private long recordLine;
+    private int next = -2;
+
+    CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return fields of the next record, null at the end of input
+     **/
+    List<String> next() throws IOException {
+        recordLine = line;
+        int c = read();
+        if (c == -1)
+            return null;
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1)
+                    throw new IOException("Quoted field started on line " + recordLine + " is not closed.");
+                if (c == '"') {
+                    if (peek() == '"') {
+                        field.append('"');
+                        read();
+                    } else
+                        quoted = false;
+                } else
+                    field.append((char) c);
+            } else if (c == '"' && field.length() == 0)
+                quoted = true;
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == '\r' || c == -1) {
+                if (c == '\r' && peek() == '\n')
+                    read();
+                fields.add(field.toString());
+                return fields;
+            } else
+                field.append((char) c);
+            c = read();
+        }
+    }
+
+    /**
+     * @return line on which the last record read starts
+     **/
+    long line() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        int c = (next != -2) ? next : reader.read();
+        next = -2;
+        if (c == '\n')
+            line++;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (next == -2)
+            next = reader.read();
+        return next;
+    }
+}
@@ -0,0 +1,180 @@
+package com.tomaszstankowski.movieservice.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.entity.*;
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import com.tomaszstankowski.movieservice.repository.specifications.MovieSpecifications;
+import com.tomaszstankowski.movieservice.repository.specifications.SerialSpecifications;
+import com.tomaszstankowski.movieservice.repository.specifications.ShowSpecifications;
+import com.tomaszstankowski.movieservice.service.ExportService;
+import com.tomaszstankowski.movieservice.service.ShowService;
+import com.tomaszstankowski.movieservice.service.index.IdBitmap;
+import com.tomaszstankowski.movieservice.service.index.InvertedIndex;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.domain.Specifications;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import static org.springframework.data.jpa.domain.Specifications.where;
+
+/*
+Whole catalog as newline delimited JSON, one item per line in order of id. Items are written while the rows
+are read, nothing but the current chunk is held in memory. Compressed with gzip when the client accepts it.
+ */
+@RestController
+@RequestMapping("/export")
+public class ExportController {
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ExportService service;
+    private final ShowService showService;
+    private final ModelMapper mapper;
+    private final ObjectMapper objectMapper;
+
+    public ExportController(ExportService service, ShowService showService, ModelMapper mapper, ObjectMapper objectMapper) {
+        this.service = service;
+        this.showService = showService;
+        this.mapper = mapper;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Takes the filters of GET /shows.
+     **/
+    @GetMapping("/shows")
+    public void exportShows(@RequestParam(value = "type", required = false) ShowType type,
+                            @RequestParam(value = "title", required = false) String title,
+                            @RequestParam(value = "year_lt", required = false) Integer yearLt,
+                            @RequestParam(value = "year_gt", required = false) Integer yearGt,
+                            @RequestParam(value = "genres", required = false) String[] genres,
+                            @RequestParam(value = "duration_lt", required = false) Integer durationLt,
+                            @RequestParam(value = "duration_gt", required = false) Integer durationGt,
+                            @RequestParam(value = "seasons_lt", required = false) Integer seasonsLt,
+                            @RequestParam(value = "seasons_gt", required = false) Integer seasonsGt,
+                            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String encoding,
+                            HttpServletResponse response) throws IOException {
+
+        IdBitmap matching = ShowController.intersect(
+                (title == null) ? null : showService.matchShows(title),
+                (genres == null) ? null : showService.findIdsWithAnyGenre(genres, type));
+        List<Long> ids = null;
+        List<String> words = (title == null) ? null : InvertedIndex.tokenize(title);
+        if (matching != null && matching.cardinality() <= ShowController.MAX_MATCHING_IDS) {
+            ids = matching.toList();
+            genres = null;
+            words = null;
+        }
+
+        try (NdjsonWriter writer = new NdjsonWriter(response, encoding)) {
+            if (type == ShowType.MOVIE) {
+                Specifications<Movie> specs = and(null, ids, MovieSpecifications::idIn);
+                specs = and(specs, words, MovieSpecifications::containsWords);
+                specs = and(specs, genres, MovieSpecifications::hasAtLeastOneGenre);
+                specs = and(specs, yearLt, MovieSpecifications::olderThan);
+                specs = and(specs, yearGt, MovieSpecifications::youngerThan);
+                specs = and(specs, durationLt, MovieSpecifications::shorterThan);
+                specs = and(specs, durationGt, MovieSpecifications::longerThan);
+                service.exportShows(Movie.class, specs, writer.<Movie>forEach(mapper::fromEntity));
+            } else if (type == ShowType.SERIAL) {
+                Specifications<Serial> specs = and(null, ids, SerialSpecifications::idIn);
+                specs = and(specs, words, SerialSpecifications::containsWords);
+                specs = and(specs, genres, SerialSpecifications::hasAtLeastOneGenre);
+                specs = and(specs, yearLt, SerialSpecifications::olderThan);
+                specs = and(specs, yearGt, SerialSpecifications::youngerThan);
+                specs = and(specs, seasonsLt, SerialSpecifications::shorterThan);
+                specs = and(specs, seasonsGt, SerialSpecifications::longerThan);
+                service.exportShows(Serial.class, specs, writer.<Serial>forEach(mapper::fromEntity));
+            } else {
+                Specifications<Show> specs = and(null, ids, ShowSpecifications::idIn);
+                specs = and(specs, words, ShowSpecifications::containsWords);
+                specs = and(specs, genres, ShowSpecifications::hasAtLeastOneGenre);
+                specs = and(specs, yearLt, ShowSpecifications::olderThan);
+                specs = and(specs, yearGt, ShowSpecifications::youngerThan);
+                service.exportShows(Show.class, specs, writer.<Show>forEach(mapper::fromEntity));
+            }
+        }
+    }
+
+    @GetMapping("/people")
+    public void exportPeople(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String encoding,
+                             HttpServletResponse response) throws IOException {
+        try (NdjsonWriter writer = new NdjsonWriter(response, encoding)) {
+            service.exportPeople(writer.<Person>forEach(mapper::fromEntity));
+        }
+    }
+
+    /**
+     * Each participation comes with its person and show.
+     **/
+    @GetMapping("/participations")
+    public void exportParticipations(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String encoding,
+                                     HttpServletResponse response) throws IOException {
+        try (NdjsonWriter writer = new NdjsonWriter(response, encoding)) {
+            service.exportParticipations(writer.<Participation>forEach(mapper::fromEntity));
+        }
+    }
+
+    private static <T, V> Specifications<T> and(Specifications<T> specs, V value, Function<V, Specification<T>> spec) {
+        if (value == null)
+            return specs;
+        return (specs == null) ? where(spec.apply(value)) : specs.and(spec.apply(value));
+    }
+
+    private class NdjsonWriter implements AutoCloseable {
+
+        private final OutputStream out;
+        private final JsonGenerator generator;
+        private final ObjectWriter jsonWriter = objectMapper.writer()
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        private NdjsonWriter(HttpServletResponse response, String encoding) throws IOException {
+            response.setContentType(NDJSON);
+            response.setCharacterEncoding("UTF-8");
+            if (encoding != null && encoding.contains("gzip")) {
+                response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                out = new GZIPOutputStream(response.getOutputStream(), BUFFER_SIZE);
+            } else
+                out = new BufferedOutputStream(response.getOutputStream(), BUFFER_SIZE);
+            generator = objectMapper.getFactory().createGenerator(out);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+        }
+
+        private <E> Consumer<List<E>> forEach(Function<E, ?> toDTO) {
+            return chunk -> {
+                try {
+                    for (E entity : chunk) {
+                        jsonWriter.writeValue(generator, toDTO.apply(entity));
+                        generator.writeRaw('\n');
+                    }
+                    generator.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.tomaszstankowski.movieservice.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.dto.*;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.service.ShowImportService;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidShowException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+/*
+Bulk import of shows, as newline delimited JSON in the format of POST /shows or as CSV with a header.
+Shows are added in chunks while the body is read. Lines which cannot be read or added are reported
+and do not stop the import.
+ */
+@RestController
+@RequestMapping("/import")
+public class ImportController {
+
+    public static final String CSV = "text/csv";
+
+    public static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final Logger log = LoggerFactory.getLogger(ImportController.class);
+
+    private final ShowImportService service;
+    private final ModelMapper mapper;
+    private final ObjectReader showReader;
+
+    public ImportController(ShowImportService service, ModelMapper mapper, ObjectMapper objectMapper) {
+        this.service = service;
+        this.mapper = mapper;
+        this.showReader = objectMapper.readerFor(ShowDTO.class);
+    }
+
+    @PostMapping(path = "/shows", consumes = ExportController.NDJSON)
+    @PreAuthorize("hasAnyRole('ROLE_MOD', 'ROLE_ADMIN')")
+    public ImportReportDTO importShows(InputStream body) throws IOException {
+        Report report = new Report();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        long line = 0;
+        String json;
+        while ((json = reader.readLine()) != null) {
+            line++;
+            if (json.trim().isEmpty())
+                continue;
+            try {
+                report.add(line, mapper.fromDTO(showReader.<ShowDTO>readValue(json)));
+            } catch (JsonProcessingException e) {
+                report.fail(line, e.getOriginalMessage());
+            } catch (IOException | RuntimeException e) {
+                report.fail(line, new InvalidShowException().getMessage());
+            }
+        }
+        return report.finish();
+    }
+
+    /**
+     * Columns are title, description, dateReleased (yyyy-MM-dd), location, genres separated by semicolons
+     * and either duration and boxoffice of a movie or seasons of a serial.
+     **/
+    @PostMapping(path = "/shows", consumes = CSV)
+    @PreAuthorize("hasAnyRole('ROLE_MOD', 'ROLE_ADMIN')")
+    public ImportReportDTO importShowsCsv(InputStream body) throws IOException {
+        Report report = new Report();
+        CsvReader reader = new CsvReader(new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8)));
+        List<String> header = reader.next();
+        if (header == null)
+            return report.finish();
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++)
+            columns.put(header.get(i).trim(), i);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+
+        List<String> record;
+        while ((record = reader.next()) != null) {
+            if (record.size() == 1 && record.get(0).trim().isEmpty())
+                continue;
+            try {
+                report.add(reader.line(), mapper.fromDTO(toDTO(new CsvRecord(columns, record), format)));
+            } catch (ParseException | NumberFormatException e) {
+                report.fail(reader.line(), "Invalid value: " + e.getMessage());
+            } catch (RuntimeException e) {
+                report.fail(reader.line(), new InvalidShowException().getMessage());
+            }
+        }
+        return report.finish();
+    }
+
+    private static ShowDTO toDTO(CsvRecord record, SimpleDateFormat format) throws ParseException {
+        String date = record.get("dateReleased");
+        Set<String> genres = new HashSet<>();
+        for (String genre : record.get("genres").split(";"))
+            if (!genre.trim().isEmpty())
+                genres.add(genre.trim());
+        if (!record.get("duration").isEmpty() && !record.get("boxoffice").isEmpty())
+            return new MovieDTO(
+                    record.get("title"),
+                    record.get("description"),
+                    date.isEmpty() ? null : format.parse(date),
+                    record.get("location"),
+                    genres,
+                    Short.parseShort(record.get("duration")),
+                    Integer.parseInt(record.get("boxoffice"))
+            );
+        if (!record.get("seasons").isEmpty())
+            return new SerialDTO(
+                    record.get("title"),
+                    record.get("description"),
+                    date.isEmpty() ? null : format.parse(date),
+                    record.get("location"),
+                    genres,
+                    Short.parseShort(record.get("seasons"))
+            );
+        throw new InvalidShowException();
+    }
+
+    private static class CsvRecord {
+
+        private final Map<String, Integer> columns;
+        private final List<String> fields;
+
+        private CsvRecord(Map<String, Integer> columns, List<String> fields) {
+            this.columns = columns;
+            this.fields = fields;
+        }
+
+        private String get(String column) {
+            Integer i = columns.get(column);
+            return (i == null || i >= fields.size()) ? "" : fields.get(i).trim();
+        }
+    }
+
+    /*
+    Collects shows of a chunk and imports them once it is full. A chunk rejected by a constraint of the database,
+    e.g. because of a show added meanwhile by another request, is imported again show by show, so that only
+    the offending lines are reported. A chunk failing otherwise is reported line by line.
+     */
+    private class Report {
+
+        private Map<Long, Show> chunk = new LinkedHashMap<>();
+        private final List<ImportErrorDTO> errors = new ArrayList<>();
+        private long imported;
+        private long failed;
+
+        private void add(long line, Show show) {
+            chunk.put(line, show);
+            if (chunk.size() == ShowImportService.CHUNK_SIZE)
+                flush();
+        }
+
+        private void fail(long line, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS)
+                errors.add(new ImportErrorDTO(line, message));
+        }
+
+        private void flush() {
+            if (chunk.isEmpty())
+                return;
+            try {
+                Map<Long, String> chunkErrors = service.importShows(chunk);
+                imported += chunk.size() - chunkErrors.size();
+                chunkErrors.forEach(this::fail);
+            } catch (DataIntegrityViolationException e) {
+                log.warn("Could not import chunk of shows, importing it show by show.", e);
+                chunk.forEach(this::importOne);
+            } catch (DataAccessException e) {
+                log.warn("Could not import chunk of shows.", e);
+                chunk.keySet().forEach(line -> fail(line, "Could not save show, try again."));
+            }
+            chunk = new LinkedHashMap<>();
+        }
+
+        private void importOne(long line, Show show) {
+            try {
+                Map<Long, String> showErrors = service.importShows(Collections.singletonMap(line, show));
+                imported += 1 - showErrors.size();
+                showErrors.forEach(this::fail);
+            } catch (DataIntegrityViolationException e) {
+                fail(line, "Could not save show, it is rejected by the database.");
+            } catch (DataAccessException e) {
+                fail(line, "Could not save show, try again.");
+            }
+        }
+
+        private ImportReportDTO finish() {
+            flush();
+            errors.sort(Comparator.comparingLong(ImportErrorDTO::getLine));
+            return new ImportReportDTO(imported, failed, errors);
+        }
+    }
+}
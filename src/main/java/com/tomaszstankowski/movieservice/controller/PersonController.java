@@ -3,21 +3,27 @@ package com.tomaszstankowski.movieservice.controller;
 import com.tomaszstankowski.movieservice.model.ModelMapper;
 import com.tomaszstankowski.movieservice.model.dto.ParticipationDTO;
 import com.tomaszstankowski.movieservice.model.dto.PersonDTO;
+import com.tomaszstankowski.movieservice.model.dto.SuggestionDTO;
 import com.tomaszstankowski.movieservice.model.entity.Person;
 import com.tomaszstankowski.movieservice.model.enums.Profession;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
 import com.tomaszstankowski.movieservice.service.PersonService;
+import com.tomaszstankowski.movieservice.service.cache.PersonJsonCache;
 import com.tomaszstankowski.movieservice.service.exception.not_found.PageNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.PersonNotFoundException;
+import com.tomaszstankowski.movieservice.service.index.IdBitmap;
+import com.tomaszstankowski.movieservice.service.index.InvertedIndex;
+import com.tomaszstankowski.movieservice.service.index.PrefixIndex;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specifications;
-import org.springframework.data.web.SortDefault;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
@@ -32,26 +38,49 @@ import static org.springframework.data.jpa.domain.Specifications.where;
 @EnableSpringDataWebSupport
 public class PersonController {
 
+    private static final Sort DEFAULT_SORT = new Sort("name");
+
     private final PersonService service;
     private final ModelMapper mapper;
+    private final PersonJsonCache personCache;
 
-    public PersonController(PersonService service, ModelMapper mapper) {
+    public PersonController(PersonService service, ModelMapper mapper, PersonJsonCache personCache) {
         this.service = service;
         this.mapper = mapper;
+        this.personCache = personCache;
     }
 
+    /**
+     * People searched by name are ordered by relevance unless sort is given explicitly.
+     * Only pages ordered by relevance are limited to the best matches.
+     **/
     @GetMapping
-    public List<PersonDTO> getPeople(@RequestParam("page") int page,
-                                     @RequestParam(value = "name", required = false) String name,
-                                     @RequestParam(value = "birth_year_lt", required = false) Integer birthYearLt,
-                                     @RequestParam(value = "birth_year_gt", required = false) Integer birthYearGt,
-                                     @RequestParam(value = "sex", required = false) Sex sex,
-                                     @RequestParam(value = "profession", required = false) Profession profession,
-                                     @SortDefault("name") Sort sort) {
+    public ResponseEntity<List<PersonDTO>> getPeople(@RequestParam(value = "page", defaultValue = "0") int page,
+                                                     @RequestParam(value = "after", required = false) String after,
+                                                     @RequestParam(value = "name", required = false) String name,
+                                                     @RequestParam(value = "birth_year_lt", required = false) Integer birthYearLt,
+                                                     @RequestParam(value = "birth_year_gt", required = false) Integer birthYearGt,
+                                                     @RequestParam(value = "sex", required = false) Sex sex,
+                                                     @RequestParam(value = "profession", required = false) Profession profession,
+                                                     Sort sort) {
+        boolean byRelevance = name != null && sort == null && after == null;
+        List<Long> rankedIds = byRelevance ? service.searchPeople(name) : null;
+        List<String> words = null;
+        if (name != null && !byRelevance) {
+            IdBitmap matching = service.matchPeople(name);
+            if (matching.cardinality() <= ShowController.MAX_MATCHING_IDS)
+                rankedIds = matching.toList();
+            else
+                words = InvertedIndex.tokenize(name);
+        }
+        if (sort == null)
+            sort = DEFAULT_SORT;
 
         Specifications<Person> specs = null;
-        if (name != null)
-            specs = where(nameContains(name));
+        if (rankedIds != null)
+            specs = where(idIn(rankedIds));
+        if (words != null)
+            specs = (specs == null) ? where(nameContainsWords(words)) : specs.and(nameContainsWords(words));
         if (birthYearLt != null)
             specs = (specs == null) ? where(olderThan(birthYearLt)) : specs.and(olderThan(birthYearLt));
         if (birthYearGt != null)
@@ -75,20 +104,38 @@ public class PersonController {
                     break;
             }
 
-        Page<Person> result = service.findAll(specs, page, sort);
+        if (after != null) {
+            KeysetSlice<Person> slice = service.findAll(specs, after, sort);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (slice.getNext() != null)
+                response.header(ShowController.NEXT_CURSOR_HEADER, slice.getNext());
+            return response.body(slice.getContent().stream()
+                    .map(mapper::fromEntity)
+                    .collect(Collectors.toList()));
+        }
+
+        Page<Person> result = byRelevance
+                ? service.findAllByRelevance(specs, rankedIds, page)
+                : service.findAll(specs, page, sort);
         if (page >= result.getTotalPages() && page > 0)
             throw new PageNotFoundException(page);
-        return result.getContent().stream()
+        return ResponseEntity.ok(result.getContent().stream()
                 .map(mapper::fromEntity)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Names having a word starting with the prefix, the most featured first. Served from memory only.
+     **/
+    @GetMapping(path = "/suggest")
+    public List<SuggestionDTO> suggestPeople(@RequestParam("prefix") String prefix,
+                                             @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return service.suggestPeople(prefix, Math.min(limit, PrefixIndex.MAX_LIMIT));
     }
 
     @GetMapping(path = "/{id}")
-    public PersonDTO getPerson(@PathVariable("id") long id) {
-        Person person = service.findPerson(id);
-        if (person == null)
-            throw new PersonNotFoundException(id);
-        return mapper.fromEntity(person);
+    public ResponseEntity<byte[]> getPerson(@PathVariable("id") long id, WebRequest request) {
+        return CachedJsonResponses.get(personCache, id, request, () -> new PersonNotFoundException(id));
     }
 
     @GetMapping(path = "/{id}/participations")
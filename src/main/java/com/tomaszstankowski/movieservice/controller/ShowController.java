@@ -1,27 +1,41 @@
 package com.tomaszstankowski.movieservice.controller;
 
 import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.dto.FacetedShowsDTO;
 import com.tomaszstankowski.movieservice.model.dto.ParticipationDTO;
 import com.tomaszstankowski.movieservice.model.dto.RatingDTO;
+import com.tomaszstankowski.movieservice.model.dto.RatingHistogramDTO;
 import com.tomaszstankowski.movieservice.model.dto.ShowDTO;
+import com.tomaszstankowski.movieservice.model.dto.SuggestionDTO;
 import com.tomaszstankowski.movieservice.model.entity.*;
 import com.tomaszstankowski.movieservice.model.enums.Profession;
 import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
 import com.tomaszstankowski.movieservice.repository.specifications.MovieSpecifications;
 import com.tomaszstankowski.movieservice.repository.specifications.SerialSpecifications;
 import com.tomaszstankowski.movieservice.repository.specifications.ShowSpecifications;
+import com.tomaszstankowski.movieservice.service.RatingIngestService;
 import com.tomaszstankowski.movieservice.service.ShowService;
+import com.tomaszstankowski.movieservice.service.cache.ShowJsonCache;
 import com.tomaszstankowski.movieservice.service.exception.not_found.PageNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.ShowNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidPercentileException;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidTrendingWindowException;
+import com.tomaszstankowski.movieservice.service.index.IdBitmap;
+import com.tomaszstankowski.movieservice.service.index.InvertedIndex;
+import com.tomaszstankowski.movieservice.service.index.PrefixIndex;
+import com.tomaszstankowski.movieservice.service.index.ShowFacetQuery;
+import com.tomaszstankowski.movieservice.service.index.TopRatedIndex;
+import com.tomaszstankowski.movieservice.service.trending.TrendingWindow;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specifications;
-import org.springframework.data.web.SortDefault;
 import org.springframework.data.web.config.EnableSpringDataWebSupport;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
@@ -36,35 +50,118 @@ import static org.springframework.data.jpa.domain.Specifications.where;
 @EnableSpringDataWebSupport
 public class ShowController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final Sort DEFAULT_SORT = new Sort("title");
+
+    /*
+    Title or genre filter matching more shows is left to the database rather than sent as a list of ids.
+     */
+    static final int MAX_MATCHING_IDS = 5000;
+
+    static final int MAX_TRENDING_LIMIT = 100;
+    static final int MAX_SIMILAR_LIMIT = 100;
+
     private final ShowService service;
     private final ModelMapper mapper;
+    private final ShowJsonCache showCache;
+    private final RatingIngestService ratingIngestService;
 
-    public ShowController(ShowService service, ModelMapper mapper) {
+    public ShowController(ShowService service,
+                          ModelMapper mapper,
+                          ShowJsonCache showCache,
+                          RatingIngestService ratingIngestService) {
         this.service = service;
         this.mapper = mapper;
+        this.showCache = showCache;
+        this.ratingIngestService = ratingIngestService;
     }
 
+    /**
+     * Shows searched by title are ordered by relevance unless sort is given explicitly.
+     * Only pages ordered by relevance are limited to the best matches, sorted pages, cursors and facets see all of them.
+     * With facets the page is wrapped together with counts of all shows matching the filters
+     * per genre, decade, type and location.
+     **/
     @GetMapping
-    public List<ShowDTO> getShows(@RequestParam("page") int page,
-                                  @RequestParam(value = "type", required = false) ShowType type,
-                                  @RequestParam(value = "title", required = false) String title,
-                                  @RequestParam(value = "year_lt", required = false) Integer yearLt,
-                                  @RequestParam(value = "year_gt", required = false) Integer yearGt,
-                                  @RequestParam(value = "genres", required = false) String[] genres,
-                                  @RequestParam(value = "duration_lt", required = false) Integer durationLt,
-                                  @RequestParam(value = "duration_gt", required = false) Integer durationGt,
-                                  @RequestParam(value = "seasons_lt", required = false) Integer seasonsLt,
-                                  @RequestParam(value = "seasons_gt", required = false) Integer seasonsGt,
-                                  @SortDefault("title") Sort sort) {
+    public ResponseEntity<?> getShows(@RequestParam(value = "page", defaultValue = "0") int page,
+                                      @RequestParam(value = "after", required = false) String after,
+                                      @RequestParam(value = "type", required = false) ShowType type,
+                                      @RequestParam(value = "title", required = false) String title,
+                                      @RequestParam(value = "year_lt", required = false) Integer yearLt,
+                                      @RequestParam(value = "year_gt", required = false) Integer yearGt,
+                                      @RequestParam(value = "genres", required = false) String[] genres,
+                                      @RequestParam(value = "duration_lt", required = false) Integer durationLt,
+                                      @RequestParam(value = "duration_gt", required = false) Integer durationGt,
+                                      @RequestParam(value = "seasons_lt", required = false) Integer seasonsLt,
+                                      @RequestParam(value = "seasons_gt", required = false) Integer seasonsGt,
+                                      @RequestParam(value = "facets", defaultValue = "false") boolean facets,
+                                      Sort sort) {
+        boolean byRelevance = title != null && sort == null && after == null;
+        List<Long> rankedIds = byRelevance ? service.searchShows(title) : null;
+
+        /*
+        Title, genres and type resolve to ids in memory. The database matches title words or joins genres only
+        when they match too many shows to list.
+         */
+        IdBitmap titleMatching = (title != null && (!byRelevance || facets)) ? service.matchShows(title) : null;
+        IdBitmap genreMatching = (genres == null) ? null : service.findIdsWithAnyGenre(genres, type);
+        IdBitmap matching = intersect(titleMatching, genreMatching);
+        List<Long> matchingIds = null;
+        List<String> words = (rankedIds == null && title != null) ? InvertedIndex.tokenize(title) : null;
+        if (rankedIds != null) {
+            if (genreMatching != null) {
+                rankedIds = rankedIds.stream()
+                        .filter(genreMatching::contains)
+                        .collect(Collectors.toList());
+                genres = null;
+            }
+        } else if (matching != null && matching.cardinality() <= MAX_MATCHING_IDS) {
+            matchingIds = matching.toList();
+            genres = null;
+            words = null;
+        }
+        if (sort == null)
+            sort = DEFAULT_SORT;
+
+        ResponseEntity<List<ShowDTO>> response;
         if (type == ShowType.MOVIE)
-            return getMovies(page, title, yearLt, yearGt, genres, durationLt, durationGt, sort);
-        if (type == ShowType.SERIAL)
-            return getSeries(page, title, yearLt, yearGt, genres, seasonsLt, seasonsGt, sort);
+            response = getMovies(page, after, rankedIds, matchingIds, words, byRelevance, yearLt, yearGt, genres, durationLt, durationGt, sort);
+        else if (type == ShowType.SERIAL)
+            response = getSeries(page, after, rankedIds, matchingIds, words, byRelevance, yearLt, yearGt, genres, seasonsLt, seasonsGt, sort);
+        else
+            response = getAllShows(page, after, rankedIds, matchingIds, words, byRelevance, yearLt, yearGt, genres, sort);
+        if (!facets)
+            return response;
+
+        ShowFacetQuery query = new ShowFacetQuery(matching, type, yearLt, yearGt,
+                (type == ShowType.MOVIE) ? durationLt : (type == ShowType.SERIAL) ? seasonsLt : null,
+                (type == ShowType.MOVIE) ? durationGt : (type == ShowType.SERIAL) ? seasonsGt : null);
+        return ResponseEntity.ok()
+                .headers(response.getHeaders())
+                .body(new FacetedShowsDTO(response.getBody(), service.countFacets(query)));
+    }
 
+    private ResponseEntity<List<ShowDTO>> getAllShows(int page,
+                                                      String after,
+                                                      List<Long> rankedIds,
+                                                      List<Long> matchingIds,
+                                                      List<String> words,
+                                                      boolean byRelevance,
+                                                      Integer yearLt,
+                                                      Integer yearGt,
+                                                      String[] genres,
+                                                      Sort sort) {
 
         Specifications<Show> specs = null;
-        if (title != null)
-            specs = where(ShowSpecifications.titleContains(title));
+        if (rankedIds != null)
+            specs = where(ShowSpecifications.idIn(rankedIds));
+        if (matchingIds != null)
+            specs = (specs == null) ? where(ShowSpecifications.idIn(matchingIds))
+                    : specs.and(ShowSpecifications.idIn(matchingIds));
+        if (words != null)
+            specs = (specs == null) ? where(ShowSpecifications.containsWords(words))
+                    : specs.and(ShowSpecifications.containsWords(words));
         if (yearLt != null)
             specs = (specs == null) ? where(ShowSpecifications.olderThan(yearLt))
                     : specs.and(ShowSpecifications.olderThan(yearLt));
@@ -75,26 +172,41 @@ public class ShowController {
             specs = (specs == null) ? where(ShowSpecifications.hasAtLeastOneGenre(genres))
                     : specs.and(ShowSpecifications.hasAtLeastOneGenre(genres));
 
-        Page<Show> result = service.findShows(specs, page, sort);
+        if (after != null)
+            return toResponse(service.findShows(specs, after, sort));
+
+        Page<Show> result = byRelevance
+                ? service.findShowsByRelevance(specs, rankedIds, page)
+                : service.findShows(specs, page, sort);
         validate(result);
 
-        return result.getContent().stream()
+        return ResponseEntity.ok(result.getContent().stream()
                 .map(mapper::fromEntity)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
-    private List<ShowDTO> getMovies(int page,
-                                    String title,
-                                    Integer yearLt,
-                                    Integer yearGt,
-                                    String[] genres,
-                                    Integer durationLt,
-                                    Integer durationGt,
-                                    Sort sort) {
+    private ResponseEntity<List<ShowDTO>> getMovies(int page,
+                                                    String after,
+                                                    List<Long> rankedIds,
+                                                    List<Long> matchingIds,
+                                                    List<String> words,
+                                                    boolean byRelevance,
+                                                    Integer yearLt,
+                                                    Integer yearGt,
+                                                    String[] genres,
+                                                    Integer durationLt,
+                                                    Integer durationGt,
+                                                    Sort sort) {
 
         Specifications<Movie> specs = null;
-        if (title != null)
-            specs = where(MovieSpecifications.titleContains(title));
+        if (rankedIds != null)
+            specs = where(MovieSpecifications.idIn(rankedIds));
+        if (matchingIds != null)
+            specs = (specs == null) ? where(MovieSpecifications.idIn(matchingIds))
+                    : specs.and(MovieSpecifications.idIn(matchingIds));
+        if (words != null)
+            specs = (specs == null) ? where(MovieSpecifications.containsWords(words))
+                    : specs.and(MovieSpecifications.containsWords(words));
         if (yearLt != null)
             specs = (specs == null) ? where(MovieSpecifications.olderThan(yearLt))
                     : specs.and(MovieSpecifications.olderThan(yearLt));
@@ -111,26 +223,41 @@ public class ShowController {
             specs = (specs == null) ? where(MovieSpecifications.longerThan(durationGt))
                     : specs.and(MovieSpecifications.longerThan(durationGt));
 
-        Page<Movie> result = service.findMovies(specs, page, sort);
+        if (after != null)
+            return toResponse(service.findMovies(specs, after, sort));
+
+        Page<Movie> result = byRelevance
+                ? service.findMoviesByRelevance(specs, rankedIds, page)
+                : service.findMovies(specs, page, sort);
         validate(result);
 
-        return result.getContent().stream()
+        return ResponseEntity.ok(result.getContent().stream()
                 .map(mapper::fromEntity)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
-    private List<ShowDTO> getSeries(int page,
-                                    String title,
-                                    Integer yearLt,
-                                    Integer yearGt,
-                                    String[] genres,
-                                    Integer seasonsLt,
-                                    Integer seasonsGt,
-                                    Sort sort) {
+    private ResponseEntity<List<ShowDTO>> getSeries(int page,
+                                                    String after,
+                                                    List<Long> rankedIds,
+                                                    List<Long> matchingIds,
+                                                    List<String> words,
+                                                    boolean byRelevance,
+                                                    Integer yearLt,
+                                                    Integer yearGt,
+                                                    String[] genres,
+                                                    Integer seasonsLt,
+                                                    Integer seasonsGt,
+                                                    Sort sort) {
 
         Specifications<Serial> specs = null;
-        if (title != null)
-            specs = where(SerialSpecifications.titleContains(title));
+        if (rankedIds != null)
+            specs = where(SerialSpecifications.idIn(rankedIds));
+        if (matchingIds != null)
+            specs = (specs == null) ? where(SerialSpecifications.idIn(matchingIds))
+                    : specs.and(SerialSpecifications.idIn(matchingIds));
+        if (words != null)
+            specs = (specs == null) ? where(SerialSpecifications.containsWords(words))
+                    : specs.and(SerialSpecifications.containsWords(words));
         if (yearLt != null)
             specs = (specs == null) ? where(SerialSpecifications.olderThan(yearLt))
                     : specs.and(SerialSpecifications.olderThan(yearLt));
@@ -147,20 +274,63 @@ public class ShowController {
             specs = (specs == null) ? where(SerialSpecifications.longerThan(seasonsGt))
                     : specs.and(SerialSpecifications.longerThan(seasonsGt));
 
-        Page<Serial> result = service.findSeries(specs, page, sort);
+        if (after != null)
+            return toResponse(service.findSeries(specs, after, sort));
+
+        Page<Serial> result = byRelevance
+                ? service.findSeriesByRelevance(specs, rankedIds, page)
+                : service.findSeries(specs, page, sort);
         validate(result);
 
-        return result.getContent().stream()
+        return ResponseEntity.ok(result.getContent().stream()
+                .map(mapper::fromEntity)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Titles having a word starting with the prefix, the most rated first. Served from memory only.
+     **/
+    @GetMapping("/suggest")
+    public List<SuggestionDTO> suggestShows(@RequestParam("prefix") String prefix,
+                                            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return service.suggestShows(prefix, Math.min(limit, PrefixIndex.MAX_LIMIT));
+    }
+
+    /**
+     * Best rated shows by weighted rating, which pulls shows with few ratings towards the mean of all ratings.
+     * Served from rankings kept in memory, the decade is given by any of its years.
+     **/
+    @GetMapping("/top")
+    public List<ShowDTO> getTopRated(@RequestParam(value = "genre", required = false) String genre,
+                                     @RequestParam(value = "type", required = false) ShowType type,
+                                     @RequestParam(value = "decade", required = false) Integer decade,
+                                     @RequestParam(value = "min_votes", defaultValue = "1") long minVotes,
+                                     @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return service.findTopRated(genre, type, decade, minVotes, Math.min(limit, TopRatedIndex.MAX_LIMIT))
+                .stream()
+                .map(mapper::fromEntity)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Shows rated the most within the last hour, day or week, the latest ratings weighing the most.
+     * Served from memory only.
+     **/
+    @GetMapping("/trending")
+    public List<ShowDTO> getTrending(@RequestParam(value = "window", defaultValue = "24h") String window,
+                                     @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        TrendingWindow trendingWindow = TrendingWindow.fromName(window);
+        if (trendingWindow == null)
+            throw new InvalidTrendingWindowException(window);
+        return service.findTrending(trendingWindow, Math.max(0, Math.min(limit, MAX_TRENDING_LIMIT)))
+                .stream()
                 .map(mapper::fromEntity)
                 .collect(Collectors.toList());
     }
 
     @GetMapping("/{id}")
-    public ShowDTO getShow(@PathVariable("id") long id) {
-        Show show = service.findShow(id);
-        if (show == null)
-            throw new ShowNotFoundException(id);
-        return mapper.fromEntity(show);
+    public ResponseEntity<byte[]> getShow(@PathVariable("id") long id, WebRequest request) {
+        return CachedJsonResponses.get(showCache, id, request, () -> new ShowNotFoundException(id));
     }
 
     @PostMapping
@@ -245,12 +415,19 @@ public class ShowController {
         return mapper.fromEntity(participation);
     }
 
+    /**
+     * In write-behind mode the rating is only accepted, it is written shortly after.
+     **/
     @PostMapping(path = "/{showId}/ratings")
     @ResponseStatus(HttpStatus.CREATED)
     @PreAuthorize("hasAnyRole('ROLE_USER', 'ROLE_MOD')")
     public ResponseEntity<RatingDTO> rateShow(@PathVariable("showId") long showId,
                                               Principal principal,
                                               @RequestParam("rating") short value) {
+        if (ratingIngestService.isEnabled()) {
+            ratingIngestService.addRating(showId, principal.getName(), value);
+            return ResponseEntity.accepted().build();
+        }
         Rating rating = service.addRating(showId, principal.getName(), value);
         URI location = ServletUriComponentsBuilder
                 .fromPath("/shows/{showId}/ratings/{ratingId}")
@@ -259,6 +436,34 @@ public class ShowController {
         return ResponseEntity.created(location).body(mapper.fromEntity(rating));
     }
 
+    /**
+     * Shows rated alike by users who rated both, the most similar first. Read from lists computed beforehand,
+     * so the list is empty until the job has run and may miss the latest ratings.
+     **/
+    @GetMapping(path = "/{showId}/similar")
+    public List<ShowDTO> getSimilarShows(@PathVariable long showId,
+                                         @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return service.findSimilar(showId, Math.max(0, Math.min(limit, MAX_SIMILAR_LIMIT)))
+                .stream()
+                .map(mapper::fromEntity)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Distribution of ratings of the show together with its mean, median and the requested percentiles,
+     * read from the show without a scan over its ratings.
+     **/
+    @GetMapping(path = "/{showId}/ratings/histogram")
+    public RatingHistogramDTO getRatingHistogram(@PathVariable long showId,
+                                                 @RequestParam(value = "percentiles", defaultValue = "25,50,75,90")
+                                                         int[] percentiles) {
+        for (int percent : percentiles)
+            if (percent < 1 || percent > 100)
+                throw new InvalidPercentileException(percent);
+        RatingHistogram histogram = mapper.ratingHistogram(showId, service.findRatingHistogram(showId));
+        return mapper.fromEntity(histogram, percentiles);
+    }
+
     @GetMapping(path = "/{showId}/ratings/{ratingId}")
     public RatingDTO getShowRating(@PathVariable long showId, @PathVariable long ratingId) {
         Rating rating = service.getRating(showId, ratingId);
@@ -270,11 +475,32 @@ public class ShowController {
     @PreAuthorize("hasAnyRole('ROLE_USER', 'ROLE_MOD')")
     public void deleteShowRating(@PathVariable("id") long id,
                                  Principal principal) {
-        service.removeRating(id, principal.getName());
+        if (ratingIngestService.isEnabled())
+            ratingIngestService.removeRating(id, principal.getName());
+        else
+            service.removeRating(id, principal.getName());
+    }
+
+    private ResponseEntity<List<ShowDTO>> toResponse(KeysetSlice<? extends Show> slice) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (slice.getNext() != null)
+            response.header(NEXT_CURSOR_HEADER, slice.getNext());
+        return response.body(slice.getContent().stream()
+                .map(mapper::fromEntity)
+                .collect(Collectors.toList()));
     }
 
     private void validate(Page page) {
         if (page.getNumber() >= page.getTotalPages() && page.getNumber() > 0)
             throw new PageNotFoundException(page.getNumber());
     }
+
+    /**
+     * @return ids in both, null when neither is given
+     **/
+    static IdBitmap intersect(IdBitmap a, IdBitmap b) {
+        if (a == null)
+            return b;
+        return (b == null) ? a : a.and(b);
+    }
 }
@@ -2,10 +2,13 @@ package com.tomaszstankowski.movieservice.controller;
 
 import com.tomaszstankowski.movieservice.model.ModelMapper;
 import com.tomaszstankowski.movieservice.model.dto.RatingDTO;
+import com.tomaszstankowski.movieservice.model.dto.ShowDTO;
 import com.tomaszstankowski.movieservice.model.dto.UserDTO;
 import com.tomaszstankowski.movieservice.model.entity.Rating;
 import com.tomaszstankowski.movieservice.model.entity.User;
 import com.tomaszstankowski.movieservice.model.enums.UserRole;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
+import com.tomaszstankowski.movieservice.service.RecommendationService;
 import com.tomaszstankowski.movieservice.service.UserService;
 import com.tomaszstankowski.movieservice.service.exception.not_found.FollowerNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.PageNotFoundException;
@@ -55,9 +58,22 @@ public class UserController {
     }
 
     @GetMapping
-    public List<UserDTO> getUsers(@RequestParam("page") int page,
-                                  @RequestParam(value = "name", required = false) String name,
-                                  @SortDefault("login") Sort sort) {
+    public ResponseEntity<List<UserDTO>> getUsers(@RequestParam(value = "page", defaultValue = "0") int page,
+                                                  @RequestParam(value = "after", required = false) String after,
+                                                  @RequestParam(value = "name", required = false) String name,
+                                                  @SortDefault("login") Sort sort) {
+        if (after != null) {
+            KeysetSlice<User> slice = (name == null)
+                    ? service.findAllUsers(after, sort)
+                    : service.findUsersByName(name, after, sort);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (slice.getNext() != null)
+                response.header(ShowController.NEXT_CURSOR_HEADER, slice.getNext());
+            return response.body(slice.getContent().stream()
+                    .map(mapper::fromEntity)
+                    .collect(Collectors.toList()));
+        }
+
         Page<User> result;
 
         if (name == null)
@@ -68,9 +84,9 @@ public class UserController {
         if (page >= result.getTotalPages())
             throw new PageNotFoundException(page);
 
-        return result.getContent().stream()
+        return ResponseEntity.ok(result.getContent().stream()
                 .map(mapper::fromEntity)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
     @GetMapping(path = "/{login}/ratings")
@@ -170,15 +186,40 @@ public class UserController {
         service.removeUserFollower(login, principal.getName());
     }
 
+    /**
+     * Shows the user has not rated yet, picked by the user's ratings, ratings of followed users and liked genres.
+     * Served from a snapshot rebuilt every hour, ratings of followed users given since are not taken into account.
+     **/
+    @GetMapping(path = "/{login}/recommendations")
+    public List<ShowDTO> getRecommendations(@PathVariable String login,
+                                            @RequestParam(value = "limit", defaultValue = "10") int limit) {
+        return service.findRecommendations(login, Math.max(0, Math.min(limit, RecommendationService.MAX_LIMIT)))
+                .stream()
+                .map(mapper::fromEntity)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Ratings of followed users, the newest first. Without a page they are read from the user's feed,
+     * slice after slice from the cursor in the X-Next-Cursor header of the previous response.
+     **/
     @GetMapping(path = "/{login}/followed/ratings")
     @PreAuthorize("(hasRole('ROLE_USER') AND principal.username == #login) OR hasRole('ROLE_ADMIN')")
-    public List<RatingDTO> getUserFollowedRatings(@PathVariable String login,
-                                                  @RequestParam(value = "page", required = false) Integer page,
-                                                  @RequestParam(value = "show", required = false) Long showId) {
+    public ResponseEntity<List<RatingDTO>> getUserFollowedRatings(@PathVariable String login,
+                                                                  @RequestParam(value = "page", required = false) Integer page,
+                                                                  @RequestParam(value = "after", required = false) String after,
+                                                                  @RequestParam(value = "show", required = false) Long showId) {
+        if (showId == null && page == null) {
+            KeysetSlice<Rating> slice = service.findUserFollowedRatings(login, after);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (slice.getNext() != null)
+                response.header(ShowController.NEXT_CURSOR_HEADER, slice.getNext());
+            return response.body(slice.getContent().stream()
+                    .map(mapper::fromEntity)
+                    .collect(Collectors.toList()));
+        }
         List<Rating> ratings;
         if (showId == null) {
-            if (page == null)
-                page = 0;
             Page<Rating> pages = service.findUserFollowersRatings(login, page);
             if (page >= pages.getTotalPages() && page > 0)
                 throw new PageNotFoundException(page);
@@ -186,10 +227,10 @@ public class UserController {
         } else {
             ratings = service.findUserFollowersRatings(login, showId);
         }
-        return ratings
+        return ResponseEntity.ok(ratings
                 .stream()
                 .map(mapper::fromEntity)
-                .collect(Collectors.toList());
+                .collect(Collectors.toList()));
     }
 
 
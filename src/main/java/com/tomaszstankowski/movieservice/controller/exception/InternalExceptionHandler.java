@@ -2,6 +2,8 @@ package com.tomaszstankowski.movieservice.controller.exception;
 
 import com.tomaszstankowski.movieservice.service.exception.conflict.*;
 import com.tomaszstankowski.movieservice.service.exception.not_found.*;
+import com.tomaszstankowski.movieservice.service.exception.unavailable.RatingContendedException;
+import com.tomaszstankowski.movieservice.service.exception.unavailable.RatingQueueFullException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.*;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -43,7 +45,11 @@ public class InternalExceptionHandler extends ResponseEntityExceptionHandler {
             UnexpectedShowException.class,
             UnknownTypeException.class,
             SingleAdministratorException.class,
-            ImmutableAdministratorException.class
+            ImmutableAdministratorException.class,
+            InvalidCursorException.class,
+            UnsupportedSortException.class,
+            InvalidPercentileException.class,
+            InvalidTrendingWindowException.class
     })
     public ResponseEntity<Object> handleInvalidBodyExceptions(RuntimeException ex, WebRequest request) {
         return handleExceptionInternal(
@@ -70,4 +76,28 @@ public class InternalExceptionHandler extends ResponseEntityExceptionHandler {
                 HttpStatus.CONFLICT,
                 request);
     }
+
+    @ExceptionHandler(RatingQueueFullException.class)
+    public ResponseEntity<Object> handleRatingQueueFullException(RatingQueueFullException ex, WebRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        return handleExceptionInternal(
+                ex,
+                ex.getMessage(),
+                headers,
+                HttpStatus.SERVICE_UNAVAILABLE,
+                request);
+    }
+
+    @ExceptionHandler(RatingContendedException.class)
+    public ResponseEntity<Object> handleRatingContendedException(RatingContendedException ex, WebRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()));
+        return handleExceptionInternal(
+                ex,
+                ex.getMessage(),
+                headers,
+                HttpStatus.SERVICE_UNAVAILABLE,
+                request);
+    }
 }
@@ -2,13 +2,57 @@ package com.tomaszstankowski.movieservice.model;
 
 import com.tomaszstankowski.movieservice.model.dto.*;
 import com.tomaszstankowski.movieservice.model.entity.*;
+import com.tomaszstankowski.movieservice.service.rating.RatingCounters;
 
 import javax.lang.model.type.UnknownTypeException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class ModelMapper {
 
+    private final RatingCounters ratingCounters;
+
+    public ModelMapper() {
+        this(new RatingCounters());
+    }
+
+    /**
+     * @param ratingCounters changes of rating aggregates not yet written, added to the ones of mapped shows
+     **/
+    public ModelMapper(RatingCounters ratingCounters) {
+        this.ratingCounters = ratingCounters;
+    }
+
+    public long ratingCount(long showId, long persisted) {
+        return persisted + ratingCounters.pendingCount(showId);
+    }
+
+    public long ratingSum(long showId, long persisted) {
+        return persisted + ratingCounters.pendingSum(showId);
+    }
+
+    public RatingHistogram ratingHistogram(long showId, RatingHistogram persisted) {
+        RatingHistogram pending = ratingCounters.pending(showId);
+        return pending == null ? persisted : persisted.plus(pending);
+    }
+
+    /**
+     * @param percents of the percentiles given, each between 1 and 100
+     **/
+    public RatingHistogramDTO fromEntity(RatingHistogram entity, int... percents) {
+        if (entity == null)
+            return null;
+        Map<Integer, Long> counts = new LinkedHashMap<>();
+        for (int rating = RatingHistogram.MIN_RATING; rating <= RatingHistogram.MAX_RATING; rating++)
+            counts.put(rating, entity.count(rating));
+        Map<Integer, Integer> percentiles = new LinkedHashMap<>();
+        for (int percent : percents)
+            percentiles.put(percent, entity.percentile(percent / 100.0));
+        return new RatingHistogramDTO(counts, entity.total(), entity.mean(), entity.median(), percentiles);
+    }
+
     public User fromDTO(UserDTO dto) {
         return (dto == null) ? null : new User(
                 dto.getLogin(),
@@ -24,8 +68,8 @@ public class ModelMapper {
                 entity.getName(),
                 entity.getSex(),
                 entity.getDateJoined(),
-                entity.getFollowers().size(),
-                entity.getFollowed().size());
+                entity.getFollowerCount(),
+                entity.getFollowedCount());
     }
 
     public Person fromDTO(PersonDTO dto) {
@@ -112,13 +156,10 @@ public class ModelMapper {
         Set<String> genres = entity.getGenres().stream()
                 .map(Genre::getName)
                 .collect(Collectors.toSet());
-        long rateCount = entity.getRatings().size();
+        long rateCount = ratingCount(entity.getId(), entity.getRatingCount());
         float rating = rateCount == 0
                 ? 0
-                : entity.getRatings().stream()
-                .mapToLong(Rating::getRating)
-                .sum()
-                / rateCount;
+                : (float) ratingSum(entity.getId(), entity.getRatingSum()) / rateCount;
         return new MovieDTO(
                 entity.getId(),
                 entity.getTitle(),
@@ -141,13 +182,10 @@ public class ModelMapper {
         Set<String> genres = entity.getGenres().stream()
                 .map(Genre::getName)
                 .collect(Collectors.toSet());
-        long rateCount = entity.getRatings().size();
+        long rateCount = ratingCount(entity.getId(), entity.getRatingCount());
         float rating = rateCount == 0
                 ? 0
-                : entity.getRatings().stream()
-                .mapToLong(Rating::getRating)
-                .sum()
-                / rateCount;
+                : (float) ratingSum(entity.getId(), entity.getRatingSum()) / rateCount;
         return new SerialDTO(
                 entity.getId(),
                 entity.getTitle(),
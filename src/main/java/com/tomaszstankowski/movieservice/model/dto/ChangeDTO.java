@@ -0,0 +1,26 @@
+package com.tomaszstankowski.movieservice.model.dto;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/*
+Change of a show or person. Removed ones come as tombstones without the item. The date is in milliseconds,
+as accepted by the since parameter of the feed.
+ */
+@Data
+public class ChangeDTO<T> implements Serializable {
+
+    private final long sequence;
+
+    private final long id;
+
+    private final boolean removed;
+
+    @JsonFormat(shape = JsonFormat.Shape.NUMBER)
+    private final Date date;
+
+    private final T item;
+}
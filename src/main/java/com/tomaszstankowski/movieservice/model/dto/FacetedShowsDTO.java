@@ -0,0 +1,13 @@
+package com.tomaszstankowski.movieservice.model.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class FacetedShowsDTO {
+
+    private final List<ShowDTO> content;
+
+    private final ShowFacetsDTO facets;
+}
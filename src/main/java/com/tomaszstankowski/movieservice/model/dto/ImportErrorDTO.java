@@ -0,0 +1,13 @@
+package com.tomaszstankowski.movieservice.model.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+public class ImportErrorDTO implements Serializable {
+
+    private final long line;
+
+    private final String message;
+}
@@ -0,0 +1,19 @@
+package com.tomaszstankowski.movieservice.model.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/*
+Outcome of a bulk import. Errors are listed for at most the first failed lines, failed counts all of them.
+ */
+@Data
+public class ImportReportDTO implements Serializable {
+
+    private final long imported;
+
+    private final long failed;
+
+    private final List<ImportErrorDTO> errors;
+}
@@ -0,0 +1,24 @@
+package com.tomaszstankowski.movieservice.model.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Distribution of ratings of a show. Counts are given for each rating from 1 to 10,
+ * percentiles are nearest-rank ratings by percent.
+ **/
+@Data
+public class RatingHistogramDTO implements Serializable {
+
+    private final Map<Integer, Long> counts;
+
+    private final long count;
+
+    private final float mean;
+
+    private final float median;
+
+    private final Map<Integer, Integer> percentiles;
+}
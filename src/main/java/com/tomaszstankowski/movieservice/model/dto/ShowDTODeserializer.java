@@ -2,23 +2,29 @@ package com.tomaszstankowski.movieservice.model.dto;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidShowException;
 
 import java.io.IOException;
-import java.text.DateFormat;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
+/*
+Reads a show field by field in a single pass, without building a tree, so it also suits arrays and
+streams of shows. A show with duration and boxoffice is a movie, one with seasons is a serial.
+Unknown fields, e.g. read only ones of a show sent back, are skipped.
+ */
 public class ShowDTODeserializer extends StdDeserializer<ShowDTO> {
 
-    private final static DateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE;
 
     public ShowDTODeserializer() {
         this(null);
@@ -30,57 +36,82 @@ public class ShowDTODeserializer extends StdDeserializer<ShowDTO> {
 
     @Override
     public ShowDTO deserialize(JsonParser jp, DeserializationContext context) throws IOException, JsonProcessingException {
-        JsonNode root = jp.getCodec().readTree(jp);
-        ShowDTO dto = null;
-        String title = root.get("title").textValue();
-        String description = root.get("description").textValue();
-        Date releaseDate;
-        try {
-            releaseDate = format.parse(root.get("dateReleased").textValue());
-        } catch (ParseException e) {
-            throw new IOException(e);
-        }
-        String location = root.get("location").asText();
+        JsonToken token = jp.getCurrentToken();
+        if (token == JsonToken.START_OBJECT)
+            token = jp.nextToken();
+        else if (token != JsonToken.FIELD_NAME)
+            throw context.mappingException(ShowDTO.class, token);
+
+        String title = null;
+        String description = null;
+        Date releaseDate = null;
+        String location = null;
         Set<String> genres = new HashSet<>();
-        Iterator<JsonNode> iterator = root.get("genres").elements();
-        while (iterator.hasNext()) {
-            String genre = iterator.next().textValue();
-            genres.add(genre);
-        }
-        if (isMovie(root)) {
-            short duration = root.get("duration").shortValue();
-            int boxoffice = root.get("boxoffice").intValue();
-            dto = new MovieDTO(
-                    title,
-                    description,
-                    releaseDate,
-                    location,
-                    genres,
-                    duration,
-                    boxoffice
-            );
-        } else if (isSerial(root)) {
-            short seasons = root.get("seasons").shortValue();
-            dto = new SerialDTO(
-                    title,
-                    description,
-                    releaseDate,
-                    location,
-                    genres,
-                    seasons
-            );
+        short duration = 0;
+        int boxoffice = 0;
+        short seasons = 0;
+        boolean hasDuration = false;
+        boolean hasBoxoffice = false;
+        boolean hasSeasons = false;
+        for (; token == JsonToken.FIELD_NAME; token = jp.nextToken()) {
+            String field = jp.getCurrentName();
+            JsonToken value = jp.nextToken();
+            switch (field) {
+                case "title":
+                    title = jp.getValueAsString();
+                    break;
+                case "description":
+                    description = jp.getValueAsString();
+                    break;
+                case "dateReleased":
+                    releaseDate = parseDate(jp);
+                    break;
+                case "location":
+                    location = jp.getValueAsString();
+                    break;
+                case "genres":
+                    if (value == JsonToken.START_ARRAY)
+                        while (jp.nextToken() != JsonToken.END_ARRAY)
+                            genres.add(jp.getValueAsString());
+                    else if (value != JsonToken.VALUE_NULL)
+                        throw context.mappingException(Set.class, value);
+                    break;
+                case "duration":
+                    duration = (short) jp.getValueAsInt();
+                    hasDuration = true;
+                    break;
+                case "boxoffice":
+                    boxoffice = jp.getValueAsInt();
+                    hasBoxoffice = true;
+                    break;
+                case "seasons":
+                    seasons = (short) jp.getValueAsInt();
+                    hasSeasons = true;
+                    break;
+                default:
+                    jp.skipChildren();
+            }
         }
-        if (dto == null)
-            throw new InvalidShowException();
-        return dto;
-    }
-
-    private boolean isMovie(JsonNode root) {
-        return root.has("duration") && root.has("boxoffice");
 
+        if (hasDuration && hasBoxoffice)
+            return new MovieDTO(title, description, releaseDate, location, genres, duration, boxoffice);
+        if (hasSeasons)
+            return new SerialDTO(title, description, releaseDate, location, genres, seasons);
+        throw new InvalidShowException();
     }
 
-    private boolean isSerial(JsonNode root) {
-        return root.has("seasons");
+    /*
+    Date without time is taken as the start of the day in the default time zone of the server.
+     */
+    private static Date parseDate(JsonParser jp) throws IOException {
+        String text = jp.getValueAsString();
+        if (text == null)
+            return null;
+        try {
+            LocalDate date = LocalDate.parse(text, DATE_FORMAT);
+            return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        } catch (DateTimeParseException e) {
+            throw JsonMappingException.from(jp, "Date " + text + " is not in format yyyy-MM-dd.", e);
+        }
     }
-}
\ No newline at end of file
+}
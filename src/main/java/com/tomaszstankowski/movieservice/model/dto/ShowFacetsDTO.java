@@ -0,0 +1,22 @@
+package com.tomaszstankowski.movieservice.model.dto;
+
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Number of shows per value of each facet. Values without any show are left out.
+ **/
+@Data
+public class ShowFacetsDTO implements Serializable {
+
+    private final Map<String, Long> genres;
+
+    private final Map<Integer, Long> decades;
+
+    private final Map<ShowType, Long> types;
+
+    private final Map<String, Long> locations;
+}
@@ -0,0 +1,13 @@
+package com.tomaszstankowski.movieservice.model.dto;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+@Data
+public class SuggestionDTO implements Serializable {
+
+    private final long id;
+
+    private final String text;
+}
@@ -0,0 +1,51 @@
+package com.tomaszstankowski.movieservice.model.entity;
+
+import com.tomaszstankowski.movieservice.model.enums.ChangeSubject;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/*
+Latest change of a show or person. The log is compacted, every subject has a single entry which gets a new
+sequence whenever the subject changes, so the log never outgrows the catalog. Removed subjects stay as tombstones.
+ */
+@Data
+@EqualsAndHashCode(of = "sequence")
+@Entity(name = "changes")
+@Table(name = "changes",
+        uniqueConstraints = @UniqueConstraint(name = "uk_changes_subject", columnNames = {"subject", "subject_id"}),
+        indexes = {
+                @Index(name = "idx_changes_subject_sequence", columnList = "subject, sequence"),
+                @Index(name = "idx_changes_subject_date", columnList = "subject, date")
+        })
+public class Change {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long sequence;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private ChangeSubject subject;
+
+    @Column(name = "subject_id", nullable = false)
+    private long subjectId;
+
+    private boolean removed;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date date;
+
+    public Change() {
+    }
+
+    public Change(ChangeSubject subject, long subjectId, boolean removed, Date date) {
+        this.subject = subject;
+        this.subjectId = subjectId;
+        this.removed = removed;
+        this.date = date;
+    }
+}
@@ -0,0 +1,46 @@
+package com.tomaszstankowski.movieservice.model.entity;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.util.Date;
+
+/*
+Rating of a followed user in the feed of its owner, see FeedService. The feed of an owner is read newest first
+by a single range of idx_feed_entries_owner_login_date, from a cursor on (date, rating_id). Entries of a rating
+are found by idx_feed_entries_rating_id when it changes.
+Written and read with JDBC only, the entity just declares the table.
+ */
+@Data
+@Entity(name = "feed_entries")
+@Table(name = "feed_entries",
+        indexes = {
+                @Index(name = "idx_feed_entries_owner_login_date", columnList = "owner_login, date, rating_id"),
+                @Index(name = "idx_feed_entries_rating_id", columnList = "rating_id")
+        })
+@IdClass(FeedEntry.Key.class)
+public class FeedEntry {
+
+    @Id
+    @Column(name = "owner_login")
+    private String ownerLogin;
+
+    @Id
+    @Column(name = "rating_id")
+    private long ratingId;
+
+    @Column(name = "author_login", nullable = false)
+    private String authorLogin;
+
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(nullable = false)
+    private Date date;
+
+    @Data
+    public static class Key implements Serializable {
+
+        private String ownerLogin;
+        private long ratingId;
+    }
+}
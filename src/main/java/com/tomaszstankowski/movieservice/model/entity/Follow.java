@@ -0,0 +1,32 @@
+package com.tomaszstankowski.movieservice.model.entity;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/*
+Edge of the follow graph. Keyed by the followed user first, so that followers of a user are a range of the primary
+key and a single follow is a point lookup, followed users of a user are a range of idx_follows_follower_followed.
+Follows are added and removed one row at a time, see FollowRepository, instead of rewriting a collection of users.
+ */
+@Data
+@Entity(name = "follows")
+@Table(name = "follows",
+        indexes = @Index(name = "idx_follows_follower_followed", columnList = "follower, followed"))
+@IdClass(Follow.Key.class)
+public class Follow {
+
+    @Id
+    private String followed;
+
+    @Id
+    private String follower;
+
+    @Data
+    public static class Key implements Serializable {
+
+        private String followed;
+        private String follower;
+    }
+}
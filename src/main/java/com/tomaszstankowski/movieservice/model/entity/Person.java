@@ -4,6 +4,7 @@ import com.tomaszstankowski.movieservice.model.enums.Profession;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
 import java.util.*;
@@ -11,6 +12,10 @@ import java.util.*;
 @Data
 @EqualsAndHashCode(of = "id")
 @Entity(name = "people")
+@Table(name = "people", indexes = {
+        @Index(name = "idx_people_name_id", columnList = "name, id"),
+        @Index(name = "idx_people_birth_date_id", columnList = "birth_date, id")
+})
 public class Person {
 
     @Id
@@ -32,6 +37,7 @@ public class Person {
     private List<Participation> participations = new ArrayList<>();
 
     @ElementCollection(targetClass = Profession.class)
+    @BatchSize(size = 100)
     @Enumerated(EnumType.STRING)
     @CollectionTable(name = "people_professions", joinColumns = @JoinColumn(name = "person_id"))
     private Set<Profession> professions = new HashSet<>();
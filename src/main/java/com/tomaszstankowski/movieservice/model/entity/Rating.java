@@ -9,6 +9,9 @@ import java.util.Date;
 @Data
 @EqualsAndHashCode(of = "id")
 @Entity(name = "ratings")
+@Table(name = "ratings", uniqueConstraints = @UniqueConstraint(name = "uk_ratings_user_show",
+        columnNames = {"user_login", "show_id"}),
+        indexes = @Index(name = "idx_ratings_user_login_date", columnList = "user_login, date, id"))
 public class Rating {
 
     @Id
@@ -0,0 +1,205 @@
+package com.tomaszstankowski.movieservice.model.entity;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+/**
+ * Number of ratings of a show per value from 1 to 10, kept next to its rating_sum and rating_count
+ * so that the distribution, mean and percentiles never need a scan over its ratings.
+ * Also used for changes of the numbers, which may be negative.
+ **/
+@Embeddable
+public class RatingHistogram {
+
+    public static final int MIN_RATING = 1;
+    public static final int MAX_RATING = 10;
+
+    @Column(name = "rating_1", nullable = false)
+    private long rated1;
+
+    @Column(name = "rating_2", nullable = false)
+    private long rated2;
+
+    @Column(name = "rating_3", nullable = false)
+    private long rated3;
+
+    @Column(name = "rating_4", nullable = false)
+    private long rated4;
+
+    @Column(name = "rating_5", nullable = false)
+    private long rated5;
+
+    @Column(name = "rating_6", nullable = false)
+    private long rated6;
+
+    @Column(name = "rating_7", nullable = false)
+    private long rated7;
+
+    @Column(name = "rating_8", nullable = false)
+    private long rated8;
+
+    @Column(name = "rating_9", nullable = false)
+    private long rated9;
+
+    @Column(name = "rating_10", nullable = false)
+    private long rated10;
+
+    public RatingHistogram() {
+    }
+
+    /**
+     * @param counts numbers of ratings from 1 to 10
+     **/
+    public RatingHistogram(long... counts) {
+        if (counts.length != MAX_RATING)
+            throw new IllegalArgumentException("Histogram needs a count for each of " + MAX_RATING + " ratings.");
+        for (int rating = MIN_RATING; rating <= MAX_RATING; rating++)
+            add(rating, counts[rating - 1]);
+    }
+
+    public long count(int rating) {
+        switch (rating) {
+            case 1:
+                return rated1;
+            case 2:
+                return rated2;
+            case 3:
+                return rated3;
+            case 4:
+                return rated4;
+            case 5:
+                return rated5;
+            case 6:
+                return rated6;
+            case 7:
+                return rated7;
+            case 8:
+                return rated8;
+            case 9:
+                return rated9;
+            case 10:
+                return rated10;
+            default:
+                throw new IllegalArgumentException("Rating out of range - " + rating + ".");
+        }
+    }
+
+    public void add(int rating, long count) {
+        switch (rating) {
+            case 1:
+                rated1 += count;
+                break;
+            case 2:
+                rated2 += count;
+                break;
+            case 3:
+                rated3 += count;
+                break;
+            case 4:
+                rated4 += count;
+                break;
+            case 5:
+                rated5 += count;
+                break;
+            case 6:
+                rated6 += count;
+                break;
+            case 7:
+                rated7 += count;
+                break;
+            case 8:
+                rated8 += count;
+                break;
+            case 9:
+                rated9 += count;
+                break;
+            case 10:
+                rated10 += count;
+                break;
+            default:
+                throw new IllegalArgumentException("Rating out of range - " + rating + ".");
+        }
+    }
+
+    /**
+     * @return new histogram with counts of both
+     **/
+    public RatingHistogram plus(RatingHistogram other) {
+        RatingHistogram sum = new RatingHistogram();
+        for (int rating = MIN_RATING; rating <= MAX_RATING; rating++)
+            sum.add(rating, count(rating) + other.count(rating));
+        return sum;
+    }
+
+    public long[] toArray() {
+        long[] counts = new long[MAX_RATING];
+        for (int rating = MIN_RATING; rating <= MAX_RATING; rating++)
+            counts[rating - 1] = count(rating);
+        return counts;
+    }
+
+    public long total() {
+        long total = 0;
+        for (int rating = MIN_RATING; rating <= MAX_RATING; rating++)
+            total += count(rating);
+        return total;
+    }
+
+    public long sum() {
+        long sum = 0;
+        for (int rating = MIN_RATING; rating <= MAX_RATING; rating++)
+            sum += rating * count(rating);
+        return sum;
+    }
+
+    public boolean isEmpty() {
+        for (int rating = MIN_RATING; rating <= MAX_RATING; rating++)
+            if (count(rating) != 0)
+                return false;
+        return true;
+    }
+
+    /**
+     * @return 0 if there are no ratings
+     **/
+    public float mean() {
+        long total = total();
+        return total == 0 ? 0 : (float) sum() / total;
+    }
+
+    /**
+     * @return mean of the two middle ratings when their number is even, 0 if there are no ratings
+     **/
+    public float median() {
+        long total = total();
+        if (total == 0)
+            return 0;
+        return (rank((total + 1) / 2) + rank(total / 2 + 1)) / 2f;
+    }
+
+    /**
+     * Nearest-rank percentile, the lowest rating with at least the given fraction of ratings at or below it.
+     *
+     * @param fraction between 0 exclusive and 1 inclusive
+     * @return 0 if there are no ratings
+     **/
+    public int percentile(double fraction) {
+        if (fraction <= 0 || fraction > 1)
+            throw new IllegalArgumentException("Percentile out of range - " + fraction + ".");
+        long total = total();
+        return total == 0 ? 0 : rank((long) Math.ceil(fraction * total));
+    }
+
+    /*
+    Rating at the given 1-based position of all ratings in ascending order.
+     */
+    private int rank(long position) {
+        long seen = 0;
+        for (int rating = MIN_RATING; rating <= MAX_RATING; rating++) {
+            seen += count(rating);
+            if (seen >= position)
+                return rating;
+        }
+        return MAX_RATING;
+    }
+}
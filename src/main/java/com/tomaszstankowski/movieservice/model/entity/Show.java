@@ -2,6 +2,9 @@ package com.tomaszstankowski.movieservice.model.entity;
 
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import java.util.*;
@@ -9,11 +12,31 @@ import java.util.*;
 @Data
 @EqualsAndHashCode(of = "id")
 @Entity(name = "shows")
+@Table(name = "shows", indexes = {
+        @Index(name = "idx_shows_title_id", columnList = "title, id"),
+        @Index(name = "idx_shows_date_released_id", columnList = "date_released, id"),
+        @Index(name = "idx_shows_date_added_id", columnList = "date_added, id")
+})
 @Inheritance(strategy = InheritanceType.JOINED)
+@NamedEntityGraph(name = Show.WITH_GENRES, attributeNodes = @NamedAttributeNode("genres"))
 public abstract class Show {
 
+    public static final String WITH_GENRES = "Show.withGenres";
+
+    public static final String ID_GENERATOR = "show_ids";
+
+    /*
+    Ids are taken from a table in blocks rather than given by the database on insert,
+    so that inserts of many shows can be sent in JDBC batches.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = ID_GENERATOR)
+    @GenericGenerator(name = ID_GENERATOR, strategy = "enhanced-sequence", parameters = {
+            @Parameter(name = "sequence_name", value = ID_GENERATOR),
+            @Parameter(name = "force_table_use", value = "true"),
+            @Parameter(name = "increment_size", value = "50"),
+            @Parameter(name = "optimizer", value = "pooled-lo")
+    })
     private long id;
 
     private String title;
@@ -26,7 +49,11 @@ public abstract class Show {
 
     private String location;
 
+    /*
+    Genres of all shows of a page are loaded together on first access.
+     */
     @ManyToMany(cascade = {CascadeType.MERGE})
+    @BatchSize(size = 100)
     @JoinTable(name = "shows_genres",
             joinColumns = @JoinColumn(name = "show_id", referencedColumnName = "id"),
             inverseJoinColumns = @JoinColumn(name = "genre_name", referencedColumnName = "name"))
@@ -57,6 +84,30 @@ public abstract class Show {
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "show")
     private List<Rating> ratings = new ArrayList<>();
 
+    /*
+    Running aggregates of ratings collection, kept so that mapping a show never has to load its ratings.
+     */
+    @Column(name = "rating_sum", nullable = false)
+    private long ratingSum;
+
+    @Column(name = "rating_count", nullable = false)
+    private long ratingCount;
+
+    @Embedded
+    private RatingHistogram ratingHistogram = new RatingHistogram();
+
+    public void addRatingValue(short rating) {
+        ratingSum += rating;
+        ratingCount++;
+        ratingHistogram.add(rating, 1);
+    }
+
+    public void removeRatingValue(short rating) {
+        ratingSum -= rating;
+        ratingCount--;
+        ratingHistogram.add(rating, -1);
+    }
+
     @Column(name = "date_added")
     private Date dateAdded;
 
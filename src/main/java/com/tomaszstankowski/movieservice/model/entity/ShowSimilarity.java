@@ -0,0 +1,38 @@
+package com.tomaszstankowski.movieservice.model.entity;
+
+import lombok.Data;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/*
+Neighbour of a show computed from ratings, see SimilarShowsService. Neighbours of a show are keyed by their
+ordinal, the most similar first, so that they are read in order by a single range of the primary key.
+Written and read with JDBC only, the entity just declares the table.
+ */
+@Data
+@Entity(name = "show_similarities")
+@Table(name = "show_similarities",
+        indexes = @Index(name = "idx_show_similarities_similar_show_id", columnList = "similar_show_id"))
+@IdClass(ShowSimilarity.Key.class)
+public class ShowSimilarity {
+
+    @Id
+    @Column(name = "show_id")
+    private long showId;
+
+    @Id
+    private short ordinal;
+
+    @Column(name = "similar_show_id", nullable = false)
+    private long similarShowId;
+
+    private float score;
+
+    @Data
+    public static class Key implements Serializable {
+
+        private long showId;
+        private short ordinal;
+    }
+}
@@ -13,6 +13,10 @@ import java.util.List;
 @Data
 @EqualsAndHashCode(of = "login")
 @Entity(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_name_login", columnList = "name, login"),
+        @Index(name = "idx_users_date_joined_login", columnList = "date_joined, login")
+})
 public class User {
 
     @Id
@@ -28,6 +32,7 @@ public class User {
     @Enumerated(EnumType.STRING)
     private Sex sex;
 
+    @Column(name = "date_joined")
     @Temporal(TemporalType.TIMESTAMP)
     private Date dateJoined;
 
@@ -39,14 +44,14 @@ public class User {
     @OneToMany(cascade = CascadeType.ALL, mappedBy = "user")
     private List<Rating> ratings = new ArrayList<>();
 
-    @ManyToMany(cascade = CascadeType.MERGE)
-    @JoinTable(name = "follows",
-            joinColumns = @JoinColumn(name = "followed", referencedColumnName = "login"),
-            inverseJoinColumns = @JoinColumn(name = "follower", referencedColumnName = "login"))
-    private List<User> followers = new ArrayList<>();
+    /*
+    Kept up to date by FollowRepository together with the rows of follows, never written from the entity.
+     */
+    @Column(name = "follower_count", nullable = false, updatable = false)
+    private int followerCount;
 
-    @ManyToMany(mappedBy = "followers")
-    private List<User> followed = new ArrayList<>();
+    @Column(name = "followed_count", nullable = false, updatable = false)
+    private int followedCount;
 
     @Enumerated(value = EnumType.STRING)
     UserRole role = UserRole.USER;
@@ -0,0 +1,6 @@
+package com.tomaszstankowski.movieservice.model.enums;
+
+public enum ChangeSubject {
+    SHOW,
+    PERSON
+}
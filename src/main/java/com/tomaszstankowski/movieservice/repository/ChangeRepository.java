@@ -0,0 +1,59 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import com.tomaszstankowski.movieservice.model.entity.Change;
+import com.tomaszstankowski.movieservice.model.enums.ChangeSubject;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+public interface ChangeRepository extends JpaRepository<Change, Long> {
+
+    @Query("select c from changes c where c.subject = :subject and c.sequence > :after and c.sequence < :before " +
+            "and c.date > :since order by c.sequence")
+    List<Change> findChanges(@Param("subject") ChangeSubject subject,
+                             @Param("since") Date since,
+                             @Param("after") long after,
+                             @Param("before") long before,
+                             Pageable pageable);
+
+    /*
+    Dates grow with sequences, so this is where changes since the date start. It keeps a feed started by date
+    from scanning the whole log.
+     */
+    @Query("select min(c.sequence) from changes c where c.subject = :subject and c.date > :since")
+    Long findFirstSequenceSince(@Param("subject") ChangeSubject subject, @Param("since") Date since);
+
+    /*
+    Recorded after the import committed, so in a transaction of its own. Dated by the caller right before, like
+    the entries of ChangeWriteRepository.
+     */
+    @Modifying
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Query(nativeQuery = true, value = "insert into changes (subject, subject_id, removed, date) " +
+            "select 'SHOW', s.id, 0, :date from shows s where s.id in :ids order by s.id")
+    int insertShows(@Param("ids") Collection<Long> ids, @Param("date") Date date);
+
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = "insert into changes (subject, subject_id, removed, date) " +
+            "select 'SHOW', s.id, 0, coalesce(s.date_modified, s.date_added, current_timestamp) from shows s " +
+            "where not exists (select 1 from changes c where c.subject = 'SHOW' and c.subject_id = s.id) " +
+            "order by s.date_modified, s.id")
+    int insertMissingShows();
+
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = "insert into changes (subject, subject_id, removed, date) " +
+            "select 'PERSON', p.id, 0, coalesce(p.date_modified, p.date_added, current_timestamp) from people p " +
+            "where not exists (select 1 from changes c where c.subject = 'PERSON' and c.subject_id = p.id) " +
+            "order by p.date_modified, p.id")
+    int insertMissingPeople();
+}
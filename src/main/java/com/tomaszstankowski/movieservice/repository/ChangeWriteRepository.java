@@ -0,0 +1,45 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import com.tomaszstankowski.movieservice.model.enums.ChangeSubject;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+
+/*
+Entries of the change log, see Change. The entry of a subject is first written by an upsert on the unique
+(subject, subject_id), which atomically inserts it or locks the one present, so concurrent changes of one subject
+queue on that row instead of colliding on the key. Still under the lock the entry is replaced by one with a fresh
+sequence, as sequences come from the identity of the table. Drivers do not tell an insert from an update alike,
+so this is done on both paths and a new subject skips a sequence.
+The entry is dated right before it takes its sequence and the transaction commits right after, which is what
+lets ChangeService hold back sequences too recent to be sure that no lower one is still uncommitted.
+ */
+@Repository
+public class ChangeWriteRepository {
+
+    private static final String UPSERT = "insert into changes (subject, subject_id, removed, date) values (?, ?, ?, ?) " +
+            "on duplicate key update removed = values(removed), date = values(date)";
+
+    private static final String DELETE = "delete from changes where subject = ? and subject_id = ?";
+
+    private static final String INSERT = "insert into changes (subject, subject_id, removed, date) values (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbc;
+
+    public ChangeWriteRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Records the change in a transaction of its own, as changes are recorded after the changing one committed.
+     **/
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void record(ChangeSubject subject, long subjectId, boolean removed) {
+        jdbc.update(UPSERT, subject.name(), subjectId, removed, new Timestamp(System.currentTimeMillis()));
+        jdbc.update(DELETE, subject.name(), subjectId);
+        jdbc.update(INSERT, subject.name(), subjectId, removed, new Timestamp(System.currentTimeMillis()));
+    }
+}
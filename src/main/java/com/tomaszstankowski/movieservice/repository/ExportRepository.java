@@ -0,0 +1,67 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+Reads whole tables through a forward only cursor, so memory does not depend on the number of rows.
+Entities are passed on in chunks, lazy associations of a chunk are batch fetched together when first used,
+and the persistence context is cleared after every chunk. Has to be called within a transaction.
+On MySQL the fetch size is honoured only with useCursorFetch=true in the connection url.
+ */
+@Repository
+public class ExportRepository {
+
+    public static final int FETCH_SIZE = 1000;
+
+    public static final int CHUNK_SIZE = 100;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * @param fetched to-one associations fetched in the same statement
+     **/
+    public <T> void scroll(Class<T> type, Specification<T> spec, Consumer<List<T>> consumer, String... fetched) {
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<T> criteria = builder.createQuery(type);
+        Root<T> root = criteria.from(type);
+        for (String attribute : fetched)
+            root.fetch(attribute, JoinType.INNER);
+        Predicate predicate = (spec == null) ? null : spec.toPredicate(root, criteria, builder);
+        if (predicate != null)
+            criteria.where(predicate);
+        criteria.orderBy(builder.asc(root.get("id")));
+
+        Query query = em.createQuery(criteria).unwrap(Query.class);
+        query.setFetchSize(FETCH_SIZE);
+        query.setReadOnly(true);
+        List<T> chunk = new ArrayList<>(CHUNK_SIZE);
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                chunk.add(type.cast(results.get(0)));
+                if (chunk.size() == CHUNK_SIZE) {
+                    consumer.accept(chunk);
+                    chunk.clear();
+                    em.clear();
+                }
+            }
+            if (!chunk.isEmpty())
+                consumer.accept(chunk);
+            em.clear();
+        } finally {
+            results.close();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import com.tomaszstankowski.movieservice.service.feed.FeedItem;
+import com.tomaszstankowski.movieservice.service.rating.PendingRating;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.*;
+
+/*
+Feeds of ratings of followed users written and read with JDBC, see FeedService. A rating is fanned out to
+the feeds of all the followers of its author by a single insert from a select over follows, so that neither
+followers nor ratings are loaded. Entries of a rating changed since are removed first, so that the rating moves
+to its new date. Feeds are read from a cursor on (date, rating_id), newest first.
+ */
+@Repository
+public class FeedRepository {
+
+    public static final int BATCH_SIZE = 500;
+
+    private static final String REMOVE = "delete from feed_entries " +
+            "where rating_id = (select id from ratings where show_id = ? and user_login = ?)";
+
+    private static final String FAN_OUT = "insert into feed_entries (owner_login, rating_id, author_login, date) " +
+            "select f.follower, r.id, r.user_login, r.date from ratings r join follows f on f.followed = r.user_login " +
+            "where r.show_id = ? and r.user_login = ?";
+
+    private static final String BEFORE = "(date < ? or (date = ? and %s < ?))";
+
+    private static final RowMapper<FeedItem> ITEM = (row, number) ->
+            new FeedItem(row.getLong(1), new Date(row.getTimestamp(2).getTime()));
+
+    private final JdbcTemplate jdbc;
+
+    public FeedRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Adds the rating of the show by the user to the feeds of the user's followers, the rating must be written.
+     **/
+    @Transactional
+    public void fanOut(long showId, String login) {
+        jdbc.update(REMOVE, showId, login);
+        jdbc.update(FAN_OUT, showId, login);
+    }
+
+    /**
+     * Adds the ratings to the feeds of their authors' followers in JDBC batches, ratings not written are skipped.
+     **/
+    @Transactional
+    public void fanOutAll(List<PendingRating> ratings) {
+        for (String sql : Arrays.asList(REMOVE, FAN_OUT))
+            jdbc.batchUpdate(sql, ratings, BATCH_SIZE, (statement, rating) -> {
+                statement.setLong(1, rating.getShowId());
+                statement.setString(2, rating.getLogin());
+            });
+    }
+
+    /**
+     * Adds at most limit latest ratings of the author to the feed of the owner, skipping the ones already in it.
+     **/
+    public void copyLatest(String owner, String author, int limit) {
+        jdbc.update("insert into feed_entries (owner_login, rating_id, author_login, date) " +
+                "select ?, r.id, r.user_login, r.date from ratings r where r.user_login = ? and not exists " +
+                "(select 1 from feed_entries e where e.owner_login = ? and e.rating_id = r.id) " +
+                "order by r.date desc, r.id desc limit ?", owner, author, owner, limit);
+    }
+
+    /**
+     * Like copyLatest for every follower of the author.
+     **/
+    public void copyLatestToFollowers(String author, int limit) {
+        jdbc.update("insert into feed_entries (owner_login, rating_id, author_login, date) " +
+                "select f.follower, r.id, r.user_login, r.date from follows f join " +
+                "(select id, user_login, date from ratings where user_login = ? order by date desc, id desc limit ?) r " +
+                "on r.user_login = f.followed where not exists " +
+                "(select 1 from feed_entries e where e.owner_login = f.follower and e.rating_id = r.id)", author, limit);
+    }
+
+    public void deleteRating(long ratingId) {
+        jdbc.update("delete from feed_entries where rating_id = ?", ratingId);
+    }
+
+    public void deleteAuthor(String owner, String author) {
+        jdbc.update("delete from feed_entries where owner_login = ? and author_login = ?", owner, author);
+    }
+
+    public void deleteOwner(String owner) {
+        jdbc.update("delete from feed_entries where owner_login = ?", owner);
+    }
+
+    /**
+     * @param after item the feed is read after, from the newest one if null
+     * @return at most limit items of the feed of the owner, the newest first
+     **/
+    public List<FeedItem> findEntries(String owner, FeedItem after, int limit) {
+        if (after == null)
+            return jdbc.query("select rating_id, date from feed_entries where owner_login = ? " +
+                    "order by date desc, rating_id desc limit ?", ITEM, owner, limit);
+        Timestamp date = new Timestamp(after.getDate().getTime());
+        return jdbc.query("select rating_id, date from feed_entries where owner_login = ? and " +
+                        String.format(BEFORE, "rating_id") + " order by date desc, rating_id desc limit ?",
+                ITEM, owner, date, date, after.getRatingId(), limit);
+    }
+
+    /**
+     * @param after item the ratings are read after, from the newest one if null
+     * @return at most limit ratings of the author, the newest first
+     **/
+    public List<FeedItem> findRatings(String author, FeedItem after, int limit) {
+        if (after == null)
+            return jdbc.query("select id, date from ratings where user_login = ? " +
+                    "order by date desc, id desc limit ?", ITEM, author, limit);
+        Timestamp date = new Timestamp(after.getDate().getTime());
+        return jdbc.query("select id, date from ratings where user_login = ? and " +
+                        String.format(BEFORE, "id") + " order by date desc, id desc limit ?",
+                ITEM, author, date, date, after.getRatingId(), limit);
+    }
+
+    /**
+     * @return logins of users followed by at least the given number of users
+     **/
+    public List<String> findPopular(int minFollowers) {
+        return jdbc.queryForList("select followed from follows group by followed having count(*) >= ?",
+                String.class, minFollowers);
+    }
+
+    /**
+     * @return logins among the given ones followed by the user
+     **/
+    public List<String> findFollowed(String follower, Collection<String> among) {
+        if (among.isEmpty())
+            return Collections.emptyList();
+        List<Object> args = new ArrayList<>(among.size() + 1);
+        args.add(follower);
+        args.addAll(among);
+        return jdbc.queryForList("select followed from follows where follower = ? and followed in (" +
+                placeholders(among.size()) + ")", String.class, args.toArray());
+    }
+
+    /**
+     * Cuts every feed down to its capacity newest items.
+     *
+     * @return number of items removed
+     **/
+    public int trim(int capacity) {
+        return trimOwners(jdbc.queryForList("select owner_login from feed_entries group by owner_login " +
+                "having count(*) > ?", String.class, capacity), capacity);
+    }
+
+    /**
+     * Like trim for the feeds of the followers of the authors only.
+     *
+     * @return number of items removed
+     **/
+    public int trimFollowers(Collection<String> authors, int capacity) {
+        if (authors.isEmpty())
+            return 0;
+        List<Object> args = new ArrayList<>(authors);
+        args.add(capacity);
+        return trimOwners(jdbc.queryForList("select owner_login from feed_entries where owner_login in " +
+                "(select follower from follows where followed in (" + placeholders(authors.size()) + ")) " +
+                "group by owner_login having count(*) > ?", String.class, args.toArray()), capacity);
+    }
+
+    private int trimOwners(List<String> owners, int capacity) {
+        int removed = 0;
+        for (String owner : owners) {
+            List<FeedItem> last = jdbc.query("select rating_id, date from feed_entries where owner_login = ? " +
+                    "order by date desc, rating_id desc limit 1 offset ?", ITEM, owner, capacity - 1);
+            if (last.isEmpty())
+                continue;
+            Timestamp date = new Timestamp(last.get(0).getDate().getTime());
+            removed += jdbc.update("delete from feed_entries where owner_login = ? and " +
+                    String.format(BEFORE, "rating_id"), owner, date, date, last.get(0).getRatingId());
+        }
+        return removed;
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
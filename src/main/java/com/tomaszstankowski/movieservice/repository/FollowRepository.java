@@ -0,0 +1,74 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/*
+Follows written and checked with JDBC one row at a time, see Follow. Counts of followers and followed users
+of both users are changed in the same transaction by single-row updates, so that no user or follower is loaded.
+ */
+@Repository
+public class FollowRepository {
+
+    private final JdbcTemplate jdbc;
+
+    public FollowRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public boolean exists(String followed, String follower) {
+        return jdbc.queryForObject("select count(*) from follows where followed = ? and follower = ?",
+                Integer.class, followed, follower) > 0;
+    }
+
+    /**
+     * @throws org.springframework.dao.DataIntegrityViolationException if the user is already followed
+     **/
+    @Transactional
+    public void insert(String followed, String follower) {
+        jdbc.update("insert into follows (followed, follower) values (?, ?)", followed, follower);
+        changeCounts(followed, follower, 1);
+    }
+
+    /**
+     * @return false if the user was not followed
+     **/
+    @Transactional
+    public boolean delete(String followed, String follower) {
+        if (jdbc.update("delete from follows where followed = ? and follower = ?", followed, follower) == 0)
+            return false;
+        changeCounts(followed, follower, -1);
+        return true;
+    }
+
+    /**
+     * Removes follows of and by the user, counts of the users on the other side are changed accordingly.
+     **/
+    @Transactional
+    public void deleteUser(String login) {
+        jdbc.update("update users set follower_count = follower_count - 1 " +
+                "where login in (select followed from follows where follower = ?)", login);
+        jdbc.update("update users set followed_count = followed_count - 1 " +
+                "where login in (select follower from follows where followed = ?)", login);
+        jdbc.update("delete from follows where follower = ?", login);
+        jdbc.update("delete from follows where followed = ?", login);
+    }
+
+    /**
+     * Counts followers and followed users of all the users from the follows.
+     *
+     * @return number of users updated
+     **/
+    @Transactional
+    public int recalculateCounts() {
+        return jdbc.update("update users set " +
+                "follower_count = (select count(*) from follows f where f.followed = users.login), " +
+                "followed_count = (select count(*) from follows f where f.follower = users.login)");
+    }
+
+    private void changeCounts(String followed, String follower, int change) {
+        jdbc.update("update users set follower_count = follower_count + ? where login = ?", change, followed);
+        jdbc.update("update users set followed_count = followed_count + ? where login = ?", change, follower);
+    }
+}
@@ -0,0 +1,33 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.util.List;
+
+/*
+Selects only ids of entities matching a specification, for filtering candidates which are ranked outside the database.
+ */
+@Repository
+public class IdProjectionRepository {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    public <T> List<Long> findIds(Class<T> type, Specification<T> spec) {
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<T> root = query.from(type);
+        query.select(root.<Long>get("id"));
+        Predicate predicate = (spec == null) ? null : spec.toPredicate(root, query, builder);
+        if (predicate != null)
+            query.where(predicate);
+        return em.createQuery(query).getResultList();
+    }
+}
@@ -1,8 +1,22 @@
 package com.tomaszstankowski.movieservice.repository;
 
 import com.tomaszstankowski.movieservice.model.entity.Movie;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface MovieRepository extends JpaRepository<Movie, Long>, JpaSpecificationExecutor<Movie> {
+
+    @Query("select m.id from movies m where m.id > :after order by m.id")
+    List<Long> findIdsAfter(@Param("after") long after, Pageable pageable);
+
+    @Query("select m.id, m.dateReleased, m.location, m.duration from movies m where m.id > :after order by m.id")
+    List<Object[]> findFacetsAfter(@Param("after") long after, Pageable pageable);
+
+    @Query("select m.id, m.dateReleased, m.ratingSum, m.ratingCount from movies m where m.id > :after order by m.id")
+    List<Object[]> findRankingsAfter(@Param("after") long after, Pageable pageable);
 }
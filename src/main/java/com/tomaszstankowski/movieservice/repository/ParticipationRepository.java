@@ -4,13 +4,28 @@ import com.tomaszstankowski.movieservice.model.entity.Participation;
 import com.tomaszstankowski.movieservice.model.entity.Person;
 import com.tomaszstankowski.movieservice.model.entity.Show;
 import com.tomaszstankowski.movieservice.model.enums.Profession;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
 
+/*
+Participations are listed together with their people and shows, so both are fetched in the same statement.
+Professions of the people and genres of the shows are batch fetched.
+ */
 public interface ParticipationRepository extends JpaRepository<Participation, Long> {
 
+    @EntityGraph(attributePaths = {"person", "show"})
+    List<Participation> findByPerson(Person person);
+
+    @EntityGraph(attributePaths = {"person", "show"})
     List<Participation> findByPersonAndRole(Person person, Profession profession);
 
+    @EntityGraph(attributePaths = {"person", "show"})
+    List<Participation> findByShow(Show show);
+
+    @EntityGraph(attributePaths = {"person", "show"})
     List<Participation> findByShowAndRole(Show show, Profession profession);
+
+    long countByPersonId(long personId);
 }
@@ -2,12 +2,23 @@ package com.tomaszstankowski.movieservice.repository;
 
 
 import com.tomaszstankowski.movieservice.model.entity.Person;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.Date;
+import java.util.List;
 
 public interface PersonRepository extends JpaRepository<Person, Long>, JpaSpecificationExecutor<Person> {
 
     Person findByNameAndBirthDateAndBirthPlace(String name, Date birthDate, String birthPlace);
+
+    @Query("select p.id, p.dateModified from people p where p.id = :id")
+    List<Object[]> findVersionById(@Param("id") long id);
+
+    @Query("select p.id, p.name, (select count(pa) from participations pa where pa.person = p) " +
+            "from people p where p.id > :after order by p.id")
+    List<Object[]> findNamesAfter(@Param("after") long after, Pageable pageable);
 }
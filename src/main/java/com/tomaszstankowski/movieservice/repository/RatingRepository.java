@@ -7,8 +7,10 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -16,9 +18,22 @@ public interface RatingRepository extends JpaRepository<Rating, Long>, JpaSpecif
 
     Rating findByUserAndShow(User user, Show show);
 
-    @Query("select distinct r from ratings r where r.user in :#{#user.followed} order by r.date desc")
-    Page<Rating> findUserFollowedRatings(@Param("user") User user, Pageable pageable);
+    /*
+    Keeps the latest rating of each user and show, which the unique constraint on them requires.
+     */
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = "delete r from ratings r join ratings newer " +
+            "on newer.user_login = r.user_login and newer.show_id = r.show_id and newer.id > r.id")
+    int deleteDuplicates();
 
-    @Query("select distinct r from ratings r where r.show = :#{#show} and r.user in :#{#user.followed} order by r.date desc")
-    List<Rating> findUserFollowedRatings(@Param("user") User user, @Param("show") Show show);
+    @Query(value = "select r from ratings r, follows f where f.followed = r.user.login and f.follower = :login " +
+            "order by r.date desc",
+            countQuery = "select count(r) from ratings r, follows f where f.followed = r.user.login " +
+                    "and f.follower = :login")
+    Page<Rating> findUserFollowedRatings(@Param("login") String login, Pageable pageable);
+
+    @Query("select r from ratings r, follows f where r.show.id = :showId and f.followed = r.user.login " +
+            "and f.follower = :login order by r.date desc")
+    List<Rating> findUserFollowedRatings(@Param("login") String login, @Param("showId") long showId);
 }
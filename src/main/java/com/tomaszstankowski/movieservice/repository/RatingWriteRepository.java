@@ -0,0 +1,309 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import com.tomaszstankowski.movieservice.model.entity.RatingHistogram;
+import com.tomaszstankowski.movieservice.service.rating.PendingRating;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+Rating writes without loading the show or the user. A single rating takes three statements: a relative update of
+the aggregates of the show, histogram included, which reads the rating given before in subqueries, an upsert on
+the unique (user_login, show_id) and a read of the rating id together with the rating count. The update locks
+the show first, so writes of one show, and so of one rating, are applied one after another and each one reads
+the rating the previous one committed. A missing rating is never read with a lock, so concurrent first ratings
+do not deadlock on the gap where it would be.
+Batches are written by upserts on the unique (user_login, show_id) with their shows locked in order of ids.
+With rating counters on, ratings are written without their aggregates, which are added to the rows of shows
+in batches later on, see RatingCounterService. Such a rating is inserted if the user has not rated the show,
+otherwise its row is locked by id and changed, an attempt beaten by a concurrent insert or removal of the rating
+is repeated on the committed state.
+ */
+@Repository
+public class RatingWriteRepository {
+
+    public static final int BATCH_SIZE = 500;
+
+    private static final String UPSERT = "insert into ratings (rating, date, show_id, user_login) values (?, ?, ?, ?) " +
+            "on duplicate key update rating = values(rating), date = values(date)";
+
+    private static final String FIND = "select id from ratings where show_id = ? and user_login = ?";
+
+    private static final String LOCK = "select rating from ratings where id = ? for update";
+
+    private static final String INSERT = "insert into ratings (rating, date, show_id, user_login) values (?, ?, ?, ?)";
+
+    private static final String UPDATE = "update ratings set rating = ?, date = ? where id = ?";
+
+    private static final String ADD_TO_AGGREGATES = addToAggregatesQuery();
+
+    private static final String RATE = rateQuery();
+
+    private static final String FIND_WRITTEN = "select r.id, s.rating_count from ratings r join shows s on s.id = r.show_id " +
+            "where r.show_id = ? and r.user_login = ?";
+
+    /*
+    Attempts of a single write, each one lost only to an insert or removal of the same rating committed meanwhile.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final JdbcTemplate jdbc;
+
+    public RatingWriteRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Reads committed data, so that the rating given before is read as committed by the write it waited for.
+     *
+     * @return the rating written with the rating count of the show afterwards, without the rating given before
+     * @throws org.springframework.dao.DataIntegrityViolationException if there is no such show or user
+     **/
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public WrittenRating upsert(long showId, String login, short rating, Date date) {
+        jdbc.update(RATE, statement -> {
+            int i = 0;
+            statement.setLong(++i, rating);
+            statement.setString(++i, login);
+            statement.setString(++i, login);
+            for (int value = RatingHistogram.MIN_RATING; value <= RatingHistogram.MAX_RATING; value++) {
+                statement.setLong(++i, value == rating ? 1 : 0);
+                statement.setString(++i, login);
+            }
+            statement.setLong(++i, showId);
+        });
+        jdbc.update(UPSERT, rating, new Timestamp(date.getTime()), showId, login);
+        return jdbc.queryForObject(FIND_WRITTEN,
+                (row, number) -> new WrittenRating(row.getLong(1), null, row.getLong(2)), showId, login);
+    }
+
+    /**
+     * Writes ratings in JDBC batches, a user may have at most one of the ratings for a show.
+     * Shows are locked in the order of their ids, so that concurrent writes do not deadlock.
+     *
+     * @return rating counts afterwards by show, without shows which do not exist
+     **/
+    @Transactional
+    public Map<Long, Long> upsertAll(List<PendingRating> ratings) {
+        List<Long> ids = ratings.stream()
+                .map(PendingRating::getShowId)
+                .distinct()
+                .sorted()
+                .collect(Collectors.toList());
+        Set<Long> shows = new HashSet<>(jdbc.queryForList("select id from shows where id in (" + placeholders(ids.size()) +
+                ") order by id for update", Long.class, ids.toArray()));
+        List<PendingRating> rated = ratings.stream()
+                .filter(rating -> shows.contains(rating.getShowId()))
+                .collect(Collectors.toList());
+        if (rated.isEmpty())
+            return Collections.emptyMap();
+
+        Set<String> logins = rated.stream()
+                .map(PendingRating::getLogin)
+                .collect(Collectors.toSet());
+        List<Object> args = new ArrayList<>(shows);
+        args.addAll(logins);
+        Map<String, Short> previous = new HashMap<>();
+        jdbc.query("select show_id, user_login, rating from ratings where show_id in (" + placeholders(shows.size()) +
+                        ") and user_login in (" + placeholders(logins.size()) + ")",
+                args.toArray(),
+                row -> {
+                    previous.put(row.getLong(1) + " " + row.getString(2), row.getShort(3));
+                });
+
+        jdbc.batchUpdate(UPSERT, rated, BATCH_SIZE, (statement, rating) -> {
+            statement.setShort(1, rating.getRating());
+            statement.setTimestamp(2, new Timestamp(rating.getDate().getTime()));
+            statement.setLong(3, rating.getShowId());
+            statement.setString(4, rating.getLogin());
+        });
+        Map<Long, RatingHistogram> changes = new HashMap<>();
+        for (PendingRating rating : rated)
+            changes.merge(rating.getShowId(),
+                    change(previous.get(rating.getShowId() + " " + rating.getLogin()), rating.getRating()),
+                    RatingHistogram::plus);
+        return addToAggregates(changes);
+    }
+
+    /**
+     * Writes the rating without touching the aggregates of the show, the caller accounts for the change
+     * relative to the rating given before.
+     *
+     * @return the rating written, without the rating count of the show
+     * @throws org.springframework.dao.DataIntegrityViolationException if there is no such show or user
+     **/
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public WrittenRating upsertRating(long showId, String login, short rating, Date date) {
+        return write(showId, login, rating, date);
+    }
+
+    /**
+     * Removes the rating without touching the aggregates of the show, the caller accounts for the change.
+     *
+     * @return rating removed as the previous one, null if the user has not rated the show
+     **/
+    @Transactional
+    public WrittenRating deleteRating(long showId, String login) {
+        WrittenRating removed = lockRating(showId, login);
+        if (removed != null)
+            jdbc.update("delete from ratings where id = ?", removed.getId());
+        return removed;
+    }
+
+    /**
+     * Adds changes of aggregates in a JDBC batch, shows which do not exist are skipped.
+     *
+     * @param changes changes of histograms by show, sums and counts follow from them
+     * @return rating counts afterwards by show
+     **/
+    @Transactional
+    public Map<Long, Long> addToAggregates(Map<Long, RatingHistogram> changes) {
+        List<Long> ids = new ArrayList<>(changes.keySet());
+        Collections.sort(ids);
+        jdbc.batchUpdate(ADD_TO_AGGREGATES, ids, BATCH_SIZE,
+                (statement, id) -> setAggregates(statement, id, changes.get(id)));
+        Map<Long, Long> counts = new HashMap<>();
+        jdbc.query("select id, rating_count from shows where id in (" + placeholders(ids.size()) + ")",
+                ids.toArray(),
+                row -> {
+                    counts.put(row.getLong(1), row.getLong(2));
+                });
+        return counts;
+    }
+
+    /**
+     * @return rating removed as the previous one with the rating count of the show afterwards,
+     * null if the user has not rated the show or there is no such show
+     **/
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public WrittenRating delete(long showId, String login) {
+        WrittenRating removed = lockRating(showId, login);
+        if (removed == null)
+            return null;
+        jdbc.update("delete from ratings where id = ?", removed.getId());
+        RatingHistogram change = new RatingHistogram();
+        change.add(removed.getPrevious(), -1);
+        addToAggregates(showId, change);
+        Long ratingCount = jdbc.queryForObject("select rating_count from shows where id = ?", Long.class, showId);
+        return new WrittenRating(removed.getId(), removed.getPrevious(), ratingCount);
+    }
+
+    /**
+     * Removes all the ratings of the user and subtracts them from the aggregates of their shows.
+     *
+     * @return rating counts afterwards by show rated by the user
+     **/
+    @Transactional
+    public Map<Long, Long> deleteUserRatings(String login) {
+        Map<Long, RatingHistogram> changes = new HashMap<>();
+        jdbc.query("select show_id, rating from ratings where user_login = ? for update", new Object[]{login},
+                row -> {
+                    RatingHistogram change = new RatingHistogram();
+                    change.add(row.getShort(2), -1);
+                    changes.put(row.getLong(1), change);
+                });
+        if (changes.isEmpty())
+            return Collections.emptyMap();
+        jdbc.update("delete from ratings where user_login = ?", login);
+        return addToAggregates(changes);
+    }
+
+    /*
+    Inserts the rating if the user has not rated the show, otherwise locks and updates the existing one.
+     */
+    private WrittenRating write(long showId, String login, short rating, Date date) {
+        Timestamp timestamp = new Timestamp(date.getTime());
+        for (int attempt = 1; ; attempt++) {
+            List<Long> ids = jdbc.queryForList(FIND, Long.class, showId, login);
+            if (ids.isEmpty()) {
+                KeyHolder key = new GeneratedKeyHolder();
+                try {
+                    jdbc.update(connection -> {
+                        PreparedStatement statement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS);
+                        statement.setShort(1, rating);
+                        statement.setTimestamp(2, timestamp);
+                        statement.setLong(3, showId);
+                        statement.setString(4, login);
+                        return statement;
+                    }, key);
+                    return new WrittenRating(key.getKey().longValue(), null, null);
+                } catch (DuplicateKeyException e) {
+                    if (attempt == MAX_ATTEMPTS)
+                        throw e;
+                }
+            } else {
+                long id = ids.get(0);
+                List<Short> previous = jdbc.queryForList(LOCK, Short.class, id);
+                if (!previous.isEmpty()) {
+                    jdbc.update(UPDATE, rating, timestamp, id);
+                    return new WrittenRating(id, previous.get(0), null);
+                }
+                if (attempt == MAX_ATTEMPTS)
+                    throw new ConcurrencyFailureException("Rating of show " + showId + " by " + login +
+                            " removed concurrently " + MAX_ATTEMPTS + " times.");
+            }
+        }
+    }
+
+    private WrittenRating lockRating(long showId, String login) {
+        List<WrittenRating> ratings = jdbc.query("select id, rating from ratings where show_id = ? and user_login = ? for update",
+                (row, number) -> new WrittenRating(row.getLong(1), row.getShort(2), null), showId, login);
+        return ratings.isEmpty() ? null : ratings.get(0);
+    }
+
+    private void addToAggregates(long showId, RatingHistogram change) {
+        jdbc.update(ADD_TO_AGGREGATES, statement -> setAggregates(statement, showId, change));
+    }
+
+    private static void setAggregates(PreparedStatement statement, long showId, RatingHistogram change) throws SQLException {
+        statement.setLong(1, change.sum());
+        statement.setLong(2, change.total());
+        for (int rating = RatingHistogram.MIN_RATING; rating <= RatingHistogram.MAX_RATING; rating++)
+            statement.setLong(2 + rating, change.count(rating));
+        statement.setLong(3 + RatingHistogram.MAX_RATING, showId);
+    }
+
+    private static RatingHistogram change(Short previous, short rating) {
+        RatingHistogram change = new RatingHistogram();
+        if (previous != null)
+            change.add(previous, -1);
+        change.add(rating, 1);
+        return change;
+    }
+
+    private static String addToAggregatesQuery() {
+        StringBuilder query = new StringBuilder("update shows set rating_sum = rating_sum + ?, rating_count = rating_count + ?");
+        for (int rating = RatingHistogram.MIN_RATING; rating <= RatingHistogram.MAX_RATING; rating++)
+            query.append(", rating_").append(rating).append(" = rating_").append(rating).append(" + ?");
+        return query.append(" where id = ?").toString();
+    }
+
+    /*
+    Adds the rating to the aggregates of the show and subtracts the one the user gave before, if any.
+     */
+    private static String rateQuery() {
+        String previous = "from ratings where show_id = shows.id and user_login = ?";
+        StringBuilder query = new StringBuilder("update shows set rating_sum = rating_sum + ? - coalesce((select rating ")
+                .append(previous).append("), 0), rating_count = rating_count + 1 - (select count(*) ").append(previous).append(")");
+        for (int rating = RatingHistogram.MIN_RATING; rating <= RatingHistogram.MAX_RATING; rating++)
+            query.append(", rating_").append(rating).append(" = rating_").append(rating).append(" + ? - (select count(*) ")
+                    .append(previous).append(" and rating = ").append(rating).append(")");
+        return query.append(" where id = ?").toString();
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
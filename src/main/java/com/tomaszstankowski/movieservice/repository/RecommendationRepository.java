@@ -0,0 +1,48 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.function.BiConsumer;
+
+/*
+Follows and genres of shows read as plain rows for the snapshot recommendations are scored from,
+see RecommendationService. Rows are read by a forward-only cursor like in ShowSimilarityRepository.
+ */
+@Repository
+public class RecommendationRepository {
+
+    private final JdbcTemplate jdbc;
+
+    public RecommendationRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Passes every follow on as the follower and the followed user.
+     **/
+    public void scanFollows(BiConsumer<String, String> consumer) {
+        stream("select follower, followed from follows", row -> consumer.accept(row.getString(1), row.getString(2)));
+    }
+
+    public void scanShowGenres(ShowGenreConsumer consumer) {
+        stream("select show_id, genre_name from shows_genres", row -> consumer.accept(row.getLong(1), row.getString(2)));
+    }
+
+    public interface ShowGenreConsumer {
+
+        void accept(long showId, String genre);
+    }
+
+    private void stream(String sql, RowCallbackHandler handler) {
+        jdbc.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(ShowSimilarityRepository.FETCH_SIZE);
+            return statement;
+        }, handler);
+    }
+}
@@ -1,8 +1,22 @@
 package com.tomaszstankowski.movieservice.repository;
 
 import com.tomaszstankowski.movieservice.model.entity.Serial;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface SerialRepository extends JpaRepository<Serial, Long>, JpaSpecificationExecutor<Serial> {
+
+    @Query("select s.id from series s where s.id > :after order by s.id")
+    List<Long> findIdsAfter(@Param("after") long after, Pageable pageable);
+
+    @Query("select s.id, s.dateReleased, s.location, s.seasons from series s where s.id > :after order by s.id")
+    List<Object[]> findFacetsAfter(@Param("after") long after, Pageable pageable);
+
+    @Query("select s.id, s.dateReleased, s.ratingSum, s.ratingCount from series s where s.id > :after order by s.id")
+    List<Object[]> findRankingsAfter(@Param("after") long after, Pageable pageable);
 }
@@ -0,0 +1,98 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import com.tomaszstankowski.movieservice.model.entity.Genre;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Serial;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*
+Inserts of many new shows in JDBC batches. Hibernate batches only the first table of a joined subclass,
+so movies, series and genres of shows would otherwise be inserted one by one.
+Ids are taken from the same table as ids of shows saved by Hibernate, see Show.id.
+ */
+@Repository
+public class ShowBatchRepository {
+
+    public static final int BATCH_SIZE = 100;
+
+    private final JdbcTemplate jdbc;
+
+    public ShowBatchRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Reserves ids in a transaction of its own, so the table is not locked until the shows are inserted.
+     * Ids of shows which end up not inserted are skipped.
+     *
+     * @return first of count consecutive ids
+     **/
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public long reserveIds(int count) {
+        long first = jdbc.queryForObject("select next_val from " + Show.ID_GENERATOR + " for update", Long.class);
+        jdbc.update("update " + Show.ID_GENERATOR + " set next_val = ?", first + count);
+        return first;
+    }
+
+    public void insertGenres(Collection<String> names) {
+        jdbc.batchUpdate("insert into genres (name) values (?)", names, BATCH_SIZE,
+                (statement, name) -> statement.setString(1, name));
+    }
+
+    /**
+     * @param shows with ids and dates set
+     **/
+    public void insertShows(List<Show> shows) {
+        jdbc.batchUpdate("insert into shows (id, title, description, date_released, location, rating_sum, " +
+                "rating_count, rating_1, rating_2, rating_3, rating_4, rating_5, rating_6, rating_7, rating_8, rating_9, " +
+                "rating_10, date_added, date_modified) values (?, ?, ?, ?, ?, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, ?, ?)",
+                shows, BATCH_SIZE,
+                (statement, show) -> {
+                    statement.setLong(1, show.getId());
+                    statement.setString(2, show.getTitle());
+                    statement.setString(3, show.getDescription());
+                    statement.setDate(4, show.getDateReleased() == null ? null : new Date(show.getDateReleased().getTime()));
+                    statement.setString(5, show.getLocation());
+                    statement.setTimestamp(6, new Timestamp(show.getDateAdded().getTime()));
+                    statement.setTimestamp(7, new Timestamp(show.getDateModified().getTime()));
+                });
+
+        List<Movie> movies = new ArrayList<>();
+        List<Serial> series = new ArrayList<>();
+        List<Object[]> genres = new ArrayList<>();
+        for (Show show : shows) {
+            if (show instanceof Movie)
+                movies.add((Movie) show);
+            else
+                series.add((Serial) show);
+            for (Genre genre : show.getGenres())
+                genres.add(new Object[]{show.getId(), genre.getName()});
+        }
+        jdbc.batchUpdate("insert into movies (id, duration, boxoffice) values (?, ?, ?)", movies, BATCH_SIZE,
+                (statement, movie) -> {
+                    statement.setLong(1, movie.getId());
+                    statement.setShort(2, movie.getDuration());
+                    statement.setInt(3, movie.getBoxoffice());
+                });
+        jdbc.batchUpdate("insert into series (id, seasons) values (?, ?)", series, BATCH_SIZE,
+                (statement, serial) -> {
+                    statement.setLong(1, serial.getId());
+                    statement.setShort(2, serial.getSeasons());
+                });
+        jdbc.batchUpdate("insert into shows_genres (show_id, genre_name) values (?, ?)", genres, BATCH_SIZE,
+                (statement, row) -> {
+                    statement.setLong(1, (Long) row[0]);
+                    statement.setString(2, (String) row[1]);
+                });
+    }
+}
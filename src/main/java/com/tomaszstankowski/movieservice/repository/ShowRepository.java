@@ -1,12 +1,69 @@
 package com.tomaszstankowski.movieservice.repository;
 
+import com.tomaszstankowski.movieservice.model.entity.RatingHistogram;
 import com.tomaszstankowski.movieservice.model.entity.Show;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 public interface ShowRepository extends JpaRepository<Show, Long>, JpaSpecificationExecutor<Show> {
 
+    String RECALCULATE_RATING_AGGREGATES = "update shows s set " +
+            "s.rating_sum = (select coalesce(sum(r.rating), 0) from ratings r where r.show_id = s.id), " +
+            "s.rating_count = (select count(*) from ratings r where r.show_id = s.id), " +
+            "s.rating_1 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 1), " +
+            "s.rating_2 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 2), " +
+            "s.rating_3 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 3), " +
+            "s.rating_4 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 4), " +
+            "s.rating_5 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 5), " +
+            "s.rating_6 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 6), " +
+            "s.rating_7 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 7), " +
+            "s.rating_8 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 8), " +
+            "s.rating_9 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 9), " +
+            "s.rating_10 = (select count(*) from ratings r where r.show_id = s.id and r.rating = 10)";
+
+    /*
+    Single show read together with its genres. Genres of shows listed in pages are batch fetched, see Show.genres.
+     */
+    @EntityGraph(Show.WITH_GENRES)
+    Show findWithGenresById(long id);
+
     Show findByTitleAndDateReleased(String title, Date dateReleased);
+
+    @Query("select s.title, s.dateReleased from shows s where s.title in :titles")
+    List<Object[]> findTitleAndDateReleasedByTitleIn(@Param("titles") Collection<String> titles);
+
+    @Query("select s.dateModified, s.ratingCount, s.ratingSum from shows s where s.id = :id")
+    List<Object[]> findVersionById(@Param("id") long id);
+
+    @Query("select s.id, s.title, s.description, s.ratingCount from shows s where s.id > :after order by s.id")
+    List<Object[]> findTextsAfter(@Param("after") long after, Pageable pageable);
+
+    @Query("select s.id from shows s join s.genres g where g.name = :genre and s.id > :after order by s.id")
+    List<Long> findIdsByGenreAfter(@Param("genre") String genre, @Param("after") long after, Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = RECALCULATE_RATING_AGGREGATES)
+    int recalculateRatingAggregates();
+
+    @Query("select s.id, s.ratingSum, s.ratingCount from shows s where s.id in :ids")
+    List<Object[]> findRatingAggregatesByIdIn(@Param("ids") Collection<Long> ids);
+
+    @Query("select s.ratingHistogram from shows s where s.id = :id")
+    RatingHistogram findRatingHistogramById(@Param("id") long id);
+
+    @Modifying
+    @Transactional
+    @Query(nativeQuery = true, value = RECALCULATE_RATING_AGGREGATES + " where s.id in (:ids)")
+    int recalculateRatingAggregates(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,137 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import com.tomaszstankowski.movieservice.service.similar.Neighbours;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+Neighbours of shows written and read with JDBC, and ratings read as plain rows for computing them,
+so that no entity is created per rating. Ratings are read by a forward-only cursor of FETCH_SIZE rows,
+on MySQL the fetch size is honoured only with useCursorFetch=true in the connection url.
+ */
+@Repository
+public class ShowSimilarityRepository {
+
+    public static final int BATCH_SIZE = 500;
+    public static final int FETCH_SIZE = 10000;
+
+    private static final String INSERT = "insert into show_similarities (show_id, ordinal, similar_show_id, score) " +
+            "values (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbc;
+
+    public ShowSimilarityRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public interface RatingConsumer {
+
+        void accept(long showId, String login, short rating);
+    }
+
+    public interface SimilarityConsumer {
+
+        void accept(long showId, long similarShowId, float score);
+    }
+
+    /**
+     * @return ids of all the shows in ascending order
+     **/
+    public long[] findShowIds() {
+        IdCollector ids = new IdCollector();
+        stream("select id from shows order by id", ids);
+        return Arrays.copyOf(ids.ids, ids.size);
+    }
+
+    public void scanLogins(Consumer<String> consumer) {
+        stream("select login from users", row -> consumer.accept(row.getString(1)));
+    }
+
+    public long countRatings() {
+        return jdbc.queryForObject("select count(*) from ratings", Long.class);
+    }
+
+    /**
+     * Passes every rating on in no particular order.
+     **/
+    public void scanRatings(RatingConsumer consumer) {
+        stream("select show_id, user_login, rating from ratings",
+                row -> consumer.accept(row.getLong(1), row.getString(2), row.getShort(3)));
+    }
+
+    /**
+     * Passes the neighbours of all the shows on in no particular order.
+     **/
+    public void scanSimilarities(SimilarityConsumer consumer) {
+        stream("select show_id, similar_show_id, score from show_similarities",
+                row -> consumer.accept(row.getLong(1), row.getLong(2), row.getFloat(3)));
+    }
+
+    /**
+     * Replaces the neighbours of the shows at indexes from inclusive to exclusive.
+     **/
+    @Transactional
+    public void replace(Neighbours neighbours, int from, int to) {
+        List<Object[]> ids = new ArrayList<>(to - from);
+        List<Object[]> rows = new ArrayList<>();
+        for (int index = from; index < to; index++) {
+            long showId = neighbours.showId(index);
+            ids.add(new Object[]{showId});
+            for (int ordinal = 0; ordinal < neighbours.count(index); ordinal++)
+                rows.add(new Object[]{showId, ordinal, neighbours.neighbourId(index, ordinal),
+                        neighbours.score(index, ordinal)});
+        }
+        jdbc.batchUpdate("delete from show_similarities where show_id = ?", ids);
+        for (int i = 0; i < rows.size(); i += BATCH_SIZE)
+            jdbc.batchUpdate(INSERT, rows.subList(i, Math.min(rows.size(), i + BATCH_SIZE)));
+    }
+
+    /**
+     * @return ids of at most limit shows most similar to the show, the most similar first
+     **/
+    public List<Long> findSimilarShowIds(long showId, int limit) {
+        return jdbc.queryForList("select similar_show_id from show_similarities where show_id = ? " +
+                "order by ordinal limit ?", Long.class, showId, limit);
+    }
+
+    /**
+     * Removes the neighbours of the show and the show from neighbours of other shows.
+     **/
+    @Transactional
+    public void deleteShow(long showId) {
+        jdbc.update("delete from show_similarities where show_id = ?", showId);
+        jdbc.update("delete from show_similarities where similar_show_id = ?", showId);
+    }
+
+    private void stream(String sql, RowCallbackHandler handler) {
+        jdbc.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            return statement;
+        }, handler);
+    }
+
+    private static class IdCollector implements RowCallbackHandler {
+
+        private long[] ids = new long[1024];
+        private int size;
+
+        @Override
+        public void processRow(ResultSet row) throws SQLException {
+            if (size == ids.length)
+                ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = row.getLong(1);
+        }
+    }
+}
@@ -4,10 +4,20 @@ import com.tomaszstankowski.movieservice.model.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
 
 public interface UserRepository extends JpaRepository<User, String> {
 
     Page<User> findUsersByNameContains(String name, Pageable pageable);
 
     User findByEmail(String email);
+
+    @Query("select u from users u, follows f where f.follower = u.login and f.followed = :login order by u.login")
+    List<User> findFollowers(@Param("login") String login);
+
+    @Query("select u from users u, follows f where f.followed = u.login and f.follower = :login order by u.login")
+    List<User> findFollowed(@Param("login") String login);
 }
@@ -0,0 +1,22 @@
+package com.tomaszstankowski.movieservice.repository;
+
+import lombok.Data;
+
+/*
+Rating written or removed by RatingWriteRepository, with what its caller needs to account for the change.
+ */
+@Data
+public class WrittenRating {
+
+    private final long id;
+
+    /*
+    Rating given before, null if the user has not rated the show or it is not read. The removed one for a removal.
+     */
+    private final Short previous;
+
+    /*
+    Rating count of the show afterwards, null if the aggregates are left to the caller.
+     */
+    private final Long ratingCount;
+}
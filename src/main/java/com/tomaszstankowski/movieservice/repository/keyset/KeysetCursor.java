@@ -0,0 +1,45 @@
+package com.tomaszstankowski.movieservice.repository.keyset;
+
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidCursorException;
+import lombok.Data;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position in a listing ordered by one property with the id as tie-breaker. Encoded as an opaque token,
+ * so clients only pass back what they received in the previous response.
+ **/
+@Data
+public class KeysetCursor {
+
+    private final String property;
+
+    private final Sort.Direction direction;
+
+    private final String id;
+
+    /*
+    Null when the last row had no value of the sorted property.
+     */
+    private final String value;
+
+    public String encode() {
+        String raw = property + "\n" + direction + "\n" + id + "\n" + (value == null ? "" : "=" + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static KeysetCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", 4);
+            if (parts.length != 4)
+                throw new InvalidCursorException(token);
+            String value = parts[3].isEmpty() ? null : parts[3].substring(1);
+            return new KeysetCursor(parts[0], Sort.Direction.fromString(parts[1]), parts[2], value);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(token);
+        }
+    }
+}
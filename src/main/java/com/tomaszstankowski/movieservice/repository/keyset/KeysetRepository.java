@@ -0,0 +1,148 @@
+package com.tomaszstankowski.movieservice.repository.keyset;
+
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidCursorException;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.UnsupportedSortException;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.*;
+import javax.persistence.metamodel.EntityType;
+import java.util.*;
+
+/**
+ * Seeks to the row after the cursor instead of skipping OFFSET rows and never issues a count query.
+ * Only efficient when an index on (property, id) exists, therefore every caller passes its whitelist
+ * of sortable properties.
+ **/
+@Repository
+public class KeysetRepository {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    public <T> KeysetSlice<T> findAll(Class<T> type,
+                                      Specification<T> spec,
+                                      String after,
+                                      Sort sort,
+                                      Set<String> sortableProperties,
+                                      int size) {
+        KeysetCursor cursor = (after == null || after.isEmpty()) ? null : KeysetCursor.decode(after);
+        Sort.Order order = (cursor == null)
+                ? singleOrder(sort)
+                : new Sort.Order(cursor.getDirection(), cursor.getProperty());
+        if (!sortableProperties.contains(order.getProperty()))
+            throw new UnsupportedSortException(new Sort(order));
+
+        EntityType<T> entityType = em.getMetamodel().entity(type);
+        String idProperty = entityType.getId(entityType.getIdType().getJavaType()).getName();
+
+        CriteriaBuilder builder = em.getCriteriaBuilder();
+        CriteriaQuery<T> query = builder.createQuery(type);
+        Root<T> root = query.from(type);
+        List<Predicate> predicates = new ArrayList<>();
+        if (spec != null) {
+            Predicate predicate = spec.toPredicate(root, query, builder);
+            if (predicate != null)
+                predicates.add(predicate);
+        }
+        if (cursor != null)
+            predicates.add(seek(cursor, idProperty, root, builder));
+        query.where(predicates.toArray(new Predicate[predicates.size()]));
+
+        Path<?> sortPath = root.get(order.getProperty());
+        Path<?> idPath = root.get(idProperty);
+        if (order.isAscending())
+            query.orderBy(builder.asc(sortPath), builder.asc(idPath));
+        else
+            query.orderBy(builder.desc(sortPath), builder.desc(idPath));
+
+        List<T> content = em.createQuery(query)
+                .setMaxResults(size + 1)
+                .getResultList();
+        if (content.size() <= size)
+            return new KeysetSlice<>(content, null);
+
+        content = content.subList(0, size);
+        BeanWrapperImpl last = new BeanWrapperImpl(content.get(size - 1));
+        Object value = last.getPropertyValue(order.getProperty());
+        KeysetCursor next = new KeysetCursor(
+                order.getProperty(),
+                order.getDirection(),
+                String.valueOf(last.getPropertyValue(idProperty)),
+                (value == null) ? null : format(value));
+        return new KeysetSlice<>(new ArrayList<>(content), next.encode());
+    }
+
+    private Sort.Order singleOrder(Sort sort) {
+        Iterator<Sort.Order> it = sort.iterator();
+        Sort.Order order = it.next();
+        if (it.hasNext())
+            throw new UnsupportedSortException(sort);
+        return order;
+    }
+
+    /*
+    Rows after (value, id) in the order of the listing. Nulls are treated as the lowest values like MySQL does.
+     */
+    @SuppressWarnings("unchecked")
+    private Predicate seek(KeysetCursor cursor, String idProperty, Root<?> root, CriteriaBuilder builder) {
+        Path<Comparable> idPath = root.get(idProperty);
+        Comparable id = parse(cursor.getId(), idPath.getJavaType(), cursor);
+        if (cursor.getProperty().equals(idProperty))
+            return cursor.getDirection().isAscending()
+                    ? builder.greaterThan(idPath, id)
+                    : builder.lessThan(idPath, id);
+
+        Path<Comparable> path = root.get(cursor.getProperty());
+        if (cursor.getValue() == null) {
+            Predicate sameValue = builder.and(builder.isNull(path), cursor.getDirection().isAscending()
+                    ? builder.greaterThan(idPath, id)
+                    : builder.lessThan(idPath, id));
+            return cursor.getDirection().isAscending()
+                    ? builder.or(sameValue, builder.isNotNull(path))
+                    : sameValue;
+        }
+        Comparable value = parse(cursor.getValue(), path.getJavaType(), cursor);
+        if (cursor.getDirection().isAscending())
+            return builder.or(
+                    builder.greaterThan(path, value),
+                    builder.and(builder.equal(path, value), builder.greaterThan(idPath, id)));
+        return builder.or(
+                builder.lessThan(path, value),
+                builder.and(builder.equal(path, value), builder.lessThan(idPath, id)),
+                builder.isNull(path));
+    }
+
+    private String format(Object value) {
+        if (value instanceof Date)
+            return String.valueOf(((Date) value).getTime());
+        if (value instanceof Enum)
+            return ((Enum) value).name();
+        return value.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparable parse(String value, Class<?> type, KeysetCursor cursor) {
+        try {
+            if (type == String.class)
+                return value;
+            if (Date.class.isAssignableFrom(type))
+                return new Date(Long.parseLong(value));
+            if (type == Long.class || type == long.class)
+                return Long.valueOf(value);
+            if (type == Integer.class || type == int.class)
+                return Integer.valueOf(value);
+            if (type == Short.class || type == short.class)
+                return Short.valueOf(value);
+            if (type.isEnum())
+                return Enum.valueOf((Class<Enum>) type, value);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException(cursor.encode());
+        }
+        throw new InvalidCursorException(cursor.encode());
+    }
+}
@@ -0,0 +1,16 @@
+package com.tomaszstankowski.movieservice.repository.keyset;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class KeysetSlice<T> {
+
+    private final List<T> content;
+
+    /*
+    Encoded cursor pointing after the last element or null if this is the last slice.
+     */
+    private final String next;
+}
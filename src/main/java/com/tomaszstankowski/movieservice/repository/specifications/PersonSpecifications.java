@@ -5,14 +5,27 @@ import com.tomaszstankowski.movieservice.model.enums.Profession;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
 import org.springframework.data.jpa.domain.Specification;
 
+import javax.persistence.criteria.Predicate;
+import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.Set;
 
 public class PersonSpecifications {
 
-    public static Specification<Person> nameContains(String phrase) {
-        return (root, query, builder) -> builder.like(root.<String>get("name"), "%" + phrase + "%");
+    public static Specification<Person> idIn(Collection<Long> ids) {
+        return (root, query, builder) -> ids.isEmpty()
+                ? builder.disjunction()
+                : root.<Long>get("id").in(ids);
+    }
+
+    /*
+    Stands in for the search index when it matches too many people to list their ids.
+     */
+    public static Specification<Person> nameContainsWords(Collection<String> words) {
+        return (root, query, builder) -> builder.and(words.stream()
+                .map(word -> builder.like(builder.lower(root.get("name")), "%" + word + "%"))
+                .toArray(Predicate[]::new));
     }
 
     public static Specification<Person> youngerThan(int birthYear) {
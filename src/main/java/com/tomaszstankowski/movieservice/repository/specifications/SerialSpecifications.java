@@ -3,9 +3,15 @@ package com.tomaszstankowski.movieservice.repository.specifications;
 import com.tomaszstankowski.movieservice.model.entity.Serial;
 import org.springframework.data.jpa.domain.Specification;
 
+import java.util.Collection;
+
 public class SerialSpecifications {
-    public static Specification<Serial> titleContains(String phrase) {
-        return (root, query, builder) -> ShowPredicates.titleContains(phrase, root, query, builder);
+    public static Specification<Serial> idIn(Collection<Long> ids) {
+        return (root, query, builder) -> ShowPredicates.idIn(ids, root, query, builder);
+    }
+
+    public static Specification<Serial> containsWords(Collection<String> words) {
+        return (root, query, builder) -> ShowPredicates.containsWords(words, root, query, builder);
     }
 
     public static Specification<Serial> olderThan(int year) {
@@ -4,6 +4,7 @@ import com.tomaszstankowski.movieservice.model.entity.Genre;
 import com.tomaszstankowski.movieservice.model.entity.Show;
 
 import javax.persistence.criteria.*;
+import java.util.Collection;
 import java.util.Date;
 import java.util.GregorianCalendar;
 
@@ -13,8 +14,24 @@ import java.util.GregorianCalendar;
  **/
 class ShowPredicates {
 
-    static Predicate titleContains(String phrase, Root root, CriteriaQuery query, CriteriaBuilder builder) {
-        return builder.like(root.<String>get("title"), "%" + phrase + "%");
+    static Predicate idIn(Collection<Long> ids, Root root, CriteriaQuery query, CriteriaBuilder builder) {
+        if (ids.isEmpty())
+            return builder.disjunction();
+        return root.get("id").in(ids);
+    }
+
+    /*
+    Stands in for the search index when it matches too many shows to list their ids. Words are expected lower case,
+    letters and digits only, as the index tokenizes them.
+     */
+    static Predicate containsWords(Collection<String> words, Root root, CriteriaQuery query, CriteriaBuilder builder) {
+        Expression<String> title = builder.lower(root.get("title"));
+        Expression<String> description = builder.lower(root.get("description"));
+        return builder.and(words.stream()
+                .map(word -> builder.or(
+                        builder.like(title, "%" + word + "%"),
+                        builder.like(description, "%" + word + "%")))
+                .toArray(Predicate[]::new));
     }
 
     static Predicate olderThan(int year, Root root, CriteriaQuery query, CriteriaBuilder builder) {
@@ -27,9 +44,15 @@ class ShowPredicates {
         return builder.greaterThan(root.<Date>get("dateReleased"), date);
     }
 
+    /*
+    Semi-join instead of a join, so that neither the page nor the count query needs distinct.
+     */
     static Predicate hasAtLeastOneGenre(String[] genres, Root root, CriteriaQuery query, CriteriaBuilder builder) {
-        query.distinct(true);
-        Join<Show, Genre> showGenreJoin = root.join("genres");
-        return showGenreJoin.get("name").in(genres);
+        Subquery<Long> subquery = query.subquery(Long.class);
+        Root<Show> show = subquery.from(Show.class);
+        Join<Show, Genre> showGenreJoin = show.join("genres");
+        subquery.select(show.get("id"))
+                .where(showGenreJoin.get("name").in(genres));
+        return root.get("id").in(subquery);
     }
 }
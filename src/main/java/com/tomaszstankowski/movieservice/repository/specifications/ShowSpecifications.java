@@ -2,10 +2,17 @@ package com.tomaszstankowski.movieservice.repository.specifications;
 
 import com.tomaszstankowski.movieservice.model.entity.Show;
 import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Collection;
+
 public class ShowSpecifications {
 
-    public static Specification<Show> titleContains(String phrase) {
-        return (root, query, builder) -> ShowPredicates.titleContains(phrase, root, query, builder);
+    public static Specification<Show> idIn(Collection<Long> ids) {
+        return (root, query, builder) -> ShowPredicates.idIn(ids, root, query, builder);
+    }
+
+    public static Specification<Show> containsWords(Collection<String> words) {
+        return (root, query, builder) -> ShowPredicates.containsWords(words, root, query, builder);
     }
 
     public static Specification<Show> olderThan(int year) {
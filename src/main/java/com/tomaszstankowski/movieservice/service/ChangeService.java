@@ -0,0 +1,159 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.model.entity.Change;
+import com.tomaszstankowski.movieservice.model.entity.Person;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.enums.ChangeSubject;
+import com.tomaszstankowski.movieservice.repository.ChangeRepository;
+import com.tomaszstankowski.movieservice.repository.ChangeWriteRepository;
+import com.tomaszstankowski.movieservice.repository.PersonRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.event.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+Feed of changes of the catalog for mirroring it incrementally. Changes are recorded after commit
+from events of ShowService and PersonService.
+Sequences are taken when an entry is inserted, not when it commits, so a lower sequence may become visible after
+a higher one and a client already past the higher one would miss it for good. Entries are dated right before they
+take their sequences and commit right after, so the feed stops at the first entry younger than the settle window:
+by the time it leaves the window, every entry with a lower sequence has committed.
+ */
+@Service
+public class ChangeService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeService.class);
+
+    public static final int BATCH_SIZE = 1000;
+
+    /*
+    Concurrent changes of one subject may still deadlock on its entry, the loser records its change again.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final ChangeRepository changeRepo;
+    private final ChangeWriteRepository changeWriteRepo;
+    private final ShowRepository showRepo;
+    private final PersonRepository personRepo;
+    private final long settleMillis;
+
+    public ChangeService(ChangeRepository changeRepo,
+                         ChangeWriteRepository changeWriteRepo,
+                         ShowRepository showRepo,
+                         PersonRepository personRepo,
+                         @Value("${movieservice.changes.settle-seconds:5}") long settleSeconds) {
+        this.changeRepo = changeRepo;
+        this.changeWriteRepo = changeWriteRepo;
+        this.showRepo = showRepo;
+        this.personRepo = personRepo;
+        this.settleMillis = TimeUnit.SECONDS.toMillis(settleSeconds);
+    }
+
+    /**
+     * @param since only changes made after the date are returned
+     * @param after sequence of the last change already read, 0 to start from the date
+     * @return next changes in order of sequence, at most BATCH_SIZE, none made within the settle window
+     **/
+    public List<Change> findChanges(ChangeSubject subject, Date since, long after) {
+        if (after <= 0) {
+            Long first = changeRepo.findFirstSequenceSince(subject, since);
+            if (first == null)
+                return Collections.emptyList();
+            after = first - 1;
+        }
+        Long unsettled = changeRepo.findFirstSequenceSince(subject, new Date(System.currentTimeMillis() - settleMillis));
+        long before = (unsettled == null) ? Long.MAX_VALUE : unsettled;
+        if (before <= after + 1)
+            return Collections.emptyList();
+        return changeRepo.findChanges(subject, since, after, before, new PageRequest(0, BATCH_SIZE));
+    }
+
+    /**
+     * @return current state of shows changed but not removed, by id
+     **/
+    public Map<Long, Show> findChangedShows(List<Change> changes) {
+        return byId(showRepo.findAll(savedIds(changes)), Show::getId);
+    }
+
+    /**
+     * @return current state of people changed but not removed, by id
+     **/
+    public Map<Long, Person> findChangedPeople(List<Change> changes) {
+        return byId(personRepo.findAll(savedIds(changes)), Person::getId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowSaved(ShowSavedEvent event) {
+        record(ChangeSubject.SHOW, event.getShow().getId(), false);
+    }
+
+    /*
+    Imported shows are new, so they have no previous entries to replace.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowsImported(ShowsImportedEvent event) {
+        List<Long> ids = event.getShows().stream()
+                .map(Show::getId)
+                .collect(Collectors.toList());
+        changeRepo.insertShows(ids, new Date());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRated(ShowRatedEvent event) {
+        record(ChangeSubject.SHOW, event.getShowId(), false);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRemoved(ShowRemovedEvent event) {
+        record(ChangeSubject.SHOW, event.getShowId(), true);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPersonSaved(PersonSavedEvent event) {
+        record(ChangeSubject.PERSON, event.getPerson().getId(), false);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPersonRemoved(PersonRemovedEvent event) {
+        record(ChangeSubject.PERSON, event.getPersonId(), true);
+    }
+
+    /*
+    The previous entry of the subject is replaced by one with a new sequence. Failures other than lost deadlocks
+    propagate, a change missing from the log would never reach the mirrors.
+     */
+    private void record(ChangeSubject subject, long id, boolean removed) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                changeWriteRepo.record(subject, id, removed);
+                return;
+            } catch (ConcurrencyFailureException e) {
+                if (attempt == MAX_ATTEMPTS)
+                    throw e;
+                log.warn("Change of {} {} not recorded, attempt {} of {}.", subject, id, attempt, MAX_ATTEMPTS, e);
+            }
+        }
+    }
+
+    private static List<Long> savedIds(List<Change> changes) {
+        return changes.stream()
+                .filter(c -> !c.isRemoved())
+                .map(Change::getSubjectId)
+                .collect(Collectors.toList());
+    }
+
+    private static <T> Map<Long, T> byId(List<T> entities, Function<T, Long> id) {
+        return entities.stream().collect(Collectors.toMap(id, Function.identity()));
+    }
+}
@@ -0,0 +1,34 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.repository.ChangeRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/*
+One-off job adding a change of every show and person saved before the change log existed, so that the feed
+started from the beginning mirrors the whole catalog.
+Run the app once with --movieservice.backfill.changes=true.
+ */
+@Component
+@ConditionalOnProperty("movieservice.backfill.changes")
+public class ChangesBackfill implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangesBackfill.class);
+
+    private final ChangeRepository changeRepo;
+
+    public ChangesBackfill(ChangeRepository changeRepo) {
+        this.changeRepo = changeRepo;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int shows = changeRepo.insertMissingShows();
+        int people = changeRepo.insertMissingPeople();
+        log.info("Added changes of {} shows and {} people.", shows, people);
+    }
+}
@@ -0,0 +1,44 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.model.entity.Participation;
+import com.tomaszstankowski.movieservice.model.entity.Person;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.repository.ExportRepository;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+Bulk reads of the whole catalog in order of id. Consumers get chunks of entities and may use their lazy
+associations, they run within the read only transaction of the export.
+ */
+@Service
+public class ExportService {
+
+    private final ExportRepository exportRepo;
+
+    public ExportService(ExportRepository exportRepo) {
+        this.exportRepo = exportRepo;
+    }
+
+    /**
+     * @param type Show for all shows, Movie or Serial for one type
+     **/
+    @Transactional(readOnly = true)
+    public <T extends Show> void exportShows(Class<T> type, Specification<T> spec, Consumer<List<T>> consumer) {
+        exportRepo.scroll(type, spec, consumer);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportPeople(Consumer<List<Person>> consumer) {
+        exportRepo.scroll(Person.class, null, consumer);
+    }
+
+    @Transactional(readOnly = true)
+    public void exportParticipations(Consumer<List<Participation>> consumer) {
+        exportRepo.scroll(Participation.class, null, consumer, "person", "show");
+    }
+}
@@ -0,0 +1,272 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.repository.FeedRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetCursor;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidCursorException;
+import com.tomaszstankowski.movieservice.service.feed.FeedItem;
+import com.tomaszstankowski.movieservice.service.rating.PendingRating;
+import com.tomaszstankowski.movieservice.service.rating.RatingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Feeds of ratings of followed users, kept per follower in feed_entries so that a page of a feed is a single range read
+instead of a sort of all the ratings of all the followed users. A rating is fanned out to the feeds of the followers
+of its author once written, and a new follower gets the latest ratings of the followed user copied in.
+Feeds are cut down to movieservice.feed.capacity items every movieservice.feed.refresh-interval-minutes.
+
+A single rating is not fanned out on the thread writing it: it is queued, coalesced with a later rating of the same
+user for the same show, and fanned out in batches every movieservice.feed.flush-interval-ms. The feeds of
+the followers reached by a batch are cut down to their capacity right after it, so that between refreshes a feed
+outgrows its capacity by at most one batch. A rating finding the queue full is fanned out at once, the queue is
+flushed before the app stops.
+
+Ratings of users followed by movieservice.feed.fan-out-limit users or more are not fanned out, they are read
+from the ratings of such users when a feed is read and merged in. The set of such users is refreshed together
+with trimming, a user becoming popular meanwhile is still fanned out until then. A user no longer popular has their
+latest ratings copied into the feeds of their followers, as the ones given while popular were never fanned out.
+Feeds are derived data: a failed fan-out is logged and does not fail the rating.
+ */
+@Service
+@ManagedResource(objectName = "movieservice:type=Index,name=feed")
+public class FeedService {
+
+    private static final Logger log = LoggerFactory.getLogger(FeedService.class);
+
+    private static final String CURSOR_PROPERTY = "date";
+
+    private final FeedRepository repo;
+
+    private final int fanOutLimit;
+    private final int capacity;
+
+    private final RatingQueue queue;
+    private final Object flushLock = new Object();
+
+    private volatile Set<String> popular = Collections.emptySet();
+
+    private final LongAdder fannedOut = new LongAdder();
+    private final LongAdder pulled = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder trimmed = new LongAdder();
+
+    public FeedService(FeedRepository repo,
+                       @Value("${movieservice.feed.fan-out-limit:10000}") int fanOutLimit,
+                       @Value("${movieservice.feed.capacity:1000}") int capacity,
+                       @Value("${movieservice.feed.queue-capacity:10000}") int queueCapacity) {
+        this.repo = repo;
+        this.fanOutLimit = fanOutLimit;
+        this.capacity = capacity;
+        this.queue = new RatingQueue(queueCapacity);
+    }
+
+    /**
+     * Queues the written rating to be added to the feeds of its author's followers by the next flush.
+     **/
+    public void rated(PendingRating rating) {
+        if (popular.contains(rating.getLogin())) {
+            pulled.increment();
+            return;
+        }
+        if (queue.offer(rating))
+            return;
+        try {
+            repo.fanOut(rating.getShowId(), rating.getLogin());
+            fannedOut.increment();
+        } catch (DataAccessException e) {
+            failed.increment();
+            log.warn("Rating of show {} by {} not added to feeds.", rating.getShowId(), rating.getLogin(), e);
+        }
+    }
+
+    /**
+     * Fans out queued ratings batch by batch until the queue is empty.
+     **/
+    @PreDestroy
+    @Scheduled(initialDelayString = "${movieservice.feed.flush-interval-ms:200}",
+            fixedDelayString = "${movieservice.feed.flush-interval-ms:200}")
+    @ManagedOperation
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingRating> batch;
+            while (!(batch = queue.drain(FeedRepository.BATCH_SIZE)).isEmpty()) {
+                ratedAll(batch);
+                Set<String> authors = new HashSet<>();
+                for (PendingRating rating : batch)
+                    authors.add(rating.getLogin());
+                try {
+                    trimmed.add(repo.trimFollowers(authors, capacity));
+                } catch (DataAccessException e) {
+                    log.warn("Feeds of followers of {} users not trimmed.", authors.size(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the written ratings to the feeds of their authors' followers, ratings not written are skipped.
+     **/
+    public void ratedAll(List<PendingRating> ratings) {
+        List<PendingRating> fanned = new ArrayList<>(ratings.size());
+        for (PendingRating rating : ratings)
+            if (!popular.contains(rating.getLogin()))
+                fanned.add(rating);
+        pulled.add(ratings.size() - fanned.size());
+        if (fanned.isEmpty())
+            return;
+        try {
+            repo.fanOutAll(fanned);
+            fannedOut.add(fanned.size());
+        } catch (DataAccessException e) {
+            failed.add(fanned.size());
+            log.warn("Batch of {} ratings not added to feeds.", fanned.size(), e);
+        }
+    }
+
+    public void followed(String follower, String followed) {
+        if (popular.contains(followed))
+            return;
+        try {
+            repo.copyLatest(follower, followed, capacity);
+        } catch (DataAccessException e) {
+            failed.increment();
+            log.warn("Ratings of {} not added to the feed of {}.", followed, follower, e);
+        }
+    }
+
+    /**
+     * Removes the removed rating from all the feeds it was fanned out to.
+     **/
+    public void unrated(long ratingId) {
+        try {
+            repo.deleteRating(ratingId);
+        } catch (DataAccessException e) {
+            failed.increment();
+            log.warn("Rating {} not removed from feeds.", ratingId, e);
+        }
+    }
+
+    public void unfollowed(String follower, String followed) {
+        repo.deleteAuthor(follower, followed);
+    }
+
+    public void removed(String login) {
+        repo.deleteOwner(login);
+    }
+
+    /**
+     * @param after cursor returned with the previous slice, the feed is read from the newest rating if null or empty
+     * @return ids of at most size ratings of the feed of the user, the newest first
+     **/
+    public KeysetSlice<Long> findFeed(String login, String after, int size) {
+        FeedItem cursor = (after == null || after.isEmpty()) ? null : decode(after);
+        List<FeedItem> items = new ArrayList<>(repo.findEntries(login, cursor, size + 1));
+        for (String author : repo.findFollowed(login, popular))
+            items.addAll(repo.findRatings(author, cursor, size + 1));
+        items.sort(FeedItem.NEWEST_FIRST);
+
+        Set<Long> seen = new HashSet<>();
+        List<Long> ids = new ArrayList<>(size);
+        FeedItem last = null;
+        for (FeedItem item : items) {
+            if (!seen.add(item.getRatingId()))
+                continue;
+            if (ids.size() == size)
+                return new KeysetSlice<>(ids, encode(last));
+            ids.add(item.getRatingId());
+            last = item;
+        }
+        return new KeysetSlice<>(ids, null);
+    }
+
+    private static String encode(FeedItem item) {
+        return new KeysetCursor(CURSOR_PROPERTY, Sort.Direction.DESC, String.valueOf(item.getRatingId()),
+                String.valueOf(item.getDate().getTime())).encode();
+    }
+
+    private static FeedItem decode(String token) {
+        KeysetCursor cursor = KeysetCursor.decode(token);
+        if (!CURSOR_PROPERTY.equals(cursor.getProperty()) || cursor.getDirection() != Sort.Direction.DESC
+                || cursor.getValue() == null)
+            throw new InvalidCursorException(token);
+        try {
+            return new FeedItem(Long.parseLong(cursor.getId()), new Date(Long.parseLong(cursor.getValue())));
+        } catch (NumberFormatException e) {
+            throw new InvalidCursorException(token);
+        }
+    }
+
+    /*
+    Finds the users whose ratings are read instead of fanned out and cuts feeds down to their capacity.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "#{${movieservice.feed.refresh-interval-minutes:10} * 60000}",
+            fixedDelayString = "#{${movieservice.feed.refresh-interval-minutes:10} * 60000}")
+    @ManagedOperation
+    public void refresh() {
+        long start = System.currentTimeMillis();
+        Set<String> previous = popular;
+        popular = Collections.unmodifiableSet(new HashSet<>(repo.findPopular(fanOutLimit)));
+        for (String author : previous)
+            if (!popular.contains(author))
+                backFill(author);
+        int removed = repo.trim(capacity);
+        trimmed.add(removed);
+        log.info("Feeds refreshed in {} ms, {} popular users, {} items trimmed.",
+                System.currentTimeMillis() - start, popular.size(), removed);
+    }
+
+    private void backFill(String author) {
+        try {
+            repo.copyLatestToFollowers(author, capacity);
+        } catch (DataAccessException e) {
+            failed.increment();
+            log.warn("Ratings of {} not added to the feeds of their followers.", author, e);
+        }
+    }
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @ManagedAttribute
+    public int getPopularUsers() {
+        return popular.size();
+    }
+
+    @ManagedAttribute
+    public long getFannedOut() {
+        return fannedOut.sum();
+    }
+
+    @ManagedAttribute
+    public long getPulled() {
+        return pulled.sum();
+    }
+
+    @ManagedAttribute
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @ManagedAttribute
+    public long getTrimmed() {
+        return trimmed.sum();
+    }
+}
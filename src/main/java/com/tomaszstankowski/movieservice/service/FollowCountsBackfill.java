@@ -0,0 +1,34 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.repository.FollowRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/*
+One-off job filling follower_count and followed_count of users who followed or were followed before the counts
+existed. The primary key of follows is not added to a table created before by the schema update, add it by hand
+with: alter table follows add primary key (followed, follower).
+Run the app once with --movieservice.backfill.follow-counts=true.
+ */
+@Component
+@ConditionalOnProperty("movieservice.backfill.follow-counts")
+public class FollowCountsBackfill implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(FollowCountsBackfill.class);
+
+    private final FollowRepository followRepo;
+
+    public FollowCountsBackfill(FollowRepository followRepo) {
+        this.followRepo = followRepo;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int updated = followRepo.recalculateCounts();
+        log.info("Recalculated follow counts of {} users.", updated);
+    }
+}
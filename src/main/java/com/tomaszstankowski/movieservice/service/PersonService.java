@@ -1,31 +1,66 @@
 package com.tomaszstankowski.movieservice.service;
 
+import com.tomaszstankowski.movieservice.model.dto.SuggestionDTO;
 import com.tomaszstankowski.movieservice.model.entity.Participation;
 import com.tomaszstankowski.movieservice.model.entity.Person;
 import com.tomaszstankowski.movieservice.model.enums.Profession;
+import com.tomaszstankowski.movieservice.repository.IdProjectionRepository;
 import com.tomaszstankowski.movieservice.repository.ParticipationRepository;
 import com.tomaszstankowski.movieservice.repository.PersonRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
+import com.tomaszstankowski.movieservice.service.event.PersonRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.PersonSavedEvent;
 import com.tomaszstankowski.movieservice.service.exception.conflict.PersonAlreadyExistsException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.PersonNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidPersonException;
+import com.tomaszstankowski.movieservice.service.index.IdBitmap;
+import com.tomaszstankowski.movieservice.service.index.SearchIndex;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class PersonService {
 
+    private static final Set<String> CURSOR_SORTABLE = new HashSet<>(
+            Arrays.asList("id", "name", "birthDate"));
+
+    private static final int PAGE_SIZE = 10;
+
+    /*
+    Pages ranked by relevance list at most that many best matching people.
+     */
+    private static final int MAX_SEARCH_RESULTS = 1000;
+
     private final PersonRepository personRepo;
     private final ParticipationRepository participationRepo;
+    private final KeysetRepository keysetRepo;
+    private final IdProjectionRepository idRepo;
+    private final SearchIndex searchIndex;
+    private final ApplicationEventPublisher publisher;
 
-    public PersonService(PersonRepository personRepo, ParticipationRepository participationRepo) {
+    public PersonService(PersonRepository personRepo,
+                         ParticipationRepository participationRepo,
+                         KeysetRepository keysetRepo,
+                         IdProjectionRepository idRepo,
+                         SearchIndex searchIndex,
+                         ApplicationEventPublisher publisher) {
         this.personRepo = personRepo;
         this.participationRepo = participationRepo;
+        this.keysetRepo = keysetRepo;
+        this.idRepo = idRepo;
+        this.searchIndex = searchIndex;
+        this.publisher = publisher;
     }
 
     public Person findPerson(long id) {
@@ -36,19 +71,63 @@ public class PersonService {
         return personRepo.findAll(spec, createPageable(page, sort));
     }
 
+    public KeysetSlice<Person> findAll(Specification<Person> spec, String after, Sort sort) {
+        return keysetRepo.findAll(Person.class, spec, after, sort, CURSOR_SORTABLE, PAGE_SIZE);
+    }
+
+    /**
+     * @return ids of the best people matching the phrase, the most relevant first
+     **/
+    public List<Long> searchPeople(String phrase) {
+        return searchIndex.searchPeople(phrase, MAX_SEARCH_RESULTS);
+    }
+
+    /**
+     * @return ids of all people matching the phrase
+     **/
+    public IdBitmap matchPeople(String phrase) {
+        return searchIndex.matchPeople(phrase);
+    }
+
+    public List<SuggestionDTO> suggestPeople(String prefix, int limit) {
+        return searchIndex.suggestPeople(prefix, limit);
+    }
+
+    /*
+    Database only filters the ranked candidates, the page is cut in their order.
+     */
+    public Page<Person> findAllByRelevance(Specification<Person> spec, List<Long> rankedIds, int page) {
+        Set<Long> matching = new HashSet<>(idRepo.findIds(Person.class, spec));
+        List<Long> ordered = rankedIds.stream()
+                .filter(matching::contains)
+                .collect(Collectors.toList());
+        Pageable pageable = createPageable(page, null);
+        List<Long> pageIds = ordered.subList(
+                Math.min(pageable.getOffset(), ordered.size()),
+                Math.min(pageable.getOffset() + pageable.getPageSize(), ordered.size()));
+        Map<Long, Person> people = personRepo.findAll(pageIds).stream()
+                .collect(Collectors.toMap(Person::getId, Function.identity()));
+        List<Person> content = pageIds.stream()
+                .map(people::get)
+                .collect(Collectors.toList());
+        return new PageImpl<>(content, pageable, ordered.size());
+    }
+
     public List<Participation> findParticipations(long personId, Profession role) {
         Person person = personRepo.findOne(personId);
         if (person == null)
             throw new PersonNotFoundException(personId);
         if (role == null)
-            return person.getParticipations();
+            return participationRepo.findByPerson(person);
         return participationRepo.findByPersonAndRole(person, role);
     }
 
     public Person addPerson(Person person) {
         validatePerson(person);
         checkIfPersonAlreadyExists(person);
-        return personRepo.save(person);
+        Person saved = personRepo.save(person);
+        publisher.publishEvent(new PersonSavedEvent(saved));
+        return saved;
     }
 
     public Person editPerson(long id, Person body) {
@@ -61,13 +140,16 @@ public class PersonService {
         person.setBirthPlace(body.getBirthPlace());
         person.getProfessions().clear();
         person.getProfessions().addAll(body.getProfessions());
-        return personRepo.save(person);
+        Person saved = personRepo.save(person);
+        publisher.publishEvent(new PersonSavedEvent(saved));
+        return saved;
     }
 
     public void removePerson(long id) {
         if (personRepo.findOne(id) == null)
             throw new PersonNotFoundException(id);
         personRepo.delete(id);
+        publisher.publishEvent(new PersonRemovedEvent(id));
     }
 
     private void checkIfPersonAlreadyExists(Person person) {
@@ -82,6 +164,6 @@ public class PersonService {
     }
 
     private Pageable createPageable(int page, Sort sort) {
-        return new PageRequest(page, 10, sort);
+        return new PageRequest(page, PAGE_SIZE, sort);
     }
 }
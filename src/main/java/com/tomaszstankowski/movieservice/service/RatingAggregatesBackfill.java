@@ -0,0 +1,39 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.repository.RatingRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/*
+One-off job filling rating_sum and rating_count of shows rated before the aggregates existed. It first removes
+duplicate ratings, all but the latest of each user and show, after which the unique constraint on them is added
+on the next start.
+Run the app once with --movieservice.backfill.rating-aggregates=true.
+ */
+@Component
+@ConditionalOnProperty("movieservice.backfill.rating-aggregates")
+public class RatingAggregatesBackfill implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(RatingAggregatesBackfill.class);
+
+    private final ShowRepository showRepo;
+    private final RatingRepository ratingRepo;
+
+    public RatingAggregatesBackfill(ShowRepository showRepo, RatingRepository ratingRepo) {
+        this.showRepo = showRepo;
+        this.ratingRepo = ratingRepo;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int duplicates = ratingRepo.deleteDuplicates();
+        log.info("Removed {} duplicate ratings.", duplicates);
+        int updated = showRepo.recalculateRatingAggregates();
+        log.info("Recalculated rating aggregates of {} shows.", updated);
+    }
+}
@@ -0,0 +1,189 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.model.entity.RatingHistogram;
+import com.tomaszstankowski.movieservice.repository.RatingWriteRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.rating.RatingCounters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Rating aggregates of shows kept in memory, so that raters of a popular show do not wait for each other on its row.
+Ratings are still written at once, only the changes of their histograms, and so of rating_sum and rating_count,
+are counted in memory and added to the rows of shows in one batch every flush interval. ShowRatedEvent is
+published by the flush, so the cached representations of a show may lag behind its ratings by up to the interval.
+ModelMapper adds changes not yet flushed to the aggregates read from the database.
+
+A rating changed by two requests at the same time may be counted twice, so shows flushed since the last
+reconciliation have their aggregates recalculated from their ratings every reconcile interval.
+Counters are off by default, turn them on with movieservice.ratings.counters.enabled=true.
+They only fit a single instance of the app, as other instances would not see the changes until flushed.
+ */
+@Service
+@ManagedResource(objectName = "movieservice:type=Counters,name=ratings")
+public class RatingCounterService {
+
+    private static final Logger log = LoggerFactory.getLogger(RatingCounterService.class);
+
+    private static final int RECONCILE_CHUNK_SIZE = 1000;
+
+    private final RatingCounters counters;
+    private final RatingWriteRepository ratingWriteRepo;
+    private final ShowRepository showRepo;
+    private final ApplicationEventPublisher publisher;
+
+    private final boolean enabled;
+
+    private final Object flushLock = new Object();
+    private final Set<Long> flushedShows = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+    private final LongAdder reconciled = new LongAdder();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+
+    public RatingCounterService(RatingCounters counters,
+                                RatingWriteRepository ratingWriteRepo,
+                                ShowRepository showRepo,
+                                ApplicationEventPublisher publisher,
+                                @Value("${movieservice.ratings.counters.enabled:false}") boolean enabled) {
+        this.counters = counters;
+        this.ratingWriteRepo = ratingWriteRepo;
+        this.showRepo = showRepo;
+        this.publisher = publisher;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param previous rating replaced, null if the user rates the show for the first time
+     **/
+    public void rated(long showId, Short previous, short rating) {
+        if (previous != null)
+            counters.add(showId, previous, -1);
+        counters.add(showId, rating, 1);
+    }
+
+    public void unrated(long showId, short previous) {
+        counters.add(showId, previous, -1);
+    }
+
+    @Scheduled(initialDelayString = "${movieservice.ratings.counters.flush-interval-ms:1000}",
+            fixedDelayString = "${movieservice.ratings.counters.flush-interval-ms:1000}")
+    @ManagedOperation
+    public void flush() {
+        synchronized (flushLock) {
+            Map<Long, RatingHistogram> changes = counters.drain();
+            if (changes.isEmpty())
+                return;
+            long start = System.nanoTime();
+            Map<Long, Long> ratingCounts;
+            try {
+                ratingCounts = ratingWriteRepo.addToAggregates(changes);
+            } catch (DataAccessException e) {
+                counters.restore(changes);
+                failedFlushes.increment();
+                log.warn("Rating counters of {} shows not flushed, retrying on the next flush.", changes.size(), e);
+                return;
+            }
+            long nanos = System.nanoTime() - start;
+            flushes.increment();
+            lastFlushNanos = nanos;
+            if (nanos > maxFlushNanos)
+                maxFlushNanos = nanos;
+            flushedShows.addAll(changes.keySet());
+            ratingCounts.forEach((showId, ratingCount) -> publisher.publishEvent(new ShowRatedEvent(showId, ratingCount)));
+        }
+    }
+
+    /**
+     * Recalculates aggregates of shows flushed since the last reconciliation from their ratings.
+     **/
+    @Scheduled(initialDelayString = "#{${movieservice.ratings.counters.reconcile-interval-seconds:600} * 1000}",
+            fixedDelayString = "#{${movieservice.ratings.counters.reconcile-interval-seconds:600} * 1000}")
+    @ManagedOperation
+    public void reconcile() {
+        synchronized (flushLock) {
+            flush();
+            List<Long> ids = new ArrayList<>(flushedShows);
+            flushedShows.removeAll(ids);
+            try {
+                for (int i = 0; i < ids.size(); i += RECONCILE_CHUNK_SIZE)
+                    reconciled.add(showRepo.recalculateRatingAggregates(
+                            ids.subList(i, Math.min(ids.size(), i + RECONCILE_CHUNK_SIZE))));
+            } catch (DataAccessException e) {
+                flushedShows.addAll(ids);
+                log.warn("Rating aggregates of {} shows not reconciled.", ids.size(), e);
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRemoved(ShowRemovedEvent event) {
+        counters.remove(event.getShowId());
+        flushedShows.remove(event.getShowId());
+    }
+
+    /*
+    Changes still in memory are written before the DataSource goes away, which this bean depends on through
+    its repositories, so it is destroyed after this bean.
+     */
+    @PreDestroy
+    public void flushOnShutdown() {
+        if (enabled)
+            flush();
+    }
+
+    @ManagedAttribute
+    public int getShows() {
+        return counters.size();
+    }
+
+    @ManagedAttribute
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    @ManagedAttribute
+    public long getFailedFlushes() {
+        return failedFlushes.sum();
+    }
+
+    @ManagedAttribute
+    public long getReconciled() {
+        return reconciled.sum();
+    }
+
+    @ManagedAttribute
+    public double getLastFlushMillis() {
+        return lastFlushNanos / 1e6;
+    }
+
+    @ManagedAttribute
+    public double getMaxFlushMillis() {
+        return maxFlushNanos / 1e6;
+    }
+}
@@ -0,0 +1,307 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.repository.RatingWriteRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.repository.WrittenRating;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
+import com.tomaszstankowski.movieservice.service.exception.not_found.RatingNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.not_found.ShowNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.unavailable.RatingQueueFullException;
+import com.tomaszstankowski.movieservice.service.rating.PendingRating;
+import com.tomaszstankowski.movieservice.service.rating.RatingQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Write-behind mode of rating shows, for bursts of ratings too large to be written one transaction each.
+A rating is validated and acknowledged at once, queued and written later in JDBC batches together with the other
+ratings queued meanwhile. Queued ratings of one user for one show are coalesced, the last one wins.
+A rating is rejected once the queue is full, with the time after which to try again.
+
+Ratings not yet written are held only in memory: they are written before the app stops, but lost if it crashes.
+The queue is drained in the first phase of stopping, before beans like the DataSource are destroyed.
+Batches failing on the database are put back and retried on the next flush. The mode is off by default,
+turn it on with movieservice.ratings.write-behind.enabled=true. Counters are exposed over JMX.
+ */
+@Service
+@ManagedResource(objectName = "movieservice:type=Queue,name=ratings")
+public class RatingIngestService implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(RatingIngestService.class);
+
+    /*
+    Stops first among lifecycle beans, so that the queue is drained while every bean it is written through is there.
+     */
+    private static final int PHASE = Integer.MAX_VALUE;
+
+    private final ShowService showService;
+    private final ShowRepository showRepo;
+    private final RatingWriteRepository ratingWriteRepo;
+    private final TrendingService trending;
+    private final RecommendationService recommendations;
+    private final FeedService feed;
+    private final ApplicationEventPublisher publisher;
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long retryAfterSeconds;
+    private final long drainTimeoutSeconds;
+
+    private final RatingQueue queue;
+    private final Object flushLock = new Object();
+    private volatile boolean running;
+
+    private final LongAdder flushed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder requeued = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+
+    public RatingIngestService(ShowService showService,
+                               ShowRepository showRepo,
+                               RatingWriteRepository ratingWriteRepo,
+                               TrendingService trending,
+                               RecommendationService recommendations,
+                               FeedService feed,
+                               ApplicationEventPublisher publisher,
+                               @Value("${movieservice.ratings.write-behind.enabled:false}") boolean enabled,
+                               @Value("${movieservice.ratings.write-behind.capacity:100000}") int capacity,
+                               @Value("${movieservice.ratings.write-behind.batch-size:500}") int batchSize,
+                               @Value("${movieservice.ratings.write-behind.flush-interval-ms:200}") long flushIntervalMillis,
+                               @Value("${movieservice.ratings.write-behind.retry-after-seconds:1}") long retryAfterSeconds,
+                               @Value("${movieservice.ratings.write-behind.drain-timeout-seconds:30}") long drainTimeoutSeconds) {
+        this.showService = showService;
+        this.showRepo = showRepo;
+        this.ratingWriteRepo = ratingWriteRepo;
+        this.trending = trending;
+        this.recommendations = recommendations;
+        this.feed = feed;
+        this.publisher = publisher;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+        this.queue = new RatingQueue(capacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Validates and queues the rating, it is written by the next flush.
+     **/
+    public void addRating(long showId, String login, short value) {
+        ShowService.validateRating(value);
+        if (!showRepo.exists(showId))
+            throw new ShowNotFoundException(showId);
+        if (!running || !queue.offer(new PendingRating(showId, login, value, new Date())))
+            throw new RatingQueueFullException(retryAfterSeconds);
+        trending.rated(showId);
+        recommendations.rated(login, showId, value);
+    }
+
+    /**
+     * Removes the rating at once, together with a queued one, so that a flush does not bring it back.
+     **/
+    public void removeRating(long showId, String login) {
+        synchronized (flushLock) {
+            boolean queued = queue.discard(showId, login);
+            try {
+                showService.removeRating(showId, login);
+            } catch (RatingNotFoundException e) {
+                if (!queued)
+                    throw e;
+            }
+        }
+    }
+
+    /**
+     * Writes queued ratings batch by batch until the queue is empty or a batch fails.
+     **/
+    @Scheduled(initialDelayString = "${movieservice.ratings.write-behind.flush-interval-ms:200}",
+            fixedDelayString = "${movieservice.ratings.write-behind.flush-interval-ms:200}")
+    @ManagedOperation
+    public void flush() {
+        synchronized (flushLock) {
+            List<PendingRating> batch;
+            while (!(batch = queue.drain(batchSize)).isEmpty())
+                if (!write(batch))
+                    return;
+        }
+    }
+
+    private boolean write(List<PendingRating> batch) {
+        long start = System.nanoTime();
+        Map<Long, Long> ratingCounts;
+        try {
+            ratingCounts = ratingWriteRepo.upsertAll(batch);
+        } catch (DataIntegrityViolationException e) {
+            ratingCounts = writeOneByOne(batch);
+        } catch (DataAccessException e) {
+            queue.requeue(batch);
+            requeued.add(batch.size());
+            log.warn("Batch of {} ratings not written, retrying on the next flush.", batch.size(), e);
+            return false;
+        }
+        long nanos = System.nanoTime() - start;
+        flushes.increment();
+        flushNanos.add(nanos);
+        lastFlushNanos = nanos;
+        if (nanos > maxFlushNanos)
+            maxFlushNanos = nanos;
+        flushed.add(batch.size());
+        ratingCounts.forEach((showId, ratingCount) -> publisher.publishEvent(new ShowRatedEvent(showId, ratingCount)));
+        feed.ratedAll(batch);
+        return true;
+    }
+
+    /*
+    Called when some of the raters were removed since their ratings were queued, the rest of the batch is kept.
+     */
+    private Map<Long, Long> writeOneByOne(List<PendingRating> batch) {
+        Map<Long, Long> ratingCounts = new HashMap<>();
+        for (PendingRating rating : batch) {
+            try {
+                WrittenRating written = ratingWriteRepo.upsert(rating.getShowId(), rating.getLogin(), rating.getRating(),
+                        rating.getDate());
+                ratingCounts.put(rating.getShowId(), written.getRatingCount());
+            } catch (DataIntegrityViolationException e) {
+                dropped.increment();
+                log.warn("Rating of show {} by {} dropped, the show or the user does not exist.",
+                        rating.getShowId(), rating.getLogin());
+            } catch (DataAccessException e) {
+                queue.requeue(Collections.singletonList(rating));
+                requeued.increment();
+            }
+        }
+        return ratingCounts;
+    }
+
+    @Override
+    public void start() {
+        running = enabled;
+    }
+
+    /*
+    New ratings are rejected from now on, the queued ones are written before the database goes away.
+     */
+    @Override
+    public void stop() {
+        if (!running)
+            return;
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainTimeoutSeconds);
+        try {
+            while (queue.size() > 0 && System.nanoTime() < deadline) {
+                flush();
+                if (queue.size() > 0)
+                    Thread.sleep(flushIntervalMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (queue.size() > 0)
+            log.error("{} acknowledged ratings not written.", queue.size());
+    }
+
+    @Override
+    public void stop(Runnable callback) {
+        stop();
+        callback.run();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return true;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @ManagedAttribute
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @ManagedAttribute
+    public int getCapacity() {
+        return queue.capacity();
+    }
+
+    @ManagedAttribute
+    public long getAccepted() {
+        return queue.accepted();
+    }
+
+    @ManagedAttribute
+    public long getCoalesced() {
+        return queue.coalesced();
+    }
+
+    @ManagedAttribute
+    public long getRejected() {
+        return queue.rejected();
+    }
+
+    @ManagedAttribute
+    public long getFlushed() {
+        return flushed.sum();
+    }
+
+    @ManagedAttribute
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @ManagedAttribute
+    public long getRequeued() {
+        return requeued.sum();
+    }
+
+    @ManagedAttribute
+    public long getFlushes() {
+        return flushes.sum();
+    }
+
+    @ManagedAttribute
+    public double getLastFlushMillis() {
+        return lastFlushNanos / 1e6;
+    }
+
+    @ManagedAttribute
+    public double getMaxFlushMillis() {
+        return maxFlushNanos / 1e6;
+    }
+
+    @ManagedAttribute
+    public double getMeanFlushMillis() {
+        long count = flushes.sum();
+        return count == 0 ? 0 : flushNanos.sum() / 1e6 / count;
+    }
+}
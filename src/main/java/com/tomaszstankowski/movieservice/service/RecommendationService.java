@@ -0,0 +1,192 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.repository.RecommendationRepository;
+import com.tomaszstankowski.movieservice.repository.ShowSimilarityRepository;
+import com.tomaszstankowski.movieservice.service.event.RatingMatrixBuiltEvent;
+import com.tomaszstankowski.movieservice.service.index.TopRatedIndex;
+import com.tomaszstankowski.movieservice.service.similar.RatingMatrix;
+import com.tomaszstankowski.movieservice.service.similar.Recommender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/*
+Recommendations for users scored in memory by a Recommender, without reading ratings or follows per request.
+The Recommender holds the RatingMatrix built by SimilarShowsService, handed over by a RatingMatrixBuiltEvent on the
+thread of its job, together with all follows, genres of shows and neighbours, which are read again every
+movieservice.recommendations.rebuild-interval-minutes. So ratings are as fresh as the last rebuild of similar shows,
+and ratings of users left out of that matrix for rating too many shows are not taken into account. Ratings given
+since the matrix was taken are kept per user, at most MAX_RECENT of them, so that shows just rated are not
+recommended. They are kept for at most movieservice.recommendations.max-recent-users users and dropped after
+movieservice.recommendations.recent-max-age-minutes even if no new matrix comes, a user rating once the limit is
+reached is not kept until the next matrix. Ratings still queued by write-behind when the matrix is taken are left out
+until the next one. Off by default, turn it on with movieservice.recommendations.enabled=true along with
+movieservice.similar.enabled, until then no ratings are kept and best rated shows are recommended.
+Rebuilds can be run by hand over JMX.
+ */
+@Service
+@ManagedResource(objectName = "movieservice:type=Index,name=recommendations")
+public class RecommendationService {
+
+    public static final int MAX_LIMIT = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(RecommendationService.class);
+
+    private static final int MAX_RECENT = 100;
+
+    private final ShowSimilarityRepository similarityRepo;
+    private final RecommendationRepository recommendationRepo;
+    private final TopRatedIndex topRatedIndex;
+
+    private final boolean enabled;
+    private final float itemWeight;
+    private final float followWeight;
+    private final float genreWeight;
+    private final int maxRecentUsers;
+    private final long recentMaxAgeMillis;
+
+    private final Object rebuildLock = new Object();
+    private volatile RatingMatrix matrix;
+    private volatile Recommender recommender;
+    private final Map<String, Map<Long, RecentRating>> recent = new ConcurrentHashMap<>();
+
+    public RecommendationService(ShowSimilarityRepository similarityRepo,
+                                 RecommendationRepository recommendationRepo,
+                                 TopRatedIndex topRatedIndex,
+                                 @Value("${movieservice.recommendations.enabled:false}") boolean enabled,
+                                 @Value("${movieservice.recommendations.item-weight:1.0}") float itemWeight,
+                                 @Value("${movieservice.recommendations.follow-weight:0.5}") float followWeight,
+                                 @Value("${movieservice.recommendations.genre-weight:0.25}") float genreWeight,
+                                 @Value("${movieservice.recommendations.max-recent-users:100000}") int maxRecentUsers,
+                                 @Value("${movieservice.recommendations.recent-max-age-minutes:1440}") long recentMaxAgeMinutes) {
+        this.similarityRepo = similarityRepo;
+        this.recommendationRepo = recommendationRepo;
+        this.topRatedIndex = topRatedIndex;
+        this.enabled = enabled;
+        this.itemWeight = itemWeight;
+        this.followWeight = followWeight;
+        this.genreWeight = genreWeight;
+        this.maxRecentUsers = maxRecentUsers;
+        this.recentMaxAgeMillis = TimeUnit.MINUTES.toMillis(recentMaxAgeMinutes);
+        this.matrix = new RatingMatrix.Builder(new long[0], 0, Integer.MAX_VALUE).keepLogins().build();
+        this.recommender = new Recommender.Builder(matrix, itemWeight, followWeight, genreWeight).build();
+    }
+
+    public void rated(String login, long showId, short rating) {
+        if (!enabled || recent.size() >= maxRecentUsers && !recent.containsKey(login))
+            return;
+        RecentRating recentRating = new RecentRating(rating, System.currentTimeMillis());
+        recent.compute(login, (k, ratings) -> {
+            if (ratings == null)
+                ratings = Collections.synchronizedMap(new LinkedHashMap<Long, RecentRating>() {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Long, RecentRating> eldest) {
+                        return size() > MAX_RECENT;
+                    }
+                });
+            ratings.put(showId, recentRating);
+            return ratings;
+        });
+    }
+
+    /**
+     * @return ids of at most limit shows recommended to the user, the best first
+     **/
+    public List<Long> recommend(String login, int limit) {
+        Map<Long, Short> ratings = new HashMap<>();
+        Map<Long, RecentRating> recentRatings = recent.get(login);
+        if (recentRatings != null)
+            synchronized (recentRatings) {
+                recentRatings.forEach((showId, rating) -> ratings.put(showId, rating.rating));
+            }
+        return recommender.recommend(login, ratings, limit,
+                (genre, count) -> topRatedIndex.findTop(genre, null, null, 1, count));
+    }
+
+    @EventListener
+    public void onRatingMatrixBuilt(RatingMatrixBuiltEvent event) {
+        if (!enabled)
+            return;
+        matrix = event.getMatrix();
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.error("Recommendations not rebuilt.", e);
+        }
+    }
+
+    @ManagedOperation
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            RatingMatrix matrix = this.matrix;
+            Recommender.Builder builder = new Recommender.Builder(matrix, itemWeight, followWeight, genreWeight);
+            recommendationRepo.scanFollows(builder::addFollow);
+            recommendationRepo.scanShowGenres(builder::addGenre);
+            similarityRepo.scanSimilarities(builder::addNeighbour);
+            recommender = builder.build();
+            forgetRecent(matrix.takenMillis());
+            log.info("Recommendations built from {} ratings of {} users, {} follows and {} neighbours in {} ms.",
+                    recommender.ratings(), recommender.users(), recommender.follows(), recommender.neighbours(),
+                    System.currentTimeMillis() - start);
+        }
+    }
+
+    /*
+    Ratings given before the matrix was taken are read into it, older ones are dropped even if no matrix came since.
+     */
+    private void forgetRecent(long takenMillis) {
+        for (String login : recent.keySet())
+            recent.computeIfPresent(login, (k, ratings) -> {
+                synchronized (ratings) {
+                    ratings.values().removeIf(rating -> rating.millis < takenMillis);
+                    return ratings.isEmpty() ? null : ratings;
+                }
+            });
+    }
+
+    @Scheduled(initialDelayString = "#{${movieservice.recommendations.rebuild-interval-minutes:60} * 60000}",
+            fixedDelayString = "#{${movieservice.recommendations.rebuild-interval-minutes:60} * 60000}")
+    public void scheduledRebuild() {
+        if (!enabled)
+            return;
+        forgetRecent(System.currentTimeMillis() - recentMaxAgeMillis);
+        rebuild();
+    }
+
+    @ManagedAttribute
+    public int getUsers() {
+        return recommender.users();
+    }
+
+    @ManagedAttribute
+    public int getRatings() {
+        return recommender.ratings();
+    }
+
+    @ManagedAttribute
+    public int getRecentUsers() {
+        return recent.size();
+    }
+
+    private static class RecentRating {
+
+        private final short rating;
+        private final long millis;
+
+        private RecentRating(short rating, long millis) {
+            this.rating = rating;
+            this.millis = millis;
+        }
+    }
+}
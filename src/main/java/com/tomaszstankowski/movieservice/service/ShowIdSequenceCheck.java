@@ -0,0 +1,55 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+/*
+Makes sure the table of show ids holds a value past every existing show, see Show.id.
+Runs as soon as the entity manager factory is built, so after Hibernate updated the schema but before anything
+can take an id from the table, and changes nothing once the table is ahead.
+ */
+@Component
+public class ShowIdSequenceCheck implements BeanPostProcessor {
+
+    private static final Logger log = LoggerFactory.getLogger(ShowIdSequenceCheck.class);
+
+    /*
+    Table of show ids has to start past shows saved while their ids were given by auto increment.
+     */
+    private static final String INSERT_MISSING = "insert into " + Show.ID_GENERATOR + " (next_val) " +
+            "select m.next_val from (select coalesce(max(s.id), 0) + 1 as next_val from shows s) m " +
+            "where not exists (select * from " + Show.ID_GENERATOR + ")";
+
+    private static final String MOVE_PAST_EXISTING = "update " + Show.ID_GENERATOR + " " +
+            "set next_val = (select coalesce(max(s.id), 0) + 1 from shows s) " +
+            "where next_val <= (select coalesce(max(s.id), 0) from shows s)";
+
+    private final ObjectProvider<DataSource> dataSource;
+
+    public ShowIdSequenceCheck(ObjectProvider<DataSource> dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        return bean;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof EntityManagerFactory) {
+            JdbcTemplate jdbc = new JdbcTemplate(dataSource.getObject());
+            if (jdbc.update(INSERT_MISSING) + jdbc.update(MOVE_PAST_EXISTING) > 0)
+                log.info("Moved show ids past existing shows.");
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,129 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.model.entity.Genre;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.repository.GenreRepository;
+import com.tomaszstankowski.movieservice.repository.ShowBatchRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.event.ShowsImportedEvent;
+import com.tomaszstankowski.movieservice.service.exception.conflict.ShowAlreadyExistsException;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidShowException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/*
+Adds many shows at once. Checks of a chunk are made by a few queries for all of its shows together and
+the shows are inserted in JDBC batches. A show which cannot be added is reported and skipped, including one with
+text longer than its column, which would otherwise fail the insert of the whole chunk.
+ */
+@Service
+public class ShowImportService {
+
+    public static final int CHUNK_SIZE = 500;
+
+    /*
+    Length of the text columns of shows and genres, the default of Hibernate.
+     */
+    public static final int MAX_TEXT_LENGTH = 255;
+
+    private static final String TOO_LONG = "Title, description, location and genres of a show can be at most " +
+            MAX_TEXT_LENGTH + " characters long.";
+
+    private final ShowRepository showRepo;
+    private final ShowBatchRepository showBatchRepo;
+    private final GenreRepository genreRepo;
+    private final ApplicationEventPublisher publisher;
+    private final TransactionTemplate transaction;
+
+    public ShowImportService(ShowRepository showRepo,
+                             ShowBatchRepository showBatchRepo,
+                             GenreRepository genreRepo,
+                             ApplicationEventPublisher publisher,
+                             PlatformTransactionManager transactionManager) {
+        this.showRepo = showRepo;
+        this.showBatchRepo = showBatchRepo;
+        this.genreRepo = genreRepo;
+        this.publisher = publisher;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @param shows at most CHUNK_SIZE new shows by their line
+     * @return messages of shows not added by their line
+     **/
+    public Map<Long, String> importShows(Map<Long, Show> shows) {
+        Map<Long, String> errors = new TreeMap<>();
+        List<Show> added = transaction.execute(status -> addShows(shows, errors));
+        /*
+        Published after the commit and outside of the transaction, listeners write in transactions of their own.
+         */
+        if (!added.isEmpty())
+            publisher.publishEvent(new ShowsImportedEvent(added));
+        return errors;
+    }
+
+    private List<Show> addShows(Map<Long, Show> shows, Map<Long, String> errors) {
+        Set<String> titles = shows.values().stream()
+                .map(Show::getTitle)
+                .filter(title -> title != null && !title.isEmpty())
+                .collect(Collectors.toSet());
+        Set<String> existing = new HashSet<>();
+        if (!titles.isEmpty())
+            for (Object[] row : showRepo.findTitleAndDateReleasedByTitleIn(titles))
+                existing.add(key((String) row[0], (Date) row[1]));
+
+        List<Show> added = new ArrayList<>(shows.size());
+        Set<String> genres = new HashSet<>();
+        shows.forEach((line, show) -> {
+            if (show.getTitle() == null || show.getTitle().isEmpty())
+                errors.put(line, new InvalidShowException().getMessage());
+            else if (!fitsColumns(show))
+                errors.put(line, TOO_LONG);
+            else if (!existing.add(key(show.getTitle(), show.getDateReleased())))
+                errors.put(line, new ShowAlreadyExistsException(show.getTitle(), show.getDateReleased()).getMessage());
+            else {
+                added.add(show);
+                show.getGenres().forEach(genre -> genres.add(genre.getName()));
+            }
+        });
+        if (added.isEmpty())
+            return added;
+
+        if (!genres.isEmpty()) {
+            genreRepo.findAll(genres).forEach(genre -> genres.remove(genre.getName()));
+            showBatchRepo.insertGenres(genres);
+        }
+        long id = showBatchRepo.reserveIds(added.size());
+        Date now = new Date();
+        for (Show show : added) {
+            show.setId(id++);
+            show.setDateAdded(now);
+            show.setDateModified(now);
+        }
+        showBatchRepo.insertShows(added);
+        return added;
+    }
+
+    private static boolean fitsColumns(Show show) {
+        if (tooLong(show.getTitle()) || tooLong(show.getDescription()) || tooLong(show.getLocation()))
+            return false;
+        return show.getGenres().stream().noneMatch(genre -> tooLong(genre.getName()));
+    }
+
+    private static boolean tooLong(String text) {
+        return text != null && text.length() > MAX_TEXT_LENGTH;
+    }
+
+    /*
+    Titles are compared ignoring case as the database does, dates by day as they are read from the database
+    without time.
+     */
+    private static String key(String title, Date dateReleased) {
+        return title.toLowerCase() + '\n' + (dateReleased == null ? null : new java.sql.Date(dateReleased.getTime()));
+    }
+}
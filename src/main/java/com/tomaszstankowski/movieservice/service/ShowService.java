@@ -1,26 +1,71 @@
 package com.tomaszstankowski.movieservice.service;
 
+import com.tomaszstankowski.movieservice.model.dto.ShowFacetsDTO;
+import com.tomaszstankowski.movieservice.model.dto.SuggestionDTO;
 import com.tomaszstankowski.movieservice.model.entity.*;
 import com.tomaszstankowski.movieservice.model.enums.Profession;
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
 import com.tomaszstankowski.movieservice.repository.*;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
+import com.tomaszstankowski.movieservice.service.event.ParticipationChangedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
 import com.tomaszstankowski.movieservice.service.exception.conflict.ShowAlreadyExistsException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.*;
+import com.tomaszstankowski.movieservice.service.exception.unavailable.RatingContendedException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidRatingException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidShowException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.UnexpectedShowException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.UnknownTypeException;
+import com.tomaszstankowski.movieservice.service.index.IdBitmap;
+import com.tomaszstankowski.movieservice.service.index.SearchIndex;
+import com.tomaszstankowski.movieservice.service.index.ShowBitmapIndex;
+import com.tomaszstankowski.movieservice.service.index.ShowFacetIndex;
+import com.tomaszstankowski.movieservice.service.index.ShowFacetQuery;
+import com.tomaszstankowski.movieservice.service.index.TopRatedIndex;
+import com.tomaszstankowski.movieservice.service.rating.PendingRating;
+import com.tomaszstankowski.movieservice.service.trending.TrendingWindow;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 
-import java.util.List;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 @Service
 public class ShowService {
 
+    /*
+    Properties backed by (property, id) indexes, the only ones listings can be sorted by in cursor mode.
+     */
+    private static final Set<String> CURSOR_SORTABLE = new HashSet<>(
+            Arrays.asList("id", "title", "dateReleased", "dateAdded"));
+
+    private static final int PAGE_SIZE = 5;
+
+    /*
+    Pages ranked by relevance list at most that many best matching shows.
+     */
+    private static final int MAX_SEARCH_RESULTS = 1000;
+
+    /*
+    A rating whose transaction lost a deadlock or kept losing its row to concurrent raters is written again
+    that many times before the client is told to retry.
+     */
+    private static final int MAX_RATING_ATTEMPTS = 3;
+    private static final long RATING_RETRY_AFTER_SECONDS = 1;
+
     private final ShowRepository showRepo;
     private final MovieRepository movieRepo;
     private final SerialRepository serialRepo;
@@ -29,6 +74,19 @@ public class ShowService {
     private final UserRepository userRepo;
     private final ParticipationRepository participationRepo;
     private final RatingRepository ratingRepo;
+    private final RatingWriteRepository ratingWriteRepo;
+    private final RatingCounterService ratingCounters;
+    private final TrendingService trending;
+    private final RecommendationService recommendations;
+    private final FeedService feed;
+    private final KeysetRepository keysetRepo;
+    private final IdProjectionRepository idRepo;
+    private final SearchIndex searchIndex;
+    private final ShowBitmapIndex bitmapIndex;
+    private final ShowFacetIndex facetIndex;
+    private final TopRatedIndex topRatedIndex;
+    private final SimilarShowsService similarShows;
+    private final ApplicationEventPublisher publisher;
 
     public ShowService(ShowRepository showRepo,
                        MovieRepository movieRepo,
@@ -37,7 +95,20 @@ public class ShowService {
                        PersonRepository personRepo,
                        UserRepository userRepo,
                        ParticipationRepository participationRepo,
-                       RatingRepository ratingRepo) {
+                       RatingRepository ratingRepo,
+                       RatingWriteRepository ratingWriteRepo,
+                       RatingCounterService ratingCounters,
+                       TrendingService trending,
+                       RecommendationService recommendations,
+                       FeedService feed,
+                       KeysetRepository keysetRepo,
+                       IdProjectionRepository idRepo,
+                       SearchIndex searchIndex,
+                       ShowBitmapIndex bitmapIndex,
+                       ShowFacetIndex facetIndex,
+                       TopRatedIndex topRatedIndex,
+                       SimilarShowsService similarShows,
+                       ApplicationEventPublisher publisher) {
         this.showRepo = showRepo;
         this.movieRepo = movieRepo;
         this.serialRepo = serialRepo;
@@ -46,10 +117,23 @@ public class ShowService {
         this.participationRepo = participationRepo;
         this.userRepo = userRepo;
         this.ratingRepo = ratingRepo;
+        this.ratingWriteRepo = ratingWriteRepo;
+        this.ratingCounters = ratingCounters;
+        this.trending = trending;
+        this.recommendations = recommendations;
+        this.feed = feed;
+        this.keysetRepo = keysetRepo;
+        this.idRepo = idRepo;
+        this.searchIndex = searchIndex;
+        this.bitmapIndex = bitmapIndex;
+        this.facetIndex = facetIndex;
+        this.topRatedIndex = topRatedIndex;
+        this.similarShows = similarShows;
+        this.publisher = publisher;
     }
 
     public Show findShow(long id) {
-        return showRepo.findOne(id);
+        return showRepo.findWithGenresById(id);
     }
 
     public Page<Show> findShows(Specification<Show> spec, int page, Sort sort) {
@@ -64,12 +148,133 @@ public class ShowService {
         return serialRepo.findAll(spec, createPageable(page, sort));
     }
 
+    public KeysetSlice<Show> findShows(Specification<Show> spec, String after, Sort sort) {
+        return keysetRepo.findAll(Show.class, spec, after, sort, CURSOR_SORTABLE, PAGE_SIZE);
+    }
+
+    public KeysetSlice<Movie> findMovies(Specification<Movie> spec, String after, Sort sort) {
+        return keysetRepo.findAll(Movie.class, spec, after, sort, CURSOR_SORTABLE, PAGE_SIZE);
+    }
+
+    public KeysetSlice<Serial> findSeries(Specification<Serial> spec, String after, Sort sort) {
+        return keysetRepo.findAll(Serial.class, spec, after, sort, CURSOR_SORTABLE, PAGE_SIZE);
+    }
+
+    /**
+     * @param type null for any type
+     * @return ids of shows of the type having at least one of the genres, resolved without the database
+     **/
+    public IdBitmap findIdsWithAnyGenre(String[] genres, ShowType type) {
+        return bitmapIndex.findWithAnyGenre(genres, type);
+    }
+
+    /**
+     * @return counts of shows matching the query per facet value, computed without the database
+     **/
+    public ShowFacetsDTO countFacets(ShowFacetQuery query) {
+        return facetIndex.count(query);
+    }
+
+    /**
+     * @return ids of the best shows matching the phrase, the most relevant first
+     **/
+    public List<Long> searchShows(String phrase) {
+        return searchIndex.searchShows(phrase, MAX_SEARCH_RESULTS);
+    }
+
+    /**
+     * @return ids of all shows matching the phrase
+     **/
+    public IdBitmap matchShows(String phrase) {
+        return searchIndex.matchShows(phrase);
+    }
+
+    public List<SuggestionDTO> suggestShows(String prefix, int limit) {
+        return searchIndex.suggestShows(prefix, limit);
+    }
+
+    /**
+     * @param genre  null for any genre
+     * @param type   null for any type
+     * @param decade any year of the decade, null for any decade
+     * @return best rated shows having at least minVotes ratings, ranked without the database
+     **/
+    public List<Show> findTopRated(String genre, ShowType type, Integer decade, long minVotes, int limit) {
+        return findInOrder(topRatedIndex.findTop(genre, type, decade, minVotes, limit));
+    }
+
+    /**
+     * @return shows rated the most lately within the window, ranked without the database
+     **/
+    public List<Show> findTrending(TrendingWindow window, int limit) {
+        return findInOrder(trending.findTrending(window, limit));
+    }
+
+    /**
+     * @return shows most similar to the show by ratings of their common raters, as computed by the last run of the job
+     **/
+    public List<Show> findSimilar(long showId, int limit) {
+        List<Long> ids = similarShows.findSimilar(showId, limit);
+        if (ids.isEmpty() && !showRepo.exists(showId))
+            throw new ShowNotFoundException(showId);
+        return findInOrder(ids);
+    }
+
+    /*
+    Shows removed since they were ranked are left out.
+     */
+    private List<Show> findInOrder(List<Long> ids) {
+        if (ids.isEmpty())
+            return Collections.emptyList();
+        Map<Long, Show> shows = showRepo.findAll(ids).stream()
+                .collect(Collectors.toMap(Show::getId, Function.identity()));
+        return ids.stream()
+                .map(shows::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    public Page<Show> findShowsByRelevance(Specification<Show> spec, List<Long> rankedIds, int page) {
+        return findByRelevance(Show.class, spec, rankedIds, page);
+    }
+
+    public Page<Movie> findMoviesByRelevance(Specification<Movie> spec, List<Long> rankedIds, int page) {
+        return findByRelevance(Movie.class, spec, rankedIds, page);
+    }
+
+    public Page<Serial> findSeriesByRelevance(Specification<Serial> spec, List<Long> rankedIds, int page) {
+        return findByRelevance(Serial.class, spec, rankedIds, page);
+    }
+
+    /*
+    Database only filters the ranked candidates, the page is cut in their order.
+     */
+    private <T extends Show> Page<T> findByRelevance(Class<T> type,
+                                                     Specification<T> spec,
+                                                     List<Long> rankedIds,
+                                                     int page) {
+        Set<Long> matching = new HashSet<>(idRepo.findIds(type, spec));
+        List<Long> ordered = rankedIds.stream()
+                .filter(matching::contains)
+                .collect(Collectors.toList());
+        Pageable pageable = createPageable(page, null);
+        List<Long> pageIds = ordered.subList(
+                Math.min(pageable.getOffset(), ordered.size()),
+                Math.min(pageable.getOffset() + pageable.getPageSize(), ordered.size()));
+        Map<Long, Show> shows = showRepo.findAll(pageIds).stream()
+                .collect(Collectors.toMap(Show::getId, Function.identity()));
+        List<T> content = pageIds.stream()
+                .map(id -> type.cast(shows.get(id)))
+                .collect(Collectors.toList());
+        return new PageImpl<>(content, pageable, ordered.size());
+    }
+
     public List<Participation> findParticipations(long id, Profession role) {
         Show show = showRepo.findOne(id);
         if (show == null)
             throw new ShowNotFoundException(id);
         if (role == null)
-            return show.getParticipations();
+            return participationRepo.findByShow(show);
         return participationRepo.findByShowAndRole(show, role);
     }
 
@@ -85,7 +290,9 @@ public class ShowService {
                 genreRepo.save(g);
             g.getShows().add(show);
         }
-        return showRepo.save(show);
+        Show saved = showRepo.save(show);
+        publisher.publishEvent(new ShowSavedEvent(saved));
+        return saved;
     }
 
     public Participation addParticipation(long showId, long personId, Participation participation) {
@@ -100,7 +307,9 @@ public class ShowService {
         participation.setPerson(person);
         show.getParticipations().add(participation);
         person.getParticipations().add(participation);
-        return participationRepo.save(participation);
+        Participation saved = participationRepo.save(participation);
+        publisher.publishEvent(new ParticipationChangedEvent(showId, personId));
+        return saved;
     }
 
     public Participation getParticipation(long showId, long participationId) {
@@ -122,7 +331,9 @@ public class ShowService {
             throw new ParticipationNotFoundException(participationId);
         participation.setRole(body.getRole());
         participation.setInfo(body.getInfo());
-        return participationRepo.save(participation);
+        Participation saved = participationRepo.save(participation);
+        publisher.publishEvent(new ParticipationChangedEvent(showId, participation.getPerson().getId()));
+        return saved;
     }
 
     public void removeParticipation(long showId, long participationId) {
@@ -133,26 +344,39 @@ public class ShowService {
         if (participation == null || !show.getParticipations().contains(participation))
             throw new ParticipationNotFoundException(participationId);
         participationRepo.delete(participationId);
+        publisher.publishEvent(new ParticipationChangedEvent(showId, participation.getPerson().getId()));
     }
 
-    public Rating addRating(long showId, String login, short rating) {
-        validateRating(rating);
-        Show show = showRepo.findOne(showId);
-        if (show == null)
+    /**
+     * Rates the show or changes the rating given before. Neither the show nor the user is loaded,
+     * the returned rating carries only its id, value and date.
+     * With rating counters on, the aggregates of the show are changed in memory rather than on its row.
+     **/
+    public Rating addRating(long showId, String login, short value) {
+        validateRating(value);
+        Date date = new Date();
+        long id = ratingCounters.isEnabled()
+                ? addCountedRating(showId, login, value, date)
+                : addRating(showId, login, value, date);
+        trending.rated(showId);
+        recommendations.rated(login, showId, value);
+        feed.rated(new PendingRating(showId, login, value, date));
+
+        Rating rating = new Rating();
+        rating.setId(id);
+        rating.setRating(value);
+        rating.setDate(date);
+        return rating;
+    }
+
+    /**
+     * @return numbers of ratings of the show per value, without changes of rating counters not yet flushed
+     **/
+    public RatingHistogram findRatingHistogram(long showId) {
+        RatingHistogram histogram = showRepo.findRatingHistogramById(showId);
+        if (histogram == null)
             throw new ShowNotFoundException(showId);
-        User user = userRepo.findOne(login);
-        if (user == null)
-            throw new UserNotFoundException(login);
-        Rating oldRating = ratingRepo.findByUserAndShow(user, show);
-        if (oldRating != null) {
-            if (oldRating.getRating() == rating)
-                return oldRating;
-            ratingRepo.delete(oldRating);
-        }
-        Rating newRating = new Rating(rating, show, user);
-        show.getRatings().add(newRating);
-        user.getRatings().add(newRating);
-        return ratingRepo.save(newRating);
+        return histogram;
     }
 
     public Rating getRating(long showId, long ratingId) {
@@ -160,22 +384,71 @@ public class ShowService {
         if (show == null)
             throw new ShowNotFoundException(showId);
         Rating rating = ratingRepo.findOne(ratingId);
-        if (rating == null || !show.getRatings().contains(rating))
+        if (rating == null || rating.getShow().getId() != showId)
             throw new RatingNotFoundException(show, ratingId);
         return rating;
     }
 
-    public void removeRating(long showId, String login) {
-        Show show = showRepo.findOne(showId);
-        if (show == null)
-            throw new ShowNotFoundException(showId);
-        User user = userRepo.findOne(login);
-        if (user == null)
+    private long addRating(long showId, String login, short value, Date date) {
+        WrittenRating written;
+        try {
+            written = writeRating(showId, () -> ratingWriteRepo.upsert(showId, login, value, date));
+        } catch (DataIntegrityViolationException e) {
+            if (!showRepo.exists(showId))
+                throw new ShowNotFoundException(showId);
+            throw new UserNotFoundException(login);
+        }
+        publisher.publishEvent(new ShowRatedEvent(showId, written.getRatingCount()));
+        return written.getId();
+    }
+
+    private long addCountedRating(long showId, String login, short value, Date date) {
+        WrittenRating written;
+        try {
+            written = writeRating(showId, () -> ratingWriteRepo.upsertRating(showId, login, value, date));
+        } catch (DataIntegrityViolationException e) {
+            if (!showRepo.exists(showId))
+                throw new ShowNotFoundException(showId);
             throw new UserNotFoundException(login);
-        Rating rating = ratingRepo.findByUserAndShow(user, show);
-        if (rating == null)
-            throw new RatingNotFoundException(show, user);
-        ratingRepo.delete(rating);
+        }
+        ratingCounters.rated(showId, written.getPrevious(), value);
+        return written.getId();
+    }
+
+    /*
+    Each attempt runs in a transaction of its own, a deadlock rolls back the whole one.
+     */
+    private WrittenRating writeRating(long showId, Supplier<WrittenRating> write) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return write.get();
+            } catch (ConcurrencyFailureException e) {
+                if (attempt == MAX_RATING_ATTEMPTS)
+                    throw new RatingContendedException(showId, RATING_RETRY_AFTER_SECONDS);
+            }
+        }
+    }
+
+    public void removeRating(long showId, String login) {
+        WrittenRating removed;
+        if (ratingCounters.isEnabled()) {
+            removed = ratingWriteRepo.deleteRating(showId, login);
+            if (removed == null)
+                throw ratingNotFound(showId, login);
+            ratingCounters.unrated(showId, removed.getPrevious());
+        } else {
+            removed = ratingWriteRepo.delete(showId, login);
+            if (removed == null)
+                throw ratingNotFound(showId, login);
+            publisher.publishEvent(new ShowRatedEvent(showId, removed.getRatingCount()));
+        }
+        feed.unrated(removed.getId());
+    }
+
+    private RuntimeException ratingNotFound(long showId, String login) {
+        if (!showRepo.exists(showId))
+            return new ShowNotFoundException(showId);
+        return new RatingNotFoundException(showId, login);
     }
 
     public Show editShow(long id, Show body) {
@@ -205,7 +478,9 @@ public class ShowService {
             show.clearGenres();
             for (Genre g : body.getGenres())
                 show.addGenre(g);
-            return showRepo.save(show);
+            Show saved = showRepo.save(show);
+            publisher.publishEvent(new ShowSavedEvent(saved));
+            return saved;
         } else {
             throw new UnknownTypeException(Show.class);
         }
@@ -226,13 +501,14 @@ public class ShowService {
             throw new ShowNotFoundException(id);
         show.clearGenres();
         showRepo.delete(show);
+        publisher.publishEvent(new ShowRemovedEvent(id));
     }
 
     private Pageable createPageable(int page, Sort sort) {
-        return new PageRequest(page, 5, sort);
+        return new PageRequest(page, PAGE_SIZE, sort);
     }
 
-    private void validateRating(short rating) {
+    static void validateRating(short rating) {
         if (rating > 10 || rating < 1)
             throw new InvalidRatingException(rating);
     }
@@ -0,0 +1,170 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.repository.ShowSimilarityRepository;
+import com.tomaszstankowski.movieservice.service.event.RatingMatrixBuiltEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.similar.ItemSimilarity;
+import com.tomaszstankowski.movieservice.service.similar.Neighbours;
+import com.tomaszstankowski.movieservice.service.similar.RatingMatrix;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/*
+Similar shows by item-item collaborative filtering, computed by a job off the request path and persisted as lists of
+movieservice.similar.neighbours most similar shows, so that serving them is a single read of the primary key.
+The job reads all ratings into a RatingMatrix and computes neighbours in parallel, see ItemSimilarity.
+
+A rebuild computes neighbours of every show, so ratings given since count only from the next one. There are no
+updates in between, as the neighbours of even a few shows need all ratings of their raters, which takes a scan of all
+ratings as long as the one of a rebuild. The matrix takes about 20 bytes per rating while built, so 100M ratings need
+a heap of a few GB, ratings of users with more than movieservice.similar.max-user-ratings ratings are left out of it.
+Every user is placed in the matrix by login, so that RecommendationService, which is handed the matrix by
+a RatingMatrixBuiltEvent, scores recommendations from it rather than reading all ratings again. The job is
+off by default, turn it on with movieservice.similar.enabled=true, which also rebuilds the lists on start. Rebuilds can
+be run by hand over JMX either way.
+ */
+@Service
+@ManagedResource(objectName = "movieservice:type=Job,name=similarShows")
+public class SimilarShowsService {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarShowsService.class);
+
+    /*
+    Shows whose neighbours are replaced in one transaction.
+     */
+    private static final int WRITE_CHUNK_SIZE = 1000;
+
+    private final ShowSimilarityRepository similarityRepo;
+    private final ApplicationEventPublisher publisher;
+
+    private final boolean enabled;
+    private final int neighbours;
+    private final int minCoRaters;
+    private final int maxUserRatings;
+    private final int parallelism;
+
+    private final Object jobLock = new Object();
+
+    private volatile int lastShows;
+    private volatile int lastUsers;
+    private volatile int lastRatings;
+    private volatile long lastRunMillis;
+
+    public SimilarShowsService(ShowSimilarityRepository similarityRepo,
+                               ApplicationEventPublisher publisher,
+                               @Value("${movieservice.similar.enabled:false}") boolean enabled,
+                               @Value("${movieservice.similar.neighbours:20}") int neighbours,
+                               @Value("${movieservice.similar.min-co-raters:3}") int minCoRaters,
+                               @Value("${movieservice.similar.max-user-ratings:5000}") int maxUserRatings,
+                               @Value("${movieservice.similar.parallelism:0}") int parallelism) {
+        if (neighbours < 1 || neighbours > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Number of neighbours must be between 1 and " + Short.MAX_VALUE + ".");
+        this.similarityRepo = similarityRepo;
+        this.publisher = publisher;
+        this.enabled = enabled;
+        this.neighbours = neighbours;
+        this.minCoRaters = minCoRaters;
+        this.maxUserRatings = maxUserRatings;
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return ids of at most limit shows most similar to the show as of the last run, the most similar first
+     **/
+    public List<Long> findSimilar(long showId, int limit) {
+        return similarityRepo.findSimilarShowIds(showId, limit);
+    }
+
+    @ManagedOperation
+    public void rebuild() {
+        synchronized (jobLock) {
+            RatingMatrix matrix = loadMatrix();
+            run(matrix);
+            publisher.publishEvent(new RatingMatrixBuiltEvent(matrix));
+        }
+    }
+
+    /*
+    Shows are read before ratings, so that ratings of shows added meanwhile are skipped rather than misplaced.
+     */
+    private RatingMatrix loadMatrix() {
+        long[] showIds = similarityRepo.findShowIds();
+        long expected = similarityRepo.countRatings();
+        RatingMatrix.Builder builder = new RatingMatrix.Builder(showIds,
+                (int) Math.min(expected + expected / 16, Integer.MAX_VALUE - 8), maxUserRatings).keepLogins();
+        similarityRepo.scanLogins(builder::addUser);
+        similarityRepo.scanRatings(builder::add);
+        return builder.build();
+    }
+
+    private void run(RatingMatrix matrix) {
+        long start = System.currentTimeMillis();
+        ItemSimilarity similarity = new ItemSimilarity(matrix, neighbours, minCoRaters);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        Neighbours result;
+        try {
+            result = similarity.neighbours(pool);
+        } finally {
+            pool.shutdown();
+        }
+        for (int i = 0; i < result.size(); i += WRITE_CHUNK_SIZE)
+            similarityRepo.replace(result, i, Math.min(result.size(), i + WRITE_CHUNK_SIZE));
+        lastShows = result.size();
+        lastUsers = matrix.users();
+        lastRatings = matrix.ratings();
+        lastRunMillis = System.currentTimeMillis() - start;
+        log.info("Similar shows of {} shows computed from {} ratings of {} users in {} ms.",
+                lastShows, lastRatings, lastUsers, lastRunMillis);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRemoved(ShowRemovedEvent event) {
+        similarityRepo.deleteShow(event.getShowId());
+    }
+
+    /*
+    Runs once the app has started, on a thread of the task scheduler, and then every rebuild interval.
+     */
+    @Scheduled(fixedDelayString = "#{${movieservice.similar.rebuild-interval-hours:24} * 3600000}")
+    public void scheduledRebuild() {
+        if (!enabled)
+            return;
+        try {
+            rebuild();
+        } catch (DataAccessException e) {
+            log.warn("Similar shows not computed, retrying on the next run.", e);
+        }
+    }
+
+    @ManagedAttribute
+    public int getLastShows() {
+        return lastShows;
+    }
+
+    @ManagedAttribute
+    public int getLastUsers() {
+        return lastUsers;
+    }
+
+    @ManagedAttribute
+    public int getLastRatings() {
+        return lastRatings;
+    }
+
+    @ManagedAttribute
+    public long getLastRunMillis() {
+        return lastRunMillis;
+    }
+}
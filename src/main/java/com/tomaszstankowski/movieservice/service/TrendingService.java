@@ -0,0 +1,88 @@
+package com.tomaszstankowski.movieservice.service;
+
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.trending.TrendingRanking;
+import com.tomaszstankowski.movieservice.service.trending.TrendingWindow;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+Shows rated the most lately, per window of an hour, a day and a week, see TrendingRanking.
+Fed by every accepted rating, ratings changed by their users included, and held only in memory: rankings start
+empty with the app and never read ratings from the database. Each window tracks at most
+movieservice.shows.trending.max-shows shows, evicting the lowest scored one for a show rated beyond.
+Buckets leaving the windows are swept every 5 minutes, the length of a bucket of the hour window.
+ */
+@Service
+@ManagedResource(objectName = "movieservice:type=Trending,name=shows")
+public class TrendingService {
+
+    private static final long SWEEP_INTERVAL_MILLIS = 5 * 60 * 1000;
+
+    private final Map<TrendingWindow, TrendingRanking> rankings = new EnumMap<>(TrendingWindow.class);
+
+    public TrendingService(@Value("${movieservice.shows.trending.max-shows:100000}") int maxShows) {
+        long now = System.currentTimeMillis();
+        for (TrendingWindow window : TrendingWindow.values())
+            rankings.put(window, new TrendingRanking(window, maxShows, now));
+    }
+
+    public void rated(long showId) {
+        long now = System.currentTimeMillis();
+        for (TrendingRanking ranking : rankings.values())
+            ranking.rated(showId, now);
+    }
+
+    /**
+     * @return ids of at most limit shows rated the most within the window, the most first
+     **/
+    public List<Long> findTrending(TrendingWindow window, int limit) {
+        return rankings.get(window).top(limit);
+    }
+
+    @Scheduled(initialDelay = SWEEP_INTERVAL_MILLIS, fixedDelay = SWEEP_INTERVAL_MILLIS)
+    @ManagedOperation
+    public void sweep() {
+        long now = System.currentTimeMillis();
+        for (TrendingRanking ranking : rankings.values())
+            ranking.sweep(now);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRemoved(ShowRemovedEvent event) {
+        for (TrendingRanking ranking : rankings.values())
+            ranking.remove(event.getShowId());
+    }
+
+    @ManagedAttribute
+    public int getHourShows() {
+        return rankings.get(TrendingWindow.HOUR).size();
+    }
+
+    @ManagedAttribute
+    public int getDayShows() {
+        return rankings.get(TrendingWindow.DAY).size();
+    }
+
+    @ManagedAttribute
+    public int getWeekShows() {
+        return rankings.get(TrendingWindow.WEEK).size();
+    }
+
+    @ManagedAttribute
+    public long getEvicted() {
+        long evicted = 0;
+        for (TrendingRanking ranking : rankings.values())
+            evicted += ranking.getEvicted();
+        return evicted;
+    }
+}
@@ -5,9 +5,15 @@ import com.tomaszstankowski.movieservice.model.entity.Show;
 import com.tomaszstankowski.movieservice.model.entity.User;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
 import com.tomaszstankowski.movieservice.model.enums.UserRole;
+import com.tomaszstankowski.movieservice.repository.FollowRepository;
 import com.tomaszstankowski.movieservice.repository.RatingRepository;
+import com.tomaszstankowski.movieservice.repository.RatingWriteRepository;
 import com.tomaszstankowski.movieservice.repository.ShowRepository;
 import com.tomaszstankowski.movieservice.repository.UserRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
+import com.tomaszstankowski.movieservice.service.cache.SingleFlight;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
 import com.tomaszstankowski.movieservice.service.exception.conflict.EmailAlreadyExistsException;
 import com.tomaszstankowski.movieservice.service.exception.conflict.SelfFollowException;
 import com.tomaszstankowski.movieservice.service.exception.conflict.UserAlreadyExistsException;
@@ -18,33 +24,67 @@ import com.tomaszstankowski.movieservice.service.exception.not_found.UserNotFoun
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.ImmutableAdministratorException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidUserException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.SingleAdministratorException;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.data.domain.*;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.data.jpa.domain.Specifications;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Service
 public class UserService {
+
+    private static final Set<String> CURSOR_SORTABLE = new HashSet<>(
+            Arrays.asList("login", "name", "dateJoined"));
+
+    private static final int PAGE_SIZE = 10;
+
+    /*
+    Concurrent reads of the same user share one load, callers waiting longer load it by themselves.
+     */
+    private static final long LOAD_TIMEOUT_SECONDS = 5;
+
     private final UserRepository userRepo;
+    private final FollowRepository followRepo;
     private final RatingRepository ratingRepo;
+    private final RatingWriteRepository ratingWriteRepo;
     private final ShowRepository showRepo;
+    private final KeysetRepository keysetRepo;
+    private final RecommendationService recommendations;
+    private final FeedService feed;
     private final PasswordEncoder encoder;
+    private final ApplicationEventPublisher publisher;
+    private final SingleFlight<String, User> userLoads = new SingleFlight<>(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
     public UserService(UserRepository userRepo,
+                       FollowRepository followRepo,
                        RatingRepository ratingRepo,
+                       RatingWriteRepository ratingWriteRepo,
                        ShowRepository showRepo,
-                       PasswordEncoder encoder) {
+                       KeysetRepository keysetRepo,
+                       RecommendationService recommendations,
+                       FeedService feed,
+                       PasswordEncoder encoder,
+                       ApplicationEventPublisher publisher) {
         this.userRepo = userRepo;
+        this.followRepo = followRepo;
         this.ratingRepo = ratingRepo;
+        this.ratingWriteRepo = ratingWriteRepo;
         this.showRepo = showRepo;
+        this.keysetRepo = keysetRepo;
+        this.recommendations = recommendations;
+        this.feed = feed;
         this.encoder = encoder;
+        this.publisher = publisher;
         setAdmin();
     }
 
@@ -61,8 +101,14 @@ public class UserService {
             userRepo.save(admin);
     }
 
+    /**
+     * Every caller gets its own copy of the user, detached and without ratings, so that callers sharing a load
+     * never share an entity.
+     * @return null if not found
+     **/
     public User findUser(String login) {
-        return userRepo.findOne(login);
+        User user = userLoads.load(login, userRepo::findOne);
+        return (user == null) ? null : copy(user);
     }
 
     public Page<User> findAllUsers(int page, Sort sort) {
@@ -73,6 +119,16 @@ public class UserService {
         return userRepo.findUsersByNameContains(name, createPageable(page, sort));
     }
 
+    public KeysetSlice<User> findAllUsers(String after, Sort sort) {
+        return keysetRepo.findAll(User.class, null, after, sort, CURSOR_SORTABLE, PAGE_SIZE);
+    }
+
+    public KeysetSlice<User> findUsersByName(String name, String after, Sort sort) {
+        Specification<User> nameContains = (root, query, builder) ->
+                builder.like(root.<String>get("name"), "%" + name + "%");
+        return keysetRepo.findAll(User.class, nameContains, after, sort, CURSOR_SORTABLE, PAGE_SIZE);
+    }
+
     public Page<Rating> findUserRatings(Specifications<Rating> specs, int page) {
         Pageable pageable = new PageRequest(page, 10, new Sort("date"));
         return ratingRepo.findAll(specs, pageable);
@@ -105,64 +161,68 @@ public class UserService {
         user.setName(body.getName());
         user.setEmail(body.getEmail());
         user.setSex(body.getSex());
-        return userRepo.save(user);
+        User saved = userRepo.save(user);
+        userLoads.forget(body.getLogin());
+        return saved;
     }
 
     public List<User> getUserFollowers(String username) {
-        User user = userRepo.findOne(username);
-        if (user == null)
+        if (!userRepo.exists(username))
             throw new UserNotFoundException(username);
-        return user.getFollowers();
+        return userRepo.findFollowers(username);
     }
 
     public User getUserFollower(String followedName, String followerName) {
-        User followed = userRepo.findOne(followedName);
-        if (followed == null)
+        if (!userRepo.exists(followedName))
             throw new UserNotFoundException(followedName);
         User follower = userRepo.findOne(followerName);
         if (follower == null)
             throw new UserNotFoundException(followerName);
-        if (followed.getFollowers().contains(follower))
+        if (followRepo.exists(followedName, followerName))
             return follower;
         return null;
     }
 
     public List<User> getUserFollowed(String username) {
-        User user = userRepo.findOne(username);
-        if (user == null)
+        if (!userRepo.exists(username))
             throw new UserNotFoundException(username);
-        return user.getFollowed();
+        return userRepo.findFollowed(username);
     }
 
+    /*
+    A follow added concurrently by another request fails on the primary key of follows.
+     */
     public User addUserFollower(String followedName, String followerName) {
         if (followedName.equals(followerName))
             throw new SelfFollowException();
-        User followed = userRepo.findOne(followedName);
-        if (followed == null)
+        if (!userRepo.exists(followedName))
             throw new UserNotFoundException(followedName);
         User follower = userRepo.findOne(followerName);
         if (follower == null)
             throw new UserNotFoundException(followerName);
-        if (followed.getFollowers().contains(follower))
+        if (followRepo.exists(followedName, followerName))
             throw new UserAlreadyFollowedException(followedName, followerName);
-        followed.getFollowers().add(follower);
-        follower.getFollowed().add(followed);
-        userRepo.save(followed);
+        try {
+            followRepo.insert(followedName, followerName);
+        } catch (DataIntegrityViolationException e) {
+            throw new UserAlreadyFollowedException(followedName, followerName);
+        }
+        userLoads.forget(followedName);
+        userLoads.forget(followerName);
+        feed.followed(followerName, followedName);
         return follower;
     }
 
     public void removeUserFollower(String followedName, String followerName) {
-        User followed = userRepo.findOne(followedName);
-        if (followed == null)
+        if (!userRepo.exists(followedName))
             throw new UserNotFoundException(followedName);
-        User follower = userRepo.findOne(followerName);
-        if (follower == null)
+        if (!userRepo.exists(followerName))
             throw new UserNotFoundException(followerName);
-        if (!followed.getFollowers().contains(follower))
+        if (!followRepo.delete(followedName, followerName))
             throw new FollowerNotFoundException(followedName, followerName);
-        followed.getFollowers().remove(follower);
-        follower.getFollowed().remove(followed);
-        userRepo.save(followed);
+        userLoads.forget(followedName);
+        userLoads.forget(followerName);
+        feed.unfollowed(followerName, followedName);
     }
 
     public void changeUserRole(String login, UserRole role) {
@@ -175,41 +235,81 @@ public class UserService {
             throw new SingleAdministratorException();
         user.setRole(role);
         userRepo.save(user);
+        userLoads.forget(login);
     }
 
+    /*
+    Ratings of the user are subtracted from the aggregates of their shows before the user goes, instead of being
+    removed by the cascade, and their shows are told about it once the removal is committed.
+     */
+    @Transactional
     public void removeUser(String login) {
         User user = userRepo.findOne(login);
         if (user == null)
             throw new UserNotFoundException(login);
+        followRepo.deleteUser(login);
+        ratingWriteRepo.deleteUserRatings(login).forEach((showId, ratingCount) ->
+                publisher.publishEvent(new ShowRatedEvent(showId, ratingCount)));
         userRepo.delete(login);
+        userLoads.forget(login);
+        feed.removed(login);
     }
 
     public Page<Rating> findUserFollowersRatings(String login, int page) {
-        User user = userRepo.findOne(login);
-        if (user == null)
+        if (!userRepo.exists(login))
             throw new UserNotFoundException(login);
-        Pageable pageable = createPageable(page, new Sort(Sort.Direction.DESC, "date"));
-        //must return empty page, because repository throws exception when 'followed' collection empty
-        if (user.getFollowed().isEmpty())
-            return new PageImpl<>(new ArrayList<>());
-        return ratingRepo.findUserFollowedRatings(user, pageable);
+        return ratingRepo.findUserFollowedRatings(login, new PageRequest(page, PAGE_SIZE));
+    }
+
+    /**
+     * @return ratings of users followed by the user, the newest first, read from the user's feed, see FeedService
+     **/
+    public KeysetSlice<Rating> findUserFollowedRatings(String login, String after) {
+        if (!userRepo.exists(login))
+            throw new UserNotFoundException(login);
+        KeysetSlice<Long> ids = feed.findFeed(login, after, PAGE_SIZE);
+        if (ids.getContent().isEmpty())
+            return new KeysetSlice<>(Collections.emptyList(), ids.getNext());
+        Map<Long, Rating> ratings = new HashMap<>();
+        for (Rating rating : ratingRepo.findAll(ids.getContent()))
+            ratings.put(rating.getId(), rating);
+        List<Rating> result = new ArrayList<>(ids.getContent().size());
+        for (Long id : ids.getContent())
+            if (ratings.containsKey(id))
+                result.add(ratings.get(id));
+        return new KeysetSlice<>(result, ids.getNext());
     }
 
     public List<Rating> findUserFollowersRatings(String login, long showId) {
-        User user = userRepo.findOne(login);
-        if (user == null)
+        if (!userRepo.exists(login))
             throw new UserNotFoundException(login);
-        Show show = showRepo.findOne(showId);
-        if (show == null)
+        if (!showRepo.exists(showId))
             throw new ShowNotFoundException(showId);
-        //must return empty list, because repository throws exception when 'followed' collection empty
-        if (user.getFollowed().isEmpty())
-            return new ArrayList<>();
-        return ratingRepo.findUserFollowedRatings(user, show);
+        return ratingRepo.findUserFollowedRatings(login, showId);
+    }
+
+    /**
+     * @return shows recommended to the user, the best first, scored in memory from the user's ratings,
+     * ratings of followed users and genres, see RecommendationService
+     **/
+    public List<Show> findRecommendations(String login, int limit) {
+        if (!userRepo.exists(login))
+            throw new UserNotFoundException(login);
+        List<Long> ids = recommendations.recommend(login, limit);
+        if (ids.isEmpty())
+            return Collections.emptyList();
+        Map<Long, Show> shows = new HashMap<>();
+        for (Show show : showRepo.findAll(ids))
+            shows.put(show.getId(), show);
+        List<Show> result = new ArrayList<>(ids.size());
+        for (Long id : ids)
+            if (shows.containsKey(id))
+                result.add(shows.get(id));
+        return result;
     }
 
     private Pageable createPageable(int page, Sort sort) {
-        return new PageRequest(page, 10, sort);
+        return new PageRequest(page, PAGE_SIZE, sort);
     }
 
     private void validateUser(User user) {
@@ -240,4 +340,13 @@ public class UserService {
         }
         return result;
     }
+
+    private static User copy(User user) {
+        User copy = new User(user.getLogin(), user.getPassword(), user.getName(), user.getEmail(), user.getSex());
+        copy.setDateJoined(user.getDateJoined());
+        copy.setFollowerCount(user.getFollowerCount());
+        copy.setFollowedCount(user.getFollowedCount());
+        copy.setRole(user.getRole());
+        return copy;
+    }
 }
@@ -0,0 +1,207 @@
+package com.tomaszstankowski.movieservice.service.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Read-through cache holding at most maxSize values, each for at most the given time since it was loaded.
+ * Values are loaded outside the lock, null values are not kept.
+ * A value loaded while its key was invalidated is served but not kept, as it may have been read before the change.
+ * To tell so every key being loaded has a generation, bumped by its invalidation and dropped when the last load ends.
+ * Keys are spread by hash over segments, each locked separately and evicting its least recently used value
+ * when it holds its share of maxSize, so that hits of different keys rarely wait for each other.
+ * Small caches have a single segment and evict exactly the least recently used value.
+ **/
+public class BoundedCache<K, V> {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 64;
+
+    private final long ttlNanos;
+    private final LongSupplier clock;
+
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidated = new LongAdder();
+
+    public BoundedCache(int maxSize, long ttl, TimeUnit unit) {
+        this(maxSize, ttl, unit, System::nanoTime);
+    }
+
+    @SuppressWarnings("unchecked")
+    public BoundedCache(int maxSize, long ttl, TimeUnit unit, LongSupplier clock) {
+        if (maxSize <= 0 || ttl <= 0)
+            throw new IllegalArgumentException("Size and time to live of a cache must be positive.");
+        this.ttlNanos = unit.toNanos(ttl);
+        this.clock = clock;
+        int count = 1;
+        while (count < MAX_SEGMENTS && count * 2 * MIN_SEGMENT_SIZE <= maxSize)
+            count *= 2;
+        this.segments = new BoundedCache.Segment[count];
+        for (int i = 0; i < count; i++)
+            segments[i] = new Segment(maxSize / count + (i < maxSize % count ? 1 : 0));
+    }
+
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        return segment(key).get(key, loader);
+    }
+
+    /**
+     * @return value if present and not expired, neither loaded nor counted
+     **/
+    public V peek(K key) {
+        return segment(key).peek(key);
+    }
+
+    public void invalidate(K key) {
+        segment(key).invalidate(key);
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : segments)
+            segment.invalidateAll();
+    }
+
+    public int size() {
+        int result = 0;
+        for (Segment segment : segments)
+            result += segment.size();
+        return result;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of values dropped because the cache was full or they expired
+     **/
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return number of values dropped because they were changed
+     **/
+    public long invalidations() {
+        return invalidated.sum();
+    }
+
+    private Segment segment(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[hash & (segments.length - 1)];
+    }
+
+    private class Segment {
+
+        private final int maxSize;
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final Map<K, Loading> loading = new HashMap<>();
+        private long clears;
+
+        private Segment(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        private V get(K key, Function<? super K, ? extends V> loader) {
+            Loading loads;
+            long generation;
+            long cleared;
+            synchronized (this) {
+                Entry<V> entry = entries.get(key);
+                if (entry != null) {
+                    if (clock.getAsLong() - entry.loaded < ttlNanos) {
+                        hits.increment();
+                        return entry.value;
+                    }
+                    entries.remove(key);
+                    evictions.increment();
+                }
+                misses.increment();
+                loads = loading.computeIfAbsent(key, k -> new Loading());
+                loads.count++;
+                generation = loads.generation;
+                cleared = clears;
+            }
+            long loaded = clock.getAsLong();
+            V value = null;
+            try {
+                value = loader.apply(key);
+            } finally {
+                put(key, value, loaded, loads, generation, cleared);
+            }
+            return value;
+        }
+
+        private synchronized V peek(K key) {
+            Entry<V> entry = entries.get(key);
+            return entry != null && clock.getAsLong() - entry.loaded < ttlNanos ? entry.value : null;
+        }
+
+        private synchronized void invalidate(K key) {
+            Loading loads = loading.get(key);
+            if (loads != null)
+                loads.generation++;
+            if (entries.remove(key) != null)
+                invalidated.increment();
+        }
+
+        private synchronized void invalidateAll() {
+            clears++;
+            invalidated.add(entries.size());
+            entries.clear();
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        /*
+        Ends a load, keeping the value unless the key was invalidated since the load started.
+         */
+        private synchronized void put(K key, V value, long loaded, Loading loads, long generation, long cleared) {
+            if (--loads.count == 0)
+                loading.remove(key);
+            if (value == null || generation != loads.generation || cleared != clears)
+                return;
+            entries.put(key, new Entry<>(value, loaded));
+            Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxSize) {
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private static class Loading {
+
+        private int count;
+        private long generation;
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long loaded;
+
+        private Entry(V value, long loaded) {
+            this.value = value;
+            this.loaded = loaded;
+        }
+    }
+}
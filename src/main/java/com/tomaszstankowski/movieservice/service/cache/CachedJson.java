@@ -0,0 +1,15 @@
+package com.tomaszstankowski.movieservice.service.cache;
+
+import lombok.Data;
+
+/*
+Final UTF-8 JSON of a representation together with the version it was rendered from.
+The bytes are shared between requests and must not be modified.
+ */
+@Data
+public class CachedJson {
+
+    private final byte[] json;
+
+    private final JsonVersion version;
+}
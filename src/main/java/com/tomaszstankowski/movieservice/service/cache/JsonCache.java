@@ -0,0 +1,112 @@
+package com.tomaszstankowski.movieservice.service.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache of serialized representations, so that hits cost neither mapping nor Jackson.
+ * Concurrent misses of the same key share one load, as the rendered bytes, unlike entities, can be shared by requests.
+ * Subclasses load the representations, look up their versions without loading them,
+ * and invalidate them on events of the services.
+ * Counters are exposed over JMX.
+ **/
+public abstract class JsonCache<K> {
+
+    /*
+    Callers waiting longer for a load of another caller load the representation by themselves.
+     */
+    private static final long LOAD_TIMEOUT_SECONDS = 5;
+
+    private final ObjectMapper objectMapper;
+    private final BoundedCache<K, CachedJson> cache;
+    private final SingleFlight<K, CachedJson> loads = new SingleFlight<>(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+    protected JsonCache(ObjectMapper objectMapper, int maxSize, long ttlSeconds) {
+        this.objectMapper = objectMapper;
+        this.cache = new BoundedCache<>(maxSize, ttlSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @return null if there is nothing under the key
+     **/
+    public CachedJson get(K key) {
+        return cache.get(key, k -> loads.load(k, this::load));
+    }
+
+    /**
+     * Version of the current representation, taken from the cache when present so that conditional requests
+     * cost at most a lightweight lookup.
+     * @return null if there is nothing under the key
+     **/
+    public JsonVersion version(K key) {
+        CachedJson cached = cache.peek(key);
+        return cached != null ? cached.getVersion() : loadVersion(key);
+    }
+
+    /**
+     * @return null if there is nothing under the key
+     **/
+    protected abstract CachedJson load(K key);
+
+    /**
+     * @return null if there is nothing under the key
+     **/
+    protected abstract JsonVersion loadVersion(K key);
+
+    protected CachedJson serialize(Object representation, JsonVersion version) {
+        try {
+            return new CachedJson(objectMapper.writeValueAsBytes(representation), version);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /*
+    Loads in flight may have read the old state, so callers arriving later do not join them.
+     */
+    protected void invalidate(K key) {
+        loads.forget(key);
+        cache.invalidate(key);
+    }
+
+    @ManagedOperation
+    public void clear() {
+        loads.forgetAll();
+        cache.invalidateAll();
+    }
+
+    @ManagedAttribute
+    public int getSize() {
+        return cache.size();
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+        return cache.hits();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+        return cache.misses();
+    }
+
+    @ManagedAttribute
+    public long getEvictions() {
+        return cache.evictions();
+    }
+
+    @ManagedAttribute
+    public long getInvalidations() {
+        return cache.invalidations();
+    }
+
+    @ManagedAttribute
+    public long getSharedLoads() {
+        return loads.shared();
+    }
+}
@@ -0,0 +1,14 @@
+package com.tomaszstankowski.movieservice.service.cache;
+
+import lombok.Data;
+
+/*
+Validators of a cached representation. Last modified is in milliseconds, negative when unknown.
+ */
+@Data
+public class JsonVersion {
+
+    private final String eTag;
+
+    private final long lastModified;
+}
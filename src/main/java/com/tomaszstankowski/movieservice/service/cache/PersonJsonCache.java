@@ -0,0 +1,67 @@
+package com.tomaszstankowski.movieservice.service.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.entity.Person;
+import com.tomaszstankowski.movieservice.repository.PersonRepository;
+import com.tomaszstankowski.movieservice.service.PersonService;
+import com.tomaszstankowski.movieservice.service.event.PersonRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.PersonSavedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Date;
+import java.util.List;
+
+/*
+Ready to serve people by id. Entries are invalidated after commit by events of PersonService.
+ */
+@Component
+@ManagedResource(objectName = "movieservice:type=Cache,name=people")
+public class PersonJsonCache extends JsonCache<Long> {
+
+    private final PersonService service;
+    private final PersonRepository personRepo;
+    private final ModelMapper mapper;
+
+    public PersonJsonCache(PersonService service,
+                           PersonRepository personRepo,
+                           ModelMapper mapper,
+                           ObjectMapper objectMapper,
+                           @Value("${movieservice.cache.people.max-size:10000}") int maxSize,
+                           @Value("${movieservice.cache.people.ttl-seconds:600}") long ttlSeconds) {
+        super(objectMapper, maxSize, ttlSeconds);
+        this.service = service;
+        this.personRepo = personRepo;
+        this.mapper = mapper;
+    }
+
+    @Override
+    protected CachedJson load(Long id) {
+        Person person = service.findPerson(id);
+        return person == null ? null : serialize(mapper.fromEntity(person), version(id, person.getDateModified()));
+    }
+
+    @Override
+    protected JsonVersion loadVersion(Long id) {
+        List<Object[]> rows = personRepo.findVersionById(id);
+        return rows.isEmpty() ? null : version(id, (Date) rows.get(0)[1]);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPersonSaved(PersonSavedEvent event) {
+        invalidate(event.getPerson().getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPersonRemoved(PersonRemovedEvent event) {
+        invalidate(event.getPersonId());
+    }
+
+    private static JsonVersion version(long id, Date dateModified) {
+        long lastModified = dateModified == null ? -1 : dateModified.getTime();
+        return new JsonVersion("\"" + id + "-" + lastModified + "\"", lastModified);
+    }
+}
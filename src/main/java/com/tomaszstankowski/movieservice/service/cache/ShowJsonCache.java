@@ -0,0 +1,92 @@
+package com.tomaszstankowski.movieservice.service.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.ShowService;
+import com.tomaszstankowski.movieservice.service.event.ParticipationChangedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Date;
+import java.util.List;
+
+/*
+Ready to serve shows by id. Entries are invalidated after commit by events of ShowService, the time to live
+only bounds staleness after changes made past the service, e.g. by the rating backfill.
+ETags include the rating aggregates, as the backfill changes them without touching dateModified,
+together with changes of rating counters not yet flushed.
+ */
+@Component
+@ManagedResource(objectName = "movieservice:type=Cache,name=shows")
+public class ShowJsonCache extends JsonCache<Long> {
+
+    private final ShowService service;
+    private final ShowRepository showRepo;
+    private final ModelMapper mapper;
+
+    public ShowJsonCache(ShowService service,
+                         ShowRepository showRepo,
+                         ModelMapper mapper,
+                         ObjectMapper objectMapper,
+                         @Value("${movieservice.cache.shows.max-size:10000}") int maxSize,
+                         @Value("${movieservice.cache.shows.ttl-seconds:600}") long ttlSeconds) {
+        super(objectMapper, maxSize, ttlSeconds);
+        this.service = service;
+        this.showRepo = showRepo;
+        this.mapper = mapper;
+    }
+
+    @Override
+    protected CachedJson load(Long id) {
+        Show show = service.findShow(id);
+        if (show == null)
+            return null;
+        return serialize(mapper.fromEntity(show),
+                version(id, show.getDateModified(), mapper.ratingCount(id, show.getRatingCount()),
+                        mapper.ratingSum(id, show.getRatingSum())));
+    }
+
+    @Override
+    protected JsonVersion loadVersion(Long id) {
+        List<Object[]> rows = showRepo.findVersionById(id);
+        if (rows.isEmpty())
+            return null;
+        Object[] row = rows.get(0);
+        return version(id, (Date) row[0], mapper.ratingCount(id, (Long) row[1]), mapper.ratingSum(id, (Long) row[2]));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowSaved(ShowSavedEvent event) {
+        invalidate(event.getShow().getId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRemoved(ShowRemovedEvent event) {
+        invalidate(event.getShowId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRated(ShowRatedEvent event) {
+        invalidate(event.getShowId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onParticipationChanged(ParticipationChangedEvent event) {
+        invalidate(event.getShowId());
+    }
+
+    /*
+    Ratings change a show without touching dateModified, so shows carry no Last-Modified, only ETags.
+     */
+    private static JsonVersion version(long id, Date dateModified, long ratingCount, long ratingSum) {
+        long modified = dateModified == null ? -1 : dateModified.getTime();
+        return new JsonVersion("\"" + id + "-" + modified + "-" + ratingCount + "-" + ratingSum + "\"", -1);
+    }
+}
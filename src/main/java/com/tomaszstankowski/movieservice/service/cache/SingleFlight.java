@@ -0,0 +1,92 @@
+package com.tomaszstankowski.movieservice.service.cache;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent loads of the same key. The first caller loads the value in its own thread, callers arriving
+ * while it is in flight wait for and share its result, including its exception. Nothing is kept once the load ends.
+ * A caller that waited longer than the timeout stops waiting and loads the value by itself.
+ **/
+public class SingleFlight<K, V> {
+
+    private final long timeoutNanos;
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public SingleFlight(long timeout, TimeUnit unit) {
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    public V load(K key, Function<? super K, ? extends V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null)
+            return await(key, running, loader);
+
+        loads.increment();
+        try {
+            V value = loader.apply(key);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Callers arriving from now on start a new load instead of sharing the one in flight, e.g. after a change.
+     **/
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    public long loads() {
+        return loads.sum();
+    }
+
+    /**
+     * @return number of callers served by a load of another caller
+     **/
+    public long shared() {
+        return shared.sum();
+    }
+
+    public long timeouts() {
+        return timeouts.sum();
+    }
+
+    private V await(K key, CompletableFuture<V> running, Function<? super K, ? extends V> loader) {
+        try {
+            V value = running.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            shared.increment();
+            return value;
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            loads.increment();
+            return loader.apply(key);
+        } catch (ExecutionException e) {
+            shared.increment();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + key + " to load.", e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.tomaszstankowski.movieservice.service.event;
+
+import lombok.Data;
+
+@Data
+public class ParticipationChangedEvent {
+
+    private final long showId;
+
+    private final long personId;
+}
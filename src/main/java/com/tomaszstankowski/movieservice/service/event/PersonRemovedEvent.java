@@ -0,0 +1,9 @@
+package com.tomaszstankowski.movieservice.service.event;
+
+import lombok.Data;
+
+@Data
+public class PersonRemovedEvent {
+
+    private final long personId;
+}
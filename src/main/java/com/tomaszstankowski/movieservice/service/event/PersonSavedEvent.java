@@ -0,0 +1,13 @@
+package com.tomaszstankowski.movieservice.service.event;
+
+import com.tomaszstankowski.movieservice.model.entity.Person;
+import lombok.Data;
+
+/*
+Published after a person has been added or edited.
+ */
+@Data
+public class PersonSavedEvent {
+
+    private final Person person;
+}
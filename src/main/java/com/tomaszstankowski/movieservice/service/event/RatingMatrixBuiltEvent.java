@@ -0,0 +1,10 @@
+package com.tomaszstankowski.movieservice.service.event;
+
+import com.tomaszstankowski.movieservice.service.similar.RatingMatrix;
+import lombok.Data;
+
+@Data
+public class RatingMatrixBuiltEvent {
+
+    private final RatingMatrix matrix;
+}
@@ -0,0 +1,13 @@
+package com.tomaszstankowski.movieservice.service.event;
+
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import lombok.Data;
+
+/*
+Published after a show has been added or edited.
+ */
+@Data
+public class ShowSavedEvent {
+
+    private final Show show;
+}
@@ -0,0 +1,15 @@
+package com.tomaszstankowski.movieservice.service.event;
+
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import lombok.Data;
+
+import java.util.List;
+
+/*
+Published after a chunk of new shows has been added by a bulk import, instead of an event per show.
+ */
+@Data
+public class ShowsImportedEvent {
+
+    private final List<Show> shows;
+}
@@ -11,4 +11,8 @@ public class RatingNotFoundException extends RuntimeException {
     public RatingNotFoundException(Show show, User user) {
         super("User " + user.getLogin() + " has not rated " + show.getTitle() + ".");
     }
+
+    public RatingNotFoundException(long showId, String login) {
+        super("User " + login + " has not rated show with id " + showId + ".");
+    }
 }
@@ -0,0 +1,16 @@
+package com.tomaszstankowski.movieservice.service.exception.unavailable;
+
+public class RatingContendedException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public RatingContendedException(long showId, long retryAfterSeconds) {
+        super("Show with id " + showId + " is being rated by too many users at the moment. Try again in "
+                + retryAfterSeconds + " seconds.");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,15 @@
+package com.tomaszstankowski.movieservice.service.exception.unavailable;
+
+public class RatingQueueFullException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public RatingQueueFullException(long retryAfterSeconds) {
+        super("Too many ratings at the moment. Try again in " + retryAfterSeconds + " seconds.");
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,7 @@
+package com.tomaszstankowski.movieservice.service.exception.unproccessable;
+
+public class InvalidCursorException extends RuntimeException {
+    public InvalidCursorException(String cursor) {
+        super("Provided cursor is invalid - " + cursor + ".");
+    }
+}
@@ -0,0 +1,7 @@
+package com.tomaszstankowski.movieservice.service.exception.unproccessable;
+
+public class InvalidPercentileException extends RuntimeException {
+    public InvalidPercentileException(int percent) {
+        super("Provided percentile is invalid - " + percent + ". Value should be between 1 and 100.");
+    }
+}
@@ -0,0 +1,7 @@
+package com.tomaszstankowski.movieservice.service.exception.unproccessable;
+
+public class InvalidTrendingWindowException extends RuntimeException {
+    public InvalidTrendingWindowException(String window) {
+        super("Provided trending window is invalid - " + window + ". Value should be one of 1h, 24h, 7d.");
+    }
+}
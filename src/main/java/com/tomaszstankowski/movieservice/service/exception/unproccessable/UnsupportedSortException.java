@@ -0,0 +1,9 @@
+package com.tomaszstankowski.movieservice.service.exception.unproccessable;
+
+import org.springframework.data.domain.Sort;
+
+public class UnsupportedSortException extends RuntimeException {
+    public UnsupportedSortException(Sort sort) {
+        super("Sort " + sort + " is not supported in cursor mode. Sort by exactly one indexed property.");
+    }
+}
@@ -0,0 +1,21 @@
+package com.tomaszstankowski.movieservice.service.feed;
+
+import lombok.Data;
+
+import java.util.Comparator;
+import java.util.Date;
+
+/*
+Rating in a feed, ordered by its date and then by its id, the newest first.
+ */
+@Data
+public class FeedItem {
+
+    public static final Comparator<FeedItem> NEWEST_FIRST = Comparator.comparing(FeedItem::getDate)
+            .thenComparingLong(FeedItem::getRatingId)
+            .reversed();
+
+    private final long ratingId;
+
+    private final Date date;
+}
@@ -0,0 +1,434 @@
+package com.tomaszstankowski.movieservice.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Compressed set of non-negative long ids in the style of Roaring bitmaps. Ids are grouped in chunks of 2^16 sharing
+ * the high bits. A sparse chunk keeps its low bits in a sorted array, a dense one (over 4096 ids) in a plain bitmap,
+ * so memory stays proportional to the number of ids and set operations work on whole words.
+ * Not thread safe.
+ **/
+public class IdBitmap {
+
+    private static final int ARRAY_MAX_SIZE = 4096;
+
+    private long[] keys = new long[0];
+    private Container[] containers = new Container[0];
+    private int size;
+
+    public static IdBitmap of(long... ids) {
+        IdBitmap bitmap = new IdBitmap();
+        for (long id : ids)
+            bitmap.add(id);
+        return bitmap;
+    }
+
+    public static IdBitmap or(Collection<IdBitmap> bitmaps) {
+        IdBitmap result = new IdBitmap();
+        for (IdBitmap bitmap : bitmaps)
+            result.orInPlace(bitmap);
+        return result;
+    }
+
+    public void add(long id) {
+        long key = id >>> 16;
+        char low = (char) id;
+        int i = Arrays.binarySearch(keys, 0, size, key);
+        if (i >= 0) {
+            containers[i] = containers[i].add(low);
+            return;
+        }
+        ArrayContainer container = new ArrayContainer();
+        container.add(low);
+        insertAt(-i - 1, key, container);
+    }
+
+    public void remove(long id) {
+        int i = Arrays.binarySearch(keys, 0, size, id >>> 16);
+        if (i < 0)
+            return;
+        containers[i] = containers[i].remove((char) id);
+        if (containers[i].cardinality() == 0)
+            removeAt(i);
+    }
+
+    public boolean contains(long id) {
+        int i = Arrays.binarySearch(keys, 0, size, id >>> 16);
+        return i >= 0 && containers[i].contains((char) id);
+    }
+
+    public long cardinality() {
+        long result = 0;
+        for (int i = 0; i < size; i++)
+            result += containers[i].cardinality();
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public IdBitmap and(IdBitmap other) {
+        IdBitmap result = new IdBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j])
+                i++;
+            else if (keys[i] > other.keys[j])
+                j++;
+            else {
+                Container container = containers[i].and(other.containers[j]);
+                if (container.cardinality() > 0)
+                    result.insertAt(result.size, keys[i], container);
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public long andCardinality(IdBitmap other) {
+        long result = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j])
+                i++;
+            else if (keys[i] > other.keys[j])
+                j++;
+            else
+                result += containers[i++].andCardinality(other.containers[j++]);
+        }
+        return result;
+    }
+
+    public IdBitmap copy() {
+        IdBitmap result = new IdBitmap();
+        result.orInPlace(this);
+        return result;
+    }
+
+    /**
+     * @return ids in ascending order
+     **/
+    public List<Long> toList() {
+        List<Long> result = new ArrayList<>((int) Math.min(Integer.MAX_VALUE, cardinality()));
+        forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Passes ids in ascending order, without boxing.
+     **/
+    public void forEach(LongConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            long high = keys[i] << 16;
+            containers[i].forEach(low -> consumer.accept(high | low));
+        }
+    }
+
+    private void orInPlace(IdBitmap other) {
+        for (int j = 0; j < other.size; j++) {
+            int i = Arrays.binarySearch(keys, 0, size, other.keys[j]);
+            if (i >= 0)
+                containers[i] = containers[i].or(other.containers[j]);
+            else
+                insertAt(-i - 1, other.keys[j], other.containers[j].or(new ArrayContainer()));
+        }
+    }
+
+    private void insertAt(int i, long key, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(4, size * 2));
+            containers = Arrays.copyOf(containers, keys.length);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    private void removeAt(int i) {
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    private interface LowConsumer {
+        void accept(int low);
+    }
+
+    /*
+    Low 16 bits of ids within one chunk. Mutators return the container to be used from now on,
+    which is a different one when the representation changes. Binary operations never modify their operands.
+     */
+    private interface Container {
+
+        Container add(char low);
+
+        Container remove(char low);
+
+        boolean contains(char low);
+
+        int cardinality();
+
+        Container or(Container other);
+
+        Container and(Container other);
+
+        int andCardinality(Container other);
+
+        void forEach(LowConsumer consumer);
+    }
+
+    private static class ArrayContainer implements Container {
+
+        private char[] values;
+        private int cardinality;
+
+        private ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        private ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0)
+                return this;
+            if (cardinality == ARRAY_MAX_SIZE)
+                return toBitmap().add(low);
+            i = -i - 1;
+            if (cardinality == values.length)
+                values = Arrays.copyOf(values, Math.min(ARRAY_MAX_SIZE, Math.max(4, cardinality * 2)));
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = low;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char low) {
+            int i = Arrays.binarySearch(values, 0, cardinality, low);
+            if (i >= 0) {
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container or(Container other) {
+            if (other instanceof BitmapContainer)
+                return other.or(this);
+            ArrayContainer o = (ArrayContainer) other;
+            char[] merged = new char[cardinality + o.cardinality];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < cardinality && j < o.cardinality) {
+                if (values[i] < o.values[j])
+                    merged[k++] = values[i++];
+                else if (values[i] > o.values[j])
+                    merged[k++] = o.values[j++];
+                else {
+                    merged[k++] = values[i++];
+                    j++;
+                }
+            }
+            while (i < cardinality)
+                merged[k++] = values[i++];
+            while (j < o.cardinality)
+                merged[k++] = o.values[j++];
+            ArrayContainer result = new ArrayContainer(merged, k);
+            return k > ARRAY_MAX_SIZE ? result.toBitmap() : result;
+        }
+
+        @Override
+        public Container and(Container other) {
+            char[] common = new char[cardinality];
+            int k = 0;
+            if (other instanceof BitmapContainer) {
+                for (int i = 0; i < cardinality; i++)
+                    if (other.contains(values[i]))
+                        common[k++] = values[i];
+            } else {
+                ArrayContainer o = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < o.cardinality) {
+                    if (values[i] < o.values[j])
+                        i++;
+                    else if (values[i] > o.values[j])
+                        j++;
+                    else {
+                        common[k++] = values[i++];
+                        j++;
+                    }
+                }
+            }
+            return new ArrayContainer(common, k);
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+            int result = 0;
+            if (other instanceof BitmapContainer) {
+                for (int i = 0; i < cardinality; i++)
+                    if (other.contains(values[i]))
+                        result++;
+                return result;
+            }
+            ArrayContainer o = (ArrayContainer) other;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < o.cardinality) {
+                if (values[i] < o.values[j])
+                    i++;
+                else if (values[i] > o.values[j])
+                    j++;
+                else {
+                    result++;
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public void forEach(LowConsumer consumer) {
+            for (int i = 0; i < cardinality; i++)
+                consumer.accept(values[i]);
+        }
+
+        private BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++)
+                bitmap.add(values[i]);
+            return bitmap;
+        }
+    }
+
+    private static class BitmapContainer implements Container {
+
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapContainer() {
+            this(new long[1 << 10], 0);
+        }
+
+        private BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char low) {
+            long before = words[low >>> 6];
+            words[low >>> 6] |= 1L << low;
+            if (before != words[low >>> 6])
+                cardinality++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char low) {
+            long before = words[low >>> 6];
+            words[low >>> 6] &= ~(1L << low);
+            if (before != words[low >>> 6])
+                cardinality--;
+            return cardinality <= ARRAY_MAX_SIZE ? toArray() : this;
+        }
+
+        @Override
+        public boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public Container or(Container other) {
+            long[] result = words.clone();
+            if (other instanceof BitmapContainer) {
+                long[] o = ((BitmapContainer) other).words;
+                for (int i = 0; i < result.length; i++)
+                    result[i] |= o[i];
+            } else
+                other.forEach(low -> result[low >>> 6] |= 1L << low);
+            int count = 0;
+            for (long word : result)
+                count += Long.bitCount(word);
+            return new BitmapContainer(result, count);
+        }
+
+        @Override
+        public Container and(Container other) {
+            if (other instanceof ArrayContainer)
+                return other.and(this);
+            long[] o = ((BitmapContainer) other).words;
+            long[] result = new long[words.length];
+            int count = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] = words[i] & o[i];
+                count += Long.bitCount(result[i]);
+            }
+            BitmapContainer bitmap = new BitmapContainer(result, count);
+            return count <= ARRAY_MAX_SIZE ? bitmap.toArray() : bitmap;
+        }
+
+        @Override
+        public int andCardinality(Container other) {
+            if (other instanceof ArrayContainer)
+                return other.andCardinality(this);
+            long[] o = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < words.length; i++)
+                count += Long.bitCount(words[i] & o[i]);
+            return count;
+        }
+
+        @Override
+        public void forEach(LowConsumer consumer) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        private ArrayContainer toArray() {
+            char[] values = new char[Math.max(4, cardinality)];
+            int[] k = {0};
+            forEach(low -> values[k[0]++] = (char) low);
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.tomaszstankowski.movieservice.service.index;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tokenized in-memory index of documents identified by long ids, ranked with Okapi BM25.
+ * Every document has a primary text (title, name) which weighs more than its secondary text (description).
+ * A query matches documents containing all of its tokens.
+ **/
+public class InvertedIndex {
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final int PRIMARY_WEIGHT = 3;
+
+    private final Map<String, Postings> postings = new HashMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private long totalLength;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void put(long id, String primary, String secondary) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String token : tokenize(primary))
+            frequencies.merge(token, PRIMARY_WEIGHT, Integer::sum);
+        for (String token : tokenize(secondary))
+            frequencies.merge(token, 1, Integer::sum);
+        int length = frequencies.values().stream().mapToInt(Integer::intValue).sum();
+
+        lock.writeLock().lock();
+        try {
+            removeDocument(id);
+            for (Map.Entry<String, Integer> e : frequencies.entrySet())
+                postings.computeIfAbsent(e.getKey(), k -> new Postings()).put(id, e.getValue());
+            documents.put(id, new Document(frequencies.keySet().toArray(new String[frequencies.size()]), length));
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeDocument(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            totalLength = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return ids of at most limit best matching documents, the most relevant first
+     **/
+    public List<Long> search(String query, int limit) {
+        Set<String> tokens = new LinkedHashSet<>(tokenize(query));
+        if (tokens.isEmpty())
+            return new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>();
+            for (String token : tokens) {
+                Postings list = postings.get(token);
+                if (list == null)
+                    return new ArrayList<>();
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(Postings::size));
+
+            int n = documents.size();
+            double avgLength = (double) totalLength / n;
+            double[] idf = new double[lists.size()];
+            for (int i = 0; i < lists.size(); i++) {
+                int df = lists.get(i).size();
+                idf[i] = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+            }
+
+            Postings shortest = lists.get(0);
+            PriorityQueue<ScoredId> best = new PriorityQueue<>(Math.min(limit, shortest.size) + 1);
+            candidates:
+            for (int c = 0; c < shortest.size; c++) {
+                long id = shortest.ids[c];
+                double length = documents.get(id).length;
+                double score = 0;
+                for (int i = 0; i < lists.size(); i++) {
+                    int tf = (i == 0) ? shortest.frequencies[c] : lists.get(i).frequency(id);
+                    if (tf == 0)
+                        continue candidates;
+                    score += idf[i] * tf * (K1 + 1) / (tf + K1 * (1 - B + B * length / avgLength));
+                }
+                best.add(new ScoredId(id, score));
+                if (best.size() > limit)
+                    best.poll();
+            }
+
+            LinkedList<Long> result = new LinkedList<>();
+            while (!best.isEmpty())
+                result.addFirst(best.poll().id);
+            return new ArrayList<>(result);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return ids of all documents containing every token of the query, unscored
+     **/
+    public IdBitmap match(String query) {
+        Set<String> tokens = new LinkedHashSet<>(tokenize(query));
+        IdBitmap result = new IdBitmap();
+        if (tokens.isEmpty())
+            return result;
+
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>();
+            for (String token : tokens) {
+                Postings list = postings.get(token);
+                if (list == null)
+                    return result;
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(Postings::size));
+
+            Postings shortest = lists.get(0);
+            candidates:
+            for (int c = 0; c < shortest.size; c++) {
+                long id = shortest.ids[c];
+                for (int i = 1; i < lists.size(); i++)
+                    if (lists.get(i).frequency(id) == 0)
+                        continue candidates;
+                result.add(id);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null)
+            return tokens;
+        String normalized = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "");
+        for (String token : normalized.split("[^\\p{L}\\p{N}]+"))
+            if (!token.isEmpty())
+                tokens.add(token);
+        return tokens;
+    }
+
+    private void removeDocument(long id) {
+        Document document = documents.remove(id);
+        if (document == null)
+            return;
+        totalLength -= document.length;
+        for (String term : document.terms) {
+            Postings list = postings.get(term);
+            list.remove(id);
+            if (list.size == 0)
+                postings.remove(term);
+        }
+    }
+
+    private static class Document {
+        private final String[] terms;
+        private final int length;
+
+        private Document(String[] terms, int length) {
+            this.terms = terms;
+            this.length = length;
+        }
+    }
+
+    /*
+    Ids sorted ascending with their term frequencies. New shows get the highest ids, so adding is usually an append.
+     */
+    private static class Postings {
+        private long[] ids = new long[2];
+        private int[] frequencies = new int[2];
+        private int size;
+
+        private int size() {
+            return size;
+        }
+
+        private int frequency(long id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            return i < 0 ? 0 : frequencies[i];
+        }
+
+        private void put(long id, int frequency) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                frequencies[i] = frequency;
+                return;
+            }
+            i = -i - 1;
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            System.arraycopy(frequencies, i, frequencies, i + 1, size - i);
+            ids[i] = id;
+            frequencies[i] = frequency;
+            size++;
+        }
+
+        private void remove(long id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i < 0)
+                return;
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            System.arraycopy(frequencies, i + 1, frequencies, i, size - i - 1);
+            size--;
+        }
+    }
+
+    private static class ScoredId implements Comparable<ScoredId> {
+        private final long id;
+        private final double score;
+
+        private ScoredId(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        /*
+        Worst first, so that the queue head is the one to drop. Equal scores prefer lower ids.
+         */
+        @Override
+        public int compareTo(ScoredId o) {
+            int result = Double.compare(score, o.score);
+            return result != 0 ? result : Long.compare(o.id, id);
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.tomaszstankowski.movieservice.service.index;
+
+import com.tomaszstankowski.movieservice.model.dto.SuggestionDTO;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Radix trie of texts identified by long ids, answering prefix queries with the heaviest matches.
+ * A text is reachable by a prefix of any of its words. Every node caches its MAX_LIMIT heaviest entries,
+ * so a query is a walk down the trie and never visits a subtree.
+ **/
+public class PrefixIndex {
+
+    public static final int MAX_LIMIT = 10;
+
+    private static final int MAX_KEY_LENGTH = 64;
+
+    private static final Comparator<Entry> HEAVIEST_FIRST = (a, b) -> {
+        int result = Long.compare(b.weight, a.weight);
+        return result != 0 ? result : Long.compare(a.suggestion.getId(), b.suggestion.getId());
+    };
+
+    private final Node root = new Node(new char[0]);
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void put(long id, String text, long weight) {
+        Entry entry = new Entry(new SuggestionDTO(id, text), keys(text), weight);
+        lock.writeLock().lock();
+        try {
+            removeEntry(id);
+            entries.put(id, entry);
+            for (String key : entry.keys) {
+                List<Node> path = insertPath(key);
+                path.get(path.size() - 1).own.add(entry);
+                refresh(path);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Changes the weight of the text, if present.
+     **/
+    public void reweigh(long id, long weight) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = entries.get(id);
+            if (entry != null && entry.weight != weight) {
+                entry.weight = weight;
+                for (String key : entry.keys)
+                    refresh(findPath(key));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return weight of the text or 0 if not present
+     **/
+    public long weight(long id) {
+        lock.readLock().lock();
+        try {
+            Entry entry = entries.get(id);
+            return entry == null ? 0 : entry.weight;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeEntry(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            root.children = new Node[0];
+            root.own.clear();
+            root.top = new Entry[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of trie nodes, the root included
+     **/
+    public int nodeCount() {
+        lock.readLock().lock();
+        try {
+            return root.count();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return at most limit (capped at MAX_LIMIT) heaviest texts having a word starting with the prefix
+     **/
+    public List<SuggestionDTO> suggest(String prefix, int limit) {
+        String key = normalize(prefix);
+        if (key.isEmpty() || limit <= 0)
+            return new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int matched = 0;
+            while (matched < key.length()) {
+                Node child = node.child(key.charAt(matched));
+                if (child == null)
+                    return new ArrayList<>();
+                int common = commonPrefix(child.label, key, matched);
+                if (matched + common < key.length() && common < child.label.length)
+                    return new ArrayList<>();
+                matched += common;
+                node = child;
+            }
+            Entry[] top = node.top;
+            List<SuggestionDTO> result = new ArrayList<>(Math.min(top.length, limit));
+            for (int i = 0; i < top.length && i < limit; i++)
+                result.add(top[i].suggestion);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+    Lowercase, no accents, words separated by single spaces.
+     */
+    static String normalize(String text) {
+        if (text == null)
+            return "";
+        return Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replaceAll("[^\\p{L}\\p{N}]+", " ")
+                .trim();
+    }
+
+    /*
+    Normalized text starting at every word, so that "godf" finds "The Godfather".
+     */
+    private static Set<String> keys(String text) {
+        String normalized = normalize(text);
+        Set<String> keys = new LinkedHashSet<>();
+        for (int i = 0; i < normalized.length(); i++)
+            if (i == 0 || normalized.charAt(i - 1) == ' ')
+                keys.add(normalized.substring(i, Math.min(normalized.length(), i + MAX_KEY_LENGTH)));
+        return keys;
+    }
+
+    private void removeEntry(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null)
+            return;
+        for (String key : entry.keys) {
+            List<Node> path = findPath(key);
+            path.get(path.size() - 1).own.remove(entry);
+            prune(path);
+            refresh(path);
+        }
+    }
+
+    /*
+    Undoes what insertPath did for the key: drops nodes left with nothing below them and merges a node having a single
+    child and no entries into that child. Nodes dropped or merged are removed from the path. An ancestor can only
+    become prunable when it loses a child, so the walk stops at the first node kept or merged.
+     */
+    private void prune(List<Node> path) {
+        for (int i = path.size() - 1; i > 0; i--) {
+            Node node = path.get(i);
+            if (!node.own.isEmpty() || node.children.length > 1)
+                return;
+            Node parent = path.get(i - 1);
+            path.remove(i);
+            if (node.children.length == 1) {
+                parent.replaceChild(node.mergeWithChild());
+                return;
+            }
+            parent.removeChild(node);
+        }
+    }
+
+    /*
+    Nodes from the root to the node ending exactly at the key, splitting labels where needed.
+     */
+    private List<Node> insertPath(String key) {
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        int matched = 0;
+        while (matched < key.length()) {
+            Node child = node.child(key.charAt(matched));
+            if (child == null) {
+                child = new Node(key.substring(matched).toCharArray());
+                node.addChild(child);
+                path.add(child);
+                return path;
+            }
+            int common = commonPrefix(child.label, key, matched);
+            if (common < child.label.length)
+                child = node.split(child, common);
+            matched += common;
+            path.add(child);
+            node = child;
+        }
+        return path;
+    }
+
+    /*
+    Same as insertPath for keys already present.
+     */
+    private List<Node> findPath(String key) {
+        List<Node> path = new ArrayList<>();
+        path.add(root);
+        Node node = root;
+        int matched = 0;
+        while (matched < key.length()) {
+            node = node.child(key.charAt(matched));
+            matched += node.label.length;
+            path.add(node);
+        }
+        return path;
+    }
+
+    /*
+    Top of a node is made of its own entries and tops of its children, so it is enough to recompute the path bottom up.
+     */
+    private void refresh(List<Node> path) {
+        for (int i = path.size() - 1; i >= 0; i--)
+            path.get(i).refreshTop();
+    }
+
+    private static int commonPrefix(char[] label, String key, int offset) {
+        int i = 0;
+        while (i < label.length && offset + i < key.length() && label[i] == key.charAt(offset + i))
+            i++;
+        return i;
+    }
+
+    private static class Entry {
+        private final SuggestionDTO suggestion;
+        private final Set<String> keys;
+        private long weight;
+
+        private Entry(SuggestionDTO suggestion, Set<String> keys, long weight) {
+            this.suggestion = suggestion;
+            this.keys = keys;
+            this.weight = weight;
+        }
+    }
+
+    private static class Node {
+        private char[] label;
+        private Node[] children = new Node[0];
+        private final List<Entry> own = new ArrayList<>(1);
+        private Entry[] top = new Entry[0];
+
+        private Node(char[] label) {
+            this.label = label;
+        }
+
+        /*
+        Children are sorted by the first character of their labels, which are distinct.
+         */
+        private int indexOf(char c) {
+            int low = 0;
+            int high = children.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char midChar = children[mid].label[0];
+                if (midChar < c)
+                    low = mid + 1;
+                else if (midChar > c)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -(low + 1);
+        }
+
+        private Node child(char c) {
+            int i = indexOf(c);
+            return i < 0 ? null : children[i];
+        }
+
+        private void addChild(Node child) {
+            int i = -indexOf(child.label[0]) - 1;
+            Node[] grown = new Node[children.length + 1];
+            System.arraycopy(children, 0, grown, 0, i);
+            grown[i] = child;
+            System.arraycopy(children, i, grown, i + 1, children.length - i);
+            children = grown;
+        }
+
+        private void removeChild(Node child) {
+            int i = indexOf(child.label[0]);
+            Node[] shrunk = new Node[children.length - 1];
+            System.arraycopy(children, 0, shrunk, 0, i);
+            System.arraycopy(children, i + 1, shrunk, i, children.length - i - 1);
+            children = shrunk;
+        }
+
+        /*
+        Child with the same first character of label takes the place of the old one.
+         */
+        private void replaceChild(Node child) {
+            children[indexOf(child.label[0])] = child;
+        }
+
+        /*
+        Opposite of split, the only child takes over the label of this node as its prefix.
+         */
+        private Node mergeWithChild() {
+            Node child = children[0];
+            char[] merged = Arrays.copyOf(label, label.length + child.label.length);
+            System.arraycopy(child.label, 0, merged, label.length, child.label.length);
+            child.label = merged;
+            return child;
+        }
+
+        private int count() {
+            int result = 1;
+            for (Node child : children)
+                result += child.count();
+            return result;
+        }
+
+        /*
+        Puts a new node holding the first length characters of the child label between this node and the child.
+         */
+        private Node split(Node child, int length) {
+            int i = indexOf(child.label[0]);
+            Node middle = new Node(Arrays.copyOf(child.label, length));
+            child.label = Arrays.copyOfRange(child.label, length, child.label.length);
+            middle.children = new Node[]{child};
+            middle.top = child.top;
+            children[i] = middle;
+            return middle;
+        }
+
+        private void refreshTop() {
+            List<Entry> candidates = new ArrayList<>(own);
+            for (Node child : children)
+                candidates.addAll(Arrays.asList(child.top));
+            candidates.sort(HEAVIEST_FIRST);
+            List<Entry> result = new ArrayList<>(MAX_LIMIT);
+            for (Entry entry : candidates) {
+                if (result.size() == MAX_LIMIT)
+                    break;
+                if (!result.contains(entry))
+                    result.add(entry);
+            }
+            top = result.toArray(new Entry[result.size()]);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.tomaszstankowski.movieservice.service.index;
+
+import com.tomaszstankowski.movieservice.model.dto.SuggestionDTO;
+import com.tomaszstankowski.movieservice.model.entity.Person;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.repository.ParticipationRepository;
+import com.tomaszstankowski.movieservice.repository.PersonRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.event.ParticipationChangedEvent;
+import com.tomaszstankowski.movieservice.service.event.PersonRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.PersonSavedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowsImportedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+Full-text and prefix indexes over show titles and descriptions and person names. Rebuilt from the database at startup
+and kept in sync by events of ShowService and PersonService. Show suggestions are weighed by rating count,
+people suggestions by participation count.
+A rebuild fills fresh indexes while the current ones keep serving. Changes arriving in the meantime are journaled
+and replayed on the fresh indexes before they are swapped in, as they may be newer than the rows read.
+ */
+@Component
+public class SearchIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+
+    private static final int BATCH_SIZE = 10000;
+
+    private final ShowRepository showRepo;
+    private final PersonRepository personRepo;
+    private final ParticipationRepository participationRepo;
+
+    private volatile Indexes current = new Indexes();
+    private List<Consumer<Indexes>> journal;
+    private final Object rebuildLock = new Object();
+
+    public SearchIndex(ShowRepository showRepo,
+                       PersonRepository personRepo,
+                       ParticipationRepository participationRepo) {
+        this.showRepo = showRepo;
+        this.personRepo = personRepo;
+        this.participationRepo = participationRepo;
+    }
+
+    public List<Long> searchShows(String phrase, int limit) {
+        return current.shows.search(phrase, limit);
+    }
+
+    public IdBitmap matchShows(String phrase) {
+        return current.shows.match(phrase);
+    }
+
+    public List<Long> searchPeople(String phrase, int limit) {
+        return current.people.search(phrase, limit);
+    }
+
+    public IdBitmap matchPeople(String phrase) {
+        return current.people.match(phrase);
+    }
+
+    public List<SuggestionDTO> suggestShows(String prefix, int limit) {
+        return current.showTitles.suggest(prefix, limit);
+    }
+
+    public List<SuggestionDTO> suggestPeople(String prefix, int limit) {
+        return current.personNames.suggest(prefix, limit);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                journal = new ArrayList<>();
+            }
+            Indexes fresh = new Indexes();
+            long after = 0;
+            List<Object[]> rows;
+            do {
+                rows = showRepo.findTextsAfter(after, new PageRequest(0, BATCH_SIZE));
+                for (Object[] row : rows) {
+                    after = (Long) row[0];
+                    fresh.shows.put(after, (String) row[1], (String) row[2]);
+                    fresh.showTitles.put(after, (String) row[1], (Long) row[3]);
+                }
+            } while (rows.size() == BATCH_SIZE);
+
+            after = 0;
+            do {
+                rows = personRepo.findNamesAfter(after, new PageRequest(0, BATCH_SIZE));
+                for (Object[] row : rows) {
+                    after = (Long) row[0];
+                    fresh.people.put(after, (String) row[1], null);
+                    fresh.personNames.put(after, (String) row[1], ((Number) row[2]).longValue());
+                }
+            } while (rows.size() == BATCH_SIZE);
+
+            synchronized (this) {
+                journal.forEach(change -> change.accept(fresh));
+                journal = null;
+                current = fresh;
+            }
+            log.info("Search index built with {} shows and {} people.", fresh.shows.size(), fresh.people.size());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowSaved(ShowSavedEvent event) {
+        Show show = event.getShow();
+        apply(indexes -> indexes.put(show));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowsImported(ShowsImportedEvent event) {
+        List<Show> shows = event.getShows();
+        apply(indexes -> shows.forEach(indexes::put));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRated(ShowRatedEvent event) {
+        apply(indexes -> indexes.showTitles.reweigh(event.getShowId(), event.getRatingCount()));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRemoved(ShowRemovedEvent event) {
+        apply(indexes -> {
+            indexes.shows.remove(event.getShowId());
+            indexes.showTitles.remove(event.getShowId());
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPersonSaved(PersonSavedEvent event) {
+        Person person = event.getPerson();
+        apply(indexes -> {
+            indexes.people.put(person.getId(), person.getName(), null);
+            indexes.personNames.put(person.getId(), person.getName(), indexes.personNames.weight(person.getId()));
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPersonRemoved(PersonRemovedEvent event) {
+        apply(indexes -> {
+            indexes.people.remove(event.getPersonId());
+            indexes.personNames.remove(event.getPersonId());
+        });
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onParticipationChanged(ParticipationChangedEvent event) {
+        long count = participationRepo.countByPersonId(event.getPersonId());
+        apply(indexes -> indexes.personNames.reweigh(event.getPersonId(), count));
+    }
+
+    private synchronized void apply(Consumer<Indexes> change) {
+        change.accept(current);
+        if (journal != null)
+            journal.add(change);
+    }
+
+    private static class Indexes {
+        private final InvertedIndex shows = new InvertedIndex();
+        private final InvertedIndex people = new InvertedIndex();
+        private final PrefixIndex showTitles = new PrefixIndex();
+        private final PrefixIndex personNames = new PrefixIndex();
+
+        private void put(Show show) {
+            shows.put(show.getId(), show.getTitle(), show.getDescription());
+            showTitles.put(show.getId(), show.getTitle(), show.getRatingCount());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.tomaszstankowski.movieservice.service.index;
+
+import com.tomaszstankowski.movieservice.model.entity.Genre;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import com.tomaszstankowski.movieservice.repository.GenreRepository;
+import com.tomaszstankowski.movieservice.repository.MovieRepository;
+import com.tomaszstankowski.movieservice.repository.SerialRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowsImportedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/*
+Bitmaps of show ids per genre and per type. Rebuilt from the database at startup and kept in sync by events
+of ShowService. Genre names are compared case insensitively, like the database does.
+A rebuild loads fresh bitmaps while the current ones keep serving. Changes arriving in the meantime are journaled
+and replayed on the fresh bitmaps before they are swapped in, as they may be newer than the rows read.
+ */
+@Component
+public class ShowBitmapIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ShowBitmapIndex.class);
+
+    private static final int BATCH_SIZE = 10000;
+
+    private final ShowRepository showRepo;
+    private final MovieRepository movieRepo;
+    private final SerialRepository serialRepo;
+    private final GenreRepository genreRepo;
+
+    private Bitmaps current = new Bitmaps();
+    private List<Consumer<Bitmaps>> journal;
+    private final Object rebuildLock = new Object();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ShowBitmapIndex(ShowRepository showRepo,
+                           MovieRepository movieRepo,
+                           SerialRepository serialRepo,
+                           GenreRepository genreRepo) {
+        this.showRepo = showRepo;
+        this.movieRepo = movieRepo;
+        this.serialRepo = serialRepo;
+        this.genreRepo = genreRepo;
+    }
+
+    /**
+     * @param type null for any type
+     * @return ids of shows of the type having at least one of the genres
+     **/
+    public IdBitmap findWithAnyGenre(String[] genreNames, ShowType type) {
+        lock.readLock().lock();
+        try {
+            List<IdBitmap> matching = new ArrayList<>();
+            for (String name : genreNames) {
+                IdBitmap bitmap = current.genres.get(key(name));
+                if (bitmap != null)
+                    matching.add(bitmap);
+            }
+            IdBitmap result = IdBitmap.or(matching);
+            return type == null ? result : result.and(current.types.get(type));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of shows within the given ones per genre name, genres without any left out
+     **/
+    public Map<String, Long> countGenres(IdBitmap within) {
+        lock.readLock().lock();
+        try {
+            Map<String, Long> result = new TreeMap<>();
+            for (Map.Entry<String, IdBitmap> e : current.genres.entrySet()) {
+                long count = e.getValue().andCardinality(within);
+                if (count > 0)
+                    result.put(e.getKey(), count);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            lock.writeLock().lock();
+            try {
+                journal = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Bitmaps fresh = new Bitmaps();
+            for (Genre genre : genreRepo.findAll())
+                fresh.genres.merge(key(genre.getName()),
+                        load((after, page) -> showRepo.findIdsByGenreAfter(genre.getName(), after, page)),
+                        (a, b) -> IdBitmap.or(Arrays.asList(a, b)));
+            fresh.types.put(ShowType.MOVIE, load(movieRepo::findIdsAfter));
+            fresh.types.put(ShowType.SERIAL, load(serialRepo::findIdsAfter));
+
+            lock.writeLock().lock();
+            try {
+                journal.forEach(change -> change.accept(fresh));
+                journal = null;
+                current = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Bitmap index built with {} movies, {} series and {} genres.",
+                    fresh.types.get(ShowType.MOVIE).cardinality(), fresh.types.get(ShowType.SERIAL).cardinality(),
+                    fresh.genres.size());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowSaved(ShowSavedEvent event) {
+        Show show = event.getShow();
+        apply(bitmaps -> bitmaps.putShow(show));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowsImported(ShowsImportedEvent event) {
+        List<Show> shows = event.getShows();
+        apply(bitmaps -> shows.forEach(bitmaps::putShow));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRemoved(ShowRemovedEvent event) {
+        long id = event.getShowId();
+        apply(bitmaps -> bitmaps.removeShow(id));
+    }
+
+    private void apply(Consumer<Bitmaps> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(current);
+            if (journal != null)
+                journal.add(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static IdBitmap load(BiFunction<Long, PageRequest, List<Long>> batch) {
+        IdBitmap bitmap = new IdBitmap();
+        long after = 0;
+        List<Long> ids;
+        do {
+            ids = batch.apply(after, new PageRequest(0, BATCH_SIZE));
+            for (Long id : ids) {
+                bitmap.add(id);
+                after = id;
+            }
+        } while (ids.size() == BATCH_SIZE);
+        return bitmap;
+    }
+
+    private static String key(String genreName) {
+        return genreName.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Bitmaps {
+        private final Map<String, IdBitmap> genres = new HashMap<>();
+        private final Map<ShowType, IdBitmap> types = new EnumMap<>(ShowType.class);
+
+        private Bitmaps() {
+            for (ShowType type : ShowType.values())
+                types.put(type, new IdBitmap());
+        }
+
+        private void putShow(Show show) {
+            removeShow(show.getId());
+            for (Genre genre : show.getGenres())
+                genres.computeIfAbsent(key(genre.getName()), k -> new IdBitmap()).add(show.getId());
+            types.get(show instanceof Movie ? ShowType.MOVIE : ShowType.SERIAL).add(show.getId());
+        }
+
+        private void removeShow(long id) {
+            for (IdBitmap bitmap : genres.values())
+                bitmap.remove(id);
+            for (IdBitmap bitmap : types.values())
+                bitmap.remove(id);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.tomaszstankowski.movieservice.service.index;
+
+import com.tomaszstankowski.movieservice.model.dto.ShowFacetsDTO;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Serial;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import com.tomaszstankowski.movieservice.repository.MovieRepository;
+import com.tomaszstankowski.movieservice.repository.SerialRepository;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowsImportedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/*
+Columns of the filterable and facetable attributes of every show, indexed directly by show id, which is dense
+as the database generates it. Counting facets is a single pass over the matching shows. Genre counts come from
+the genre bitmaps of ShowBitmapIndex.
+Rebuilt from the database at startup and kept in sync by events of ShowService. A rebuild loads fresh columns
+while the current ones keep serving, changes arriving in the meantime are journaled and replayed on them
+before they are swapped in.
+ */
+@Component
+public class ShowFacetIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(ShowFacetIndex.class);
+
+    private static final int BATCH_SIZE = 10000;
+
+    private static final byte NONE = 0;
+    private static final byte MOVIE = 1;
+    private static final byte SERIAL = 2;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final short NO_DECADE = -1;
+    private static final short MAX_DECADE = 999;
+    private static final int NO_LOCATION = -1;
+
+    private final MovieRepository movieRepo;
+    private final SerialRepository serialRepo;
+    private final ShowBitmapIndex bitmapIndex;
+
+    private Columns current = new Columns();
+    private List<Consumer<Columns>> journal;
+    private final Object rebuildLock = new Object();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public ShowFacetIndex(MovieRepository movieRepo, SerialRepository serialRepo, ShowBitmapIndex bitmapIndex) {
+        this.movieRepo = movieRepo;
+        this.serialRepo = serialRepo;
+        this.bitmapIndex = bitmapIndex;
+    }
+
+    public ShowFacetsDTO count(ShowFacetQuery query) {
+        byte type = query.getType() == null ? NONE : code(query.getType());
+        long releasedBefore = query.getYearLt() == null ? Long.MAX_VALUE : yearBoundary(query.getYearLt());
+        long releasedAfter = query.getYearGt() == null ? Long.MIN_VALUE : yearBoundary(query.getYearGt());
+        boolean releaseFiltered = query.getYearLt() != null || query.getYearGt() != null;
+        int lengthLt = query.getLengthLt() == null ? Integer.MAX_VALUE : query.getLengthLt();
+        int lengthGt = query.getLengthGt() == null ? Integer.MIN_VALUE : query.getLengthGt();
+
+        IdBitmap matching = new IdBitmap();
+        long[] typeCounts = new long[3];
+        Map<Integer, Long> decadeCounts = new TreeMap<>();
+        Map<String, Long> locationCounts = new TreeMap<>();
+
+        lock.readLock().lock();
+        try {
+            Columns columns = current;
+            byte[] types = columns.types;
+            long[] released = columns.released;
+            short[] lengths = columns.lengths;
+            short[] decades = columns.decades;
+            int[] locations = columns.locations;
+            List<String> locationNames = columns.locationNames;
+            long[] locationCountsByCode = new long[locationNames.size()];
+            long[] decadeCountsByCode = new long[MAX_DECADE + 1];
+            Scan scan = id -> {
+                if (id >= types.length)
+                    return;
+                int row = (int) id;
+                if (types[row] == NONE || (type != NONE && types[row] != type))
+                    return;
+                if (releaseFiltered && (released[row] == NO_DATE
+                        || released[row] >= releasedBefore || released[row] <= releasedAfter))
+                    return;
+                if (lengths[row] >= lengthLt || lengths[row] <= lengthGt)
+                    return;
+                matching.add(id);
+                typeCounts[types[row]]++;
+                if (decades[row] != NO_DECADE)
+                    decadeCountsByCode[decades[row]]++;
+                if (locations[row] != NO_LOCATION)
+                    locationCountsByCode[locations[row]]++;
+            };
+            if (query.getCandidates() != null)
+                query.getCandidates().forEach(scan::accept);
+            else
+                for (int id = 0; id < types.length; id++)
+                    scan.accept(id);
+
+            for (int i = 0; i < decadeCountsByCode.length; i++)
+                if (decadeCountsByCode[i] > 0)
+                    decadeCounts.put(i * 10, decadeCountsByCode[i]);
+            for (int i = 0; i < locationCountsByCode.length; i++)
+                if (locationCountsByCode[i] > 0)
+                    locationCounts.put(locationNames.get(i), locationCountsByCode[i]);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Map<ShowType, Long> typesResult = new EnumMap<>(ShowType.class);
+        for (ShowType t : ShowType.values())
+            if (typeCounts[code(t)] > 0)
+                typesResult.put(t, typeCounts[code(t)]);
+        return new ShowFacetsDTO(bitmapIndex.countGenres(matching), decadeCounts, typesResult, locationCounts);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            lock.writeLock().lock();
+            try {
+                journal = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Columns fresh = new Columns();
+            int movies = fresh.load(movieRepo::findFacetsAfter, MOVIE);
+            int series = fresh.load(serialRepo::findFacetsAfter, SERIAL);
+
+            lock.writeLock().lock();
+            try {
+                journal.forEach(change -> change.accept(fresh));
+                journal = null;
+                current = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Facet index built with {} movies and {} series.", movies, series);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowSaved(ShowSavedEvent event) {
+        Show show = event.getShow();
+        apply(columns -> columns.put(show));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowsImported(ShowsImportedEvent event) {
+        List<Show> shows = event.getShows();
+        apply(columns -> shows.forEach(columns::put));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRemoved(ShowRemovedEvent event) {
+        long id = event.getShowId();
+        apply(columns -> columns.remove(id));
+    }
+
+    private void apply(Consumer<Columns> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(current);
+            if (journal != null)
+                journal.add(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /*
+    Same boundary as olderThan and youngerThan show predicates.
+     */
+    private static long yearBoundary(int year) {
+        return new GregorianCalendar(year, 1, 1).getTimeInMillis();
+    }
+
+    private static byte code(ShowType type) {
+        return type == ShowType.MOVIE ? MOVIE : SERIAL;
+    }
+
+    private interface Scan {
+        void accept(long id);
+    }
+
+    private static class Columns {
+        private byte[] types = new byte[0];
+        private long[] released = new long[0];
+        private short[] lengths = new short[0];
+        private short[] decades = new short[0];
+        private int[] locations = new int[0];
+
+        private final Map<String, Integer> locationCodes = new HashMap<>();
+        private final List<String> locationNames = new ArrayList<>();
+
+        private int load(BiFunction<Long, PageRequest, List<Object[]>> batch, byte type) {
+            int count = 0;
+            long after = 0;
+            List<Object[]> rows;
+            do {
+                rows = batch.apply(after, new PageRequest(0, BATCH_SIZE));
+                for (Object[] row : rows) {
+                    after = (Long) row[0];
+                    put(after, type, (Date) row[1], (String) row[2], (Short) row[3]);
+                    count++;
+                }
+            } while (rows.size() == BATCH_SIZE);
+            return count;
+        }
+
+        private void put(Show show) {
+            byte type = show instanceof Movie ? MOVIE : SERIAL;
+            short length = show instanceof Movie ? ((Movie) show).getDuration() : ((Serial) show).getSeasons();
+            put(show.getId(), type, show.getDateReleased(), show.getLocation(), length);
+        }
+
+        private void put(long id, byte type, Date dateReleased, String location, short length) {
+            if (id >= Integer.MAX_VALUE - 8) {
+                log.warn("Show {} left out of facet index, its id is too high.", id);
+                return;
+            }
+            int row = (int) id;
+            if (row >= types.length)
+                grow(row + 1);
+            types[row] = type;
+            lengths[row] = length;
+            if (dateReleased == null) {
+                released[row] = NO_DATE;
+                decades[row] = NO_DECADE;
+            } else {
+                released[row] = dateReleased.getTime();
+                Calendar calendar = new GregorianCalendar();
+                calendar.setTime(dateReleased);
+                int decade = calendar.get(Calendar.YEAR) / 10;
+                decades[row] = decade <= MAX_DECADE ? (short) decade : NO_DECADE;
+            }
+            if (location == null)
+                locations[row] = NO_LOCATION;
+            else
+                locations[row] = locationCodes.computeIfAbsent(location, name -> {
+                    locationNames.add(name);
+                    return locationNames.size() - 1;
+                });
+        }
+
+        private void remove(long id) {
+            if (id < types.length)
+                types[(int) id] = NONE;
+        }
+
+        private void grow(int minLength) {
+            int length = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minLength, types.length * 3L / 2));
+            types = Arrays.copyOf(types, length);
+            released = Arrays.copyOf(released, length);
+            lengths = Arrays.copyOf(lengths, length);
+            decades = Arrays.copyOf(decades, length);
+            locations = Arrays.copyOf(locations, length);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.tomaszstankowski.movieservice.service.index;
+
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import lombok.Data;
+
+/**
+ * Show filters evaluated in memory, with the same meaning as the specifications built by ShowController.
+ * Length means duration of movies and seasons of series. Null fields do not filter.
+ **/
+@Data
+public class ShowFacetQuery {
+
+    /*
+    Shows already known to match title and genre filters.
+     */
+    private final IdBitmap candidates;
+
+    private final ShowType type;
+
+    private final Integer yearLt;
+
+    private final Integer yearGt;
+
+    private final Integer lengthLt;
+
+    private final Integer lengthGt;
+}
@@ -0,0 +1,125 @@
+package com.tomaszstankowski.movieservice.service.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Best scored shows of a ranking, held in parallel arrays ordered by score, then by rating count, then by id.
+ * The list is always the exact beginning of the ranking. It is truncated when shows beyond its capacity were left out,
+ * so that it may end up shorter than the ranking after a show leaves it, and then only takes shows ahead of its last one.
+ * Not thread safe.
+ **/
+public class TopList {
+
+    private final int capacity;
+
+    private long[] ids;
+    private float[] scores;
+    private long[] counts;
+    private int size;
+    private boolean truncated;
+
+    public TopList(int capacity) {
+        this.capacity = capacity;
+        this.ids = new long[Math.min(capacity, 16)];
+        this.scores = new float[ids.length];
+        this.counts = new long[ids.length];
+    }
+
+    /**
+     * Places a show which is not on the list yet, unless it falls beyond the shows left out.
+     **/
+    public void offer(long id, float score, long count) {
+        if (truncated && (size == 0 || !before(score, count, id, size - 1)))
+            return;
+        int position = position(score, count, id);
+        if (size == capacity) {
+            truncated = true;
+            if (position == size)
+                return;
+            size--;
+        }
+        if (size == ids.length)
+            grow();
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        System.arraycopy(scores, position, scores, position + 1, size - position);
+        System.arraycopy(counts, position, counts, position + 1, size - position);
+        ids[position] = id;
+        scores[position] = score;
+        counts[position] = count;
+        size++;
+    }
+
+    public boolean remove(long id) {
+        for (int i = 0; i < size; i++)
+            if (ids[i] == id) {
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                System.arraycopy(scores, i + 1, scores, i, size - i - 1);
+                System.arraycopy(counts, i + 1, counts, i, size - i - 1);
+                size--;
+                return true;
+            }
+        return false;
+    }
+
+    /**
+     * @return ids of at most limit best shows having at least minCount ratings
+     **/
+    public List<Long> slice(long minCount, int limit) {
+        if (minCount <= 1)
+            return toList(Arrays.copyOf(ids, Math.min(limit, size)));
+        List<Long> result = new ArrayList<>(Math.min(limit, size));
+        for (int i = 0; i < size && result.size() < limit; i++)
+            if (counts[i] >= minCount)
+                result.add(ids[i]);
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    private boolean before(float score, long count, long id, int index) {
+        if (score != scores[index])
+            return score > scores[index];
+        if (count != counts[index])
+            return count > counts[index];
+        return id < ids[index];
+    }
+
+    private int position(float score, long count, long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (before(score, count, id, middle))
+                high = middle;
+            else
+                low = middle + 1;
+        }
+        return low;
+    }
+
+    private void grow() {
+        int length = Math.min(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, length);
+        scores = Arrays.copyOf(scores, length);
+        counts = Arrays.copyOf(counts, length);
+    }
+
+    private static List<Long> toList(long[] ids) {
+        List<Long> list = new ArrayList<>(ids.length);
+        for (long id : ids)
+            list.add(id);
+        return list;
+    }
+}
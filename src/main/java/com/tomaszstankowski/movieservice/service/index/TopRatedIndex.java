@@ -0,0 +1,517 @@
+package com.tomaszstankowski.movieservice.service.index;
+
+import com.tomaszstankowski.movieservice.model.entity.Genre;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import com.tomaszstankowski.movieservice.repository.GenreRepository;
+import com.tomaszstankowski.movieservice.repository.MovieRepository;
+import com.tomaszstankowski.movieservice.repository.SerialRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowsImportedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/*
+Top rated shows per genre, type and decade and every combination of them, ranked by a weighted (Bayesian) rating:
+(prior votes * mean of all ratings + rating sum) / (prior votes + rating count), so that shows with few ratings lean
+towards the mean. Rated shows are kept in columns indexed by show id, like in ShowFacetIndex, and each ranking
+in a TopList of the best ones.
+
+Shows named by ShowRatedEvent have their aggregates read in one query every refresh interval and are moved within
+their rankings only. The mean of all ratings is kept up to date, but scores are recalculated with it and rankings
+rebuilt from the columns only every rescore interval, so that all scores of a ranking use the same mean.
+Rankings which lost too many shows are refilled from the columns, so are the queries filtering more shows out
+than a ranking holds.
+Rebuilt from the database at startup and kept in sync by events of ShowService. A rebuild loads fresh columns
+while the current ones keep serving, changes arriving in the meantime are journaled and replayed on them
+before they are swapped in.
+ */
+@Component
+@ManagedResource(objectName = "movieservice:type=Index,name=topRated")
+public class TopRatedIndex {
+
+    public static final int MAX_LIMIT = 100;
+
+    private static final Logger log = LoggerFactory.getLogger(TopRatedIndex.class);
+
+    private static final int BATCH_SIZE = 10000;
+
+    private static final int REFRESH_CHUNK_SIZE = 1000;
+
+    /*
+    Rankings hold more shows than a request may ask for, so that shows leaving them rarely call for a refill.
+     */
+    private static final int CAPACITY = 2 * MAX_LIMIT;
+
+    private static final byte NONE = 0;
+    private static final byte MOVIE = 1;
+    private static final byte SERIAL = 2;
+
+    private static final int ANY = -1;
+    private static final short MAX_DECADE = 999;
+    private static final int[] NO_GENRES = new int[0];
+
+    private final ShowRepository showRepo;
+    private final MovieRepository movieRepo;
+    private final SerialRepository serialRepo;
+    private final GenreRepository genreRepo;
+
+    private final long priorVotes;
+
+    private Columns current = new Columns();
+    private List<Consumer<Columns>> journal;
+    private final Object rebuildLock = new Object();
+
+    private final Set<Long> rated = ConcurrentHashMap.newKeySet();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder refills = new LongAdder();
+    private final LongAdder scans = new LongAdder();
+
+    public TopRatedIndex(ShowRepository showRepo,
+                         MovieRepository movieRepo,
+                         SerialRepository serialRepo,
+                         GenreRepository genreRepo,
+                         @Value("${movieservice.shows.top.prior-votes:25}") long priorVotes) {
+        this.showRepo = showRepo;
+        this.movieRepo = movieRepo;
+        this.serialRepo = serialRepo;
+        this.genreRepo = genreRepo;
+        this.priorVotes = priorVotes;
+    }
+
+    /**
+     * @param genre    null for any genre
+     * @param type     null for any type
+     * @param decade   any year of the decade, null for any decade
+     * @param minVotes least number of ratings of the shows
+     * @return ids of at most limit best rated shows, the best first
+     **/
+    public List<Long> findTop(String genre, ShowType type, Integer decade, long minVotes, int limit) {
+        if (limit <= 0)
+            return Collections.emptyList();
+        lock.readLock().lock();
+        try {
+            Columns columns = current;
+            int genreCode = ANY;
+            if (genre != null) {
+                Integer code = columns.genreCodes.get(key(genre));
+                if (code == null)
+                    return Collections.emptyList();
+                genreCode = code;
+            }
+            int decadeCode = ANY;
+            if (decade != null) {
+                decadeCode = decade / 10;
+                if (decade < 0 || decadeCode > MAX_DECADE)
+                    return Collections.emptyList();
+            }
+            byte typeCode = type == null ? NONE : code(type);
+            TopList ranking = columns.rankings.get(rankingKey(genreCode, typeCode, decadeCode));
+            if (ranking == null)
+                return Collections.emptyList();
+            List<Long> top = ranking.slice(minVotes, limit);
+            if (top.size() < limit && ranking.isTruncated()) {
+                scans.increment();
+                top = columns.scan(genreCode, typeCode, decadeCode, minVotes, limit).slice(minVotes, limit);
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            lock.writeLock().lock();
+            try {
+                journal = new ArrayList<>();
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Columns fresh = new Columns();
+            int movies = fresh.load(movieRepo::findRankingsAfter, MOVIE);
+            int series = fresh.load(serialRepo::findRankingsAfter, SERIAL);
+            for (Genre genre : genreRepo.findAll()) {
+                int code = fresh.genreCode(genre.getName());
+                loadIds((after, page) -> showRepo.findIdsByGenreAfter(genre.getName(), after, page),
+                        id -> fresh.addGenre((int) id, code));
+            }
+            fresh.rescore();
+
+            lock.writeLock().lock();
+            try {
+                journal.forEach(change -> change.accept(fresh));
+                journal = null;
+                current = fresh;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            log.info("Top rated index built with {} movies and {} series in {} rankings.",
+                    movies, series, fresh.rankings.size());
+        }
+    }
+
+    /**
+     * Moves shows rated since the last refresh within their rankings.
+     **/
+    @Scheduled(initialDelayString = "${movieservice.shows.top.refresh-interval-ms:1000}",
+            fixedDelayString = "${movieservice.shows.top.refresh-interval-ms:1000}")
+    @ManagedOperation
+    public void refresh() {
+        List<Long> ids = new ArrayList<>(rated);
+        if (ids.isEmpty())
+            return;
+        rated.removeAll(ids);
+        List<Object[]> aggregates = new ArrayList<>(ids.size());
+        try {
+            for (int i = 0; i < ids.size(); i += REFRESH_CHUNK_SIZE)
+                aggregates.addAll(showRepo.findRatingAggregatesByIdIn(
+                        ids.subList(i, Math.min(ids.size(), i + REFRESH_CHUNK_SIZE))));
+        } catch (DataAccessException e) {
+            rated.addAll(ids);
+            log.warn("Top rated index not refreshed with {} shows.", ids.size(), e);
+            return;
+        }
+        apply(columns -> {
+            for (Object[] row : aggregates)
+                columns.setAggregates((Long) row[0], (Long) row[1], (Long) row[2]);
+            columns.refill();
+        });
+        refreshes.increment();
+    }
+
+    /**
+     * Recalculates scores with the current mean of all ratings and rebuilds rankings from the columns.
+     **/
+    @Scheduled(initialDelayString = "#{${movieservice.shows.top.rescore-interval-seconds:3600} * 1000}",
+            fixedDelayString = "#{${movieservice.shows.top.rescore-interval-seconds:3600} * 1000}")
+    @ManagedOperation
+    public void rescore() {
+        apply(Columns::rescore);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRated(ShowRatedEvent event) {
+        rated.add(event.getShowId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowSaved(ShowSavedEvent event) {
+        Show show = event.getShow();
+        apply(columns -> columns.put(show));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowsImported(ShowsImportedEvent event) {
+        List<Show> shows = event.getShows();
+        apply(columns -> shows.forEach(columns::put));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onShowRemoved(ShowRemovedEvent event) {
+        rated.remove(event.getShowId());
+        long id = event.getShowId();
+        apply(columns -> columns.remove(id));
+    }
+
+    private void apply(Consumer<Columns> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(current);
+            if (journal != null)
+                journal.add(change);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void loadIds(BiFunction<Long, PageRequest, List<Long>> batch, LongConsumer action) {
+        long after = 0;
+        List<Long> ids;
+        do {
+            ids = batch.apply(after, new PageRequest(0, BATCH_SIZE));
+            for (Long id : ids) {
+                action.accept(id);
+                after = id;
+            }
+        } while (ids.size() == BATCH_SIZE);
+    }
+
+    private static long rankingKey(int genre, byte type, int decade) {
+        return ((long) (genre + 1) << 32) | ((long) type << 16) | (decade + 1);
+    }
+
+    private static short decade(Date dateReleased) {
+        if (dateReleased == null)
+            return ANY;
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTime(dateReleased);
+        int decade = calendar.get(Calendar.YEAR) / 10;
+        return decade <= MAX_DECADE ? (short) decade : ANY;
+    }
+
+    private static byte code(ShowType type) {
+        return type == ShowType.MOVIE ? MOVIE : SERIAL;
+    }
+
+    private static String key(String genreName) {
+        return genreName.toLowerCase(Locale.ROOT);
+    }
+
+    @ManagedAttribute
+    public int getRankings() {
+        lock.readLock().lock();
+        try {
+            return current.rankings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public float getMeanRating() {
+        lock.readLock().lock();
+        try {
+            return current.mean;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @ManagedAttribute
+    public int getPendingShows() {
+        return rated.size();
+    }
+
+    @ManagedAttribute
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    @ManagedAttribute
+    public long getRefills() {
+        return refills.sum();
+    }
+
+    @ManagedAttribute
+    public long getScans() {
+        return scans.sum();
+    }
+
+    /*
+    Columns and the rankings built from them, swapped as a whole by a rebuild.
+     */
+    private class Columns {
+        private byte[] types = new byte[0];
+        private short[] decades = new short[0];
+        private int[][] genres = new int[0][];
+        private long[] sums = new long[0];
+        private long[] counts = new long[0];
+        private float[] scores = new float[0];
+
+        private final Map<String, Integer> genreCodes = new HashMap<>();
+        private final Map<Long, TopList> rankings = new HashMap<>();
+
+        private long totalSum;
+        private long totalCount;
+        private float mean;
+
+        /*
+        Rated shows keep the aggregates last read, the ones of an edited show may be outdated.
+         */
+        private void put(Show show) {
+            if (show.getId() >= Integer.MAX_VALUE - 8) {
+                log.warn("Show {} left out of top rated index, its id is too high.", show.getId());
+                return;
+            }
+            int row = (int) show.getId();
+            if (row >= types.length)
+                grow(row + 1);
+            boolean known = types[row] != NONE;
+            unrank(row);
+            types[row] = show instanceof Movie ? MOVIE : SERIAL;
+            decades[row] = decade(show.getDateReleased());
+            genres[row] = NO_GENRES;
+            show.getGenres().forEach(genre -> addGenre(row, genreCode(genre.getName())));
+            if (known)
+                rank(row);
+            else
+                setAggregates(row, show.getRatingSum(), show.getRatingCount());
+        }
+
+        private void remove(long id) {
+            if (id >= types.length)
+                return;
+            int row = (int) id;
+            unrank(row);
+            totalSum -= sums[row];
+            totalCount -= counts[row];
+            types[row] = NONE;
+            genres[row] = NO_GENRES;
+            sums[row] = 0;
+            counts[row] = 0;
+        }
+
+        private void setAggregates(long id, long sum, long count) {
+            if (id >= types.length || types[(int) id] == NONE)
+                return;
+            int row = (int) id;
+            unrank(row);
+            totalSum += sum - sums[row];
+            totalCount += count - counts[row];
+            sums[row] = sum;
+            counts[row] = count;
+            scores[row] = score(sum, count);
+            rank(row);
+        }
+
+        private void rank(int row) {
+            if (counts[row] > 0)
+                forEachRanking(row, key -> rankings.computeIfAbsent(key, k -> new TopList(CAPACITY))
+                        .offer(row, scores[row], counts[row]));
+        }
+
+        private void unrank(int row) {
+            if (counts[row] > 0 && types[row] != NONE)
+                forEachRanking(row, key -> {
+                    TopList ranking = rankings.get(key);
+                    if (ranking != null)
+                        ranking.remove(row);
+                });
+        }
+
+        /*
+        Every ranking the show belongs to, the ones of any genre, type or decade included.
+         */
+        private void forEachRanking(int row, LongConsumer action) {
+            byte[] rowTypes = {NONE, types[row]};
+            int[] rowDecades = decades[row] == ANY ? new int[]{ANY} : new int[]{ANY, decades[row]};
+            for (int genre = -1; genre < genres[row].length; genre++)
+                for (byte type : rowTypes)
+                    for (int decade : rowDecades)
+                        action.accept(rankingKey(genre == -1 ? ANY : genres[row][genre], type, decade));
+        }
+
+        private void refill() {
+            for (Map.Entry<Long, TopList> e : rankings.entrySet()) {
+                TopList ranking = e.getValue();
+                if (ranking.isTruncated() && ranking.size() < ranking.capacity() / 2) {
+                    long key = e.getKey();
+                    e.setValue(scan((int) (key >>> 32) - 1, (byte) (key >>> 16), (int) (key & 0xFFFF) - 1, 1, CAPACITY));
+                    refills.increment();
+                }
+            }
+        }
+
+        private void rescore() {
+            mean = totalCount == 0 ? 0 : (float) totalSum / totalCount;
+            rankings.clear();
+            for (int row = 0; row < types.length; row++)
+                if (types[row] != NONE) {
+                    scores[row] = score(sums[row], counts[row]);
+                    rank(row);
+                }
+        }
+
+        private TopList scan(int genre, byte type, int decade, long minVotes, int capacity) {
+            TopList ranking = new TopList(capacity);
+            for (int row = 0; row < types.length; row++)
+                if (types[row] != NONE && counts[row] > 0 && counts[row] >= minVotes
+                        && (type == NONE || types[row] == type)
+                        && (decade == ANY || decades[row] == decade)
+                        && (genre == ANY || hasGenre(row, genre)))
+                    ranking.offer(row, scores[row], counts[row]);
+            return ranking;
+        }
+
+        private float score(long sum, long count) {
+            return (priorVotes * mean + sum) / (priorVotes + count);
+        }
+
+        private int load(BiFunction<Long, PageRequest, List<Object[]>> batch, byte type) {
+            int count = 0;
+            long after = 0;
+            List<Object[]> rows;
+            do {
+                rows = batch.apply(after, new PageRequest(0, BATCH_SIZE));
+                for (Object[] row : rows) {
+                    after = (Long) row[0];
+                    if (after >= Integer.MAX_VALUE - 8) {
+                        log.warn("Show {} left out of top rated index, its id is too high.", after);
+                        continue;
+                    }
+                    int id = (int) after;
+                    if (id >= types.length)
+                        grow(id + 1);
+                    types[id] = type;
+                    decades[id] = decade((Date) row[1]);
+                    sums[id] = (Long) row[2];
+                    counts[id] = (Long) row[3];
+                    totalSum += sums[id];
+                    totalCount += counts[id];
+                    count++;
+                }
+            } while (rows.size() == BATCH_SIZE);
+            return count;
+        }
+
+        private void addGenre(int row, int code) {
+            if (row >= types.length || types[row] == NONE || hasGenre(row, code))
+                return;
+            int[] rowGenres = Arrays.copyOf(genres[row], genres[row].length + 1);
+            rowGenres[rowGenres.length - 1] = code;
+            genres[row] = rowGenres;
+        }
+
+        private boolean hasGenre(int row, int code) {
+            for (int genre : genres[row])
+                if (genre == code)
+                    return true;
+            return false;
+        }
+
+        private int genreCode(String name) {
+            return genreCodes.computeIfAbsent(key(name), k -> genreCodes.size());
+        }
+
+        private void grow(int minLength) {
+            int length = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minLength, types.length * 3L / 2));
+            int from = types.length;
+            types = Arrays.copyOf(types, length);
+            decades = Arrays.copyOf(decades, length);
+            genres = Arrays.copyOf(genres, length);
+            sums = Arrays.copyOf(sums, length);
+            counts = Arrays.copyOf(counts, length);
+            scores = Arrays.copyOf(scores, length);
+            Arrays.fill(genres, from, length, NO_GENRES);
+        }
+    }
+}
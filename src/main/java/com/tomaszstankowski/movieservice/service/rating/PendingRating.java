@@ -0,0 +1,32 @@
+package com.tomaszstankowski.movieservice.service.rating;
+
+import lombok.Data;
+
+import java.util.Date;
+
+/*
+Rating acknowledged to the user but not yet written.
+ */
+@Data
+public class PendingRating {
+
+    private final long showId;
+
+    private final String login;
+
+    private final short rating;
+
+    private final Date date;
+
+    Key key() {
+        return new Key(showId, login);
+    }
+
+    @Data
+    static class Key {
+
+        private final long showId;
+
+        private final String login;
+    }
+}
@@ -0,0 +1,150 @@
+package com.tomaszstankowski.movieservice.service.rating;
+
+import com.tomaszstankowski.movieservice.model.entity.RatingHistogram;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Changes of rating histograms of shows not yet written to their rows, from which changes of their sums and
+ * counts follow. Each count is striped across cells and read without locks.
+ * Draining subtracts what was read rather than resetting, so changes added meanwhile are kept. Counters left with
+ * nothing pending are then evicted. Changes are added without any lock of the map, so raters of one show do not wait
+ * for each other: a counter is first retired and evicted only if no change is being added to it at that moment,
+ * a change finding its counter retired is added again once the eviction is decided.
+ **/
+public class RatingCounters {
+
+    private final ConcurrentMap<Long, Counter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * @param count number of ratings of the given value added, negative when removed
+     **/
+    public void add(long showId, int rating, long count) {
+        if (rating < RatingHistogram.MIN_RATING || rating > RatingHistogram.MAX_RATING)
+            throw new IllegalArgumentException("Rating out of range - " + rating + ".");
+        for (;;) {
+            Counter counter = counters.get(showId);
+            if (counter == null)
+                counter = counters.computeIfAbsent(showId, id -> new Counter());
+            if (counter.add(rating, count))
+                return;
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return null if nothing is pending
+     **/
+    public RatingHistogram pending(long showId) {
+        Counter counter = counters.get(showId);
+        if (counter == null)
+            return null;
+        RatingHistogram pending = counter.read();
+        return pending.isEmpty() ? null : pending;
+    }
+
+    public long pendingSum(long showId) {
+        RatingHistogram pending = pending(showId);
+        return pending == null ? 0 : pending.sum();
+    }
+
+    public long pendingCount(long showId) {
+        RatingHistogram pending = pending(showId);
+        return pending == null ? 0 : pending.total();
+    }
+
+    /**
+     * @return pending changes by show, removed from the counters
+     **/
+    public Map<Long, RatingHistogram> drain() {
+        Map<Long, RatingHistogram> drained = new HashMap<>();
+        counters.forEach((showId, counter) -> {
+            RatingHistogram pending = counter.read();
+            if (!pending.isEmpty()) {
+                for (int rating = RatingHistogram.MIN_RATING; rating <= RatingHistogram.MAX_RATING; rating++)
+                    counter.counts[rating - 1].add(-pending.count(rating));
+                drained.put(showId, pending);
+            }
+            counters.computeIfPresent(showId, (id, c) -> c.retire() ? null : c);
+        });
+        return drained;
+    }
+
+    /**
+     * Adds back changes which could not be written.
+     **/
+    public void restore(Map<Long, RatingHistogram> drained) {
+        drained.forEach((showId, pending) -> {
+            for (int rating = RatingHistogram.MIN_RATING; rating <= RatingHistogram.MAX_RATING; rating++)
+                if (pending.count(rating) != 0)
+                    add(showId, rating, pending.count(rating));
+        });
+    }
+
+    public void remove(long showId) {
+        counters.remove(showId);
+    }
+
+    /**
+     * @return number of shows with counters, including ones emptied since the last drain
+     **/
+    public int size() {
+        return counters.size();
+    }
+
+    private static class Counter {
+
+        private final LongAdder[] counts = new LongAdder[RatingHistogram.MAX_RATING];
+
+        /*
+        Changes started and finished, both only grow so that equal sums mean none was being added in between.
+         */
+        private final LongAdder entered = new LongAdder();
+        private final LongAdder exited = new LongAdder();
+        private volatile boolean retired;
+
+        private Counter() {
+            for (int i = 0; i < counts.length; i++)
+                counts[i] = new LongAdder();
+        }
+
+        /*
+        Returns false if the counter is retired, the change is not added then.
+         */
+        private boolean add(int rating, long count) {
+            entered.increment();
+            try {
+                if (retired)
+                    return false;
+                counts[rating - 1].add(count);
+                return true;
+            } finally {
+                exited.increment();
+            }
+        }
+
+        /*
+        Called under the lock of the entry of the show. Changes entering from now on see the flag and are not added,
+        so the counter can be evicted if none is being added and nothing is pending. Otherwise it is kept.
+         */
+        private boolean retire() {
+            retired = true;
+            long finished = exited.sum();
+            if (entered.sum() == finished && read().isEmpty())
+                return true;
+            retired = false;
+            return false;
+        }
+
+        private RatingHistogram read() {
+            RatingHistogram histogram = new RatingHistogram();
+            for (int rating = RatingHistogram.MIN_RATING; rating <= RatingHistogram.MAX_RATING; rating++)
+                histogram.add(rating, counts[rating - 1].sum());
+            return histogram;
+        }
+    }
+}
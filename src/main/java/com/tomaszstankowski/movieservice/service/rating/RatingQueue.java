@@ -0,0 +1,101 @@
+package com.tomaszstankowski.movieservice.service.rating;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded queue of ratings waiting to be written, holding at most one rating of each user for each show.
+ * A rating of a user who already has one queued for the show replaces it in place, which is accepted even when full.
+ * Ratings are drained in the order their user and show were first queued.
+ **/
+public class RatingQueue {
+
+    private final int capacity;
+
+    private final LinkedHashMap<PendingRating.Key, PendingRating> pending = new LinkedHashMap<>();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public RatingQueue(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Capacity of a queue must be positive.");
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return false if the queue is full
+     **/
+    public synchronized boolean offer(PendingRating rating) {
+        PendingRating.Key key = rating.key();
+        if (pending.containsKey(key)) {
+            pending.put(key, rating);
+            coalesced.increment();
+            return true;
+        }
+        if (pending.size() >= capacity) {
+            rejected.increment();
+            return false;
+        }
+        pending.put(key, rating);
+        accepted.increment();
+        return true;
+    }
+
+    /**
+     * @return at most max of the oldest ratings, removed from the queue
+     **/
+    public synchronized List<PendingRating> drain(int max) {
+        List<PendingRating> drained = new ArrayList<>(Math.min(max, pending.size()));
+        Iterator<PendingRating> iterator = pending.values().iterator();
+        while (iterator.hasNext() && drained.size() < max) {
+            drained.add(iterator.next());
+            iterator.remove();
+        }
+        return drained;
+    }
+
+    /**
+     * Puts back ratings which could not be written, unless newer ones were queued meanwhile.
+     * They were accepted before, so they are put back even when full.
+     **/
+    public synchronized void requeue(Collection<PendingRating> ratings) {
+        for (PendingRating rating : ratings)
+            pending.putIfAbsent(rating.key(), rating);
+    }
+
+    /**
+     * @return true if a rating of the user for the show was queued
+     **/
+    public synchronized boolean discard(long showId, String login) {
+        return pending.remove(new PendingRating.Key(showId, login)) != null;
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long accepted() {
+        return accepted.sum();
+    }
+
+    /**
+     * @return number of ratings which replaced a queued rating of the same user for the same show
+     **/
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,149 @@
+package com.tomaszstankowski.movieservice.service.similar;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Neighbours of shows by adjusted cosine similarity, the cosine of the vectors of ratings centred on the means
+ * of their users. Shows are compared only with shows sharing at least minCoRaters raters, found by walking
+ * the ratings of each rater of the show, and only positive similarities count.
+ *
+ * Shows are split into ranges computed by a fork/join pool, a range being split further while it holds more than
+ * a few shows, so that idle workers steal the ranges left behind popular shows. Each worker sums dot products
+ * into dense arrays of its own, cleared after each show by the list of shows it touched.
+ **/
+public class ItemSimilarity {
+
+    private static final int SHOWS_PER_TASK = 16;
+
+    private final RatingMatrix matrix;
+    private final int k;
+    private final int minCoRaters;
+    private final ThreadLocal<Accumulator> accumulators;
+
+    public ItemSimilarity(RatingMatrix matrix, int k, int minCoRaters) {
+        this.matrix = matrix;
+        this.k = k;
+        this.minCoRaters = Math.max(1, minCoRaters);
+        this.accumulators = ThreadLocal.withInitial(() -> new Accumulator(matrix.shows(), k));
+    }
+
+    /**
+     * @param shows indexes of the shows in the matrix
+     **/
+    public Neighbours neighbours(int[] shows, ForkJoinPool pool) {
+        long[] showIds = new long[shows.length];
+        for (int i = 0; i < shows.length; i++)
+            showIds[i] = matrix.showId(shows[i]);
+        Neighbours neighbours = new Neighbours(k, showIds);
+        pool.invoke(new Task(shows, 0, shows.length, neighbours));
+        return neighbours;
+    }
+
+    public Neighbours neighbours(ForkJoinPool pool) {
+        int[] shows = new int[matrix.shows()];
+        for (int show = 0; show < shows.length; show++)
+            shows[show] = show;
+        return neighbours(shows, pool);
+    }
+
+    private void compute(int show, int index, Neighbours neighbours) {
+        Accumulator acc = accumulators.get();
+        for (int i = matrix.showStart(show); i < matrix.showEnd(show); i++) {
+            int user = matrix.rater(i);
+            float value = matrix.showValue(i);
+            for (int j = matrix.userStart(user); j < matrix.userEnd(user); j++) {
+                int other = matrix.ratedShow(j);
+                if (other == show)
+                    continue;
+                if (acc.coRaters[other]++ == 0)
+                    acc.touched[acc.touchedSize++] = other;
+                acc.dots[other] += value * matrix.userValue(user, j);
+            }
+        }
+        acc.size = 0;
+        float norm = matrix.norm(show);
+        for (int t = 0; t < acc.touchedSize; t++) {
+            int other = acc.touched[t];
+            if (acc.coRaters[other] >= minCoRaters && norm > 0 && matrix.norm(other) > 0) {
+                float score = (float) (acc.dots[other] / ((double) norm * matrix.norm(other)));
+                if (score > 0)
+                    acc.offer(matrix.showId(other), score);
+            }
+            acc.dots[other] = 0;
+            acc.coRaters[other] = 0;
+        }
+        acc.touchedSize = 0;
+        neighbours.set(index, acc.size, acc.ids, acc.scores);
+    }
+
+    private class Task extends RecursiveAction {
+
+        private final int[] shows;
+        private final int from;
+        private final int to;
+        private final Neighbours neighbours;
+
+        private Task(int[] shows, int from, int to, Neighbours neighbours) {
+            this.shows = shows;
+            this.from = from;
+            this.to = to;
+            this.neighbours = neighbours;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SHOWS_PER_TASK) {
+                for (int i = from; i < to; i++)
+                    ItemSimilarity.this.compute(shows[i], i, neighbours);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Task(shows, from, middle, neighbours), new Task(shows, middle, to, neighbours));
+        }
+    }
+
+    /*
+    Top k neighbours are kept sorted by insertion, k being small. Equal scores keep the lower id first.
+     */
+    private static class Accumulator {
+
+        private final double[] dots;
+        private final int[] coRaters;
+        private final int[] touched;
+        private int touchedSize;
+
+        private final long[] ids;
+        private final float[] scores;
+        private int size;
+
+        private Accumulator(int shows, int k) {
+            this.dots = new double[shows];
+            this.coRaters = new int[shows];
+            this.touched = new int[shows];
+            this.ids = new long[k];
+            this.scores = new float[k];
+        }
+
+        private void offer(long id, float score) {
+            if (size == ids.length && !before(id, score, size - 1))
+                return;
+            int position = size == ids.length ? size - 1 : size;
+            while (position > 0 && before(id, score, position - 1))
+                position--;
+            int moved = Math.min(size, ids.length - 1) - position;
+            System.arraycopy(ids, position, ids, position + 1, moved);
+            System.arraycopy(scores, position, scores, position + 1, moved);
+            ids[position] = id;
+            scores[position] = score;
+            if (size < ids.length)
+                size++;
+        }
+
+        private boolean before(long id, float score, int index) {
+            if (score != scores[index])
+                return score > scores[index];
+            return id < ids[index];
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.tomaszstankowski.movieservice.service.similar;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Most similar shows of some shows, held in parallel arrays of a fixed number of neighbours per show,
+ * the most similar first. Shows with fewer neighbours have the rest of their places empty.
+ **/
+public class Neighbours {
+
+    private final int k;
+    private final long[] showIds;
+    private final int[] sizes;
+    private final long[] neighbourIds;
+    private final float[] scores;
+
+    Neighbours(int k, long[] showIds) {
+        this.k = k;
+        this.showIds = showIds;
+        this.sizes = new int[showIds.length];
+        this.neighbourIds = new long[showIds.length * k];
+        this.scores = new float[showIds.length * k];
+    }
+
+    /*
+    Places of each show are written by a single task.
+     */
+    void set(int index, int size, long[] ids, float[] scores) {
+        sizes[index] = size;
+        System.arraycopy(ids, 0, neighbourIds, index * k, size);
+        System.arraycopy(scores, 0, this.scores, index * k, size);
+    }
+
+    public int size() {
+        return showIds.length;
+    }
+
+    public long showId(int index) {
+        return showIds[index];
+    }
+
+    /**
+     * @return number of neighbours of the show at the index
+     **/
+    public int count(int index) {
+        return sizes[index];
+    }
+
+    public long neighbourId(int index, int ordinal) {
+        return neighbourIds[index * k + ordinal];
+    }
+
+    public float score(int index, int ordinal) {
+        return scores[index * k + ordinal];
+    }
+
+    public List<Long> neighbourIds(int index) {
+        List<Long> ids = new ArrayList<>(sizes[index]);
+        for (int ordinal = 0; ordinal < sizes[index]; ordinal++)
+            ids.add(neighbourId(index, ordinal));
+        return ids;
+    }
+}
@@ -0,0 +1,270 @@
+package com.tomaszstankowski.movieservice.service.similar;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sparse user by show matrix of ratings held in primitive arrays, both by show and by user, in the layout of
+ * compressed sparse columns and rows. A rating takes 10 bytes once built and 9 more while building, users and shows
+ * are numbered by int indexes, shows in the order of their ids. Ratings are stored as given and centred on the mean
+ * rating of their user when read, so that users rating everything high or low do not make shows look alike.
+ *
+ * Users who rated more than the given number of shows are left out. They add the most work, as a user
+ * with n ratings adds n² pairs of shows, while telling the least about any of the pairs.
+ * Immutable once built, so safe to read from many threads.
+ **/
+public class RatingMatrix {
+
+    private final long[] showIds;
+    private final int[] showOffsets;
+    private final int[] showRaters;
+    private final byte[] showRatings;
+    private final int[] userOffsets;
+    private final int[] userShows;
+    private final byte[] userRatings;
+    private final float[] userMeans;
+    private final float[] norms;
+    private final Map<String, Integer> logins;
+    private final long takenMillis;
+
+    private RatingMatrix(long[] showIds, int[] showOffsets, int[] showRaters, byte[] showRatings,
+                         int[] userOffsets, int[] userShows, byte[] userRatings, float[] userMeans,
+                         Map<String, Integer> logins, long takenMillis) {
+        this.showIds = showIds;
+        this.showOffsets = showOffsets;
+        this.showRaters = showRaters;
+        this.showRatings = showRatings;
+        this.userOffsets = userOffsets;
+        this.userShows = userShows;
+        this.userRatings = userRatings;
+        this.userMeans = userMeans;
+        this.logins = logins;
+        this.takenMillis = takenMillis;
+        this.norms = new float[showIds.length];
+        for (int show = 0; show < showIds.length; show++) {
+            double sum = 0;
+            for (int i = showOffsets[show]; i < showOffsets[show + 1]; i++) {
+                double value = showRatings[i] - userMeans[showRaters[i]];
+                sum += value * value;
+            }
+            norms[show] = (float) Math.sqrt(sum);
+        }
+    }
+
+    public int shows() {
+        return showIds.length;
+    }
+
+    public int users() {
+        return userMeans.length;
+    }
+
+    public int ratings() {
+        return showRaters.length;
+    }
+
+    /**
+     * @return time the builder was created, ratings given since may be missing
+     **/
+    public long takenMillis() {
+        return takenMillis;
+    }
+
+    public long showId(int show) {
+        return showIds[show];
+    }
+
+    /**
+     * @return index of the show, negative if the show is not in the matrix
+     **/
+    public int show(long showId) {
+        return Arrays.binarySearch(showIds, showId);
+    }
+
+    /**
+     * @return index of the user, negative if the user is not in the matrix or logins were not kept
+     **/
+    public int user(String login) {
+        Integer user = logins == null ? null : logins.get(login);
+        return user == null ? -1 : user;
+    }
+
+    /**
+     * @return length of the vector of centred ratings of the show
+     **/
+    public float norm(int show) {
+        return norms[show];
+    }
+
+    int showStart(int show) {
+        return showOffsets[show];
+    }
+
+    int showEnd(int show) {
+        return showOffsets[show + 1];
+    }
+
+    int rater(int position) {
+        return showRaters[position];
+    }
+
+    float showValue(int position) {
+        return showRatings[position] - userMeans[showRaters[position]];
+    }
+
+    int userStart(int user) {
+        return userOffsets[user];
+    }
+
+    int userEnd(int user) {
+        return userOffsets[user + 1];
+    }
+
+    int ratedShow(int position) {
+        return userShows[position];
+    }
+
+    float userValue(int user, int position) {
+        return userRatings[position] - userMeans[user];
+    }
+
+    /**
+     * @return mean rating of the user, 0 if the user has no ratings in the matrix
+     **/
+    float userMean(int user) {
+        return userMeans[user];
+    }
+
+    /**
+     * @return position of the show among the ratings of the user, negative if the user has not rated it
+     **/
+    int findRating(int user, int show) {
+        return Arrays.binarySearch(userShows, userOffsets[user], userOffsets[user + 1], show);
+    }
+
+    /**
+     * Takes ratings in any order, ratings of shows not given up front are skipped. Not thread safe.
+     **/
+    public static class Builder {
+
+        private final long[] showIds;
+        private final int maxUserRatings;
+        private final Map<String, Integer> users = new HashMap<>();
+        private final long takenMillis = System.currentTimeMillis();
+        private boolean keepLogins;
+        private int[] shows;
+        private int[] raters;
+        private byte[] ratings;
+        private int size;
+
+        /**
+         * @param showIds         ids of the shows of the matrix in ascending order
+         * @param expectedRatings number of ratings to make room for, there may be more or fewer of them
+         **/
+        public Builder(long[] showIds, int expectedRatings, int maxUserRatings) {
+            int capacity = Math.max(16, expectedRatings);
+            this.showIds = showIds;
+            this.maxUserRatings = maxUserRatings;
+            this.shows = new int[capacity];
+            this.raters = new int[capacity];
+            this.ratings = new byte[capacity];
+        }
+
+        /**
+         * Keeps the logins of users in the matrix, so that they can be looked up by login.
+         **/
+        public Builder keepLogins() {
+            keepLogins = true;
+            return this;
+        }
+
+        /**
+         * Places the user in the matrix even without ratings.
+         **/
+        public void addUser(String login) {
+            user(login);
+        }
+
+        public void add(long showId, String login, short rating) {
+            int show = Arrays.binarySearch(showIds, showId);
+            if (show < 0)
+                return;
+            if (size == raters.length) {
+                int capacity = size + (size >> 1);
+                shows = Arrays.copyOf(shows, capacity);
+                raters = Arrays.copyOf(raters, capacity);
+                ratings = Arrays.copyOf(ratings, capacity);
+            }
+            shows[size] = show;
+            raters[size] = user(login);
+            ratings[size] = (byte) rating;
+            size++;
+        }
+
+        private int user(String login) {
+            Integer user = users.get(login);
+            if (user == null) {
+                user = users.size();
+                users.put(login, user);
+            }
+            return user;
+        }
+
+        /*
+        Ratings are sorted by show with a counting sort, then by user with another counting sort over the sorted ones,
+        so that raters of a show and shows of a user come in ascending order.
+         */
+        public RatingMatrix build() {
+            int showCount = showIds.length;
+            int userCount = users.size();
+            Map<String, Integer> logins = keepLogins ? users : null;
+            int[] userCounts = new int[userCount];
+            for (int i = 0; i < size; i++)
+                userCounts[raters[i]]++;
+
+            int[] showOffsets = new int[showCount + 1];
+            for (int i = 0; i < size; i++)
+                if (userCounts[raters[i]] <= maxUserRatings)
+                    showOffsets[shows[i] + 1]++;
+            for (int show = 0; show < showCount; show++)
+                showOffsets[show + 1] += showOffsets[show];
+            int kept = showOffsets[showCount];
+            int[] showRaters = new int[kept];
+            byte[] showRatings = new byte[kept];
+            int[] next = Arrays.copyOf(showOffsets, showCount);
+            long[] sums = new long[userCount];
+            for (int i = 0; i < size; i++)
+                if (userCounts[raters[i]] <= maxUserRatings) {
+                    int position = next[shows[i]]++;
+                    showRaters[position] = raters[i];
+                    showRatings[position] = ratings[i];
+                    sums[raters[i]] += ratings[i];
+                }
+            shows = null;
+            raters = null;
+            ratings = null;
+            size = 0;
+
+            int[] userOffsets = new int[userCount + 1];
+            float[] userMeans = new float[userCount];
+            for (int user = 0; user < userCount; user++) {
+                int count = userCounts[user] <= maxUserRatings ? userCounts[user] : 0;
+                userOffsets[user + 1] = userOffsets[user] + count;
+                if (count > 0)
+                    userMeans[user] = (float) sums[user] / count;
+            }
+            int[] userShows = new int[kept];
+            byte[] userRatings = new byte[kept];
+            next = Arrays.copyOf(userOffsets, userCount);
+            for (int show = 0; show < showCount; show++)
+                for (int i = showOffsets[show]; i < showOffsets[show + 1]; i++) {
+                    int position = next[showRaters[i]]++;
+                    userShows[position] = show;
+                    userRatings[position] = showRatings[i];
+                }
+            return new RatingMatrix(showIds, showOffsets, showRaters, showRatings,
+                    userOffsets, userShows, userRatings, userMeans, logins, takenMillis);
+        }
+    }
+}
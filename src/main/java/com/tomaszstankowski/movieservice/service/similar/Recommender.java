@@ -0,0 +1,340 @@
+package com.tomaszstankowski.movieservice.service.similar;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * Shows recommended to a user, scored in memory from a snapshot of ratings, follows, neighbours of shows and genres.
+ * Each candidate has three scores, each scaled by its highest value among the candidates and blended by weights,
+ * candidates without any positive score are dropped:
+ * - the ratings of the user, centred on their mean, times the similarity of the rated shows to their neighbours,
+ * - the ratings of followed users above their means,
+ * - the affinity of the user to the genres of the show, summed from their centred ratings of shows of each genre.
+ * Best rated shows of the genres the user likes the most are candidates too, and best rated shows of all fill
+ * the list when there are too few candidates. Shows the user rated are left out.
+ *
+ * Ratings of a user are found in the rows of the RatingMatrix, so the rated shows are a sorted array searched
+ * in O(log n), and neighbours and follows are kept in the same layout of offsets into one array.
+ * Work per request is bounded by the number of ratings and followed users taken into account.
+ * Immutable once built, so safe to read from many threads.
+ **/
+public class Recommender {
+
+    static final int MAX_SEEDS = 500;
+    static final int MAX_FOLLOWED = 1000;
+    static final int MAX_FOLLOWED_RATINGS = 100000;
+    static final int TOP_GENRES = 3;
+    static final int GENRE_CANDIDATES = 50;
+    static final int FILL_CANDIDATES = 200;
+
+    private static final int ITEM = 0;
+    private static final int FOLLOW = 1;
+    private static final int GENRE = 2;
+
+    private final RatingMatrix matrix;
+    private final int[] followOffsets;
+    private final int[] followedUsers;
+    private final int[] neighbourOffsets;
+    private final int[] neighbourShows;
+    private final float[] neighbourScores;
+    private final int[][] genres;
+    private final String[] genreNames;
+    private final float[] weights;
+
+    private Recommender(Builder builder, int[] followOffsets, int[] followedUsers,
+                        int[] neighbourOffsets, int[] neighbourShows, float[] neighbourScores) {
+        this.matrix = builder.matrix;
+        this.followOffsets = followOffsets;
+        this.followedUsers = followedUsers;
+        this.neighbourOffsets = neighbourOffsets;
+        this.neighbourShows = neighbourShows;
+        this.neighbourScores = neighbourScores;
+        this.genres = builder.genres;
+        this.genreNames = builder.genreNames.toArray(new String[0]);
+        this.weights = builder.weights;
+    }
+
+    public int users() {
+        return matrix.users();
+    }
+
+    public int ratings() {
+        return matrix.ratings();
+    }
+
+    public int follows() {
+        return followedUsers.length;
+    }
+
+    public int neighbours() {
+        return neighbourShows.length;
+    }
+
+    /**
+     * @param recent   ratings of the user by show id made since the snapshot was taken
+     * @param topRated ids of at most the given number of best rated shows of a genre, of all genres for null
+     * @return ids of at most limit shows, the best first
+     **/
+    public List<Long> recommend(String login, Map<Long, Short> recent, int limit,
+                                BiFunction<String, Integer, List<Long>> topRated) {
+        if (limit <= 0)
+            return Collections.emptyList();
+        int user = matrix.user(login);
+        Map<Long, float[]> candidates = new HashMap<>();
+        float[] affinity = new float[genreNames.length];
+        addOwnRatings(user, recent, candidates, affinity);
+        if (user >= 0)
+            addFollowedRatings(user, candidates);
+        addGenres(affinity, candidates, topRated);
+        candidates.keySet().removeIf(showId -> isRated(user, showId, recent));
+
+        float[] max = new float[3];
+        for (float[] scores : candidates.values())
+            for (int i = 0; i < max.length; i++)
+                max[i] = Math.max(max[i], scores[i]);
+        PriorityQueue<Candidate> best = new PriorityQueue<>(limit + 1);
+        candidates.forEach((showId, scores) -> {
+            float score = 0;
+            for (int i = 0; i < max.length; i++)
+                if (max[i] > 0 && scores[i] > 0)
+                    score += weights[i] * scores[i] / max[i];
+            if (score <= 0)
+                return;
+            best.add(new Candidate(showId, score));
+            if (best.size() > limit)
+                best.poll();
+        });
+        List<Long> result = new ArrayList<>(limit);
+        while (!best.isEmpty())
+            result.add(best.poll().showId);
+        Collections.reverse(result);
+        if (result.size() < limit)
+            for (Long showId : topRated.apply(null, Math.max(limit, FILL_CANDIDATES)))
+                if (result.size() < limit && !result.contains(showId) && !isRated(user, showId, recent))
+                    result.add(showId);
+        return result;
+    }
+
+    /*
+    Ratings made since the snapshot was taken come first, centred on the mean of the ones in the snapshot, or on their
+    own mean for users without any. Ratings in the snapshot follow in the order of show ids.
+     */
+    private void addOwnRatings(int user, Map<Long, Short> recent, Map<Long, float[]> candidates, float[] affinity) {
+        boolean rated = user >= 0 && matrix.userEnd(user) > matrix.userStart(user);
+        float mean = rated ? matrix.userMean(user) : mean(recent.values());
+        int seeds = 0;
+        for (Map.Entry<Long, Short> rating : recent.entrySet()) {
+            int show = matrix.show(rating.getKey());
+            if (show >= 0 && seeds < MAX_SEEDS) {
+                addSeed(show, rating.getValue() - mean, candidates, affinity);
+                seeds++;
+            }
+        }
+        if (!rated)
+            return;
+        for (int i = matrix.userStart(user); i < matrix.userEnd(user) && seeds < MAX_SEEDS; i++) {
+            if (recent.containsKey(matrix.showId(matrix.ratedShow(i))))
+                continue;
+            addSeed(matrix.ratedShow(i), matrix.userValue(user, i), candidates, affinity);
+            seeds++;
+        }
+    }
+
+    private void addSeed(int show, float value, Map<Long, float[]> candidates, float[] affinity) {
+        for (int i = neighbourOffsets[show]; i < neighbourOffsets[show + 1]; i++)
+            scores(candidates, matrix.showId(neighbourShows[i]))[ITEM] += value * neighbourScores[i];
+        for (int genre : genres[show])
+            affinity[genre] += value;
+    }
+
+    private void addFollowedRatings(int user, Map<Long, float[]> candidates) {
+        int budget = MAX_FOLLOWED_RATINGS;
+        int end = Math.min(followOffsets[user + 1], followOffsets[user] + MAX_FOLLOWED);
+        for (int f = followOffsets[user]; f < end && budget > 0; f++) {
+            int followed = followedUsers[f];
+            for (int i = matrix.userStart(followed); i < matrix.userEnd(followed) && budget > 0; i++, budget--) {
+                float value = matrix.userValue(followed, i);
+                if (value > 0)
+                    scores(candidates, matrix.showId(matrix.ratedShow(i)))[FOLLOW] += value;
+            }
+        }
+    }
+
+    /*
+    Genres the user likes more than average have their best rated shows added as candidates,
+    every candidate is scored by the genre of its own the user likes the most.
+     */
+    private void addGenres(float[] affinity, Map<Long, float[]> candidates,
+                           BiFunction<String, Integer, List<Long>> topRated) {
+        Integer[] liked = new Integer[affinity.length];
+        for (int genre = 0; genre < liked.length; genre++)
+            liked[genre] = genre;
+        Arrays.sort(liked, (a, b) -> Float.compare(affinity[b], affinity[a]));
+        for (int i = 0; i < Math.min(TOP_GENRES, liked.length) && affinity[liked[i]] > 0; i++)
+            for (Long showId : topRated.apply(genreNames[liked[i]], GENRE_CANDIDATES))
+                scores(candidates, showId);
+        candidates.forEach((showId, scores) -> {
+            int show = matrix.show(showId);
+            if (show < 0)
+                return;
+            for (int genre : genres[show])
+                scores[GENRE] = Math.max(scores[GENRE], affinity[genre]);
+        });
+    }
+
+    private boolean isRated(int user, long showId, Map<Long, Short> recent) {
+        if (recent.containsKey(showId))
+            return true;
+        int show = matrix.show(showId);
+        return user >= 0 && show >= 0 && matrix.findRating(user, show) >= 0;
+    }
+
+    private static float mean(Collection<Short> ratings) {
+        float sum = 0;
+        for (short rating : ratings)
+            sum += rating;
+        return ratings.isEmpty() ? 0 : sum / ratings.size();
+    }
+
+    private static float[] scores(Map<Long, float[]> candidates, long showId) {
+        return candidates.computeIfAbsent(showId, id -> new float[3]);
+    }
+
+    /*
+    Ordered worst first, so that the head of the heap is the one to drop. Equal scores prefer lower ids.
+     */
+    private static class Candidate implements Comparable<Candidate> {
+
+        private final long showId;
+        private final float score;
+
+        private Candidate(long showId, float score) {
+            this.showId = showId;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (score != other.score)
+                return Float.compare(score, other.score);
+            return Long.compare(other.showId, showId);
+        }
+    }
+
+    /**
+     * Takes follows, neighbours and genres in any order, the ones of users or shows not in the matrix are skipped.
+     * Not thread safe.
+     **/
+    public static class Builder {
+
+        private final RatingMatrix matrix;
+        private final float[] weights;
+        private int[][] genres;
+        private final Map<String, Integer> genreCodes = new HashMap<>();
+        private final List<String> genreNames = new ArrayList<>();
+
+        private final Edges follows;
+        private final Edges neighbours;
+
+        /**
+         * @param matrix ratings of all the users by login, see RatingMatrix.Builder.keepLogins
+         **/
+        public Builder(RatingMatrix matrix, float itemWeight, float followWeight, float genreWeight) {
+            this.matrix = matrix;
+            this.weights = new float[]{itemWeight, followWeight, genreWeight};
+            this.genres = new int[matrix.shows()][];
+            Arrays.fill(genres, new int[0]);
+            this.follows = new Edges(matrix.users());
+            this.neighbours = new Edges(matrix.shows());
+        }
+
+        public void addFollow(String follower, String followed) {
+            int from = matrix.user(follower);
+            int to = matrix.user(followed);
+            if (from >= 0 && to >= 0)
+                follows.add(from, to, 0);
+        }
+
+        public void addNeighbour(long showId, long similarShowId, float score) {
+            int from = matrix.show(showId);
+            int to = matrix.show(similarShowId);
+            if (from >= 0 && to >= 0)
+                neighbours.add(from, to, score);
+        }
+
+        /**
+         * Genres are told apart case insensitively, like the database does.
+         **/
+        public void addGenre(long showId, String genre) {
+            int show = matrix.show(showId);
+            if (show < 0)
+                return;
+            Integer code = genreCodes.get(genre.toLowerCase(Locale.ROOT));
+            if (code == null) {
+                code = genreNames.size();
+                genreCodes.put(genre.toLowerCase(Locale.ROOT), code);
+                genreNames.add(genre);
+            }
+            for (int known : genres[show])
+                if (known == code)
+                    return;
+            int[] showGenres = Arrays.copyOf(genres[show], genres[show].length + 1);
+            showGenres[showGenres.length - 1] = code;
+            genres[show] = showGenres;
+        }
+
+        public Recommender build() {
+            follows.sort();
+            neighbours.sort();
+            return new Recommender(this, follows.offsets, follows.to,
+                    neighbours.offsets, neighbours.to, neighbours.scores);
+        }
+    }
+
+    /*
+    Edges collected in arrays and grouped by their source with a counting sort.
+     */
+    private static class Edges {
+
+        private final int[] offsets;
+        private int[] from = new int[16];
+        private int[] to = new int[16];
+        private float[] scores = new float[16];
+        private int size;
+
+        private Edges(int sources) {
+            this.offsets = new int[sources + 1];
+        }
+
+        private void add(int source, int target, float score) {
+            if (size == from.length) {
+                int capacity = size + (size >> 1);
+                from = Arrays.copyOf(from, capacity);
+                to = Arrays.copyOf(to, capacity);
+                scores = Arrays.copyOf(scores, capacity);
+            }
+            from[size] = source;
+            to[size] = target;
+            scores[size] = score;
+            size++;
+        }
+
+        private void sort() {
+            for (int i = 0; i < size; i++)
+                offsets[from[i] + 1]++;
+            for (int source = 0; source < offsets.length - 1; source++)
+                offsets[source + 1] += offsets[source];
+            int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+            int[] sortedTo = new int[size];
+            float[] sortedScores = new float[size];
+            for (int i = 0; i < size; i++) {
+                int position = next[from[i]]++;
+                sortedTo[position] = to[i];
+                sortedScores[position] = scores[i];
+            }
+            from = null;
+            to = sortedTo;
+            scores = sortedScores;
+        }
+    }
+}
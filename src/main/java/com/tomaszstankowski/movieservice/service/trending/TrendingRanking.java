@@ -0,0 +1,268 @@
+package com.tomaszstankowski.movieservice.service.trending;
+
+import java.util.*;
+
+/**
+ * Shows ranked by their ratings within one window. Each show keeps a ring buffer of weights of its ratings
+ * per bucket, its score is their sum. A rating weighs exp(λ(t - landmark)), so a newer one weighs more while
+ * the scores of shows not rated meanwhile keep their order, as all of them would decay by the same factor.
+ * A bucket leaving the window takes its weight away from the score.
+ *
+ * Shows are held in an indexed max-heap and an indexed min-heap by score, so a rating moves its show in O(log n).
+ * Shows without ratings within the window are dropped by a sweep, and a show rated when the given number is
+ * tracked evicts the one with the lowest score, so that memory stays bounded. Scores between sweeps may still
+ * include buckets which have left the window.
+ * Thread safe.
+ **/
+public class TrendingRanking {
+
+    /*
+    Weights are brought back to the current landmark before they grow out of range of a double.
+     */
+    private static final double MAX_EXPONENT = 100;
+
+    private final int buckets;
+    private final long bucketMillis;
+    private final double lambda;
+    private final int maxShows;
+
+    private long landmark;
+
+    private final Map<Long, Slot> slots = new HashMap<>();
+    private Slot[] heap = new Slot[16];
+    private Slot[] minHeap = new Slot[16];
+    private int size;
+
+    private long evicted;
+
+    public TrendingRanking(TrendingWindow window, int maxShows, long now) {
+        this.buckets = window.getBuckets();
+        this.bucketMillis = window.getBucketMillis();
+        this.lambda = Math.log(2) / window.getHalfLifeMillis();
+        this.maxShows = maxShows;
+        this.landmark = now;
+    }
+
+    public synchronized void rated(long showId, long now) {
+        Slot slot = slots.get(showId);
+        if (slot == null) {
+            if (size == maxShows) {
+                remove(minHeap[0]);
+                evicted++;
+            }
+            slot = new Slot(showId, buckets, now / bucketMillis);
+            slots.put(showId, slot);
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, size * 2);
+                minHeap = Arrays.copyOf(minHeap, size * 2);
+            }
+            heap[size] = slot;
+            slot.index = size;
+            minHeap[size] = slot;
+            slot.minIndex = size++;
+        } else {
+            advance(slot, now);
+        }
+        if (lambda * (now - landmark) > MAX_EXPONENT)
+            rebase(now);
+        double weight = Math.exp(lambda * (now - landmark));
+        slot.weights[(int) (slot.head % buckets)] += weight;
+        slot.score += weight;
+        siftUp(slot.index);
+        // a new show enters the min-heap at its bottom, a rated one can only move down
+        siftUpMin(slot.minIndex);
+        siftDownMin(slot.minIndex);
+    }
+
+    /**
+     * @return ids of at most limit shows with the highest scores, the highest first
+     **/
+    public synchronized List<Long> top(int limit) {
+        List<Long> top = new ArrayList<>(Math.min(limit, size));
+        if (size == 0)
+            return top;
+        PriorityQueue<Slot> frontier = new PriorityQueue<>((a, b) -> Double.compare(b.score, a.score));
+        frontier.add(heap[0]);
+        while (!frontier.isEmpty() && top.size() < limit) {
+            Slot slot = frontier.poll();
+            top.add(slot.showId);
+            int child = 2 * slot.index + 1;
+            if (child < size)
+                frontier.add(heap[child]);
+            if (child + 1 < size)
+                frontier.add(heap[child + 1]);
+        }
+        return top;
+    }
+
+    /**
+     * Takes buckets which have left the window away from the scores and drops shows left without ratings.
+     **/
+    public synchronized void sweep(long now) {
+        for (Slot slot : new ArrayList<>(slots.values())) {
+            advance(slot, now);
+            if (slot.score == 0)
+                remove(slot);
+        }
+        if (lambda * (now - landmark) > MAX_EXPONENT / 2)
+            rebase(now);
+    }
+
+    public synchronized void remove(long showId) {
+        Slot slot = slots.get(showId);
+        if (slot != null)
+            remove(slot);
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return number of shows evicted because too many shows were tracked
+     **/
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+
+    /*
+    Clears buckets passed since the show was rated last. The score is summed again rather than decreased,
+    so that rounding errors do not pile up.
+     */
+    private void advance(Slot slot, long now) {
+        long current = now / bucketMillis;
+        if (current <= slot.head)
+            return;
+        if (current - slot.head >= buckets)
+            Arrays.fill(slot.weights, 0);
+        else
+            for (long bucket = slot.head + 1; bucket <= current; bucket++)
+                slot.weights[(int) (bucket % buckets)] = 0;
+        slot.head = current;
+        double score = 0;
+        for (double weight : slot.weights)
+            score += weight;
+        slot.score = score;
+        siftDown(slot.index);
+        siftUpMin(slot.minIndex);
+    }
+
+    /*
+    Scales all weights by the same factor, which keeps the order of the heaps.
+     */
+    private void rebase(long now) {
+        double factor = Math.exp(-lambda * (now - landmark));
+        for (int i = 0; i < size; i++) {
+            Slot slot = heap[i];
+            slot.score *= factor;
+            for (int j = 0; j < slot.weights.length; j++)
+                slot.weights[j] *= factor;
+        }
+        landmark = now;
+    }
+
+    private void remove(Slot slot) {
+        slots.remove(slot.showId);
+        size--;
+        int index = slot.index;
+        if (index != size) {
+            Slot last = heap[size];
+            heap[index] = last;
+            last.index = index;
+            siftUp(index);
+            if (last.index == index)
+                siftDown(index);
+        }
+        heap[size] = null;
+        int minIndex = slot.minIndex;
+        if (minIndex != size) {
+            Slot last = minHeap[size];
+            minHeap[minIndex] = last;
+            last.minIndex = minIndex;
+            siftUpMin(minIndex);
+            if (last.minIndex == minIndex)
+                siftDownMin(minIndex);
+        }
+        minHeap[size] = null;
+    }
+
+    private void siftUp(int index) {
+        Slot slot = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].score >= slot.score)
+                break;
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+        heap[index] = slot;
+        slot.index = index;
+    }
+
+    private void siftDown(int index) {
+        Slot slot = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && heap[child + 1].score > heap[child].score)
+                child++;
+            if (heap[child].score <= slot.score)
+                break;
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = slot;
+        slot.index = index;
+    }
+
+    private void siftUpMin(int index) {
+        Slot slot = minHeap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (minHeap[parent].score <= slot.score)
+                break;
+            minHeap[index] = minHeap[parent];
+            minHeap[index].minIndex = index;
+            index = parent;
+        }
+        minHeap[index] = slot;
+        slot.minIndex = index;
+    }
+
+    private void siftDownMin(int index) {
+        Slot slot = minHeap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && minHeap[child + 1].score < minHeap[child].score)
+                child++;
+            if (minHeap[child].score >= slot.score)
+                break;
+            minHeap[index] = minHeap[child];
+            minHeap[index].minIndex = index;
+            index = child;
+        }
+        minHeap[index] = slot;
+        slot.minIndex = index;
+    }
+
+    private static class Slot {
+
+        private final long showId;
+        private final double[] weights;
+        private long head;
+        private double score;
+        private int index;
+        private int minIndex;
+
+        private Slot(long showId, int buckets, long head) {
+            this.showId = showId;
+            this.weights = new double[buckets];
+            this.head = head;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.tomaszstankowski.movieservice.service.trending;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time windows of trending shows, each split into buckets of ratings. Ratings weigh less the older they are,
+ * by half every half-life, and leave the window together with their bucket.
+ **/
+public enum TrendingWindow {
+
+    HOUR("1h", TimeUnit.MINUTES.toMillis(5), 12, TimeUnit.MINUTES.toMillis(15)),
+    DAY("24h", TimeUnit.HOURS.toMillis(1), 24, TimeUnit.HOURS.toMillis(6)),
+    WEEK("7d", TimeUnit.HOURS.toMillis(6), 28, TimeUnit.DAYS.toMillis(2));
+
+    private final String name;
+    private final long bucketMillis;
+    private final int buckets;
+    private final long halfLifeMillis;
+
+    TrendingWindow(String name, long bucketMillis, int buckets, long halfLifeMillis) {
+        this.name = name;
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+        this.halfLifeMillis = halfLifeMillis;
+    }
+
+    /**
+     * @return null if there is no window of the name
+     **/
+    public static TrendingWindow fromName(String name) {
+        for (TrendingWindow window : values())
+            if (window.name.equals(name))
+                return window;
+        return null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public long getHalfLifeMillis() {
+        return halfLifeMillis;
+    }
+}
@@ -0,0 +1,124 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.cache.BoundedCache;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BoundedCacheTest {
+
+    private long now;
+
+    private AtomicInteger loads;
+
+    private BoundedCache<Long, String> cache;
+
+    private final Function<Long, String> loader = id -> {
+        loads.incrementAndGet();
+        return id < 0 ? null : "show " + id;
+    };
+
+    @Before
+    public void setup() {
+        now = 0;
+        loads = new AtomicInteger();
+        cache = new BoundedCache<>(2, 10, TimeUnit.SECONDS, () -> now);
+    }
+
+    @Test
+    public void get_whenCached_loadedOnce() {
+        assertEquals("show 1", cache.get(1L, loader));
+        assertEquals("show 1", cache.get(1L, loader));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    public void get_whenFull_leastRecentlyUsedEvicted() {
+        cache.get(1L, loader);
+        cache.get(2L, loader);
+        cache.get(1L, loader);
+        cache.get(3L, loader);
+        cache.get(1L, loader);
+        cache.get(2L, loader);
+
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.evictions());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void get_whenLargeCacheFull_sizeKeptWithinMax() {
+        BoundedCache<Long, String> large = new BoundedCache<>(1000, 10, TimeUnit.SECONDS, () -> now);
+        for (long id = 0; id < 5000; id++)
+            large.get(id, loader);
+
+        assertTrue(large.size() <= 1000);
+        assertEquals(5000 - large.size(), large.evictions());
+    }
+
+    @Test
+    public void get_whenExpired_loadedAgain() {
+        cache.get(1L, loader);
+        now += TimeUnit.SECONDS.toNanos(10);
+        cache.get(1L, loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.evictions());
+    }
+
+    @Test
+    public void get_whenInvalidated_loadedAgain() {
+        cache.get(1L, loader);
+        cache.get(2L, loader);
+        cache.invalidate(1L);
+        cache.get(1L, loader);
+        cache.get(2L, loader);
+
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.invalidations());
+        assertEquals(0, cache.evictions());
+    }
+
+    @Test
+    public void get_whenInvalidatedWhileLoading_valueNotKept() {
+        String value = cache.get(1L, id -> {
+            cache.invalidate(id);
+            return "stale";
+        });
+        cache.get(1L, loader);
+
+        assertEquals("stale", value);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void get_whenOtherKeyInvalidatedWhileLoading_valueKept() {
+        cache.get(1L, id -> {
+            cache.invalidate(2L);
+            return "fresh";
+        });
+        cache.get(1L, loader);
+
+        assertEquals(0, loads.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void get_whenNotFound_nullNotKept() {
+        assertNull(cache.get(-1L, loader));
+        assertNull(cache.get(-1L, loader));
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+}
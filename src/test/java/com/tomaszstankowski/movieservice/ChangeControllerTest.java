@@ -0,0 +1,95 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.controller.ChangeController;
+import com.tomaszstankowski.movieservice.controller.ShowController;
+import com.tomaszstankowski.movieservice.controller.exception.InternalExceptionHandler;
+import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.entity.Change;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.enums.ChangeSubject;
+import com.tomaszstankowski.movieservice.service.ChangeService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChangeControllerTest {
+
+    private MockMvc mockMvc;
+
+    @Mock
+    private ChangeService service;
+
+    private Show show;
+
+    private Change saved;
+
+    private Change removed;
+
+    @Before
+    public void setup() {
+        mockMvc = standaloneSetup(new ChangeController(service, new ModelMapper()))
+                .setControllerAdvice(new InternalExceptionHandler())
+                .build();
+        show = new Movie("Heat", "Cops and robbers.", new GregorianCalendar(1995, 11, 15).getTime(), "USA",
+                (short) 170, 187000000);
+        show.setId(1L);
+        saved = new Change(ChangeSubject.SHOW, 1L, false, new Date(1500000000000L));
+        saved.setSequence(41L);
+        removed = new Change(ChangeSubject.SHOW, 2L, true, new Date(1500000001000L));
+        removed.setSequence(42L);
+    }
+
+    @Test
+    public void getShowChanges_statusOkChangesTombstonesAndCursor() throws Exception {
+        List<Change> changes = Arrays.asList(saved, removed);
+        when(service.findChanges(ChangeSubject.SHOW, new Date(1400000000000L), 0)).thenReturn(changes);
+        when(service.findChangedShows(changes)).thenReturn(Collections.singletonMap(1L, show));
+
+        mockMvc.perform(get("/shows/changes").param("since", "1400000000000"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ShowController.NEXT_CURSOR_HEADER, "42"))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].sequence", is(41)))
+                .andExpect(jsonPath("$[0].removed", is(false)))
+                .andExpect(jsonPath("$[0].date", is(1500000000000L)))
+                .andExpect(jsonPath("$[0].item.title", is("Heat")))
+                .andExpect(jsonPath("$[1].id", is(2)))
+                .andExpect(jsonPath("$[1].removed", is(true)))
+                .andExpect(jsonPath("$[1].item", nullValue()));
+    }
+
+    @Test
+    public void getShowChanges_whenShowRemovedMeanwhile_tombstone() throws Exception {
+        List<Change> changes = Collections.singletonList(saved);
+        when(service.findChanges(ChangeSubject.SHOW, new Date(0), 40)).thenReturn(changes);
+        when(service.findChangedShows(changes)).thenReturn(Collections.emptyMap());
+
+        mockMvc.perform(get("/shows/changes").param("cursor", "40"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].removed", is(true)));
+    }
+
+    @Test
+    public void getPersonChanges_whenCaughtUp_statusOkSameCursor() throws Exception {
+        when(service.findChanges(ChangeSubject.PERSON, new Date(0), 42)).thenReturn(Collections.emptyList());
+        when(service.findChangedPeople(Collections.emptyList())).thenReturn(Collections.emptyMap());
+
+        mockMvc.perform(get("/people/changes").param("cursor", "42"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ShowController.NEXT_CURSOR_HEADER, "42"))
+                .andExpect(jsonPath("$", hasSize(0)));
+    }
+}
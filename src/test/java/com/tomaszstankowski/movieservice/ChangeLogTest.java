@@ -0,0 +1,92 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.Change;
+import com.tomaszstankowski.movieservice.model.enums.ChangeSubject;
+import com.tomaszstankowski.movieservice.repository.ChangeRepository;
+import com.tomaszstankowski.movieservice.repository.ChangeWriteRepository;
+import com.tomaszstankowski.movieservice.service.ChangeService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Entries of the change log are written by upserts on the unique subject key, on an in-memory database.
+ **/
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:changelog;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+public class ChangeLogTest {
+
+    @Autowired
+    private ChangeWriteRepository changeWriteRepo;
+
+    @Autowired
+    private ChangeRepository changeRepo;
+
+    @Autowired
+    private ChangeService changeService;
+
+    @Before
+    public void setup() {
+        changeRepo.deleteAll();
+    }
+
+    @Test
+    public void record_whenSubjectChangedAgain_entryReplacedWithNewSequence() {
+        changeWriteRepo.record(ChangeSubject.SHOW, 1L, false);
+        changeWriteRepo.record(ChangeSubject.SHOW, 2L, false);
+        long first = changeRepo.findAll().stream()
+                .filter(c -> c.getSubjectId() == 1L)
+                .findFirst().get().getSequence();
+
+        changeWriteRepo.record(ChangeSubject.SHOW, 1L, true);
+
+        List<Change> changes = changeRepo.findChanges(ChangeSubject.SHOW, new Date(0), 0,
+                Long.MAX_VALUE, new PageRequest(0, 10));
+        assertEquals(2, changes.size());
+        assertEquals(2L, changes.get(0).getSubjectId());
+        assertEquals(1L, changes.get(1).getSubjectId());
+        assertTrue(changes.get(1).isRemoved());
+        assertTrue(changes.get(1).getSequence() > first);
+    }
+
+    @Test
+    public void findChanges_whenJustRecorded_heldBackUntilSettled() {
+        changeWriteRepo.record(ChangeSubject.SHOW, 1L, false);
+
+        assertTrue(changeService.findChanges(ChangeSubject.SHOW, new Date(0), 0).isEmpty());
+    }
+
+    @Test
+    public void record_whenSameSubjectChangedConcurrently_singleEntry() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 32; i++)
+            results.add(executor.submit(() -> changeWriteRepo.record(ChangeSubject.PERSON, 7L, false)));
+        for (Future<?> result : results)
+            result.get(10, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertEquals(1, changeRepo.count());
+    }
+}
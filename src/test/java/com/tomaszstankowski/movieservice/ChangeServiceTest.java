@@ -0,0 +1,145 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.Change;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.enums.ChangeSubject;
+import com.tomaszstankowski.movieservice.repository.ChangeRepository;
+import com.tomaszstankowski.movieservice.repository.ChangeWriteRepository;
+import com.tomaszstankowski.movieservice.repository.PersonRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.ChangeService;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ChangeServiceTest {
+
+    @Mock
+    private ChangeRepository changeRepo;
+    @Mock
+    private ChangeWriteRepository changeWriteRepo;
+    @Mock
+    private ShowRepository showRepo;
+    @Mock
+    private PersonRepository personRepo;
+
+    private ChangeService service;
+
+    private final Date since = new GregorianCalendar(2017, 8, 1).getTime();
+
+    @Before
+    public void setup() {
+        service = new ChangeService(changeRepo, changeWriteRepo, showRepo, personRepo, 5);
+        when(changeRepo.findFirstSequenceSince(any(ChangeSubject.class), any(Date.class))).thenReturn(null);
+    }
+
+    @Test
+    public void findChanges_whenNoCursor_startsFromFirstChangeSinceDate() {
+        List<Change> changes = Collections.singletonList(new Change(ChangeSubject.SHOW, 3L, false, new Date()));
+        when(changeRepo.findFirstSequenceSince(ChangeSubject.SHOW, since)).thenReturn(120L);
+        when(changeRepo.findChanges(ChangeSubject.SHOW, since, 119L, Long.MAX_VALUE,
+                new PageRequest(0, ChangeService.BATCH_SIZE)))
+                .thenReturn(changes);
+
+        assertEquals(changes, service.findChanges(ChangeSubject.SHOW, since, 0));
+    }
+
+    @Test
+    public void findChanges_whenNothingSinceDate_empty() {
+        when(changeRepo.findFirstSequenceSince(ChangeSubject.SHOW, since)).thenReturn(null);
+
+        assertTrue(service.findChanges(ChangeSubject.SHOW, since, 0).isEmpty());
+        verify(changeRepo, never()).findChanges(any(), any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void findChanges_whenCursorGiven_continuesAfterIt() {
+        service.findChanges(ChangeSubject.PERSON, since, 500);
+
+        verify(changeRepo).findChanges(ChangeSubject.PERSON, since, 500, Long.MAX_VALUE,
+                new PageRequest(0, ChangeService.BATCH_SIZE));
+        verify(changeRepo, never()).findFirstSequenceSince(ChangeSubject.PERSON, since);
+    }
+
+    @Test
+    public void findChanges_whenChangedWithinSettleWindow_stopsBeforeIt() {
+        when(changeRepo.findFirstSequenceSince(eq(ChangeSubject.PERSON), any(Date.class))).thenReturn(510L);
+
+        service.findChanges(ChangeSubject.PERSON, since, 500);
+
+        verify(changeRepo).findChanges(ChangeSubject.PERSON, since, 500, 510,
+                new PageRequest(0, ChangeService.BATCH_SIZE));
+    }
+
+    @Test
+    public void findChanges_whenNextChangeUnsettled_empty() {
+        when(changeRepo.findFirstSequenceSince(eq(ChangeSubject.PERSON), any(Date.class))).thenReturn(501L);
+
+        assertTrue(service.findChanges(ChangeSubject.PERSON, since, 500).isEmpty());
+        verify(changeRepo, never()).findChanges(any(), any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void findChangedShows_removedLeftOut() {
+        Show show = new Movie("Heat", "", new Date(), "USA", (short) 170, 0);
+        show.setId(1L);
+        when(showRepo.findAll(Collections.singletonList(1L))).thenReturn(Collections.singletonList(show));
+
+        Map<Long, Show> result = service.findChangedShows(Arrays.asList(
+                new Change(ChangeSubject.SHOW, 1L, false, new Date()),
+                new Change(ChangeSubject.SHOW, 2L, true, new Date())));
+
+        assertEquals(Collections.singletonMap(1L, show), result);
+    }
+
+    @Test
+    public void onShowSaved_changeRecorded() {
+        Show show = new Movie("Heat", "", new Date(), "USA", (short) 170, 0);
+        show.setId(1L);
+
+        service.onShowSaved(new ShowSavedEvent(show));
+
+        verify(changeWriteRepo).record(eq(ChangeSubject.SHOW), eq(1L), eq(false));
+    }
+
+    @Test
+    public void onShowRemoved_tombstoneRecorded() {
+        service.onShowRemoved(new ShowRemovedEvent(1L));
+
+        verify(changeWriteRepo).record(eq(ChangeSubject.SHOW), eq(1L), eq(true));
+    }
+
+    @Test
+    public void onShowRemoved_whenDeadlockLost_recordedAgain() {
+        doThrow(new DeadlockLoserDataAccessException("deadlock", null)).doNothing()
+                .when(changeWriteRepo).record(eq(ChangeSubject.SHOW), eq(1L), eq(true));
+
+        service.onShowRemoved(new ShowRemovedEvent(1L));
+
+        verify(changeWriteRepo, times(2)).record(eq(ChangeSubject.SHOW), eq(1L), eq(true));
+    }
+
+    @Test(expected = DataIntegrityViolationException.class)
+    public void onShowRemoved_whenRecordingFails_thrown() {
+        doThrow(new DataIntegrityViolationException("constraint"))
+                .when(changeWriteRepo).record(eq(ChangeSubject.SHOW), eq(1L), eq(true));
+
+        service.onShowRemoved(new ShowRemovedEvent(1L));
+    }
+}
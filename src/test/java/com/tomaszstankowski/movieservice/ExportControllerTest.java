@@ -0,0 +1,123 @@
+package com.tomaszstankowski.movieservice;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tomaszstankowski.movieservice.controller.ExportController;
+import com.tomaszstankowski.movieservice.controller.exception.InternalExceptionHandler;
+import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Serial;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.service.ExportService;
+import com.tomaszstankowski.movieservice.service.ShowService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.util.StreamUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ExportControllerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private MockMvc mockMvc;
+
+    @Mock
+    private ExportService service;
+
+    @Mock
+    private ShowService showService;
+
+    private Movie movie;
+
+    private Serial serial;
+
+    @Before
+    public void setup() {
+        mockMvc = standaloneSetup(new ExportController(service, showService, new ModelMapper(), objectMapper))
+                .setControllerAdvice(new InternalExceptionHandler())
+                .build();
+        movie = new Movie("Heat", "Cops and robbers.", new GregorianCalendar(1995, 11, 15).getTime(), "USA",
+                (short) 170, 187000000);
+        movie.setId(1L);
+        serial = new Serial("The Wire", "Baltimore.", new GregorianCalendar(2002, 5, 2).getTime(), "USA",
+                (short) 5);
+        serial.setId(2L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void exportShows_statusOkShowPerLine() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<List<Show>> consumer = (Consumer<List<Show>>) invocation.getArguments()[2];
+            consumer.accept(Arrays.asList(movie, serial));
+            return null;
+        }).when(service).exportShows(eq(Show.class), any(), any());
+
+        byte[] body = mockMvc.perform(get("/export/shows"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", ExportController.NDJSON + ";charset=UTF-8"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertLines(new String(body, StandardCharsets.UTF_8), "Heat", "The Wire");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void exportShows_whenGzipAccepted_compressed() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<List<Movie>> consumer = (Consumer<List<Movie>>) invocation.getArguments()[2];
+            consumer.accept(Arrays.asList(movie));
+            consumer.accept(Arrays.asList(movie));
+            return null;
+        }).when(service).exportShows(eq(Movie.class), any(), any());
+
+        byte[] body = mockMvc.perform(get("/export/shows").param("type", "MOVIE")
+                .header("Accept-Encoding", "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        byte[] json = StreamUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(body)));
+        assertLines(new String(json, StandardCharsets.UTF_8), "Heat", "Heat");
+    }
+
+    @Test
+    public void exportShows_whenNothingMatches_emptyBody() throws Exception {
+        mockMvc.perform(get("/export/shows").param("type", "SERIAL"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(content().string(""));
+    }
+
+    private void assertLines(String body, String... titles) throws Exception {
+        String[] lines = body.split("\n");
+        assertEquals(titles.length, lines.length);
+        for (int i = 0; i < titles.length; i++) {
+            JsonNode show = objectMapper.readTree(lines[i]);
+            assertEquals(titles[i], show.get("title").asText());
+        }
+        assertEquals('\n', body.charAt(body.length() - 1));
+    }
+}
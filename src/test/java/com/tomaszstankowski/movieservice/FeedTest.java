@@ -0,0 +1,285 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Rating;
+import com.tomaszstankowski.movieservice.model.entity.User;
+import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.RatingRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.repository.UserRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
+import com.tomaszstankowski.movieservice.service.FeedService;
+import com.tomaszstankowski.movieservice.service.ShowService;
+import com.tomaszstankowski.movieservice.service.UserService;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidCursorException;
+import com.tomaszstankowski.movieservice.service.rating.PendingRating;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Users followed by 2 users or more are popular, feeds keep 5 ratings once trimmed.
+ * Queued ratings are fanned out only when the test flushes them.
+ **/
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:feed;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "movieservice.feed.fan-out-limit=2",
+        "movieservice.feed.capacity=5",
+        "movieservice.feed.flush-interval-ms=3600000"
+})
+public class FeedTest {
+
+    private static final int SHOWS = 12;
+
+    @Autowired
+    private FeedService feed;
+
+    @Autowired
+    private ShowService showService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ShowRepository showRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private RatingRepository ratingRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private final List<Long> shows = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        feed.flush();
+        jdbc.update("delete from feed_entries");
+        jdbc.update("delete from follows");
+        ratingRepo.deleteAll();
+        showRepo.deleteAll();
+        userRepo.deleteAll();
+        for (String login : Arrays.asList("owner", "other", "author", "popular"))
+            userRepo.save(new User(login, "password", "User " + login, login + "@mail.com", Sex.MALE));
+        shows.clear();
+        for (int i = 0; i < SHOWS; i++)
+            shows.add(showRepo.save(new Movie("Show " + i, "", new GregorianCalendar(1995, 10, 22).getTime(),
+                    "USA", (short) 120, 0)).getId());
+        feed.refresh();
+    }
+
+    private void follow(String follower, String followed) {
+        userService.addUserFollower(followed, follower);
+    }
+
+    private long rate(String login, int show) {
+        long id = showService.addRating(shows.get(show), login, (short) 5).getId();
+        feed.flush();
+        return id;
+    }
+
+    /*
+    Rates every show, the ratings are fanned out in one batch and feeds are not trimmed.
+     */
+    private List<Long> rateAll(String login) {
+        List<Long> ratings = new ArrayList<>();
+        List<PendingRating> batch = new ArrayList<>();
+        for (int show = 0; show < SHOWS; show++) {
+            ratings.add(0, showService.addRating(shows.get(show), login, (short) 5).getId());
+            batch.add(new PendingRating(shows.get(show), login, (short) 5, new Date()));
+        }
+        feed.ratedAll(batch);
+        return ratings;
+    }
+
+    private static List<Long> ids(KeysetSlice<Rating> slice) {
+        return slice.getContent().stream()
+                .map(Rating::getId)
+                .collect(Collectors.toList());
+    }
+
+    private int entries() {
+        return jdbc.queryForObject("select count(*) from feed_entries", Integer.class);
+    }
+
+    @Test
+    public void findUserFollowedRatings_ratingsFannedOutAndCopiedOnFollow() {
+        long before = rate("author", 0);
+        follow("owner", "author");
+        long after = rate("author", 1);
+        rate("other", 2);
+
+        KeysetSlice<Rating> slice = userService.findUserFollowedRatings("owner", null);
+
+        assertEquals(Arrays.asList(after, before), ids(slice));
+        assertNull(slice.getNext());
+    }
+
+    @Test
+    public void findUserFollowedRatings_changedRatingMovedToItsNewDate() throws InterruptedException {
+        follow("owner", "author");
+        long changed = rate("author", 0);
+        long other = rate("author", 1);
+        long failed = feed.getFailed();
+        Thread.sleep(10);
+
+        rate("author", 0);
+
+        assertEquals(failed, feed.getFailed());
+        assertEquals(Arrays.asList(changed, other), ids(userService.findUserFollowedRatings("owner", null)));
+    }
+
+    @Test
+    public void findUserFollowedRatings_readSliceBySliceFromCursor() {
+        follow("owner", "author");
+        List<Long> ratings = rateAll("author");
+
+        KeysetSlice<Rating> first = userService.findUserFollowedRatings("owner", null);
+        KeysetSlice<Rating> second = userService.findUserFollowedRatings("owner", first.getNext());
+
+        assertEquals(ratings.subList(0, 10), ids(first));
+        assertEquals(ratings.subList(10, SHOWS), ids(second));
+        assertNull(second.getNext());
+    }
+
+    @Test
+    public void findUserFollowedRatings_ratingsOfPopularUsersReadAndMerged() {
+        follow("owner", "author");
+        follow("owner", "popular");
+        follow("other", "popular");
+        feed.refresh();
+        long first = rate("author", 0);
+        long second = rate("popular", 1);
+        long third = rate("author", 2);
+
+        assertEquals(Arrays.asList(third, second, first), ids(userService.findUserFollowedRatings("owner", null)));
+        assertEquals(Collections.singletonList(second), ids(userService.findUserFollowedRatings("other", null)));
+        assertEquals(2, entries());
+    }
+
+    @Test
+    public void unfollowed_ratingsOfFollowedUserRemovedFromFeed() {
+        follow("owner", "author");
+        rate("author", 0);
+
+        userService.removeUserFollower("author", "owner");
+
+        assertEquals(Collections.emptyList(), ids(userService.findUserFollowedRatings("owner", null)));
+        assertEquals(Collections.emptyList(), userService.getUserFollowed("owner"));
+    }
+
+    @Test
+    public void refresh_whenUserNoLongerPopular_ratingsGivenMeanwhileCopiedToFollowers() {
+        follow("owner", "popular");
+        follow("other", "popular");
+        feed.refresh();
+        long first = rate("popular", 0);
+        long second = rate("popular", 1);
+        userService.removeUserFollower("popular", "other");
+
+        feed.refresh();
+
+        assertEquals(Arrays.asList(second, first), ids(userService.findUserFollowedRatings("owner", null)));
+        assertEquals(2, entries());
+    }
+
+    @Test
+    public void removeRating_removedFromFeeds() {
+        follow("owner", "author");
+        follow("other", "author");
+        long kept = rate("author", 0);
+        rate("author", 1);
+
+        showService.removeRating(shows.get(1), "author");
+
+        assertEquals(Collections.singletonList(kept), ids(userService.findUserFollowedRatings("owner", null)));
+        assertEquals(2, entries());
+    }
+
+    @Test
+    public void refresh_feedsTrimmedToCapacity() {
+        follow("owner", "author");
+        List<Long> ratings = rateAll("author");
+
+        feed.refresh();
+
+        assertEquals(5, entries());
+        assertEquals(ratings.subList(0, 5), ids(userService.findUserFollowedRatings("owner", null)));
+    }
+
+    @Test
+    public void flush_queuedRatingsFannedOutAndFeedsTrimmedToCapacity() {
+        follow("owner", "author");
+        List<Long> ratings = new ArrayList<>();
+        for (int show = 0; show < SHOWS; show++)
+            ratings.add(0, showService.addRating(shows.get(show), "author", (short) 5).getId());
+        assertEquals(0, entries());
+        assertEquals(SHOWS, feed.getQueueDepth());
+
+        feed.flush();
+
+        assertEquals(0, feed.getQueueDepth());
+        assertEquals(5, entries());
+        assertEquals(ratings.subList(0, 5), ids(userService.findUserFollowedRatings("owner", null)));
+    }
+
+    @Test
+    public void ratedAll_writtenRatingsFannedOutOnce() {
+        jdbc.update("insert into follows (followed, follower) values ('author', 'owner')");
+        long written = rate("author", 0);
+        List<PendingRating> batch = Arrays.asList(
+                new PendingRating(shows.get(0), "author", (short) 5, new Date()),
+                new PendingRating(shows.get(1), "author", (short) 5, new Date()));
+
+        long failed = feed.getFailed();
+
+        feed.ratedAll(batch);
+        feed.ratedAll(batch);
+
+        assertEquals(failed, feed.getFailed());
+        assertEquals(1, entries());
+        assertEquals(Collections.singletonList(written), ids(userService.findUserFollowedRatings("owner", null)));
+    }
+
+    @Test
+    public void findUserFollowersRatings_pagedAndPerShowReadsJoinFollows() {
+        follow("owner", "author");
+        long first = rate("author", 0);
+        long second = rate("author", 1);
+        rate("other", 1);
+
+        Page<Rating> page = userService.findUserFollowersRatings("owner", 0);
+        List<Rating> ofShow = userService.findUserFollowersRatings("owner", shows.get(1));
+
+        assertEquals(2, page.getTotalElements());
+        assertEquals(new HashSet<>(Arrays.asList(first, second)),
+                page.getContent().stream().map(Rating::getId).collect(Collectors.toSet()));
+        assertEquals(Collections.singletonList(second),
+                ofShow.stream().map(Rating::getId).collect(Collectors.toList()));
+    }
+
+    @Test(expected = InvalidCursorException.class)
+    public void findUserFollowedRatings_whenCursorInvalid_throwExc() {
+        userService.findUserFollowedRatings("owner", "invalid");
+    }
+}
@@ -0,0 +1,104 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.User;
+import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.UserRepository;
+import com.tomaszstankowski.movieservice.service.UserService;
+import com.tomaszstankowski.movieservice.service.exception.conflict.UserAlreadyFollowedException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:follow;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+public class FollowTest {
+
+    @Autowired
+    private UserService service;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Before
+    public void setup() {
+        jdbc.update("delete from feed_entries");
+        jdbc.update("delete from follows");
+        userRepo.deleteAll();
+        for (String login : Arrays.asList("a", "b", "c"))
+            userRepo.save(new User(login, "password", "User " + login, login + "@mail.com", Sex.MALE));
+    }
+
+    private static List<String> logins(List<User> users) {
+        return users.stream()
+                .map(User::getLogin)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void addUserFollower_followListedAndCounted() {
+        service.addUserFollower("a", "b");
+        service.addUserFollower("a", "c");
+        service.addUserFollower("b", "c");
+
+        assertEquals(Arrays.asList("b", "c"), logins(service.getUserFollowers("a")));
+        assertEquals(Arrays.asList("a", "b"), logins(service.getUserFollowed("c")));
+        assertEquals("b", service.getUserFollower("a", "b").getLogin());
+        assertNull(service.getUserFollower("b", "a"));
+        assertEquals(2, service.findUser("a").getFollowerCount());
+        assertEquals(2, service.findUser("c").getFollowedCount());
+    }
+
+    @Test(expected = UserAlreadyFollowedException.class)
+    public void addUserFollower_whenAlreadyFollowed_throwExc() {
+        service.addUserFollower("a", "b");
+
+        service.addUserFollower("a", "b");
+    }
+
+    @Test
+    public void removeUserFollower_followRemovedAndUncounted() {
+        service.addUserFollower("a", "b");
+        service.addUserFollower("a", "c");
+
+        service.removeUserFollower("a", "b");
+
+        assertEquals(Collections.singletonList("c"), logins(service.getUserFollowers("a")));
+        assertEquals(1, service.findUser("a").getFollowerCount());
+        assertEquals(0, service.findUser("b").getFollowedCount());
+    }
+
+    @Test
+    public void removeUser_followsOfAndByUserRemovedAndUncounted() {
+        service.addUserFollower("a", "b");
+        service.addUserFollower("b", "c");
+        service.editUser(new User("b", "password", "Renamed", "b@mail.com", Sex.MALE));
+
+        service.removeUser("b");
+
+        assertEquals(0, service.findUser("a").getFollowerCount());
+        assertEquals(0, service.findUser("c").getFollowedCount());
+        assertEquals(0, (int) jdbc.queryForObject("select count(*) from follows", Integer.class));
+    }
+}
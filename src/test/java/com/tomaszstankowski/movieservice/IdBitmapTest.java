@@ -0,0 +1,83 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.index.IdBitmap;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class IdBitmapTest {
+
+    @Test
+    public void add_whenIdsInManyChunks_allContainedInOrder() {
+        IdBitmap bitmap = IdBitmap.of(70000L, 3L, 1L << 40, 65535L, 3L);
+
+        assertEquals(4, bitmap.cardinality());
+        assertTrue(bitmap.contains(1L << 40));
+        assertFalse(bitmap.contains(4L));
+        assertEquals(Arrays.asList(3L, 65535L, 70000L, 1L << 40), bitmap.toList());
+    }
+
+    @Test
+    public void add_whenChunkBecomesDenseAndSparseAgain_sameContent() {
+        IdBitmap bitmap = new IdBitmap();
+        for (long id = 0; id < 10000; id++)
+            bitmap.add(id * 2);
+        assertEquals(10000, bitmap.cardinality());
+        assertTrue(bitmap.contains(19998L));
+        assertFalse(bitmap.contains(19999L));
+
+        for (long id = 0; id < 9000; id++)
+            bitmap.remove(id * 2);
+        assertEquals(1000, bitmap.cardinality());
+        assertEquals(18000L, bitmap.toList().get(0).longValue());
+    }
+
+    @Test
+    public void remove_whenLastOfChunk_empty() {
+        IdBitmap bitmap = IdBitmap.of(100000L);
+        bitmap.remove(100000L);
+        bitmap.remove(5L);
+
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.cardinality());
+    }
+
+    @Test
+    public void setOperations_sameAsOnSets() {
+        Random random = new Random(42);
+        IdBitmap a = new IdBitmap();
+        IdBitmap b = new IdBitmap();
+        Set<Long> setA = new TreeSet<>();
+        Set<Long> setB = new TreeSet<>();
+        for (int i = 0; i < 20000; i++) {
+            long idA = random.nextInt(200000);
+            long idB = (i % 2 == 0) ? random.nextInt(200000) : random.nextInt(1000);
+            a.add(idA);
+            setA.add(idA);
+            b.add(idB);
+            setB.add(idB);
+        }
+
+        Set<Long> union = new TreeSet<>(setA);
+        union.addAll(setB);
+        Set<Long> intersection = new TreeSet<>(setA);
+        intersection.retainAll(setB);
+
+        assertEquals(new ArrayList<>(union), IdBitmap.or(Arrays.asList(a, b)).toList());
+        assertEquals(new ArrayList<>(intersection), a.and(b).toList());
+        assertEquals(intersection.size(), a.andCardinality(b));
+        assertEquals(new ArrayList<>(setA), a.toList());
+    }
+
+    @Test
+    public void copy_whenOriginalModified_copyUnchanged() {
+        IdBitmap original = IdBitmap.of(1L, 2L);
+        IdBitmap copy = original.copy();
+        original.add(3L);
+        original.remove(1L);
+
+        assertEquals(Arrays.asList(1L, 2L), copy.toList());
+    }
+}
@@ -0,0 +1,120 @@
+package com.tomaszstankowski.movieservice;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tomaszstankowski.movieservice.controller.ExportController;
+import com.tomaszstankowski.movieservice.controller.ImportController;
+import com.tomaszstankowski.movieservice.controller.exception.InternalExceptionHandler;
+import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Serial;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.service.ShowImportService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ImportControllerTest {
+
+    private MockMvc mockMvc;
+
+    @Mock
+    private ShowImportService service;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        mockMvc = standaloneSetup(new ImportController(service, new ModelMapper(), new ObjectMapper()))
+                .setControllerAdvice(new InternalExceptionHandler())
+                .build();
+        when(service.importShows(any(Map.class))).thenReturn(Collections.emptyMap());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void importShows_whenLineInvalid_reportedOthersImported() throws Exception {
+        String body = "{\"title\":\"Heat\",\"description\":\"\",\"dateReleased\":\"1995-12-15\",\"location\":\"USA\"," +
+                "\"genres\":[\"crime\"],\"duration\":170,\"boxoffice\":187000000}\n" +
+                "\n" +
+                "{\"title\":\"Broken\"\n" +
+                "{\"title\":\"The Wire\",\"description\":\"\",\"dateReleased\":\"2002-06-02\",\"location\":\"USA\"," +
+                "\"genres\":[],\"seasons\":5}\n";
+
+        mockMvc.perform(post("/import/shows").contentType(ExportController.NDJSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(2)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.errors[0].line", is(3)));
+
+        ArgumentCaptor<Map> chunk = ArgumentCaptor.forClass(Map.class);
+        verify(service, times(1)).importShows(chunk.capture());
+        Map<Long, Show> shows = chunk.getValue();
+        assertEquals(2, shows.size());
+        assertTrue(shows.get(1L) instanceof Movie);
+        assertTrue(shows.get(4L) instanceof Serial);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void importShows_whenChunkRejectedByDatabase_importedShowByShowOffendingLineReported() throws Exception {
+        when(service.importShows(any(Map.class))).thenAnswer(invocation -> {
+            Map<Long, Show> chunk = (Map<Long, Show>) invocation.getArguments()[0];
+            if (chunk.size() > 1 || chunk.containsKey(2L))
+                throw new DataIntegrityViolationException("Value too long.");
+            return Collections.emptyMap();
+        });
+        String body = "{\"title\":\"Heat\",\"genres\":[],\"duration\":170,\"boxoffice\":187000000}\n" +
+                "{\"title\":\"Rejected\",\"genres\":[],\"seasons\":1}\n" +
+                "{\"title\":\"The Wire\",\"genres\":[],\"seasons\":5}\n";
+
+        mockMvc.perform(post("/import/shows").contentType(ExportController.NDJSON).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(2)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.errors[*].line", contains(2)));
+
+        verify(service, times(4)).importShows(any(Map.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void importShowsCsv_whenQuotedFieldsAndRejectedRow_reportedByLine() throws Exception {
+        when(service.importShows(any(Map.class))).thenReturn(Collections.singletonMap(4L, "Heat already exists."));
+        String body = "title,description,dateReleased,location,genres,duration,boxoffice,seasons\n" +
+                "The Wire,\"Drugs, \"\"the game\"\"\nand Baltimore.\",2002-06-02,USA,crime;drama,,,5\n" +
+                "Heat,,1995-12-15,USA,crime,170,187000000,\n" +
+                "Nameless,,not a date,USA,,170,0,\n";
+
+        mockMvc.perform(post("/import/shows").contentType(ImportController.CSV).content(body))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(1)))
+                .andExpect(jsonPath("$.failed", is(2)))
+                .andExpect(jsonPath("$.errors[*].line", contains(4, 5)));
+
+        ArgumentCaptor<Map> chunk = ArgumentCaptor.forClass(Map.class);
+        verify(service).importShows(chunk.capture());
+        Map<Long, Show> shows = chunk.getValue();
+        Serial serial = (Serial) shows.get(2L);
+        assertEquals("Drugs, \"the game\"\nand Baltimore.", serial.getDescription());
+        assertEquals(2, serial.getGenres().size());
+        assertEquals(170, ((Movie) shows.get(4L)).getDuration());
+    }
+}
@@ -0,0 +1,65 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.index.InvertedIndex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InvertedIndexTest {
+
+    private InvertedIndex index;
+
+    @Before
+    public void setup() {
+        index = new InvertedIndex();
+        index.put(1L, "The Godfather", "The aging patriarch of an organized crime dynasty transfers control.");
+        index.put(2L, "The Godfather: Part II", "The early life and career of Vito Corleone.");
+        index.put(3L, "Goodfellas", "The story of Henry Hill and his life in the mob, featuring the godfather of crime.");
+        index.put(4L, "Amélie", "A shy waitress decides to change the lives of those around her.");
+    }
+
+    @Test
+    public void search_whenTokenInTitle_rankedAboveDescription() {
+        assertEquals(Arrays.asList(1L, 2L, 3L), index.search("godfather", 10));
+    }
+
+    @Test
+    public void search_whenManyTokens_onlyDocumentsContainingAll() {
+        assertEquals(Arrays.asList(1L, 3L), index.search("godfather crime", 10));
+    }
+
+    @Test
+    public void search_whenLimitGiven_bestOnly() {
+        assertEquals(Collections.singletonList(1L), index.search("godfather", 1));
+    }
+
+    @Test
+    public void match_whenManyTokens_allDocumentsContainingAll() {
+        assertEquals(Arrays.asList(1L, 3L), index.match("crime godfather").toList());
+    }
+
+    @Test
+    public void search_whenAccentsAndCaseDiffer_found() {
+        assertEquals(Collections.singletonList(4L), index.search("AMELIE", 10));
+    }
+
+    @Test
+    public void search_whenDocumentRemoved_notFound() {
+        index.remove(1L);
+
+        assertEquals(Arrays.asList(2L, 3L), index.search("godfather", 10));
+    }
+
+    @Test
+    public void search_whenDocumentReplaced_oldTokensNotFound() {
+        index.put(4L, "Amelia", null);
+
+        assertTrue(index.search("amelie", 10).isEmpty());
+        assertEquals(Collections.singletonList(4L), index.search("amelia", 10));
+    }
+}
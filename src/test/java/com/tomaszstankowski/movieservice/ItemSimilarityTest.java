@@ -0,0 +1,145 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.similar.ItemSimilarity;
+import com.tomaszstankowski.movieservice.service.similar.Neighbours;
+import com.tomaszstankowski.movieservice.service.similar.RatingMatrix;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+
+public class ItemSimilarityTest {
+
+    private static final long[] SHOWS = {1L, 2L, 3L, 4L};
+
+    private final ForkJoinPool pool = new ForkJoinPool(4);
+
+    @After
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /*
+    Shows 1 and 2 are rated alike, show 3 the other way round, show 4 by user d only.
+     */
+    private static RatingMatrix.Builder sample(int maxUserRatings) {
+        RatingMatrix.Builder builder = new RatingMatrix.Builder(SHOWS, 4, maxUserRatings);
+        builder.add(1L, "a", (short) 9);
+        builder.add(2L, "a", (short) 8);
+        builder.add(3L, "a", (short) 2);
+        builder.add(1L, "b", (short) 8);
+        builder.add(2L, "b", (short) 9);
+        builder.add(3L, "b", (short) 3);
+        builder.add(1L, "c", (short) 2);
+        builder.add(2L, "c", (short) 3);
+        builder.add(3L, "c", (short) 9);
+        builder.add(3L, "d", (short) 1);
+        builder.add(4L, "d", (short) 5);
+        builder.add(1L, "d", (short) 9);
+        builder.add(2L, "d", (short) 9);
+        builder.add(5L, "d", (short) 9);
+        return builder;
+    }
+
+    @Test
+    public void neighbours_onlyPositiveSimilaritiesOfEnoughCoRaters() {
+        RatingMatrix matrix = sample(100).build();
+        Neighbours neighbours = new ItemSimilarity(matrix, 10, 2).neighbours(pool);
+
+        assertEquals(13, matrix.ratings());
+        assertEquals(4, neighbours.size());
+        assertEquals(Collections.singletonList(2L), neighbours.neighbourIds(0));
+        assertEquals(Collections.singletonList(1L), neighbours.neighbourIds(1));
+        assertEquals(Collections.emptyList(), neighbours.neighbourIds(2));
+        assertEquals(Collections.emptyList(), neighbours.neighbourIds(3));
+    }
+
+    @Test
+    public void neighbours_whenSingleCoRaterEnough_rareShowsCompared() {
+        RatingMatrix matrix = sample(100).build();
+        Neighbours neighbours = new ItemSimilarity(matrix, 10, 1).neighbours(new int[]{matrix.show(4L)}, pool);
+
+        assertEquals(4L, neighbours.showId(0));
+        assertEquals(Collections.singletonList(3L), neighbours.neighbourIds(0));
+    }
+
+    @Test
+    public void build_whenUserRatedTooMany_userLeftOut() {
+        RatingMatrix matrix = sample(3).build();
+        Neighbours neighbours = new ItemSimilarity(matrix, 10, 1).neighbours(pool);
+
+        assertEquals(9, matrix.ratings());
+        assertEquals(0f, matrix.norm(matrix.show(4L)), 0f);
+        assertEquals(Collections.emptyList(), neighbours.neighbourIds(3));
+        assertEquals(Collections.singletonList(2L), neighbours.neighbourIds(0));
+    }
+
+    @Test
+    public void neighbours_matchAdjustedCosineComputedDirectly() {
+        Random random = new Random(7);
+        int shows = 40;
+        int users = 60;
+        long[] showIds = new long[shows];
+        for (int show = 0; show < shows; show++)
+            showIds[show] = 10L * (show + 1);
+        Map<Integer, Map<Integer, Integer>> ratings = new HashMap<>();
+        RatingMatrix.Builder builder = new RatingMatrix.Builder(showIds, 16, 1000);
+        for (int user = 0; user < users; user++) {
+            Map<Integer, Integer> rated = new HashMap<>();
+            for (int show = 0; show < shows; show++)
+                if (random.nextInt(3) == 0) {
+                    int rating = 1 + random.nextInt(10);
+                    rated.put(show, rating);
+                    builder.add(showIds[show], "user" + user, (short) rating);
+                }
+            ratings.put(user, rated);
+        }
+        int k = 5;
+        int minCoRaters = 3;
+        Neighbours neighbours = new ItemSimilarity(builder.build(), k, minCoRaters).neighbours(pool);
+
+        for (int show = 0; show < shows; show++) {
+            Map<Long, Double> expected = adjustedCosine(ratings, showIds, show, minCoRaters);
+            List<Double> expectedScores = new ArrayList<>(expected.values());
+            expectedScores.sort(Comparator.reverseOrder());
+            assertEquals(Math.min(k, expectedScores.size()), neighbours.count(show));
+            for (int ordinal = 0; ordinal < neighbours.count(show); ordinal++) {
+                assertEquals(expectedScores.get(ordinal), neighbours.score(show, ordinal), 1e-4);
+                assertEquals(expected.get(neighbours.neighbourId(show, ordinal)), neighbours.score(show, ordinal), 1e-4);
+            }
+        }
+    }
+
+    private static Map<Long, Double> adjustedCosine(Map<Integer, Map<Integer, Integer>> ratings, long[] showIds,
+                                                    int show, int minCoRaters) {
+        Map<Integer, Double> means = new HashMap<>();
+        ratings.forEach((user, rated) ->
+                means.put(user, rated.values().stream().mapToInt(Integer::intValue).average().orElse(0)));
+        Map<Long, Double> scores = new HashMap<>();
+        for (int other = 0; other < showIds.length; other++) {
+            if (other == show)
+                continue;
+            double dot = 0, norm = 0, otherNorm = 0;
+            int coRaters = 0;
+            for (Map.Entry<Integer, Map<Integer, Integer>> entry : ratings.entrySet()) {
+                Map<Integer, Integer> rated = entry.getValue();
+                double mean = means.get(entry.getKey());
+                if (rated.containsKey(show))
+                    norm += Math.pow(rated.get(show) - mean, 2);
+                if (rated.containsKey(other))
+                    otherNorm += Math.pow(rated.get(other) - mean, 2);
+                if (rated.containsKey(show) && rated.containsKey(other)) {
+                    dot += (rated.get(show) - mean) * (rated.get(other) - mean);
+                    coRaters++;
+                }
+            }
+            double score = dot / Math.sqrt(norm * otherNorm);
+            if (coRaters >= minCoRaters && score > 0)
+                scores.put(showIds[other], score);
+        }
+        return scores;
+    }
+}
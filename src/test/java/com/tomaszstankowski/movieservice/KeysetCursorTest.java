@@ -0,0 +1,44 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetCursor;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidCursorException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.springframework.data.domain.Sort;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeysetCursorTest {
+
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void decode_whenEncoded_sameCursor() {
+        KeysetCursor cursor = new KeysetCursor("title", Sort.Direction.DESC, "42", "The Dark\\nKnight");
+
+        assertEquals(cursor, KeysetCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    public void decode_whenValueNull_sameCursor() {
+        KeysetCursor cursor = new KeysetCursor("dateReleased", Sort.Direction.ASC, "7", null);
+
+        assertEquals(cursor, KeysetCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    public void decode_whenValueEmpty_sameCursor() {
+        KeysetCursor cursor = new KeysetCursor("name", Sort.Direction.ASC, "jan", "");
+
+        assertEquals(cursor, KeysetCursor.decode(cursor.encode()));
+    }
+
+    @Test
+    public void decode_whenTokenMalformed_throwExc() {
+        exception.expect(InvalidCursorException.class);
+
+        KeysetCursor.decode("not a cursor");
+    }
+}
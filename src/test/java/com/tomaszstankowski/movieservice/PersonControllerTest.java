@@ -11,7 +11,10 @@ import com.tomaszstankowski.movieservice.model.entity.Participation;
 import com.tomaszstankowski.movieservice.model.entity.Person;
 import com.tomaszstankowski.movieservice.model.enums.Profession;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.PersonRepository;
 import com.tomaszstankowski.movieservice.service.PersonService;
+import com.tomaszstankowski.movieservice.service.cache.PersonJsonCache;
+import com.tomaszstankowski.movieservice.service.event.PersonSavedEvent;
 import com.tomaszstankowski.movieservice.service.exception.conflict.PersonAlreadyExistsException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.PersonNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.ShowNotFoundException;
@@ -22,6 +25,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.web.SortHandlerMethodArgumentResolver;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -36,6 +40,8 @@ import java.util.List;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -53,10 +59,15 @@ public class PersonControllerTest {
     @Mock
     private PersonService service;
 
+    @Mock
+    private PersonRepository personRepo;
+
     private ModelMapper modelMapper = new ModelMapper();
 
     private ObjectMapper objectMapper = new ObjectMapper();
 
+    private PersonJsonCache personCache;
+
     private Person person;
 
     private PersonDTO personDTO;
@@ -71,8 +82,10 @@ public class PersonControllerTest {
 
     @Before
     public void setup() throws Exception {
-        mockMvc = standaloneSetup(new PersonController(service, modelMapper))
+        personCache = new PersonJsonCache(service, personRepo, modelMapper, objectMapper, 100, 60);
+        mockMvc = standaloneSetup(new PersonController(service, modelMapper, personCache))
                 .setControllerAdvice(new InternalExceptionHandler())
+                .setCustomArgumentResolvers(new SortHandlerMethodArgumentResolver())
                 .build();
         person = new Person(
                 "Janusz Gajos",
@@ -140,6 +153,26 @@ public class PersonControllerTest {
                 .andExpect(jsonPath("$.professions", is(proffesions)));
     }
 
+    @Test
+    public void get_whenPersonSavedBetweenRequests_serializedAgain() throws Exception {
+        person.setId(1L);
+        when(service.findPerson(1L)).thenReturn(person);
+
+        mockMvc.perform(get("/people/{id}", 1L))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/people/{id}", 1L))
+                .andExpect(status().isOk());
+        verify(service, times(1)).findPerson(1L);
+
+        person.setName("Robert De Niro");
+        personCache.onPersonSaved(new PersonSavedEvent(person));
+        mockMvc.perform(get("/people/{id}", 1L))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(contentType))
+                .andExpect(jsonPath("$.name", is("Robert De Niro")));
+        verify(service, times(2)).findPerson(1L);
+    }
+
     @Test
     public void get_whenPersonNotExists_statusNotFound() throws Exception {
         when(service.findPerson(1L)).thenReturn(null);
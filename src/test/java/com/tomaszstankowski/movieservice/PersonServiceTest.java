@@ -3,12 +3,15 @@ package com.tomaszstankowski.movieservice;
 import com.tomaszstankowski.movieservice.model.entity.Person;
 import com.tomaszstankowski.movieservice.model.enums.Profession;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.IdProjectionRepository;
 import com.tomaszstankowski.movieservice.repository.ParticipationRepository;
 import com.tomaszstankowski.movieservice.repository.PersonRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetRepository;
 import com.tomaszstankowski.movieservice.service.PersonService;
 import com.tomaszstankowski.movieservice.service.exception.conflict.PersonAlreadyExistsException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.PersonNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidPersonException;
+import com.tomaszstankowski.movieservice.service.index.SearchIndex;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -16,6 +19,7 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.util.GregorianCalendar;
 
@@ -30,6 +34,14 @@ public class PersonServiceTest {
     private PersonRepository personRepo;
     @Mock
     private ParticipationRepository participationRepo;
+    @Mock
+    private KeysetRepository keysetRepo;
+    @Mock
+    private IdProjectionRepository idRepo;
+    @Mock
+    private SearchIndex searchIndex;
+    @Mock
+    private ApplicationEventPublisher publisher;
 
     private PersonService service;
 
@@ -40,7 +52,7 @@ public class PersonServiceTest {
 
     @Before
     public void setup() {
-        service = new PersonService(personRepo, participationRepo);
+        service = new PersonService(personRepo, participationRepo, keysetRepo, idRepo, searchIndex, publisher);
         person = new Person(
                 "Janusz Gajos",
                 new GregorianCalendar(1939, 8, 23).getTime(),
@@ -0,0 +1,113 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.dto.SuggestionDTO;
+import com.tomaszstankowski.movieservice.service.index.PrefixIndex;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PrefixIndexTest {
+
+    private PrefixIndex index;
+
+    @Before
+    public void setup() {
+        index = new PrefixIndex();
+        index.put(1L, "The Godfather", 120);
+        index.put(2L, "The Godfather: Part II", 80);
+        index.put(3L, "Gone Girl", 200);
+        index.put(4L, "Goodfellas", 150);
+        index.put(5L, "Léon", 50);
+    }
+
+    @Test
+    public void suggest_whenPrefixOfAnyWord_heaviestFirst() {
+        assertEquals(Arrays.asList(3L, 4L, 1L, 2L), ids(index.suggest("go", 10)));
+        assertEquals(Arrays.asList(1L, 2L), ids(index.suggest("godf", 10)));
+        assertEquals(Arrays.asList(1L, 2L), ids(index.suggest("the godfather", 10)));
+    }
+
+    @Test
+    public void suggest_whenLimitGiven_heaviestOnly() {
+        assertEquals(Arrays.asList(3L, 4L), ids(index.suggest("g", 2)));
+    }
+
+    @Test
+    public void suggest_whenAccentsAndCaseDiffer_found() {
+        List<SuggestionDTO> result = index.suggest("LEO", 10);
+
+        assertEquals(Collections.singletonList(new SuggestionDTO(5L, "Léon")), result);
+    }
+
+    @Test
+    public void suggest_whenNoMatch_empty() {
+        assertTrue(index.suggest("gox", 10).isEmpty());
+        assertTrue(index.suggest("the godfathers", 10).isEmpty());
+        assertTrue(index.suggest(" ", 10).isEmpty());
+    }
+
+    @Test
+    public void suggest_whenRemoved_notFound() {
+        index.remove(3L);
+
+        assertEquals(Arrays.asList(4L, 1L, 2L), ids(index.suggest("go", 10)));
+    }
+
+    @Test
+    public void remove_whenAllRemoved_onlyRootLeft() {
+        for (long id = 1; id <= 5; id++)
+            index.remove(id);
+
+        assertEquals(1, index.nodeCount());
+    }
+
+    @Test
+    public void put_whenRenamedBackAndForth_trieDoesNotGrow() {
+        int nodes = index.nodeCount();
+
+        index.put(1L, "Apocalypse Now", 120);
+        index.put(1L, "The Godfather", 120);
+
+        assertEquals(nodes, index.nodeCount());
+        assertEquals(Arrays.asList(1L, 2L), ids(index.suggest("godf", 10)));
+    }
+
+    @Test
+    public void suggest_whenRenamed_foundByNewTitleOnly() {
+        index.put(4L, "Casino", 150);
+
+        assertEquals(Arrays.asList(3L, 1L, 2L), ids(index.suggest("go", 10)));
+        assertEquals(Collections.singletonList(4L), ids(index.suggest("cas", 10)));
+    }
+
+    @Test
+    public void suggest_whenReweighed_reordered() {
+        index.reweigh(2L, 500);
+
+        assertEquals(Arrays.asList(2L, 1L), ids(index.suggest("godf", 10)));
+        assertEquals(2L, ids(index.suggest("g", 1)).get(0).longValue());
+    }
+
+    @Test
+    public void suggest_whenMoreMatchesThanCached_heaviestKept() {
+        for (long id = 10; id < 30; id++)
+            index.put(id, "Gattaca " + id, id);
+        index.remove(29L);
+
+        assertEquals(Arrays.asList(28L, 27L, 26L), ids(index.suggest("gat", 3)));
+        assertEquals(Arrays.asList(3L, 4L, 1L, 2L, 28L, 27L, 26L, 25L, 24L, 23L), ids(index.suggest("g", 10)));
+    }
+
+    private static List<Long> ids(List<SuggestionDTO> suggestions) {
+        return suggestions.stream()
+                .map(SuggestionDTO::getId)
+                .collect(Collectors.toList());
+    }
+}
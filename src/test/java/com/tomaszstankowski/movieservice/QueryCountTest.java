@@ -0,0 +1,148 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.*;
+import com.tomaszstankowski.movieservice.model.enums.Profession;
+import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.GenreRepository;
+import com.tomaszstankowski.movieservice.repository.ParticipationRepository;
+import com.tomaszstankowski.movieservice.repository.PersonRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Number of SQL statements run by read endpoints must not depend on the number of listed items.
+ * Security filters are left out, the endpoints are called directly on an in-memory database.
+ **/
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@AutoConfigureMockMvc(addFilters = false)
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:movieservice;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+public class QueryCountTest {
+
+    private static final int SHOWS = 12;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    @Autowired
+    private ShowRepository showRepo;
+
+    @Autowired
+    private GenreRepository genreRepo;
+
+    @Autowired
+    private PersonRepository personRepo;
+
+    @Autowired
+    private ParticipationRepository participationRepo;
+
+    private Statistics statistics;
+
+    private long showId;
+
+    private long personId;
+
+    @Before
+    public void setup() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        if (showRepo.count() > 0) {
+            showId = showRepo.findAll().get(0).getId();
+            personId = personRepo.findAll().get(0).getId();
+            return;
+        }
+
+        Genre drama = genreRepo.save(new Genre("drama"));
+        Genre crime = genreRepo.save(new Genre("crime"));
+        Person director = new Person("Martin Scorsese", new GregorianCalendar(1942, 10, 17).getTime(), "New York", Sex.MALE);
+        director.getProfessions().add(Profession.DIRECTOR);
+        director.getProfessions().add(Profession.SCREENWRITER);
+        director = personRepo.save(director);
+        personId = director.getId();
+        for (int i = 0; i < SHOWS; i++) {
+            Show show = (i % 2 == 0)
+                    ? new Movie("Movie " + i, "", new GregorianCalendar(1990 + i, 0, 1).getTime(), "USA", (short) 120, 0)
+                    : new Serial("Serial " + i, "", new GregorianCalendar(1990 + i, 0, 1).getTime(), "USA", (short) 2);
+            show.getGenres().add(drama);
+            show.getGenres().add(crime);
+            show = showRepo.save(show);
+            if (i == 0)
+                showId = show.getId();
+            participationRepo.save(new Participation(Profession.DIRECTOR, "", director, show));
+
+            Person actor = new Person("Actor " + i, new GregorianCalendar(1960, 0, 1).getTime(), "Boston", Sex.FEMALE);
+            actor.getProfessions().add(Profession.ACTOR);
+            participationRepo.save(new Participation(Profession.ACTOR, "", personRepo.save(actor), showRepo.findOne(showId)));
+        }
+    }
+
+    @Test
+    public void getShows_constantStatements() throws Exception {
+        assertStatementsAtMost(3, get("/shows"));
+        assertStatementsAtMost(3, get("/shows").param("type", "MOVIE"));
+        assertStatementsAtMost(3, get("/shows").param("type", "SERIAL").param("page", "1"));
+    }
+
+    @Test
+    public void getShow_singleStatement() throws Exception {
+        assertStatementsAtMost(1, get("/shows/{id}", showId));
+    }
+
+    @Test
+    public void getPerson_whenETagOutdated_versionLookupAndLoad() throws Exception {
+        assertStatementsAtMost(3, get("/people/{id}", personId).header("If-None-Match", "\"0-0\""));
+    }
+
+    @Test
+    public void getShowParticipations_constantStatements() throws Exception {
+        assertStatementsAtMost(4, get("/shows/{id}/participations", showId));
+        assertStatementsAtMost(4, get("/shows/{id}/participations", showId).param("role", "ACTOR"));
+    }
+
+    @Test
+    public void getPersonParticipations_constantStatements() throws Exception {
+        assertStatementsAtMost(4, get("/people/{id}/participations", personId));
+    }
+
+    @Test
+    public void export_constantStatements() throws Exception {
+        assertStatementsAtMost(2, get("/export/shows"));
+        assertStatementsAtMost(2, get("/export/shows").param("type", "MOVIE").param("year_gt", "1990"));
+        assertStatementsAtMost(2, get("/export/people"));
+        assertStatementsAtMost(3, get("/export/participations"));
+    }
+
+    private void assertStatementsAtMost(long expected, RequestBuilder request) throws Exception {
+        statistics.clear();
+        mockMvc.perform(request)
+                .andExpect(status().isOk());
+        long actual = statistics.getPrepareStatementCount();
+        assertTrue("Expected at most " + expected + " statements, but was " + actual, actual <= expected);
+    }
+}
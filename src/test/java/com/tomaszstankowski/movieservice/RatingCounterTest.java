@@ -0,0 +1,193 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.ModelMapper;
+import com.tomaszstankowski.movieservice.model.dto.ShowDTO;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.RatingHistogram;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.entity.User;
+import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.RatingRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.repository.UserRepository;
+import com.tomaszstankowski.movieservice.service.RatingCounterService;
+import com.tomaszstankowski.movieservice.service.ShowService;
+import com.tomaszstankowski.movieservice.service.exception.not_found.RatingNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.not_found.ShowNotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Aggregates counted in memory are flushed and reconciled by calls made directly, the scheduled ones are left
+ * to run only after the tests.
+ **/
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ratingcounters;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "movieservice.ratings.counters.enabled=true",
+        "movieservice.ratings.counters.flush-interval-ms=600000",
+        "movieservice.ratings.counters.reconcile-interval-seconds=600"
+})
+public class RatingCounterTest {
+
+    private static final int USERS = 16;
+
+    @Autowired
+    private ShowService service;
+
+    @Autowired
+    private RatingCounterService counters;
+
+    @Autowired
+    private ModelMapper mapper;
+
+    @Autowired
+    private ShowRepository showRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private RatingRepository ratingRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private long showId;
+
+    @Before
+    public void setup() {
+        counters.flush();
+        ratingRepo.deleteAll();
+        showRepo.deleteAll();
+        userRepo.deleteAll();
+        for (int i = 0; i < USERS; i++)
+            userRepo.save(new User("user" + i, "password", "User " + i, "user" + i + "@mail.com", Sex.FEMALE));
+        showId = showRepo.save(new Movie("Casino", "", new GregorianCalendar(1995, 10, 22).getTime(),
+                "USA", (short) 178, 0)).getId();
+    }
+
+    @Test
+    public void addRating_whenNotFlushed_mappedShowIncludesPending() {
+        service.addRating(showId, "user0", (short) 6);
+        service.addRating(showId, "user1", (short) 8);
+        service.addRating(showId, "user0", (short) 9);
+
+        assertAggregates(0, 0);
+        ShowDTO dto = mapper.fromEntity(service.findShow(showId));
+        assertEquals(2, dto.getRateCount());
+
+        counters.flush();
+
+        assertAggregates(17, 2);
+        assertEquals(2, mapper.fromEntity(service.findShow(showId)).getRateCount());
+    }
+
+    @Test
+    public void findRatingHistogram_whenNotFlushed_mappedHistogramIncludesPending() {
+        service.addRating(showId, "user0", (short) 6);
+        service.addRating(showId, "user1", (short) 8);
+        service.addRating(showId, "user0", (short) 9);
+
+        RatingHistogram histogram = mapper.ratingHistogram(showId, service.findRatingHistogram(showId));
+
+        assertArrayEquals(new long[]{0, 0, 0, 0, 0, 0, 0, 1, 1, 0}, histogram.toArray());
+    }
+
+    @Test
+    public void reconcile_whenHistogramDrifted_recalculatedFromRatings() {
+        service.addRating(showId, "user0", (short) 6);
+        service.addRating(showId, "user1", (short) 6);
+        counters.flush();
+        jdbc.update("update shows set rating_6 = 0, rating_1 = 2 where id = ?", showId);
+
+        counters.reconcile();
+
+        assertArrayEquals(new long[]{0, 0, 0, 0, 0, 2, 0, 0, 0, 0},
+                showRepo.findOne(showId).getRatingHistogram().toArray());
+    }
+
+    @Test
+    public void removeRating_whenFlushed_aggregatesDecreased() {
+        service.addRating(showId, "user0", (short) 6);
+        service.addRating(showId, "user1", (short) 8);
+        counters.flush();
+        service.removeRating(showId, "user0");
+        counters.flush();
+
+        assertAggregates(8, 1);
+    }
+
+    @Test(expected = RatingNotFoundException.class)
+    public void removeRating_whenNotRated_throwExc() {
+        service.removeRating(showId, "user0");
+    }
+
+    @Test(expected = ShowNotFoundException.class)
+    public void addRating_whenShowNotExists_throwExc() {
+        service.addRating(showId + 1, "user0", (short) 6);
+    }
+
+    @Test
+    public void addRating_whenUsersRateConcurrently_aggregatesConsistent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(USERS);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < USERS; i++) {
+                String login = "user" + i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    service.addRating(showId, login, (short) 5);
+                    service.addRating(showId, login, (short) 7);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results)
+                result.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+        counters.flush();
+
+        assertAggregates(7 * USERS, USERS);
+    }
+
+    @Test
+    public void reconcile_whenAggregatesDrifted_recalculatedFromRatings() {
+        service.addRating(showId, "user0", (short) 6);
+        counters.flush();
+        jdbc.update("update shows set rating_sum = 100, rating_count = 3 where id = ?", showId);
+
+        counters.reconcile();
+
+        assertAggregates(6, 1);
+    }
+
+    private void assertAggregates(long sum, long count) {
+        Show show = showRepo.findOne(showId);
+        assertEquals(sum, show.getRatingSum());
+        assertEquals(count, show.getRatingCount());
+        assertEquals(sum, show.getRatingHistogram().sum());
+        assertEquals(count, show.getRatingHistogram().total());
+    }
+}
@@ -0,0 +1,130 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.RatingHistogram;
+import com.tomaszstankowski.movieservice.service.rating.RatingCounters;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RatingCountersTest {
+
+    private static final int THREADS = 16;
+
+    private static final int RATINGS = 10000;
+
+    private final RatingCounters counters = new RatingCounters();
+
+    @Test
+    public void add_whenManyThreadsRateOneShow_noneLost() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++)
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < RATINGS; j++)
+                        counters.add(1L, 7, 1);
+                }));
+            for (Future<?> result : results)
+                result.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(7L * THREADS * RATINGS, counters.pendingSum(1L));
+        assertEquals((long) THREADS * RATINGS, counters.pendingCount(1L));
+    }
+
+    @Test
+    public void add_whenDrainedAndEvictedMeanwhile_noneLost() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        AtomicBoolean adding = new AtomicBoolean(true);
+        long drained = 0;
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++)
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < RATINGS; j++) {
+                        counters.add(1L, 7, 1);
+                        counters.add(1L, 7, -1);
+                    }
+                }));
+            Future<?> done = executor.submit(() -> {
+                for (Future<?> result : results)
+                    result.get(10, TimeUnit.SECONDS);
+                adding.set(false);
+                return null;
+            });
+            while (adding.get())
+                for (RatingHistogram histogram : counters.drain().values())
+                    drained += histogram.total();
+            done.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, drained + counters.pendingCount(1L));
+    }
+
+    @Test
+    public void drain_pendingChangesSubtracted() {
+        counters.add(1L, 7, 1);
+        counters.add(1L, 2, 1);
+        counters.add(1L, 2, -1);
+        counters.add(1L, 9, -1);
+        counters.add(2L, 5, 1);
+
+        Map<Long, RatingHistogram> drained = counters.drain();
+        counters.add(1L, 4, 1);
+
+        assertArrayEquals(new long[]{0, 0, 0, 0, 0, 0, 1, 0, -1, 0}, drained.get(1L).toArray());
+        assertArrayEquals(new long[]{0, 0, 0, 0, 1, 0, 0, 0, 0, 0}, drained.get(2L).toArray());
+        assertEquals(4, counters.pendingSum(1L));
+        assertEquals(0, counters.pendingCount(2L));
+        assertNull(counters.pending(2L));
+    }
+
+    @Test
+    public void drain_whenNothingPending_empty() {
+        counters.add(1L, 7, 1);
+        counters.add(1L, 7, -1);
+
+        assertTrue(counters.drain().isEmpty());
+    }
+
+    @Test
+    public void drain_whenNothingLeftPending_counterEvicted() {
+        counters.add(1L, 7, 1);
+        counters.add(2L, 5, 1);
+        counters.add(3L, 3, 1);
+        counters.add(3L, 3, -1);
+
+        counters.drain();
+        counters.add(2L, 6, 1);
+
+        assertEquals(1, counters.size());
+        assertEquals(6, counters.pendingSum(2L));
+    }
+
+    @Test
+    public void restore_changesPendingAgain() {
+        counters.add(1L, 7, 1);
+        counters.restore(counters.drain());
+
+        assertEquals(7, counters.pendingSum(1L));
+        assertEquals(1, counters.pendingCount(1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void add_whenRatingOutOfRange_throwExc() {
+        counters.add(1L, 11, 1);
+    }
+}
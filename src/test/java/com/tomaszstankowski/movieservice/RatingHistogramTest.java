@@ -0,0 +1,56 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.RatingHistogram;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RatingHistogramTest {
+
+    private static final float DELTA = 0.0001f;
+
+    @Test
+    public void mean_whenRated_sumDividedByCountWithoutTruncation() {
+        RatingHistogram histogram = new RatingHistogram(0, 0, 0, 0, 0, 0, 1, 1, 0, 0);
+
+        assertEquals(7.5f, histogram.mean(), DELTA);
+    }
+
+    @Test
+    public void median_whenCountOdd_middleRating() {
+        RatingHistogram histogram = new RatingHistogram(1, 0, 0, 0, 1, 0, 0, 0, 0, 1);
+
+        assertEquals(5f, histogram.median(), DELTA);
+    }
+
+    @Test
+    public void median_whenCountEven_meanOfMiddleRatings() {
+        RatingHistogram histogram = new RatingHistogram(0, 0, 0, 2, 0, 0, 0, 2, 0, 0);
+
+        assertEquals(6f, histogram.median(), DELTA);
+    }
+
+    @Test
+    public void percentile_nearestRank() {
+        RatingHistogram histogram = new RatingHistogram(1, 1, 1, 1, 1, 1, 1, 1, 1, 1);
+
+        assertEquals(1, histogram.percentile(0.01));
+        assertEquals(3, histogram.percentile(0.25));
+        assertEquals(9, histogram.percentile(0.9));
+        assertEquals(10, histogram.percentile(1));
+    }
+
+    @Test
+    public void percentile_whenNotRated_zero() {
+        RatingHistogram histogram = new RatingHistogram();
+
+        assertEquals(0, histogram.percentile(0.5));
+        assertEquals(0f, histogram.median(), DELTA);
+        assertEquals(0f, histogram.mean(), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentile_whenFractionZero_throwExc() {
+        new RatingHistogram().percentile(0);
+    }
+}
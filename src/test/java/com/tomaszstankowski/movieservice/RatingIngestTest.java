@@ -0,0 +1,172 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.entity.User;
+import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.RatingRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.repository.UserRepository;
+import com.tomaszstankowski.movieservice.service.RatingIngestService;
+import com.tomaszstankowski.movieservice.service.exception.not_found.ShowNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.unavailable.RatingQueueFullException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Queued ratings are written by flushes called directly, the scheduled flush is left to run only after the tests.
+ **/
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ratingingest;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "movieservice.ratings.write-behind.enabled=true",
+        "movieservice.ratings.write-behind.capacity=60",
+        "movieservice.ratings.write-behind.batch-size=16",
+        "movieservice.ratings.write-behind.flush-interval-ms=600000"
+})
+public class RatingIngestTest {
+
+    private static final int USERS = 30;
+
+    @Autowired
+    private RatingIngestService service;
+
+    @Autowired
+    private ShowRepository showRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private RatingRepository ratingRepo;
+
+    private long showId;
+
+    private long otherShowId;
+
+    @Before
+    public void setup() {
+        service.flush();
+        ratingRepo.deleteAll();
+        showRepo.deleteAll();
+        userRepo.deleteAll();
+        for (int i = 0; i < USERS; i++)
+            userRepo.save(new User("user" + i, "password", "User " + i, "user" + i + "@mail.com", Sex.MALE));
+        showId = showRepo.save(new Movie("Heat", "", new GregorianCalendar(1995, 11, 15).getTime(),
+                "USA", (short) 170, 0)).getId();
+        otherShowId = showRepo.save(new Movie("Ronin", "", new GregorianCalendar(1998, 8, 25).getTime(),
+                "USA", (short) 122, 0)).getId();
+    }
+
+    @Test
+    public void flush_whenRatedManyTimes_lastRatingsWrittenInBatches() {
+        for (int i = 0; i < USERS; i++) {
+            service.addRating(showId, "user" + i, (short) 3);
+            service.addRating(otherShowId, "user" + i, (short) 4);
+            service.addRating(showId, "user" + i, (short) 6);
+        }
+        long flushes = service.getFlushes();
+
+        service.flush();
+
+        assertEquals(0, service.getQueueDepth());
+        assertEquals(4, service.getFlushes() - flushes);
+        assertEquals(2 * USERS, ratingRepo.count());
+        assertAggregates(showId, 6 * USERS, USERS);
+        assertAggregates(otherShowId, 4 * USERS, USERS);
+    }
+
+    @Test
+    public void flush_whenRatedBefore_aggregatesRelativeToOldRating() {
+        service.addRating(showId, "user0", (short) 3);
+        service.addRating(showId, "user1", (short) 5);
+        service.flush();
+        service.addRating(showId, "user0", (short) 9);
+        service.flush();
+
+        assertEquals(2, ratingRepo.count());
+        assertAggregates(showId, 14, 2);
+    }
+
+    @Test
+    public void flush_whenUserNotExists_restOfBatchWritten() {
+        long dropped = service.getDropped();
+        service.addRating(showId, "user0", (short) 3);
+        service.addRating(showId, "nobody", (short) 5);
+        service.addRating(showId, "user1", (short) 7);
+
+        service.flush();
+
+        assertEquals(2, ratingRepo.count());
+        assertEquals(1, service.getDropped() - dropped);
+        assertAggregates(showId, 10, 2);
+    }
+
+    @Test
+    public void flush_whenShowRemovedMeanwhile_ratingSkipped() {
+        service.addRating(showId, "user0", (short) 3);
+        service.addRating(otherShowId, "user0", (short) 5);
+        showRepo.delete(otherShowId);
+
+        service.flush();
+
+        assertEquals(1, ratingRepo.count());
+        assertAggregates(showId, 3, 1);
+    }
+
+    @Test
+    public void removeRating_whenOnlyQueued_discarded() {
+        service.addRating(showId, "user0", (short) 3);
+
+        service.removeRating(showId, "user0");
+        service.flush();
+
+        assertEquals(0, ratingRepo.count());
+        assertEquals(0, service.getQueueDepth());
+    }
+
+    @Test(expected = ShowNotFoundException.class)
+    public void addRating_whenShowNotExists_throwExc() {
+        service.addRating(otherShowId + 1, "user0", (short) 3);
+    }
+
+    @Test
+    public void addRating_whenQueueFull_onlyQueuedRatersAccepted() {
+        for (int i = 0; i < USERS; i++) {
+            service.addRating(showId, "user" + i, (short) 3);
+            service.addRating(otherShowId, "user" + i, (short) 3);
+        }
+        long rejected = service.getRejected();
+        try {
+            service.addRating(showId, "user0", (short) 5);
+            service.addRating(showId, "nobody", (short) 5);
+            throw new AssertionError("Rating accepted by a full queue.");
+        } catch (RatingQueueFullException e) {
+            assertEquals(1, service.getRejected() - rejected);
+        } finally {
+            service.flush();
+        }
+        assertAggregates(showId, 3 * USERS + 2, USERS);
+    }
+
+    private void assertAggregates(long id, long sum, long count) {
+        Show show = showRepo.findOne(id);
+        assertEquals(sum, show.getRatingSum());
+        assertEquals(count, show.getRatingCount());
+        assertEquals(sum, show.getRatingHistogram().sum());
+        assertEquals(count, show.getRatingHistogram().total());
+    }
+}
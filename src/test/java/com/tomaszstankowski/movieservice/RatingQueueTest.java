@@ -0,0 +1,77 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.rating.PendingRating;
+import com.tomaszstankowski.movieservice.service.rating.RatingQueue;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RatingQueueTest {
+
+    private final RatingQueue queue = new RatingQueue(2);
+
+    @Test
+    public void offer_whenRatedAgain_lastRatingKept() {
+        queue.offer(rating(1L, "user0", 5));
+        queue.offer(rating(2L, "user0", 6));
+        queue.offer(rating(1L, "user0", 9));
+
+        List<PendingRating> drained = queue.drain(10);
+
+        assertEquals(2, drained.size());
+        assertEquals(9, drained.get(0).getRating());
+        assertEquals(1, queue.coalesced());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void offer_whenFull_rejectedUnlessQueuedBefore() {
+        assertTrue(queue.offer(rating(1L, "user0", 5)));
+        assertTrue(queue.offer(rating(1L, "user1", 5)));
+
+        assertFalse(queue.offer(rating(1L, "user2", 5)));
+        assertTrue(queue.offer(rating(1L, "user1", 7)));
+        assertEquals(1, queue.rejected());
+        assertEquals(2, queue.accepted());
+    }
+
+    @Test
+    public void drain_oldestFirstAtMostMax() {
+        queue.offer(rating(1L, "user0", 5));
+        queue.offer(rating(2L, "user0", 6));
+
+        List<PendingRating> drained = queue.drain(1);
+
+        assertEquals(1L, drained.get(0).getShowId());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void requeue_whenNewerQueued_newerKept() {
+        PendingRating older = rating(1L, "user0", 5);
+        queue.offer(older);
+        queue.drain(10);
+        queue.offer(rating(1L, "user0", 8));
+
+        queue.requeue(Collections.singletonList(older));
+
+        assertEquals(8, queue.drain(10).get(0).getRating());
+    }
+
+    @Test
+    public void discard_whenQueued_removed() {
+        queue.offer(rating(1L, "user0", 5));
+
+        assertTrue(queue.discard(1L, "user0"));
+        assertFalse(queue.discard(1L, "user0"));
+        assertEquals(0, queue.size());
+    }
+
+    private static PendingRating rating(long showId, String login, int value) {
+        return new PendingRating(showId, login, (short) value, new Date());
+    }
+}
@@ -0,0 +1,172 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Rating;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.entity.User;
+import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.RatingRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.repository.UserRepository;
+import com.tomaszstankowski.movieservice.service.ShowService;
+import com.tomaszstankowski.movieservice.service.UserService;
+import com.tomaszstankowski.movieservice.service.exception.not_found.RatingNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.not_found.ShowNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.not_found.UserNotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Ratings are written by upserts on the unique user and show key, on an in-memory database.
+ **/
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:ratingupsert;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+public class RatingUpsertTest {
+
+    private static final int USERS = 16;
+
+    @Autowired
+    private ShowService service;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ShowRepository showRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private RatingRepository ratingRepo;
+
+    private long showId;
+
+    @Before
+    public void setup() {
+        ratingRepo.deleteAll();
+        showRepo.deleteAll();
+        userRepo.deleteAll();
+        for (int i = 0; i < USERS; i++)
+            userRepo.save(new User("user" + i, "password", "User " + i, "user" + i + "@mail.com", Sex.FEMALE));
+        showId = showRepo.save(new Movie("Taxi Driver", "", new GregorianCalendar(1976, 1, 8).getTime(),
+                "USA", (short) 113, 0)).getId();
+    }
+
+    @Test
+    public void addRating_whenRatedAgain_ratingReplaced() {
+        Rating first = service.addRating(showId, "user0", (short) 6);
+        service.addRating(showId, "user1", (short) 9);
+        Rating second = service.addRating(showId, "user0", (short) 8);
+
+        assertEquals(first.getId(), second.getId());
+        assertEquals(2, ratingRepo.count());
+        assertEquals(8, ratingRepo.findOne(first.getId()).getRating());
+        assertAggregates(17, 2);
+    }
+
+    @Test
+    public void removeRating_aggregatesDecreased() {
+        service.addRating(showId, "user0", (short) 6);
+        service.addRating(showId, "user1", (short) 9);
+        service.removeRating(showId, "user0");
+
+        assertEquals(1, ratingRepo.count());
+        assertAggregates(9, 1);
+    }
+
+    @Test
+    public void removeUser_ratingsSubtractedFromAggregates() {
+        service.addRating(showId, "user0", (short) 6);
+        service.addRating(showId, "user1", (short) 9);
+
+        userService.removeUser("user0");
+
+        assertEquals(1, ratingRepo.count());
+        assertAggregates(9, 1);
+    }
+
+    @Test(expected = RatingNotFoundException.class)
+    public void removeRating_whenNotRated_throwExc() {
+        service.removeRating(showId, "user0");
+    }
+
+    @Test(expected = ShowNotFoundException.class)
+    public void addRating_whenShowNotExists_throwExc() {
+        service.addRating(showId + 1, "user0", (short) 6);
+    }
+
+    @Test(expected = UserNotFoundException.class)
+    public void addRating_whenUserNotExists_throwExc() {
+        service.addRating(showId, "nobody", (short) 6);
+    }
+
+    @Test
+    public void addRating_whenSameUserRatesConcurrently_singleRating() throws Exception {
+        concurrently(USERS, i -> service.addRating(showId, "user0", (short) (1 + i % 10)));
+
+        assertEquals(1, ratingRepo.count());
+        short rating = ratingRepo.findAll().get(0).getRating();
+        assertAggregates(rating, 1);
+    }
+
+    @Test
+    public void addRating_whenUsersRateConcurrently_aggregatesConsistent() throws Exception {
+        concurrently(USERS, i -> service.addRating(showId, "user" + i, (short) 5));
+        concurrently(USERS, i -> service.addRating(showId, "user" + i, (short) 7));
+
+        assertEquals(USERS, ratingRepo.count());
+        assertAggregates(7 * USERS, USERS);
+    }
+
+    private void assertAggregates(long sum, long count) {
+        Show show = showRepo.findOne(showId);
+        assertEquals(sum, show.getRatingSum());
+        assertEquals(count, show.getRatingCount());
+        assertEquals(sum, show.getRatingHistogram().sum());
+        assertEquals(count, show.getRatingHistogram().total());
+    }
+
+    private interface Call {
+        void call(int i);
+    }
+
+    private static void concurrently(int callers, Call call) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                int caller = i;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    call.call(caller);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> result : results)
+                result.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
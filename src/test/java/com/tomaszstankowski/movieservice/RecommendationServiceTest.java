@@ -0,0 +1,39 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.repository.RecommendationRepository;
+import com.tomaszstankowski.movieservice.repository.ShowSimilarityRepository;
+import com.tomaszstankowski.movieservice.service.RecommendationService;
+import com.tomaszstankowski.movieservice.service.index.TopRatedIndex;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+public class RecommendationServiceTest {
+
+    private static RecommendationService service(boolean enabled, int maxRecentUsers) {
+        return new RecommendationService(mock(ShowSimilarityRepository.class), mock(RecommendationRepository.class),
+                mock(TopRatedIndex.class), enabled, 1.0f, 0.5f, 0.25f, maxRecentUsers, 1440);
+    }
+
+    @Test
+    public void rated_whenDisabled_notKept() {
+        RecommendationService service = service(false, 10);
+
+        service.rated("user", 1L, (short) 5);
+
+        assertEquals(0, service.getRecentUsers());
+    }
+
+    @Test
+    public void rated_whenMaxRecentUsersReached_onlyKnownUsersKept() {
+        RecommendationService service = service(true, 2);
+
+        service.rated("a", 1L, (short) 5);
+        service.rated("b", 1L, (short) 5);
+        service.rated("c", 1L, (short) 5);
+        service.rated("a", 2L, (short) 5);
+
+        assertEquals(2, service.getRecentUsers());
+    }
+}
@@ -0,0 +1,81 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.similar.RatingMatrix;
+import com.tomaszstankowski.movieservice.service.similar.Recommender;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+import static org.junit.Assert.assertEquals;
+
+public class RecommenderTest {
+
+    private static final BiFunction<String, Integer, List<Long>> TOP_RATED = (genre, count) -> {
+        if (genre == null)
+            return Arrays.asList(1L, 2L, 8L);
+        return genre.equalsIgnoreCase("drama") ? Arrays.asList(1L, 3L, 7L) : Collections.emptyList();
+    };
+
+    private Recommender recommender;
+
+    /*
+    The user "me" likes show 1 and dislikes show 2, and follows "friend", who likes show 6 and dislikes show 3.
+     */
+    @Before
+    public void setup() {
+        RatingMatrix.Builder ratings = new RatingMatrix.Builder(new long[]{1, 2, 3, 4, 5, 6, 7, 8}, 4, 1000)
+                .keepLogins();
+        ratings.addUser("newcomer");
+        ratings.add(1L, "me", (short) 9);
+        ratings.add(2L, "me", (short) 3);
+        ratings.add(6L, "friend", (short) 10);
+        ratings.add(3L, "friend", (short) 2);
+        Recommender.Builder builder = new Recommender.Builder(ratings.build(), 1f, 0.5f, 0.25f);
+        builder.addFollow("me", "friend");
+        builder.addFollow("me", "stranger");
+        builder.addNeighbour(1L, 3L, 0.8f);
+        builder.addNeighbour(1L, 4L, 0.4f);
+        builder.addNeighbour(2L, 5L, 0.9f);
+        builder.addNeighbour(9L, 1L, 0.9f);
+        builder.addGenre(1L, "Drama");
+        builder.addGenre(3L, "drama");
+        builder.addGenre(7L, "Drama");
+        builder.addGenre(4L, "Comedy");
+        builder.addGenre(6L, "Comedy");
+        recommender = builder.build();
+    }
+
+    @Test
+    public void recommend_blendsNeighboursFollowedAndGenresThenFillsWithTopRated() {
+        assertEquals(Arrays.asList(3L, 4L, 6L, 7L, 8L),
+                recommender.recommend("me", Collections.emptyMap(), 10, TOP_RATED));
+    }
+
+    @Test
+    public void recommend_whenLimitReached_bestKept() {
+        assertEquals(Arrays.asList(3L, 4L), recommender.recommend("me", Collections.emptyMap(), 2, TOP_RATED));
+    }
+
+    @Test
+    public void recommend_whenRatedSinceSnapshot_showLeftOut() {
+        assertEquals(Arrays.asList(4L, 6L, 7L, 8L),
+                recommender.recommend("me", Collections.singletonMap(3L, (short) 8), 10, TOP_RATED));
+    }
+
+    @Test
+    public void recommend_whenUserWithoutRatings_topRatedOnly() {
+        assertEquals(Arrays.asList(1L, 2L, 8L),
+                recommender.recommend("newcomer", Collections.emptyMap(), 10, TOP_RATED));
+    }
+
+    @Test
+    public void recommend_whenNewUserRatedSinceSnapshot_recentRatingsUsed() {
+        Map<Long, Short> recent = new HashMap<>();
+        recent.put(1L, (short) 10);
+        recent.put(2L, (short) 2);
+
+        assertEquals(Arrays.asList(3L, 4L, 7L, 8L), recommender.recommend("unknown", recent, 10, TOP_RATED));
+    }
+}
@@ -0,0 +1,91 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.dto.SuggestionDTO;
+import com.tomaszstankowski.movieservice.repository.ParticipationRepository;
+import com.tomaszstankowski.movieservice.repository.PersonRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.event.ParticipationChangedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.index.SearchIndex;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SearchIndexTest {
+
+    @Mock
+    private ShowRepository showRepo;
+    @Mock
+    private PersonRepository personRepo;
+    @Mock
+    private ParticipationRepository participationRepo;
+
+    private SearchIndex index;
+
+    @Before
+    public void setup() {
+        index = new SearchIndex(showRepo, personRepo, participationRepo);
+        when(showRepo.findTextsAfter(anyLong(), any(Pageable.class))).thenReturn(Arrays.asList(
+                new Object[]{1L, "Star Wars", "Space opera", 10L},
+                new Object[]{2L, "Star Trek", "Space travel", 5L}));
+        when(personRepo.findNamesAfter(anyLong(), any(Pageable.class))).thenReturn(Arrays.asList(
+                new Object[]{1L, "Mark Hamill", 2L},
+                new Object[]{2L, "Mark Ruffalo", 1L}));
+    }
+
+    @Test
+    public void rebuild_whenShowRemovedMeanwhile_removalReplayedOnFreshIndex() {
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(new Object[]{1L, "Star Wars", "Space opera", 10L});
+        when(showRepo.findTextsAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            index.onShowRemoved(new ShowRemovedEvent(1L));
+            return rows;
+        });
+
+        index.rebuild();
+
+        assertTrue(index.searchShows("star", 10).isEmpty());
+        assertTrue(index.suggestShows("star", 10).isEmpty());
+    }
+
+    @Test
+    public void rebuild_whenRebuiltAgain_indexServesWhileRebuilding() {
+        index.rebuild();
+        when(showRepo.findTextsAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            assertEquals(Arrays.asList(1L, 2L), index.searchShows("star", 10).stream().sorted().collect(Collectors.toList()));
+            return Collections.emptyList();
+        });
+
+        index.rebuild();
+
+        assertTrue(index.searchShows("star", 10).isEmpty());
+    }
+
+    @Test
+    public void onParticipationChanged_personSuggestionsReweighed() {
+        index.rebuild();
+        when(participationRepo.countByPersonId(2L)).thenReturn(3L);
+
+        index.onParticipationChanged(new ParticipationChangedEvent(1L, 2L));
+
+        assertEquals(Arrays.asList(2L, 1L), index.suggestPeople("mark", 10).stream()
+                .map(SuggestionDTO::getId)
+                .collect(Collectors.toList()));
+    }
+}
@@ -7,23 +7,42 @@ import com.tomaszstankowski.movieservice.model.ModelMapper;
 import com.tomaszstankowski.movieservice.model.dto.MovieDTO;
 import com.tomaszstankowski.movieservice.model.dto.ParticipationDTO;
 import com.tomaszstankowski.movieservice.model.dto.SerialDTO;
+import com.tomaszstankowski.movieservice.model.dto.ShowFacetsDTO;
+import com.tomaszstankowski.movieservice.model.dto.SuggestionDTO;
 import com.tomaszstankowski.movieservice.model.entity.*;
 import com.tomaszstankowski.movieservice.model.enums.Profession;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.RatingIngestService;
 import com.tomaszstankowski.movieservice.service.ShowService;
+import com.tomaszstankowski.movieservice.service.cache.ShowJsonCache;
 import com.tomaszstankowski.movieservice.service.exception.conflict.ShowAlreadyExistsException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.ParticipationNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.PersonNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.RatingNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.ShowNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.unavailable.RatingQueueFullException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidRatingException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidShowException;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.UnsupportedSortException;
+import com.tomaszstankowski.movieservice.service.index.IdBitmap;
+import com.tomaszstankowski.movieservice.service.index.PrefixIndex;
+import com.tomaszstankowski.movieservice.service.index.ShowFacetQuery;
+import com.tomaszstankowski.movieservice.service.index.TopRatedIndex;
+import com.tomaszstankowski.movieservice.service.trending.TrendingWindow;
 import net.minidev.json.JSONArray;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.web.SortHandlerMethodArgumentResolver;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -38,8 +57,12 @@ import java.util.stream.Stream;
 
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
-import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.when;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup;
@@ -56,9 +79,15 @@ public class ShowControllerTest {
     @Mock
     private ShowService service;
 
+    @Mock
+    private ShowRepository showRepo;
+
     @Mock
     private Principal principal;
 
+    @Mock
+    private RatingIngestService ratingIngestService;
+
     private ModelMapper modelMapper = new ModelMapper();
 
     private ObjectMapper objectMapper = new ObjectMapper();
@@ -85,8 +114,10 @@ public class ShowControllerTest {
 
     @Before
     public void setup() throws Exception {
-        mockMvc = standaloneSetup(new ShowController(service, modelMapper))
+        mockMvc = standaloneSetup(new ShowController(service, modelMapper,
+                new ShowJsonCache(service, showRepo, modelMapper, objectMapper, 100, 60), ratingIngestService))
                 .setControllerAdvice(new InternalExceptionHandler())
+                .setCustomArgumentResolvers(new SortHandlerMethodArgumentResolver())
                 .build();
         movie = new Movie("The Dark Knight Rises",
                 "Batman.",
@@ -222,6 +253,64 @@ public class ShowControllerTest {
                 .andExpect(status().isUnprocessableEntity());
     }
 
+    @Test
+    public void post_whenWriteBehind_statusAcceptedRatingQueued() throws Exception {
+        when(principal.getName()).thenReturn("jandaciuk");
+        when(ratingIngestService.isEnabled()).thenReturn(true);
+
+        mockMvc.perform(post("/shows/{id}/ratings", 1L)
+                .principal(principal)
+                .param("rating", "8"))
+                .andExpect(status().isAccepted());
+        verify(ratingIngestService, times(1)).addRating(1L, "jandaciuk", (short) 8);
+        verifyZeroInteractions(service);
+    }
+
+    @Test
+    public void post_whenRatingQueueFull_statusServiceUnavailableRetryAfter() throws Exception {
+        when(principal.getName()).thenReturn("jandaciuk");
+        when(ratingIngestService.isEnabled()).thenReturn(true);
+        doThrow(new RatingQueueFullException(2))
+                .when(ratingIngestService).addRating(1L, "jandaciuk", (short) 8);
+
+        mockMvc.perform(post("/shows/{id}/ratings", 1L)
+                .principal(principal)
+                .param("rating", "8"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "2"));
+    }
+
+    @Test
+    public void get_whenRatingHistogramRequested_statusOkDistributionAndPercentiles() throws Exception {
+        when(service.findRatingHistogram(1L)).thenReturn(new RatingHistogram(0, 0, 0, 0, 1, 0, 2, 1, 0, 0));
+
+        mockMvc.perform(get("/shows/{id}/ratings/histogram", 1L).param("percentiles", "50,100"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(contentType))
+                .andExpect(jsonPath("$.counts.7", is(2)))
+                .andExpect(jsonPath("$.count", is(4)))
+                .andExpect(jsonPath("$.mean", is(6.75)))
+                .andExpect(jsonPath("$.median", is(7.0)))
+                .andExpect(jsonPath("$.percentiles.50", is(7)))
+                .andExpect(jsonPath("$.percentiles.100", is(8)));
+    }
+
+    @Test
+    public void get_whenRatingHistogramPercentileInvalid_statusUnprocessableEntity() throws Exception {
+        mockMvc.perform(get("/shows/{id}/ratings/histogram", 1L).param("percentiles", "0"))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(service, never()).findRatingHistogram(anyLong());
+    }
+
+    @Test
+    public void get_whenRatingHistogramOfShowNotExists_statusNotFound() throws Exception {
+        when(service.findRatingHistogram(1L)).thenThrow(new ShowNotFoundException(1L));
+
+        mockMvc.perform(get("/shows/{id}/ratings/histogram", 1L))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void get_whenMovieExists_statusOkJsonCorrect() throws Exception {
         when(service.findShow(1L)).thenReturn(movie);
@@ -259,6 +348,271 @@ public class ShowControllerTest {
                 .andExpect(jsonPath("$.seasons", is((int) serial.getSeasons())));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void get_whenCursorModeAndNextSliceExists_statusOkNextCursorInHeader() throws Exception {
+        KeysetSlice<Show> slice = new KeysetSlice<>(Arrays.asList(movie, serial), "bmV4dA");
+        when(service.findShows((Specification<Show>) isNull(), eq(""), any(Sort.class))).thenReturn(slice);
+
+        mockMvc.perform(get("/shows")
+                .param("after", ""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(ShowController.NEXT_CURSOR_HEADER, "bmV4dA"))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[0].title", is(movie.getTitle())));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void get_whenCursorModeAndLastSlice_statusOkNoCursorHeader() throws Exception {
+        KeysetSlice<Movie> slice = new KeysetSlice<>(Collections.singletonList(movie), null);
+        when(service.findMovies((Specification<Movie>) isNull(), eq("bmV4dA"), any(Sort.class))).thenReturn(slice);
+
+        mockMvc.perform(get("/shows")
+                .param("type", "MOVIE")
+                .param("after", "bmV4dA"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(ShowController.NEXT_CURSOR_HEADER))
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void get_whenCursorModeAndSortUnsupported_statusUnprocessableEntity() throws Exception {
+        doThrow(UnsupportedSortException.class)
+                .when(service).findShows((Specification<Show>) isNull(), eq(""), any(Sort.class));
+
+        mockMvc.perform(get("/shows")
+                .param("after", "")
+                .param("sort", "location"))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void get_whenTitleGivenAndNoSort_statusOkOrderedByRelevance() throws Exception {
+        List<Long> ranked = Arrays.asList(2L, 1L);
+        when(service.searchShows("wars")).thenReturn(ranked);
+        when(service.findShowsByRelevance(any(Specification.class), eq(ranked), eq(0)))
+                .thenReturn(new PageImpl<>(Arrays.asList(serial, movie)));
+
+        mockMvc.perform(get("/shows")
+                .param("title", "wars"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$.[0].title", is(serial.getTitle())));
+        verify(service, never()).findShows(any(Specification.class), anyInt(), any(Sort.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void get_whenTitleAndSortGiven_allMatchesSearched() throws Exception {
+        when(service.matchShows("wars")).thenReturn(IdBitmap.of(1L, 2L));
+        when(service.findShows(any(Specification.class), eq(0), any(Sort.class)))
+                .thenReturn(new PageImpl<>(Arrays.asList(movie, serial)));
+
+        mockMvc.perform(get("/shows")
+                .param("title", "wars")
+                .param("sort", "title"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)));
+        verify(service, never()).searchShows("wars");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void get_whenTitleAndGenresGiven_rankedIdsFilteredByGenreBitmap() throws Exception {
+        when(service.searchShows("wars")).thenReturn(Arrays.asList(3L, 2L, 1L));
+        when(service.findIdsWithAnyGenre(new String[]{"sci-fi"}, ShowType.MOVIE)).thenReturn(IdBitmap.of(1L, 3L, 7L));
+        when(service.findMoviesByRelevance(any(Specification.class), eq(Arrays.asList(3L, 1L)), eq(0)))
+                .thenReturn(new PageImpl<>(Collections.singletonList(movie)));
+
+        mockMvc.perform(get("/shows")
+                .param("title", "wars")
+                .param("type", "MOVIE")
+                .param("genres", "sci-fi"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void get_whenFacetsRequested_statusOkPageAndCounts() throws Exception {
+        when(service.findSeries(any(Specification.class), eq(0), any(Sort.class)))
+                .thenReturn(new PageImpl<>(Collections.singletonList(serial)));
+        ShowFacetsDTO facets = new ShowFacetsDTO(
+                Collections.singletonMap("drama", 1L),
+                Collections.singletonMap(2000, 1L),
+                Collections.singletonMap(ShowType.SERIAL, 1L),
+                Collections.singletonMap("USA", 1L));
+        when(service.countFacets(new ShowFacetQuery(null, ShowType.SERIAL, null, null, null, 3))).thenReturn(facets);
+
+        mockMvc.perform(get("/shows")
+                .param("type", "SERIAL")
+                .param("seasons_gt", "3")
+                .param("facets", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)))
+                .andExpect(jsonPath("$.content.[0].title", is(serial.getTitle())))
+                .andExpect(jsonPath("$.facets.genres.drama", is(1)))
+                .andExpect(jsonPath("$.facets.decades.2000", is(1)))
+                .andExpect(jsonPath("$.facets.types.SERIAL", is(1)))
+                .andExpect(jsonPath("$.facets.locations.USA", is(1)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void get_whenTitleAndGenresGivenWithFacets_countedAmongAllMatches() throws Exception {
+        when(service.searchShows("wars")).thenReturn(Arrays.asList(3L, 1L));
+        when(service.matchShows("wars")).thenReturn(IdBitmap.of(1L, 3L, 5L));
+        when(service.findIdsWithAnyGenre(new String[]{"sci-fi"}, null)).thenReturn(IdBitmap.of(1L, 5L, 7L));
+        when(service.findShowsByRelevance(any(Specification.class), eq(Collections.singletonList(1L)), eq(0)))
+                .thenReturn(new PageImpl<>(Collections.singletonList(movie)));
+        when(service.countFacets(any(ShowFacetQuery.class))).thenReturn(new ShowFacetsDTO(
+                Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap()));
+
+        mockMvc.perform(get("/shows")
+                .param("title", "wars")
+                .param("genres", "sci-fi")
+                .param("facets", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content", hasSize(1)));
+        ArgumentCaptor<ShowFacetQuery> query = ArgumentCaptor.forClass(ShowFacetQuery.class);
+        verify(service).countFacets(query.capture());
+        assertEquals(Arrays.asList(1L, 5L), query.getValue().getCandidates().toList());
+    }
+
+    @Test
+    public void get_whenTopRatedRequested_statusOkLimitCapped() throws Exception {
+        when(service.findTopRated("drama", ShowType.SERIAL, 2008, 10L, TopRatedIndex.MAX_LIMIT))
+                .thenReturn(Collections.singletonList(serial));
+
+        mockMvc.perform(get("/shows/top")
+                .param("genre", "drama")
+                .param("type", "SERIAL")
+                .param("decade", "2008")
+                .param("min_votes", "10")
+                .param("limit", "1000"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(contentType))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].title", is(serial.getTitle())));
+    }
+
+    @Test
+    public void get_whenTrendingRequested_statusOkShowsOfWindow() throws Exception {
+        when(service.findTrending(TrendingWindow.WEEK, 5)).thenReturn(Arrays.asList(serial, movie));
+
+        mockMvc.perform(get("/shows/trending").param("window", "7d").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(contentType))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].title", is(serial.getTitle())));
+    }
+
+    @Test
+    public void get_whenTrendingWindowInvalid_statusUnprocessableEntity() throws Exception {
+        mockMvc.perform(get("/shows/trending").param("window", "2h"))
+                .andExpect(status().isUnprocessableEntity());
+
+        verify(service, never()).findTrending(any(), anyInt());
+    }
+
+    @Test
+    public void get_whenSimilarRequested_statusOkShowsInOrder() throws Exception {
+        when(service.findSimilar(1L, 100)).thenReturn(Arrays.asList(serial, movie));
+
+        mockMvc.perform(get("/shows/1/similar").param("limit", "500"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(contentType))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].title", is(serial.getTitle())));
+    }
+
+    @Test
+    public void get_whenSimilarOfShowNotExists_statusNotFound() throws Exception {
+        when(service.findSimilar(1L, 10)).thenThrow(new ShowNotFoundException(1L));
+
+        mockMvc.perform(get("/shows/1/similar"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void suggest_whenLimitTooHigh_cappedAndStatusOk() throws Exception {
+        when(service.suggestShows("god", PrefixIndex.MAX_LIMIT))
+                .thenReturn(Collections.singletonList(new SuggestionDTO(1L, "The Godfather")));
+
+        mockMvc.perform(get("/shows/suggest")
+                .param("prefix", "god")
+                .param("limit", "100"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$.[0].id", is(1)))
+                .andExpect(jsonPath("$.[0].text", is("The Godfather")));
+    }
+
+    @Test
+    public void get_whenShowRequestedTwice_loadedOnce() throws Exception {
+        when(service.findShow(1L)).thenReturn(movie);
+
+        mockMvc.perform(get("/shows/{id}", 1L))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/shows/{id}", 1L))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title", is(movie.getTitle())));
+        verify(service, times(1)).findShow(1L);
+    }
+
+    @Test
+    public void get_whenETagMatches_statusNotModifiedWithoutLoadingShow() throws Exception {
+        Date modified = new GregorianCalendar(2017, 8, 1).getTime();
+        when(showRepo.findVersionById(1L)).thenReturn(Collections.singletonList(new Object[]{modified, 2L, 15L}));
+
+        mockMvc.perform(get("/shows/{id}", 1L).header("If-None-Match", "\"1-" + modified.getTime() + "-2-15\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"1-" + modified.getTime() + "-2-15\""))
+                .andExpect(content().string(""));
+        verify(service, never()).findShow(anyLong());
+    }
+
+    @Test
+    public void get_whenETagOutdated_statusOkWithCurrentETag() throws Exception {
+        movie.setId(1L);
+        movie.setDateModified(new GregorianCalendar(2017, 8, 2).getTime());
+        movie.addRatingValue((short) 7);
+        when(showRepo.findVersionById(1L))
+                .thenReturn(Collections.singletonList(new Object[]{movie.getDateModified(), 1L, 7L}));
+        when(service.findShow(1L)).thenReturn(movie);
+
+        mockMvc.perform(get("/shows/{id}", 1L).header("If-None-Match", "\"1-0-0-0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-" + movie.getDateModified().getTime() + "-1-7\""))
+                .andExpect(header().doesNotExist("Last-Modified"))
+                .andExpect(jsonPath("$.title", is(movie.getTitle())));
+    }
+
+    @Test
+    public void get_whenOnlyModifiedSinceGiven_statusOkAsRatingsDoNotChangeDateModified() throws Exception {
+        movie.setId(1L);
+        movie.setDateModified(new GregorianCalendar(2017, 8, 2).getTime());
+        when(showRepo.findVersionById(1L))
+                .thenReturn(Collections.singletonList(new Object[]{movie.getDateModified(), 1L, 7L}));
+        when(service.findShow(1L)).thenReturn(movie);
+
+        mockMvc.perform(get("/shows/{id}", 1L)
+                .header("If-Modified-Since", new GregorianCalendar(2018, 0, 1).getTimeInMillis()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title", is(movie.getTitle())));
+    }
+
+    @Test
+    public void get_whenConditionalAndShowNotExists_statusNotFound() throws Exception {
+        when(showRepo.findVersionById(3L)).thenReturn(Collections.emptyList());
+
+        mockMvc.perform(get("/shows/{id}", 3L).header("If-None-Match", "\"3-0-0-0\""))
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     public void get_whenShowNotExists_statusNotFound() throws Exception {
         when(service.findShow(3L)).thenReturn(null);
@@ -0,0 +1,90 @@
+package com.tomaszstankowski.movieservice;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tomaszstankowski.movieservice.model.dto.MovieDTO;
+import com.tomaszstankowski.movieservice.model.dto.SerialDTO;
+import com.tomaszstankowski.movieservice.model.dto.ShowDTO;
+import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidShowException;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ShowDTODeserializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void deserialize_whenDurationAndBoxoffice_movie() throws Exception {
+        ShowDTO show = objectMapper.readValue("{\"title\":\"Heat\",\"description\":\"Cops and robbers.\"," +
+                "\"dateReleased\":\"1995-12-15\",\"location\":\"USA\",\"genres\":[\"crime\",\"drama\"]," +
+                "\"duration\":170,\"boxoffice\":187000000}", ShowDTO.class);
+
+        assertTrue(show instanceof MovieDTO);
+        assertEquals("Heat", show.getTitle());
+        assertEquals(new GregorianCalendar(1995, 11, 15).getTime(), show.getDateReleased());
+        assertEquals(new HashSet<>(Arrays.asList("crime", "drama")), show.getGenres());
+        assertEquals(170, ((MovieDTO) show).getDuration());
+        assertEquals(187000000, ((MovieDTO) show).getBoxoffice());
+    }
+
+    @Test
+    public void deserialize_whenSeasonsAndReadOnlyFields_serialFieldsSkipped() throws Exception {
+        ShowDTO show = objectMapper.readValue("{\"id\":7,\"seasons\":5,\"rating\":9.5,\"title\":\"The Wire\"," +
+                "\"extra\":{\"nested\":[1,2]},\"genres\":[],\"location\":\"USA\"}", ShowDTO.class);
+
+        assertTrue(show instanceof SerialDTO);
+        assertEquals(0, show.getId());
+        assertEquals("The Wire", show.getTitle());
+        assertEquals("USA", show.getLocation());
+        assertEquals(5, ((SerialDTO) show).getSeasons());
+    }
+
+    @Test
+    public void deserialize_whenArray_eachShowRead() throws Exception {
+        List<ShowDTO> shows = objectMapper.readValue("[{\"title\":\"Heat\",\"duration\":170,\"boxoffice\":0}," +
+                "{\"title\":\"The Wire\",\"seasons\":5}]", new TypeReference<List<ShowDTO>>() {
+        });
+
+        assertEquals(2, shows.size());
+        assertTrue(shows.get(0) instanceof MovieDTO);
+        assertTrue(shows.get(1) instanceof SerialDTO);
+    }
+
+    @Test(expected = InvalidShowException.class)
+    public void deserialize_whenTypeUnknown_throwInvalidShowException() throws Exception {
+        objectMapper.readValue("{\"title\":\"Heat\",\"duration\":170}", ShowDTO.class);
+    }
+
+    @Test(expected = JsonMappingException.class)
+    public void deserialize_whenDateInvalid_throwJsonMappingException() throws Exception {
+        objectMapper.readValue("{\"title\":\"Heat\",\"dateReleased\":\"15.12.1995\",\"seasons\":1}", ShowDTO.class);
+    }
+
+    @Test
+    public void deserialize_whenConcurrent_datesCorrect() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                int year = 1900 + i % 100;
+                results.add(executor.submit(() -> {
+                    ShowDTO show = objectMapper.readValue("{\"dateReleased\":\"" + year + "-03-04\",\"seasons\":1}",
+                            ShowDTO.class);
+                    return new GregorianCalendar(year, 2, 4).getTime().equals(show.getDateReleased());
+                }));
+            }
+            for (Future<Boolean> result : results)
+                assertTrue(result.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
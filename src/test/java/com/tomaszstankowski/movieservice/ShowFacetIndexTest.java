@@ -0,0 +1,167 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.dto.ShowFacetsDTO;
+import com.tomaszstankowski.movieservice.model.entity.Genre;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Serial;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import com.tomaszstankowski.movieservice.repository.GenreRepository;
+import com.tomaszstankowski.movieservice.repository.MovieRepository;
+import com.tomaszstankowski.movieservice.repository.SerialRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
+import com.tomaszstankowski.movieservice.service.index.IdBitmap;
+import com.tomaszstankowski.movieservice.service.index.ShowBitmapIndex;
+import com.tomaszstankowski.movieservice.service.index.ShowFacetIndex;
+import com.tomaszstankowski.movieservice.service.index.ShowFacetQuery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ShowFacetIndexTest {
+
+    @Mock
+    private ShowRepository showRepo;
+    @Mock
+    private MovieRepository movieRepo;
+    @Mock
+    private SerialRepository serialRepo;
+    @Mock
+    private GenreRepository genreRepo;
+
+    private ShowBitmapIndex bitmapIndex;
+
+    private ShowFacetIndex facetIndex;
+
+    @Before
+    public void setup() {
+        bitmapIndex = new ShowBitmapIndex(showRepo, movieRepo, serialRepo, genreRepo);
+        facetIndex = new ShowFacetIndex(movieRepo, serialRepo, bitmapIndex);
+
+        save(movie(1L, "The Godfather", 1972, "USA", 175, "crime", "drama"));
+        save(movie(2L, "Amelie", 2001, "France", 122, "comedy"));
+        save(movie(3L, "Goodfellas", 1990, "USA", 146, "crime"));
+        save(serial(5L, "The Wire", 2002, "USA", 5, "crime", "drama"));
+        save(serial(6L, "Twin Peaks", 1990, null, 3, "drama"));
+    }
+
+    @Test
+    public void count_whenNoFilters_allShowsCounted() {
+        ShowFacetsDTO facets = facetIndex.count(new ShowFacetQuery(null, null, null, null, null, null));
+
+        assertEquals(counts("crime", 3L, "drama", 3L, "comedy", 1L), facets.getGenres());
+        assertEquals(counts(1970, 1L, 1990, 2L, 2000, 2L), facets.getDecades());
+        assertEquals(counts(ShowType.MOVIE, 3L, ShowType.SERIAL, 2L), facets.getTypes());
+        assertEquals(counts("USA", 3L, "France", 1L), facets.getLocations());
+    }
+
+    @Test
+    public void count_whenFiltered_onlyMatchingCounted() {
+        ShowFacetsDTO facets = facetIndex.count(new ShowFacetQuery(null, ShowType.MOVIE, null, 1980, 150, null));
+
+        assertEquals(counts("comedy", 1L, "crime", 1L), facets.getGenres());
+        assertEquals(counts(1990, 1L, 2000, 1L), facets.getDecades());
+        assertEquals(counts(ShowType.MOVIE, 2L), facets.getTypes());
+    }
+
+    @Test
+    public void count_whenCandidatesGiven_onlyCandidatesCounted() {
+        IdBitmap candidates = bitmapIndex.findWithAnyGenre(new String[]{"Drama"}, null);
+
+        ShowFacetsDTO facets = facetIndex.count(new ShowFacetQuery(candidates, null, 2000, null, null, null));
+
+        assertEquals(counts("crime", 1L, "drama", 2L), facets.getGenres());
+        assertEquals(counts(ShowType.MOVIE, 1L, ShowType.SERIAL, 1L), facets.getTypes());
+    }
+
+    @Test
+    public void count_whenShowEditedAndRemoved_countsFollow() {
+        save(movie(2L, "Amelie", 2001, "Poland", 122, "romance"));
+        ShowRemovedEvent removed = new ShowRemovedEvent(3L);
+        bitmapIndex.onShowRemoved(removed);
+        facetIndex.onShowRemoved(removed);
+
+        ShowFacetsDTO facets = facetIndex.count(new ShowFacetQuery(null, ShowType.MOVIE, null, null, null, null));
+
+        assertEquals(counts("crime", 1L, "drama", 1L, "romance", 1L), facets.getGenres());
+        assertEquals(counts("USA", 1L, "Poland", 1L), facets.getLocations());
+    }
+
+    @Test
+    public void rebuild_whenShowRemovedMeanwhile_removalReplayedOnFreshBitmaps() {
+        when(genreRepo.findAll()).thenReturn(Collections.singletonList(new Genre("crime")));
+        when(showRepo.findIdsByGenreAfter(eq("crime"), anyLong(), any(Pageable.class))).thenReturn(Arrays.asList(1L, 3L));
+        when(movieRepo.findIdsAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            bitmapIndex.onShowRemoved(new ShowRemovedEvent(3L));
+            return Arrays.asList(1L, 3L);
+        });
+
+        bitmapIndex.rebuild();
+
+        assertEquals(Collections.singletonList(1L),
+                bitmapIndex.findWithAnyGenre(new String[]{"crime"}, ShowType.MOVIE).toList());
+    }
+
+    @Test
+    public void rebuild_whenShowSavedMeanwhile_saveReplayedOnFreshColumns() {
+        when(movieRepo.findFacetsAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            facetIndex.onShowSaved(new ShowSavedEvent(movie(7L, "Heat", 1995, "USA", 170, "crime")));
+            return Collections.singletonList(new Object[]{1L, new GregorianCalendar(1972, 5, 1).getTime(), "USA", (short) 175});
+        });
+
+        facetIndex.rebuild();
+
+        ShowFacetsDTO facets = facetIndex.count(new ShowFacetQuery(null, null, null, null, null, null));
+        assertEquals(counts(ShowType.MOVIE, 2L), facets.getTypes());
+        assertEquals(counts(1970, 1L, 1990, 1L), facets.getDecades());
+    }
+
+    private void save(Show show) {
+        ShowSavedEvent event = new ShowSavedEvent(show);
+        bitmapIndex.onShowSaved(event);
+        facetIndex.onShowSaved(event);
+    }
+
+    private static Movie movie(long id, String title, int year, String location, int duration, String... genres) {
+        Movie movie = new Movie(title, null, new GregorianCalendar(year, 5, 1).getTime(), location, (short) duration, 0);
+        return withGenres(movie, id, genres);
+    }
+
+    private static Serial serial(long id, String title, int year, String location, int seasons, String... genres) {
+        Serial serial = new Serial(title, null, new GregorianCalendar(year, 5, 1).getTime(), location, (short) seasons);
+        return withGenres(serial, id, genres);
+    }
+
+    private static <T extends Show> T withGenres(T show, long id, String... genres) {
+        show.setId(id);
+        for (String genre : genres)
+            show.getGenres().add(new Genre(genre));
+        return show;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> Map<K, Long> counts(Object... keysAndCounts) {
+        Map<K, Long> result = new HashMap<>();
+        for (int i = 0; i < keysAndCounts.length; i += 2)
+            result.put((K) keysAndCounts[i], (Long) keysAndCounts[i + 1]);
+        return result;
+    }
+}
@@ -0,0 +1,144 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.Genre;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Serial;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.repository.GenreRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.ShowImportService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Shows of a chunk are checked by queries for the whole chunk, on an in-memory database.
+ * Statistics count statements run by Hibernate, not the batched inserts.
+ **/
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:showimport;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+public class ShowImportTest {
+
+    private static final int SHOWS = 200;
+
+    @Autowired
+    private ShowImportService service;
+
+    @Autowired
+    private ShowRepository showRepo;
+
+    @Autowired
+    private GenreRepository genreRepo;
+
+    @Autowired
+    private EntityManagerFactory emf;
+
+    private Statistics statistics;
+
+    @Before
+    public void setup() {
+        statistics = emf.unwrap(SessionFactory.class).getStatistics();
+        showRepo.deleteAll();
+        genreRepo.deleteAll();
+    }
+
+    @Test
+    public void importShows_checkedPerChunkAllAdded() {
+        genreRepo.save(new Genre("drama"));
+        Map<Long, Show> shows = new LinkedHashMap<>();
+        for (long line = 1; line <= SHOWS; line++)
+            shows.put(line, show(line));
+
+        statistics.clear();
+        Map<Long, String> errors = service.importShows(shows);
+        long statements = statistics.getPrepareStatementCount();
+
+        assertTrue(errors.isEmpty());
+        assertEquals(SHOWS, showRepo.count());
+        assertEquals(2, genreRepo.count());
+        assertTrue("Expected at most 5 statements, but was " + statements, statements <= 5);
+    }
+
+    @Test
+    public void importShows_whenDuplicateOrInvalid_reportedOthersAdded() {
+        service.importShows(singleLine(show(1)));
+        Map<Long, Show> shows = new LinkedHashMap<>();
+        shows.put(1L, show(1));
+        shows.put(2L, show(2));
+        shows.put(3L, show(2));
+        Show untitled = show(4);
+        untitled.setTitle("");
+        shows.put(4L, untitled);
+        shows.put(5L, show(5));
+
+        Map<Long, String> errors = service.importShows(shows);
+
+        assertEquals(3, errors.size());
+        assertTrue(errors.containsKey(1L));
+        assertTrue(errors.containsKey(3L));
+        assertTrue(errors.containsKey(4L));
+        assertEquals(3, showRepo.count());
+    }
+
+    @Test
+    public void importShows_whenTextLongerThanColumn_reportedOthersAdded() {
+        Map<Long, Show> shows = new LinkedHashMap<>();
+        shows.put(1L, show(1));
+        Show described = show(2);
+        described.setDescription(String.join("", Collections.nCopies(ShowImportService.MAX_TEXT_LENGTH + 1, "a")));
+        shows.put(2L, described);
+        shows.put(3L, show(3));
+
+        Map<Long, String> errors = service.importShows(shows);
+
+        assertEquals(Collections.singleton(2L), errors.keySet());
+        assertEquals(2, showRepo.count());
+    }
+
+    @Test
+    public void importShows_idsAfterExistingShows() {
+        genreRepo.save(new Genre("drama"));
+        Show added = showRepo.save(show(1));
+        service.importShows(singleLine(show(2)));
+
+        Show imported = showRepo.findByTitleAndDateReleased("Show 2", show(2).getDateReleased());
+        assertTrue(imported.getId() > added.getId());
+    }
+
+    private static Map<Long, Show> singleLine(Show show) {
+        Map<Long, Show> shows = new LinkedHashMap<>();
+        shows.put(1L, show);
+        return shows;
+    }
+
+    private static Show show(long i) {
+        Show show = (i % 2 == 0)
+                ? new Movie("Show " + i, "", new GregorianCalendar(1990, 0, 1).getTime(), "USA", (short) 120, 0)
+                : new Serial("Show " + i, "", new GregorianCalendar(1990, 0, 1).getTime(), "USA", (short) 2);
+        show.getGenres().add(new Genre("drama"));
+        show.getGenres().add(new Genre((i % 2 == 0) ? "crime" : "drama"));
+        return show;
+    }
+}
@@ -1,17 +1,37 @@
 package com.tomaszstankowski.movieservice;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tomaszstankowski.movieservice.model.ModelMapper;
 import com.tomaszstankowski.movieservice.model.entity.*;
 import com.tomaszstankowski.movieservice.model.enums.Profession;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
 import com.tomaszstankowski.movieservice.repository.*;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetRepository;
+import com.tomaszstankowski.movieservice.repository.specifications.ShowSpecifications;
+import com.tomaszstankowski.movieservice.service.RatingCounterService;
+import com.tomaszstankowski.movieservice.service.FeedService;
+import com.tomaszstankowski.movieservice.service.RecommendationService;
 import com.tomaszstankowski.movieservice.service.ShowService;
+import com.tomaszstankowski.movieservice.service.SimilarShowsService;
+import com.tomaszstankowski.movieservice.service.TrendingService;
+import com.tomaszstankowski.movieservice.service.cache.CachedJson;
+import com.tomaszstankowski.movieservice.service.cache.ShowJsonCache;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
 import com.tomaszstankowski.movieservice.service.exception.conflict.ShowAlreadyExistsException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.ParticipationNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.PersonNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.RatingNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.ShowNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.not_found.UserNotFoundException;
+import com.tomaszstankowski.movieservice.service.exception.unavailable.RatingContendedException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidRatingException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidShowException;
+import com.tomaszstankowski.movieservice.service.index.SearchIndex;
+import com.tomaszstankowski.movieservice.service.index.ShowBitmapIndex;
+import com.tomaszstankowski.movieservice.service.index.ShowFacetIndex;
+import com.tomaszstankowski.movieservice.service.index.TopRatedIndex;
+import com.tomaszstankowski.movieservice.service.trending.TrendingWindow;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -19,9 +39,19 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
-
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.*;
 
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
@@ -45,6 +75,32 @@ public class ShowServiceTest {
     private ParticipationRepository participationRepo;
     @Mock
     private RatingRepository ratingRepo;
+    @Mock
+    private RatingWriteRepository ratingWriteRepo;
+    @Mock
+    private RatingCounterService ratingCounters;
+    @Mock
+    private KeysetRepository keysetRepo;
+    @Mock
+    private IdProjectionRepository idRepo;
+    @Mock
+    private SearchIndex searchIndex;
+    @Mock
+    private ShowBitmapIndex bitmapIndex;
+    @Mock
+    private ShowFacetIndex facetIndex;
+    @Mock
+    private TopRatedIndex topRatedIndex;
+    @Mock
+    private SimilarShowsService similarShows;
+    @Mock
+    private RecommendationService recommendations;
+    @Mock
+    private FeedService feed;
+    @Mock
+    private TrendingService trending;
+    @Mock
+    private ApplicationEventPublisher publisher;
 
     @Rule
     public final ExpectedException exception = ExpectedException.none();
@@ -123,7 +179,51 @@ public class ShowServiceTest {
                 personRepo,
                 userRepo,
                 participationRepo,
-                ratingRepo);
+                ratingRepo,
+                ratingWriteRepo,
+                ratingCounters,
+                trending,
+                recommendations,
+                feed,
+                keysetRepo,
+                idRepo,
+                searchIndex,
+                bitmapIndex,
+                facetIndex,
+                topRatedIndex,
+                similarShows,
+                publisher);
+    }
+
+    @Test
+    public void findShow_whenJsonRequestedConcurrently_loadedOnce() throws Exception {
+        int callers = 100;
+        ShowJsonCache cache = new ShowJsonCache(service, showRepo, new ModelMapper(), new ObjectMapper(), 10, 60);
+        CountDownLatch release = new CountDownLatch(1);
+        when(showRepo.findWithGenresById(1L)).thenAnswer(invocation -> {
+            release.await();
+            return movie;
+        });
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(callers, task -> {
+            Thread thread = new Thread(task);
+            threads.add(thread);
+            return thread;
+        });
+        List<Future<CachedJson>> results = new ArrayList<>();
+        for (int i = 0; i < callers; i++)
+            results.add(executor.submit(() -> cache.get(1L)));
+        while (threads.size() < callers || threads.stream().anyMatch(t ->
+                t.getState() != Thread.State.WAITING && t.getState() != Thread.State.TIMED_WAITING))
+            Thread.yield();
+        release.countDown();
+
+        CachedJson first = results.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<CachedJson> result : results)
+            assertSame(first, result.get(10, TimeUnit.SECONDS));
+        executor.shutdown();
+        verify(showRepo, times(1)).findWithGenresById(1L);
+        assertEquals(callers - 1, cache.getSharedLoads());
     }
 
     @Test
@@ -151,6 +251,7 @@ public class ShowServiceTest {
     @Test
     public void add_successful() {
         when(showRepo.findByTitleAndDateReleased(movie.getTitle(), movie.getDateReleased())).thenReturn(null);
+        when(showRepo.save(movie)).thenReturn(movie);
         service.addShow(movie);
 
         verify(showRepo, times(1)).findByTitleAndDateReleased(movie.getTitle(), movie.getDateReleased());
@@ -159,6 +260,63 @@ public class ShowServiceTest {
         verify(showRepo, times(1)).save(movie);
         verifyNoMoreInteractions(showRepo);
         verifyNoMoreInteractions(genreRepo);
+        verify(publisher, times(1)).publishEvent(new ShowSavedEvent(movie));
+    }
+
+    @Test
+    public void findByRelevance_keepsRankOrderOfMatchingShows() {
+        Specification<Show> spec = ShowSpecifications.youngerThan(1990);
+        when(idRepo.findIds(Show.class, spec)).thenReturn(Arrays.asList(1L, 2L, 4L));
+        when(showRepo.findAll(Arrays.asList(4L, 1L))).thenReturn(Arrays.asList(movie, serial));
+        movie.setId(1L);
+        serial.setId(4L);
+
+        Page<Show> result = service.findShowsByRelevance(spec, Arrays.asList(4L, 3L, 1L), 0);
+
+        assertEquals(2, result.getTotalElements());
+        assertEquals(serial, result.getContent().get(0));
+        assertEquals(movie, result.getContent().get(1));
+    }
+
+    @Test
+    public void findTopRated_keepsRankOrderSkippingRemovedShows() {
+        when(topRatedIndex.findTop("drama", null, 1990, 5L, 10)).thenReturn(Arrays.asList(4L, 3L, 1L));
+        when(showRepo.findAll(Arrays.asList(4L, 3L, 1L))).thenReturn(Arrays.asList(movie, serial));
+        movie.setId(1L);
+        serial.setId(4L);
+
+        List<Show> result = service.findTopRated("drama", null, 1990, 5L, 10);
+
+        assertEquals(Arrays.asList(serial, movie), result);
+    }
+
+    @Test
+    public void findTrending_keepsRankOrder() {
+        when(trending.findTrending(TrendingWindow.HOUR, 10)).thenReturn(Arrays.asList(4L, 1L));
+        when(showRepo.findAll(Arrays.asList(4L, 1L))).thenReturn(Arrays.asList(movie, serial));
+        movie.setId(1L);
+        serial.setId(4L);
+
+        assertEquals(Arrays.asList(serial, movie), service.findTrending(TrendingWindow.HOUR, 10));
+    }
+
+    @Test
+    public void findSimilar_keepsNeighbourOrder() {
+        when(similarShows.findSimilar(2L, 10)).thenReturn(Arrays.asList(4L, 1L));
+        when(showRepo.findAll(Arrays.asList(4L, 1L))).thenReturn(Arrays.asList(movie, serial));
+        movie.setId(1L);
+        serial.setId(4L);
+
+        assertEquals(Arrays.asList(serial, movie), service.findSimilar(2L, 10));
+    }
+
+    @Test
+    public void findSimilar_whenShowNotExists_throwExc() {
+        when(similarShows.findSimilar(2L, 10)).thenReturn(Collections.emptyList());
+        when(showRepo.exists(2L)).thenReturn(false);
+        exception.expect(ShowNotFoundException.class);
+
+        service.findSimilar(2L, 10);
     }
 
     @Test
@@ -203,54 +361,82 @@ public class ShowServiceTest {
     }
 
     @Test
-    public void add_whenUserRatesShowFirstTime_createNewRating() {
-        when(showRepo.findOne(1L)).thenReturn(serial);
-        when(userRepo.findOne(user.getLogin())).thenReturn(user);
-        when(ratingRepo.findByUserAndShow(user, serial)).thenReturn(null);
+    public void add_whenUserRatesShow_upsertedWithoutLoadingShowAndUser() {
+        when(ratingWriteRepo.upsert(eq(1L), eq(user.getLogin()), eq((short) 8), any(Date.class)))
+                .thenReturn(new WrittenRating(5L, null, 3L));
+
+        Rating result = service.addRating(1L, user.getLogin(), (short) 8);
+
+        assertEquals(5L, result.getId());
+        assertEquals(8, result.getRating());
+        verify(publisher, times(1)).publishEvent(new ShowRatedEvent(1L, 3L));
+        verifyZeroInteractions(showRepo);
+        verifyZeroInteractions(userRepo);
+    }
+
+    @Test
+    public void add_whenUserRatesShow_trendingShowsFed() {
+        when(ratingWriteRepo.upsert(eq(1L), eq(user.getLogin()), eq((short) 8), any(Date.class)))
+                .thenReturn(new WrittenRating(5L, null, 3L));
 
         service.addRating(1L, user.getLogin(), (short) 8);
 
-        verify(showRepo, times(1)).findOne(1L);
-        verify(userRepo, times(1)).findOne(user.getLogin());
-        verify(ratingRepo, times(1)).findByUserAndShow(user, serial);
-        verify(ratingRepo, times(1)).save(rating);
-        verifyNoMoreInteractions(showRepo);
-        verifyNoMoreInteractions(userRepo);
-        verifyNoMoreInteractions(ratingRepo);
+        verify(trending, times(1)).rated(1L);
     }
 
     @Test
-    public void add_whenUserRatesShowAgainWithDifferentRating_deletePreviousRatingAndCreateNew() {
-        when(showRepo.findOne(1L)).thenReturn(serial);
-        when(userRepo.findOne(user.getLogin())).thenReturn(user);
-        when(ratingRepo.findByUserAndShow(user, serial)).thenReturn(rating);
+    public void add_whenCountersEnabled_aggregatesCountedInMemory() {
+        when(ratingCounters.isEnabled()).thenReturn(true);
+        when(ratingWriteRepo.upsertRating(eq(1L), eq(user.getLogin()), eq((short) 8), any(Date.class)))
+                .thenReturn(new WrittenRating(4L, (short) 5, null));
 
-        service.addRating(1L, user.getLogin(), (short) 7);
+        assertEquals(4L, service.addRating(1L, user.getLogin(), (short) 8).getId());
 
-        verify(showRepo, times(1)).findOne(1L);
-        verify(userRepo, times(1)).findOne(user.getLogin());
-        verify(ratingRepo, times(1)).findByUserAndShow(user, serial);
-        verify(ratingRepo, times(1)).delete(rating);
-        verify(ratingRepo, times(1)).save(rating);
-        verifyNoMoreInteractions(showRepo);
-        verifyNoMoreInteractions(userRepo);
-        verifyNoMoreInteractions(ratingRepo);
+        verify(ratingCounters, times(1)).rated(1L, (short) 5, (short) 8);
+        verify(ratingWriteRepo, never()).upsert(anyLong(), anyString(), anyShort(), any(Date.class));
+        verifyZeroInteractions(publisher);
+    }
+
+    @Test
+    public void add_whenCountedRatingLosesDeadlock_writtenAgain() {
+        when(ratingCounters.isEnabled()).thenReturn(true);
+        when(ratingWriteRepo.upsertRating(eq(1L), eq(user.getLogin()), eq((short) 8), any(Date.class)))
+                .thenThrow(new DeadlockLoserDataAccessException("deadlock", null))
+                .thenReturn(new WrittenRating(4L, null, null));
+
+        assertEquals(4L, service.addRating(1L, user.getLogin(), (short) 8).getId());
+
+        verify(ratingWriteRepo, times(2)).upsertRating(eq(1L), eq(user.getLogin()), eq((short) 8), any(Date.class));
+        verify(ratingCounters, times(1)).rated(1L, null, (short) 8);
     }
 
     @Test
-    public void add_whenUserRatesShowAgainWithSameRating_doNothing() {
-        when(showRepo.findOne(1L)).thenReturn(serial);
-        when(userRepo.findOne(user.getLogin())).thenReturn(user);
-        when(ratingRepo.findByUserAndShow(user, serial)).thenReturn(rating);
+    public void add_whenRatingKeepsLosingDeadlocks_throwExc() {
+        when(ratingWriteRepo.upsert(eq(1L), eq(user.getLogin()), eq((short) 8), any(Date.class)))
+                .thenThrow(new DeadlockLoserDataAccessException("deadlock", null));
+        exception.expect(RatingContendedException.class);
 
         service.addRating(1L, user.getLogin(), (short) 8);
+    }
 
-        verify(showRepo, times(1)).findOne(1L);
-        verify(userRepo, times(1)).findOne(user.getLogin());
-        verify(ratingRepo, times(1)).findByUserAndShow(user, serial);
-        verifyNoMoreInteractions(showRepo);
-        verifyNoMoreInteractions(userRepo);
-        verifyNoMoreInteractions(ratingRepo);
+    @Test
+    public void add_whenShowNotExists_throwExc() {
+        when(ratingWriteRepo.upsert(eq(1L), eq(user.getLogin()), eq((short) 8), any(Date.class)))
+                .thenThrow(new DataIntegrityViolationException("fk_ratings_show"));
+        when(showRepo.exists(1L)).thenReturn(false);
+        exception.expect(ShowNotFoundException.class);
+
+        service.addRating(1L, user.getLogin(), (short) 8);
+    }
+
+    @Test
+    public void add_whenUserNotExists_throwExc() {
+        when(ratingWriteRepo.upsert(eq(1L), eq(user.getLogin()), eq((short) 8), any(Date.class)))
+                .thenThrow(new DataIntegrityViolationException("fk_ratings_user"));
+        when(showRepo.exists(1L)).thenReturn(true);
+        exception.expect(UserNotFoundException.class);
+
+        service.addRating(1L, user.getLogin(), (short) 8);
     }
 
     @Test
@@ -258,9 +444,7 @@ public class ShowServiceTest {
         exception.expect(InvalidRatingException.class);
 
         service.addRating(1L, user.getLogin(), (short) 11);
-        verifyZeroInteractions(showRepo);
-        verifyZeroInteractions(userRepo);
-        verifyZeroInteractions(ratingRepo);
+        verifyZeroInteractions(ratingWriteRepo);
     }
 
     @Test
@@ -377,36 +561,43 @@ public class ShowServiceTest {
 
     @Test
     public void remove_whenRatingNotExists_throwExc() {
-        when(showRepo.findOne(1L)).thenReturn(serial);
-        when(userRepo.findOne(user.getLogin())).thenReturn(user);
-        when(ratingRepo.findByUserAndShow(user, serial)).thenReturn(null);
+        when(ratingWriteRepo.delete(1L, user.getLogin())).thenReturn(null);
+        when(showRepo.exists(1L)).thenReturn(true);
         exception.expect(RatingNotFoundException.class);
 
         service.removeRating(1L, user.getLogin());
+    }
 
-        verify(showRepo, times(1)).findOne(1L);
-        verify(userRepo, times(1)).findOne(user.getLogin());
-        verify(ratingRepo, times(1)).findByUserAndShow(user, serial);
-        verifyNoMoreInteractions(showRepo);
-        verifyNoMoreInteractions(userRepo);
-        verifyNoMoreInteractions(ratingRepo);
+    @Test
+    public void remove_whenRatedShowNotExists_throwExc() {
+        when(ratingWriteRepo.delete(1L, user.getLogin())).thenReturn(null);
+        when(showRepo.exists(1L)).thenReturn(false);
+        exception.expect(ShowNotFoundException.class);
+
+        service.removeRating(1L, user.getLogin());
+    }
+
+    @Test
+    public void remove_whenCountersEnabled_aggregatesCountedInMemory() {
+        when(ratingCounters.isEnabled()).thenReturn(true);
+        when(ratingWriteRepo.deleteRating(1L, user.getLogin())).thenReturn(new WrittenRating(4L, (short) 7, null));
+
+        service.removeRating(1L, user.getLogin());
+
+        verify(ratingCounters, times(1)).unrated(1L, (short) 7);
+        verifyZeroInteractions(publisher);
     }
 
     @Test
     public void remove_ratingRemovedSuccessful() {
-        when(showRepo.findOne(1L)).thenReturn(serial);
-        when(userRepo.findOne(user.getLogin())).thenReturn(user);
-        when(ratingRepo.findByUserAndShow(user, serial)).thenReturn(rating);
+        when(ratingWriteRepo.delete(1L, user.getLogin())).thenReturn(new WrittenRating(4L, (short) 7, 0L));
 
         service.removeRating(1L, user.getLogin());
 
-        verify(showRepo, times(1)).findOne(1L);
-        verify(userRepo, times(1)).findOne(user.getLogin());
-        verify(ratingRepo, times(1)).findByUserAndShow(user, serial);
-        verify(ratingRepo, times(1)).delete(rating);
-        verifyNoMoreInteractions(showRepo);
-        verifyNoMoreInteractions(userRepo);
-        verifyNoMoreInteractions(ratingRepo);
+        verify(publisher, times(1)).publishEvent(new ShowRatedEvent(1L, 0L));
+        verify(feed, times(1)).unrated(4L);
+        verifyZeroInteractions(showRepo);
+        verifyZeroInteractions(userRepo);
     }
 
     @Test
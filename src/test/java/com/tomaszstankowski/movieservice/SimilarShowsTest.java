@@ -0,0 +1,179 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.entity.User;
+import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.RatingRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.repository.UserRepository;
+import com.tomaszstankowski.movieservice.service.ShowService;
+import com.tomaszstankowski.movieservice.service.SimilarShowsService;
+import com.tomaszstankowski.movieservice.service.UserService;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.exception.not_found.ShowNotFoundException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The job is run by calls made directly, scheduled runs are off.
+ **/
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@TestPropertySource(properties = {
+        "spring.datasource.url=jdbc:h2:mem:similarshows;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "movieservice.similar.min-co-raters=2",
+        "movieservice.recommendations.enabled=true"
+})
+public class SimilarShowsTest {
+
+    @Autowired
+    private ShowService service;
+
+    @Autowired
+    private SimilarShowsService similarShows;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private ShowRepository showRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private RatingRepository ratingRepo;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    private long first;
+    private long second;
+    private long third;
+
+    @Before
+    public void setup() {
+        jdbc.update("delete from show_similarities");
+        jdbc.update("delete from follows");
+        ratingRepo.deleteAll();
+        showRepo.deleteAll();
+        userRepo.deleteAll();
+        for (String login : Arrays.asList("a", "b", "c"))
+            userRepo.save(new User(login, "password", "User " + login, login + "@mail.com", Sex.MALE));
+        first = save("Heat");
+        second = save("Casino");
+        third = save("Notting Hill");
+        rate("a", 9, 8, 2);
+        rate("b", 8, 9, 3);
+        rate("c", 3, 2, 9);
+    }
+
+    private long save(String title) {
+        return showRepo.save(new Movie(title, "", new GregorianCalendar(1995, 10, 22).getTime(),
+                "USA", (short) 120, 0)).getId();
+    }
+
+    private void rate(String login, int... ratings) {
+        long[] shows = {first, second, third};
+        for (int i = 0; i < ratings.length; i++)
+            service.addRating(shows[i], login, (short) ratings[i]);
+    }
+
+    private List<Long> similar(long showId) {
+        return service.findSimilar(showId, 10).stream()
+                .map(Show::getId)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void findSimilar_whenRebuilt_showsRatedAlike() {
+        assertEquals(Collections.emptyList(), similar(first));
+
+        similarShows.rebuild();
+
+        assertEquals(Collections.singletonList(second), similar(first));
+        assertEquals(Collections.singletonList(first), similar(second));
+        assertEquals(Collections.emptyList(), similar(third));
+    }
+
+    @Test
+    public void rebuild_whenRatedSinceLastRun_recomputed() {
+        similarShows.rebuild();
+        long fourth = save("Ronin");
+        service.addRating(fourth, "a", (short) 2);
+        service.addRating(fourth, "b", (short) 3);
+        service.addRating(fourth, "c", (short) 9);
+
+        similarShows.rebuild();
+
+        assertEquals(Collections.singletonList(third), similar(fourth));
+        assertEquals(Collections.singletonList(fourth), similar(third));
+    }
+
+    @Test
+    public void onShowRemoved_removedFromNeighbours() {
+        similarShows.rebuild();
+
+        similarShows.onShowRemoved(new ShowRemovedEvent(second));
+
+        assertEquals(Collections.emptyList(), similar(first));
+        assertEquals(0, (int) jdbc.queryForObject("select count(*) from show_similarities", Integer.class));
+    }
+
+    @Test
+    public void findRecommendations_whenSimilarShowsRebuilt_neighboursOfLikedShowsAndShowsLikedByFollowed() {
+        userRepo.save(new User("d", "password", "User d", "d@mail.com", Sex.FEMALE));
+        userRepo.save(new User("e", "password", "User e", "e@mail.com", Sex.FEMALE));
+        service.addRating(first, "d", (short) 9);
+        service.addRating(third, "d", (short) 3);
+        jdbc.update("insert into follows (followed, follower) values ('c', 'e')");
+
+        similarShows.rebuild();
+
+        assertEquals(Collections.singletonList(second), recommended("d"));
+        assertEquals(third, (long) recommended("e").get(0));
+    }
+
+    @Test
+    public void findRecommendations_whenRatedSinceMatrixTaken_ratedShowLeftOut() {
+        userRepo.save(new User("d", "password", "User d", "d@mail.com", Sex.FEMALE));
+        service.addRating(first, "d", (short) 9);
+        service.addRating(third, "d", (short) 3);
+        similarShows.rebuild();
+
+        service.addRating(second, "d", (short) 7);
+
+        assertEquals(Collections.emptyList(), recommended("d").stream()
+                .filter(id -> id == first || id == second || id == third)
+                .collect(Collectors.toList()));
+    }
+
+    private List<Long> recommended(String login) {
+        return userService.findRecommendations(login, 10).stream()
+                .map(Show::getId)
+                .collect(Collectors.toList());
+    }
+
+    @Test(expected = ShowNotFoundException.class)
+    public void findSimilar_whenShowNotExists_throwExc() {
+        service.findSimilar(third + 100, 10);
+    }
+}
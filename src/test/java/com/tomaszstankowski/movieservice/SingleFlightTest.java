@@ -0,0 +1,131 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.cache.SingleFlight;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private static final int THREADS = 200;
+
+    private final SingleFlight<Long, String> flights = new SingleFlight<>(10, TimeUnit.SECONDS);
+
+    @Test
+    public void load_whenThunderingHerd_loadedOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = herd(THREADS, () -> flights.load(1L, id -> {
+            loads.incrementAndGet();
+            await(release);
+            return "show " + id;
+        }), release);
+
+        String first = results.get(0).get();
+        for (Future<String> result : results)
+            assertSame(first, result.get());
+        assertEquals(1, loads.get());
+        assertEquals(1, flights.loads());
+        assertEquals(THREADS - 1, flights.shared());
+    }
+
+    @Test
+    public void load_whenLoadFails_exceptionShared() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<String>> results = herd(10, () -> flights.load(1L, id -> {
+            await(release);
+            throw new IllegalArgumentException("failed");
+        }), release);
+
+        for (Future<String> result : results) {
+            try {
+                result.get();
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals(IllegalArgumentException.class, e.getCause().getClass());
+            }
+        }
+        assertEquals(1, flights.loads());
+    }
+
+    @Test
+    public void load_whenWaitingTooLong_loadedByCaller() throws Exception {
+        SingleFlight<Long, String> flights = new SingleFlight<>(50, TimeUnit.MILLISECONDS);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> flights.load(1L, id -> {
+                await(release);
+                return "slow";
+            }));
+            while (flights.loads() == 0)
+                Thread.yield();
+
+            assertEquals("fast", flights.load(1L, id -> "fast"));
+            assertEquals(1, flights.timeouts());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void load_whenPreviousLoadEnded_loadedAgain() {
+        AtomicInteger loads = new AtomicInteger();
+        flights.load(1L, id -> "show " + loads.incrementAndGet());
+
+        assertEquals("show 2", flights.load(1L, id -> "show " + loads.incrementAndGet()));
+    }
+
+    /*
+    Starts the callers and releases the load once all of them wait, either for the release or for the load.
+     */
+    private static <T> List<Future<T>> herd(int callers, Callable<T> call, CountDownLatch release) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch ready = new CountDownLatch(callers);
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(callers);
+            List<Thread> threads = new CopyOnWriteArrayList<>();
+            List<Future<T>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++)
+                results.add(executor.submit(() -> {
+                    threads.add(Thread.currentThread());
+                    ready.countDown();
+                    await(start);
+                    started.countDown();
+                    return call.call();
+                }));
+            ready.await();
+            start.countDown();
+            started.await();
+            for (Thread thread : threads)
+                while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING)
+                    Thread.yield();
+            release.countDown();
+            for (Future<T> result : results)
+                try {
+                    result.get(10, TimeUnit.SECONDS);
+                } catch (ExecutionException ignored) {
+                }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
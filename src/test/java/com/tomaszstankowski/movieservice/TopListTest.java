@@ -0,0 +1,61 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.index.TopList;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TopListTest {
+
+    @Test
+    public void offer_orderedByScoreThenCountThenId() {
+        TopList list = new TopList(10);
+        list.offer(1L, 7.5f, 10);
+        list.offer(2L, 8.5f, 3);
+        list.offer(3L, 7.5f, 20);
+        list.offer(4L, 7.5f, 10);
+
+        assertEquals(Arrays.asList(2L, 3L, 1L, 4L), list.slice(1, 10));
+        assertFalse(list.isTruncated());
+    }
+
+    @Test
+    public void offer_whenFull_lastLeftOutAndTruncated() {
+        TopList list = new TopList(2);
+        list.offer(1L, 6f, 1);
+        list.offer(2L, 8f, 1);
+        list.offer(3L, 7f, 1);
+        list.offer(4L, 5f, 1);
+
+        assertEquals(Arrays.asList(2L, 3L), list.slice(1, 10));
+        assertTrue(list.isTruncated());
+    }
+
+    @Test
+    public void offer_whenTruncatedAndBehindLast_ignored() {
+        TopList list = new TopList(2);
+        list.offer(1L, 9f, 1);
+        list.offer(2L, 8f, 1);
+        list.offer(3L, 7f, 1);
+        list.remove(1L);
+
+        list.offer(4L, 6f, 1);
+        list.offer(5L, 8.5f, 1);
+
+        assertEquals(Arrays.asList(5L, 2L), list.slice(1, 10));
+    }
+
+    @Test
+    public void slice_whenMinCountGiven_showsWithFewerRatingsLeftOut() {
+        TopList list = new TopList(10);
+        list.offer(1L, 9f, 2);
+        list.offer(2L, 8f, 50);
+        list.offer(3L, 7f, 5);
+        list.offer(4L, 6f, 100);
+
+        assertEquals(Arrays.asList(2L, 3L), list.slice(5, 2));
+        assertEquals(Arrays.asList(1L, 2L), list.slice(1, 2));
+    }
+}
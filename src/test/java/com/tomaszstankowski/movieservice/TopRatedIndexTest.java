@@ -0,0 +1,138 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.model.entity.Genre;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Serial;
+import com.tomaszstankowski.movieservice.model.entity.Show;
+import com.tomaszstankowski.movieservice.model.enums.ShowType;
+import com.tomaszstankowski.movieservice.repository.GenreRepository;
+import com.tomaszstankowski.movieservice.repository.MovieRepository;
+import com.tomaszstankowski.movieservice.repository.SerialRepository;
+import com.tomaszstankowski.movieservice.repository.ShowRepository;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowRemovedEvent;
+import com.tomaszstankowski.movieservice.service.event.ShowSavedEvent;
+import com.tomaszstankowski.movieservice.service.index.TopRatedIndex;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.when;
+
+/**
+ * With 2 prior votes and the mean of all ratings about 7.6, the weighted ratings rank the shows 1, 5, 2, 3, 4.
+ **/
+@RunWith(MockitoJUnitRunner.class)
+public class TopRatedIndexTest {
+
+    @Mock
+    private ShowRepository showRepo;
+    @Mock
+    private MovieRepository movieRepo;
+    @Mock
+    private SerialRepository serialRepo;
+    @Mock
+    private GenreRepository genreRepo;
+
+    private TopRatedIndex index;
+
+    @Before
+    public void setup() {
+        index = new TopRatedIndex(showRepo, movieRepo, serialRepo, genreRepo, 2);
+        index.rebuild();
+
+        save(movie(1L, 1972, 90, 10, "crime", "drama"));
+        save(movie(2L, 2001, 10, 1, "comedy"));
+        save(movie(3L, 1990, 32, 4, "crime"));
+        save(movie(4L, 1995, 50, 10, "drama"));
+        save(serial(5L, 2002, 54, 6, "crime", "drama"));
+        save(serial(6L, 1990, 0, 0, "drama"));
+        index.rescore();
+    }
+
+    @Test
+    public void findTop_whenFewRatings_pulledTowardsMean() {
+        assertEquals(Arrays.asList(1L, 5L, 2L, 3L, 4L), index.findTop(null, null, null, 1, 10));
+        assertEquals(Arrays.asList(1L, 5L), index.findTop(null, null, null, 1, 2));
+    }
+
+    @Test
+    public void findTop_whenFiltered_onlyRankingOfFilters() {
+        assertEquals(Arrays.asList(1L, 4L), index.findTop("Drama", ShowType.MOVIE, null, 1, 10));
+        assertEquals(Arrays.asList(3L, 4L), index.findTop(null, null, 1999, 1, 10));
+        assertEquals(Collections.singletonList(5L), index.findTop("crime", ShowType.SERIAL, null, 1, 10));
+        assertTrue(index.findTop("western", null, null, 1, 10).isEmpty());
+    }
+
+    @Test
+    public void findTop_whenMinVotesGiven_showsWithFewerLeftOut() {
+        assertEquals(Arrays.asList(1L, 5L, 4L), index.findTop(null, null, null, 5, 10));
+    }
+
+    @Test
+    public void refresh_whenShowRated_movedWithinItsRankings() {
+        when(showRepo.findRatingAggregatesByIdIn(any())).thenReturn(Collections.singletonList(new Object[]{3L, 72L, 8L}));
+        index.onShowRated(new ShowRatedEvent(3L, 8L));
+
+        index.refresh();
+
+        assertEquals(Arrays.asList(1L, 3L, 5L, 2L, 4L), index.findTop(null, null, null, 1, 10));
+        assertEquals(Arrays.asList(1L, 3L, 5L), index.findTop("crime", null, null, 1, 10));
+    }
+
+    @Test
+    public void findTop_whenShowEditedAndRemoved_rankingsFollow() {
+        save(movie(2L, 2001, 10, 1, "drama"));
+        index.onShowRemoved(new ShowRemovedEvent(1L));
+
+        assertEquals(Arrays.asList(5L, 2L, 4L), index.findTop("drama", null, null, 1, 10));
+        assertTrue(index.findTop("comedy", null, null, 1, 10).isEmpty());
+    }
+
+    @Test
+    public void rebuild_whenShowSavedMeanwhile_servedWhileRebuildingAndSaveReplayed() {
+        when(movieRepo.findRankingsAfter(anyLong(), any(Pageable.class))).thenAnswer(invocation -> {
+            assertEquals(Arrays.asList(1L, 5L), index.findTop(null, null, null, 1, 2));
+            save(movie(7L, 1999, 80, 9, "drama"));
+            return Collections.singletonList(new Object[]{1L, new GregorianCalendar(1972, 5, 1).getTime(), 90L, 10L});
+        });
+
+        index.rebuild();
+
+        assertEquals(Arrays.asList(1L, 7L), index.findTop(null, null, null, 1, 10));
+    }
+
+    private void save(Show show) {
+        index.onShowSaved(new ShowSavedEvent(show));
+    }
+
+    private static Movie movie(long id, int year, long ratingSum, long ratingCount, String... genres) {
+        Movie movie = new Movie("Movie " + id, null, new GregorianCalendar(year, 5, 1).getTime(), "USA", (short) 120, 0);
+        return withRatings(movie, id, ratingSum, ratingCount, genres);
+    }
+
+    private static Serial serial(long id, int year, long ratingSum, long ratingCount, String... genres) {
+        Serial serial = new Serial("Serial " + id, null, new GregorianCalendar(year, 5, 1).getTime(), "USA", (short) 3);
+        return withRatings(serial, id, ratingSum, ratingCount, genres);
+    }
+
+    private static <T extends Show> T withRatings(T show, long id, long ratingSum, long ratingCount, String... genres) {
+        show.setId(id);
+        show.setRatingSum(ratingSum);
+        show.setRatingCount(ratingCount);
+        for (String genre : genres)
+            show.getGenres().add(new Genre(genre));
+        return show;
+    }
+}
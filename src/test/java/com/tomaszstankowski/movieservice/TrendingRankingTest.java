@@ -0,0 +1,123 @@
+package com.tomaszstankowski.movieservice;
+
+import com.tomaszstankowski.movieservice.service.trending.TrendingRanking;
+import com.tomaszstankowski.movieservice.service.trending.TrendingWindow;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class TrendingRankingTest {
+
+    private static final long START = TimeUnit.DAYS.toMillis(17000);
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void rated_whenRatedAtOnce_mostRatedFirst() {
+        TrendingRanking ranking = new TrendingRanking(TrendingWindow.DAY, 100, START);
+        rate(ranking, 1L, 3, START);
+        rate(ranking, 2L, 1, START);
+        rate(ranking, 3L, 2, START);
+
+        assertEquals(Arrays.asList(1L, 3L, 2L), ranking.top(10));
+        assertEquals(Arrays.asList(1L, 3L), ranking.top(2));
+    }
+
+    @Test
+    public void rated_whenRatedLater_weighsMore() {
+        TrendingRanking ranking = new TrendingRanking(TrendingWindow.HOUR, 100, START);
+        rate(ranking, 1L, 2, START);
+        rate(ranking, 3L, 3, START);
+        rate(ranking, 2L, 2, START + 40 * MINUTE);
+
+        assertEquals(Arrays.asList(2L, 3L, 1L), ranking.top(10));
+    }
+
+    @Test
+    public void sweep_whenBucketsLeftWindow_showDropped() {
+        TrendingRanking ranking = new TrendingRanking(TrendingWindow.HOUR, 100, START);
+        rate(ranking, 1L, 5, START);
+        rate(ranking, 2L, 1, START + 30 * MINUTE);
+
+        ranking.sweep(START + 61 * MINUTE);
+
+        assertEquals(1, ranking.size());
+        assertEquals(Collections.singletonList(2L), ranking.top(10));
+    }
+
+    @Test
+    public void rated_whenOldBucketsLeftWindow_onlyRecentRatingsCount() {
+        TrendingRanking ranking = new TrendingRanking(TrendingWindow.HOUR, 100, START);
+        rate(ranking, 1L, 10, START);
+        rate(ranking, 2L, 3, START + 50 * MINUTE);
+
+        rate(ranking, 1L, 1, START + 70 * MINUTE);
+
+        assertEquals(Arrays.asList(2L, 1L), ranking.top(10));
+    }
+
+    @Test
+    public void rated_whenLongAfterStart_orderKept() {
+        TrendingRanking ranking = new TrendingRanking(TrendingWindow.HOUR, 100, START);
+        long later = START + TimeUnit.DAYS.toMillis(30);
+        rate(ranking, 1L, 1, later);
+        rate(ranking, 2L, 2, later);
+        rate(ranking, 3L, 1, later + 20 * MINUTE);
+
+        assertEquals(Arrays.asList(3L, 2L, 1L), ranking.top(10));
+    }
+
+    @Test
+    public void rated_whenTooManyShows_lowestScoredEvicted() {
+        TrendingRanking ranking = new TrendingRanking(TrendingWindow.DAY, 2, START);
+        rate(ranking, 1L, 2, START);
+        rate(ranking, 2L, 1, START);
+        rate(ranking, 3L, 3, START);
+
+        assertEquals(2, ranking.size());
+        assertEquals(1, ranking.getEvicted());
+        assertEquals(Arrays.asList(3L, 1L), ranking.top(10));
+    }
+
+    @Test
+    public void rated_whenManyShowsEvicted_highestScoredKept() {
+        TrendingRanking ranking = new TrendingRanking(TrendingWindow.WEEK, 10, START);
+        for (long id = 1; id <= 30; id++)
+            rate(ranking, id, (int) (id % 10) + 1, START);
+
+        assertEquals(10, ranking.size());
+        assertEquals(Arrays.asList(9L, 19L, 29L), sorted(ranking.top(3)));
+    }
+
+    @Test
+    public void remove_whenManyShows_restKeepOrder() {
+        TrendingRanking ranking = new TrendingRanking(TrendingWindow.WEEK, 1000, START);
+        for (long id = 1; id <= 50; id++)
+            rate(ranking, id, (int) id, START);
+        List<Long> expected = new ArrayList<>();
+        for (long id = 50; id >= 1; id--)
+            if (id % 5 == 0)
+                ranking.remove(id);
+            else
+                expected.add(id);
+
+        assertEquals(expected, ranking.top(100));
+    }
+
+    private static void rate(TrendingRanking ranking, long showId, int times, long now) {
+        for (int i = 0; i < times; i++)
+            ranking.rated(showId, now);
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        List<Long> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
@@ -5,6 +5,7 @@ import com.tomaszstankowski.movieservice.controller.UserController;
 import com.tomaszstankowski.movieservice.controller.exception.InternalExceptionHandler;
 import com.tomaszstankowski.movieservice.model.ModelMapper;
 import com.tomaszstankowski.movieservice.model.dto.UserDTO;
+import com.tomaszstankowski.movieservice.model.entity.Movie;
 import com.tomaszstankowski.movieservice.model.entity.User;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
 import com.tomaszstankowski.movieservice.service.UserService;
@@ -22,8 +23,10 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.when;
@@ -148,4 +151,25 @@ public class UserControllerTest {
         mockMvc.perform(delete("/users/{login}", user.getLogin()))
                 .andExpect(status().isNotFound());
     }
+
+    @Test
+    public void get_whenRecommendationsRequested_statusOkShowsInOrder() throws Exception {
+        Movie first = new Movie("Heat", "", new Date(), "USA", (short) 170, 0);
+        Movie second = new Movie("Ronin", "", new Date(), "USA", (short) 122, 0);
+        when(service.findRecommendations(user.getLogin(), 100)).thenReturn(Arrays.asList(second, first));
+
+        mockMvc.perform(get("/users/{login}/recommendations", user.getLogin()).param("limit", "1000"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(contentType))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].title", is("Ronin")));
+    }
+
+    @Test
+    public void get_whenRecommendationsOfUserNotExists_statusNotFound() throws Exception {
+        when(service.findRecommendations(user.getLogin(), 10)).thenThrow(new UserNotFoundException(user.getLogin()));
+
+        mockMvc.perform(get("/users/{login}/recommendations", user.getLogin()))
+                .andExpect(status().isNotFound());
+    }
 }
@@ -1,13 +1,25 @@
 package com.tomaszstankowski.movieservice;
 
+import com.tomaszstankowski.movieservice.model.entity.Movie;
+import com.tomaszstankowski.movieservice.model.entity.Rating;
+import com.tomaszstankowski.movieservice.model.entity.Show;
 import com.tomaszstankowski.movieservice.model.entity.User;
 import com.tomaszstankowski.movieservice.model.enums.Sex;
+import com.tomaszstankowski.movieservice.repository.FollowRepository;
 import com.tomaszstankowski.movieservice.repository.RatingRepository;
+import com.tomaszstankowski.movieservice.repository.RatingWriteRepository;
 import com.tomaszstankowski.movieservice.repository.ShowRepository;
 import com.tomaszstankowski.movieservice.repository.UserRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetRepository;
+import com.tomaszstankowski.movieservice.repository.keyset.KeysetSlice;
+import com.tomaszstankowski.movieservice.service.FeedService;
+import com.tomaszstankowski.movieservice.service.RecommendationService;
 import com.tomaszstankowski.movieservice.service.UserService;
+import com.tomaszstankowski.movieservice.service.event.ShowRatedEvent;
 import com.tomaszstankowski.movieservice.service.exception.conflict.EmailAlreadyExistsException;
 import com.tomaszstankowski.movieservice.service.exception.conflict.UserAlreadyExistsException;
+import com.tomaszstankowski.movieservice.service.exception.conflict.UserAlreadyFollowedException;
+import com.tomaszstankowski.movieservice.service.exception.not_found.FollowerNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.not_found.UserNotFoundException;
 import com.tomaszstankowski.movieservice.service.exception.unproccessable.InvalidUserException;
 import org.junit.Before;
@@ -17,11 +29,17 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.mockito.Mockito.*;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -30,9 +48,21 @@ public class UserServiceTest {
     @Mock
     private UserRepository userRepo;
     @Mock
+    private FollowRepository followRepo;
+    @Mock
     private RatingRepository ratingRepo;
     @Mock
+    private RatingWriteRepository ratingWriteRepo;
+    @Mock
     private ShowRepository showRepo;
+    @Mock
+    private KeysetRepository keysetRepo;
+    @Mock
+    private RecommendationService recommendations;
+    @Mock
+    private FeedService feed;
+    @Mock
+    private ApplicationEventPublisher publisher;
 
     private PasswordEncoder encoder = new BCryptPasswordEncoder();
 
@@ -45,7 +75,8 @@ public class UserServiceTest {
 
     @Before
     public void setup() {
-        service = new UserService(userRepo, ratingRepo, showRepo, encoder);
+        service = new UserService(userRepo, followRepo, ratingRepo, ratingWriteRepo, showRepo, keysetRepo,
+                recommendations, feed, encoder, publisher);
         user = new User(
                 "janusz111",
                 "password",
@@ -58,6 +89,18 @@ public class UserServiceTest {
         verifyNoMoreInteractions(userRepo);
     }
 
+    @Test
+    public void findUser_whenFound_ownCopyReturned() {
+        user.setFollowerCount(3);
+        when(userRepo.findOne(user.getLogin())).thenReturn(user);
+
+        User found = service.findUser(user.getLogin());
+
+        assertNotSame(user, found);
+        assertEquals(user.getName(), found.getName());
+        assertEquals(3, found.getFollowerCount());
+    }
+
     @Test
     public void add_successful() {
         when(userRepo.findOne(user.getLogin())).thenReturn(null);
@@ -174,11 +217,16 @@ public class UserServiceTest {
     @Test
     public void delete_successful() {
         when(userRepo.findOne(user.getLogin())).thenReturn(user);
+        when(ratingWriteRepo.deleteUserRatings(user.getLogin())).thenReturn(Collections.singletonMap(3L, 7L));
 
         service.removeUser(user.getLogin());
 
+        verify(publisher, times(1)).publishEvent(new ShowRatedEvent(3L, 7L));
+
         verify(userRepo, times(1)).findOne(user.getLogin());
         verify(userRepo, times(1)).delete(user.getLogin());
+        verify(followRepo, times(1)).deleteUser(user.getLogin());
+        verify(feed, times(1)).removed(user.getLogin());
         verifyNoMoreInteractions(userRepo);
     }
 
@@ -192,4 +240,91 @@ public class UserServiceTest {
         verify(userRepo, times(1)).findOne(user.getLogin());
         verifyNoMoreInteractions(userRepo);
     }
+
+    @Test
+    public void findRecommendations_keepsRecommendedOrder() {
+        Show first = new Movie();
+        first.setId(1L);
+        Show second = new Movie();
+        second.setId(2L);
+        when(userRepo.exists(user.getLogin())).thenReturn(true);
+        when(recommendations.recommend(user.getLogin(), 10)).thenReturn(Arrays.asList(2L, 1L));
+        when(showRepo.findAll(Arrays.asList(2L, 1L))).thenReturn(Arrays.asList(first, second));
+
+        assertEquals(Arrays.asList(second, first), service.findRecommendations(user.getLogin(), 10));
+    }
+
+    @Test
+    public void findRecommendations_whenUserNotExists_throwExc() {
+        when(userRepo.exists(user.getLogin())).thenReturn(false);
+        exception.expect(UserNotFoundException.class);
+
+        service.findRecommendations(user.getLogin(), 10);
+
+        verify(recommendations, never()).recommend(anyString(), anyInt());
+    }
+
+    @Test
+    public void findUserFollowedRatings_keepsFeedOrderAndCursor() {
+        Rating first = new Rating();
+        first.setId(1L);
+        Rating second = new Rating();
+        second.setId(2L);
+        when(userRepo.exists(user.getLogin())).thenReturn(true);
+        when(feed.findFeed(user.getLogin(), null, 10)).thenReturn(new KeysetSlice<>(Arrays.asList(2L, 1L), "next"));
+        when(ratingRepo.findAll(Arrays.asList(2L, 1L))).thenReturn(Arrays.asList(first, second));
+
+        KeysetSlice<Rating> slice = service.findUserFollowedRatings(user.getLogin(), null);
+
+        assertEquals(Arrays.asList(second, first), slice.getContent());
+        assertEquals("next", slice.getNext());
+    }
+
+    @Test
+    public void findUserFollowedRatings_whenUserNotExists_throwExc() {
+        when(userRepo.exists(user.getLogin())).thenReturn(false);
+        exception.expect(UserNotFoundException.class);
+
+        service.findUserFollowedRatings(user.getLogin(), null);
+
+        verify(feed, never()).findFeed(anyString(), anyString(), anyInt());
+    }
+
+    @Test
+    public void addUserFollower_singleFollowInserted() {
+        User follower = new User("follower", "pw", "follower", "follower@mail.com", Sex.MALE);
+        when(userRepo.exists(user.getLogin())).thenReturn(true);
+        when(userRepo.findOne(follower.getLogin())).thenReturn(follower);
+        when(followRepo.exists(user.getLogin(), follower.getLogin())).thenReturn(false);
+
+        assertEquals(follower, service.addUserFollower(user.getLogin(), follower.getLogin()));
+
+        verify(followRepo, times(1)).insert(user.getLogin(), follower.getLogin());
+        verify(feed, times(1)).followed(follower.getLogin(), user.getLogin());
+        verify(userRepo, never()).save(follower);
+    }
+
+    @Test
+    public void addUserFollower_whenFollowedConcurrently_throwExc() {
+        User follower = new User("follower", "pw", "follower", "follower@mail.com", Sex.MALE);
+        when(userRepo.exists(user.getLogin())).thenReturn(true);
+        when(userRepo.findOne(follower.getLogin())).thenReturn(follower);
+        when(followRepo.exists(user.getLogin(), follower.getLogin())).thenReturn(false);
+        doThrow(new DataIntegrityViolationException("duplicate"))
+                .when(followRepo).insert(user.getLogin(), follower.getLogin());
+        exception.expect(UserAlreadyFollowedException.class);
+
+        service.addUserFollower(user.getLogin(), follower.getLogin());
+    }
+
+    @Test
+    public void removeUserFollower_whenNotFollowed_throwExc() {
+        when(userRepo.exists(anyString())).thenReturn(true);
+        when(followRepo.delete(user.getLogin(), "follower")).thenReturn(false);
+        exception.expect(FollowerNotFoundException.class);
+
+        service.removeUserFollower(user.getLogin(), "follower");
+
+        verify(feed, never()).unfollowed(anyString(), anyString());
+    }
 }